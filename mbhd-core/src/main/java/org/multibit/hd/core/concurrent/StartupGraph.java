@@ -0,0 +1,170 @@
+package org.multibit.hd.core.concurrent;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import org.multibit.hd.core.logging.StartupTracer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Dependency graph to provide the following to application startup:</p>
+ * <ul>
+ * <li>Concurrent execution of independent initialisation tasks</li>
+ * <li>Ordering of dependent tasks</li>
+ * <li>Per-task timings</li>
+ * </ul>
+ *
+ * <p>Tasks return true if they succeed. A task that fails (returns false or throws) prevents all tasks that
+ * depend on it from running and causes the overall execution to report a failure.</p>
+ *
+ * @since 0.0.1
+ *
+ */
+public class StartupGraph {
+
+  private static final Logger log = LoggerFactory.getLogger(StartupGraph.class);
+
+  private final String name;
+
+  private final Map<String, Callable<Boolean>> tasks = Maps.newLinkedHashMap();
+  private final Map<String, List<String>> dependencies = Maps.newHashMap();
+  private final Map<String, Long> timings = Maps.newConcurrentMap();
+
+  /**
+   * @param name The name of the graph (use lowercase hyphenated)
+   */
+  public StartupGraph(String name) {
+
+    Preconditions.checkNotNull(name, "'name' must be present");
+
+    this.name = name;
+  }
+
+  /**
+   * <p>Add a task to the graph. Dependencies must already have been added which prevents cycles.</p>
+   *
+   * @param taskName  The unique name of the task
+   * @param task      The task returning true if successful
+   * @param dependsOn The names of the tasks that must complete successfully before this one starts
+   *
+   * @return This graph for chaining
+   */
+  public StartupGraph addTask(String taskName, Callable<Boolean> task, String... dependsOn) {
+
+    Preconditions.checkNotNull(taskName, "'taskName' must be present");
+    Preconditions.checkNotNull(task, "'task' must be present");
+    Preconditions.checkState(!tasks.containsKey(taskName), "'" + taskName + "' is already present");
+
+    for (String dependency : dependsOn) {
+      Preconditions.checkState(tasks.containsKey(dependency), "'" + dependency + "' must be added before '" + taskName + "'");
+    }
+
+    tasks.put(taskName, task);
+    dependencies.put(taskName, Lists.newArrayList(dependsOn));
+
+    return this;
+  }
+
+  /**
+   * <p>Execute all tasks and block until they have completed</p>
+   *
+   * @return True if all tasks completed successfully
+   */
+  public boolean execute() {
+
+    Preconditions.checkState(!tasks.isEmpty(), "'tasks' must not be empty");
+
+    final long start = System.nanoTime();
+
+    // One thread per task ensures that a task blocked on its dependencies never starves them
+    ListeningExecutorService executorService = SafeExecutors.newFixedThreadPool(tasks.size(), name);
+
+    final Map<String, ListenableFuture<Boolean>> futures = Maps.newHashMap();
+    try {
+
+      for (final Map.Entry<String, Callable<Boolean>> entry : tasks.entrySet()) {
+
+        final String taskName = entry.getKey();
+        final List<ListenableFuture<Boolean>> dependencyFutures = Lists.newArrayList();
+        for (String dependency : dependencies.get(taskName)) {
+          dependencyFutures.add(futures.get(dependency));
+        }
+
+        futures.put(taskName, executorService.submit(new Callable<Boolean>() {
+          @Override
+          public Boolean call() throws Exception {
+
+            for (ListenableFuture<Boolean> dependencyFuture : dependencyFutures) {
+              if (!getQuietly(dependencyFuture)) {
+                log.warn("Startup task '{}' skipped due to failed dependency", taskName);
+                return false;
+              }
+            }
+
+            StartupTracer.Span span = StartupTracer.INSTANCE.begin(name + "." + taskName);
+            long taskStart = System.nanoTime();
+            try {
+              return entry.getValue().call();
+            } finally {
+              timings.put(taskName, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - taskStart));
+              span.end();
+            }
+          }
+        }));
+      }
+
+      boolean success = true;
+      for (Map.Entry<String, ListenableFuture<Boolean>> entry : futures.entrySet()) {
+        if (!getQuietly(entry.getValue())) {
+          log.error("Startup task '{}' did not complete successfully", entry.getKey());
+          success = false;
+        }
+      }
+
+      log.debug("Startup graph '{}' completed in {}ms with timings {}", name, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), timings);
+
+      return success;
+
+    } finally {
+      executorService.shutdown();
+    }
+
+  }
+
+  /**
+   * @return The elapsed time in milliseconds of each task that ran
+   */
+  public Map<String, Long> getTimings() {
+    return ImmutableMap.copyOf(timings);
+  }
+
+  /**
+   * @param future The task future
+   *
+   * @return The result of the task, or false if it failed
+   */
+  private boolean getQuietly(ListenableFuture<Boolean> future) {
+
+    try {
+      return Boolean.TRUE.equals(future.get());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    } catch (ExecutionException e) {
+      log.error("Startup task failed", e.getCause());
+      return false;
+    }
+
+  }
+
+}
@@ -1,7 +1,9 @@
 package org.multibit.hd.core.config;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -46,6 +48,12 @@ public class BitcoinConfiguration {
    */
   private Map<String, String> exchangeApiKeys = Maps.newHashMap();
 
+  /**
+   * Further exchanges (e.g. "KRAKEN" from <code>ExchangeKey</code>) consulted alongside the current exchange
+   * to provide a median exchange rate
+   */
+  private List<String> additionalExchanges = Lists.newArrayList();
+
   /**
    * <p>Default constructor uses the default locale</p>
    */
@@ -73,6 +81,7 @@ public class BitcoinConfiguration {
 
     configuration.setCurrentExchange(getCurrentExchange());
     configuration.setExchangeApiKeys(getExchangeApiKeys());
+    configuration.setAdditionalExchanges(Lists.newArrayList(getAdditionalExchanges()));
 
     return configuration;
   }
@@ -190,4 +199,15 @@ public class BitcoinConfiguration {
   public void setExchangeApiKeys(Map<String, String> exchangeApiKeys) {
     this.exchangeApiKeys = exchangeApiKeys;
   }
+
+  /**
+   * @return The additional exchanges (e.g. "KRAKEN" from <code>ExchangeKey</code>) used for a median exchange rate
+   */
+  public List<String> getAdditionalExchanges() {
+    return additionalExchanges;
+  }
+
+  public void setAdditionalExchanges(List<String> additionalExchanges) {
+    this.additionalExchanges = additionalExchanges;
+  }
 }
@@ -3,17 +3,23 @@ package org.multibit.hd.core.config;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 import com.google.common.base.Optional;
+import com.google.common.util.concurrent.ListeningScheduledExecutorService;
+import org.multibit.hd.core.concurrent.SafeExecutors;
 import org.multibit.hd.core.events.CoreEvents;
 import org.multibit.hd.core.exceptions.ExceptionHandler;
+import org.multibit.hd.core.files.Files;
 import org.multibit.hd.core.managers.InstallationManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.FileOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * <p>Utility to provide the following to configuration:</p>
@@ -21,6 +27,7 @@ import java.util.Locale;
  * <li>Default configuration</li>
  * <li>Default configuration</li>
  * <li>Read/write configuration files</li>
+ * <li>Crash-safe persistence with coalescing of rapid changes</li>
  * </ul>
  *
  * @since 0.0.1
@@ -30,6 +37,26 @@ public class Configurations {
 
   private static final Logger log = LoggerFactory.getLogger(Configurations.class);
 
+  /**
+   * The delay in milliseconds over which changes are gathered into a single write
+   */
+  private static final long PERSIST_LATER_DELAY_MILLIS = 2000;
+
+  /**
+   * The shared YAML mapper (thread safe once configured)
+   */
+  private static final ObjectMapper yamlMapper = new ObjectMapper(new YAMLFactory());
+
+  /**
+   * True if a write of the current configuration is already scheduled
+   */
+  private static final AtomicBoolean persistPending = new AtomicBoolean(false);
+
+  /**
+   * The executor for coalesced writes (created on first use)
+   */
+  private static ListeningScheduledExecutorService persistExecutorService;
+
   /**
    * The current runtime configuration (preserved across soft restarts)
    */
@@ -92,15 +119,44 @@ public class Configurations {
   public static synchronized void persistCurrentConfiguration() {
 
     // Persist the new configuration
-    try (FileOutputStream fos = new FileOutputStream(InstallationManager.getConfigurationFile())) {
+    try {
 
-      Configurations.writeYaml(fos, Configurations.currentConfiguration);
+      writeYamlAtomically(InstallationManager.getConfigurationFile(), Configurations.currentConfiguration);
 
     } catch (IOException e) {
       ExceptionHandler.handleThrowable(e);
     }
   }
 
+  /**
+   * <p>Persist the current configuration shortly on a background thread</p>
+   *
+   * <p>Suits rapid successive changes (e.g. frame bounds) since they are gathered into a single write</p>
+   */
+  public static void persistCurrentConfigurationLater() {
+
+    if (!persistPending.compareAndSet(false, true)) {
+      // The scheduled write will include this change
+      return;
+    }
+
+    getOrCreatePersistExecutorService().schedule(new Runnable() {
+      @Override
+      public void run() {
+
+        // Clear first so that a change made during the write schedules another
+        persistPending.set(false);
+
+        // We may be in a partial startup situation
+        if (currentConfiguration != null) {
+          persistCurrentConfiguration();
+        }
+
+      }
+    }, PERSIST_LATER_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+
+  }
+
   /**
    * <p>Reads the YAML from the given input stream</p>
    *
@@ -109,17 +165,15 @@ public class Configurations {
    *
    * @return The configuration data (<code>Configuration</code>, <code>Wallet Summary</code> etc) if present
    */
-  public static synchronized <T> Optional<T> readYaml(InputStream is, Class<T> clazz) {
+  public static <T> Optional<T> readYaml(InputStream is, Class<T> clazz) {
 
     log.debug("Reading configuration data...");
 
     Optional<T> configuration;
 
     // Read the external configuration
-    ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
-
     try {
-      configuration = Optional.fromNullable(mapper.readValue(is, clazz));
+      configuration = Optional.fromNullable(yamlMapper.readValue(is, clazz));
     } catch (IOException e) {
       log.warn(e.getMessage());
       configuration = Optional.absent();
@@ -138,15 +192,54 @@ public class Configurations {
    * @param os            The output stream to use (not closed)
    * @param configuration The configuration to write as YAML
    */
-  public static synchronized <T> void writeYaml(OutputStream os, T configuration) {
+  public static <T> void writeYaml(OutputStream os, T configuration) {
 
-    ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
     try {
-      mapper.writeValue(os, configuration);
+      yamlMapper.writeValue(os, configuration);
     } catch (IOException e) {
       ExceptionHandler.handleThrowable(e);
     }
 
   }
 
+  /**
+   * <p>Writes the YAML to a file so that a crash leaves either the previous or the new content</p>
+   *
+   * <p>Nothing is written if the file already holds the same YAML</p>
+   *
+   * @param file          The file to replace
+   * @param configuration The configuration to write as YAML
+   *
+   * @return True if the file was written
+   *
+   * @throws IOException If the YAML could not be written (the file is unchanged)
+   */
+  public static <T> boolean writeYamlAtomically(File file, T configuration) throws IOException {
+
+    byte[] yaml = yamlMapper.writeValueAsBytes(configuration);
+
+    if (file.length() == yaml.length && file.exists() && Arrays.equals(yaml, com.google.common.io.Files.toByteArray(file))) {
+      log.trace("Unchanged YAML not written to '{}'", file.getAbsolutePath());
+      return false;
+    }
+
+    Files.writeAtomically(yaml, file);
+
+    return true;
+
+  }
+
+  /**
+   * @return The executor for coalesced writes
+   */
+  private static synchronized ListeningScheduledExecutorService getOrCreatePersistExecutorService() {
+
+    if (persistExecutorService == null) {
+      persistExecutorService = SafeExecutors.newSingleThreadScheduledExecutor("persist-configuration");
+    }
+
+    return persistExecutorService;
+
+  }
+
 }
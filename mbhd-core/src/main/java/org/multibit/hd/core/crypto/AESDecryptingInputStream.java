@@ -0,0 +1,156 @@
+package org.multibit.hd.core.crypto;
+
+import com.google.common.base.Preconditions;
+import org.spongycastle.crypto.BufferedBlockCipher;
+import org.spongycastle.crypto.DataLengthException;
+import org.spongycastle.crypto.InvalidCipherTextException;
+import org.spongycastle.crypto.engines.AESFastEngine;
+import org.spongycastle.crypto.modes.CBCBlockCipher;
+import org.spongycastle.crypto.paddings.PaddedBufferedBlockCipher;
+import org.spongycastle.crypto.params.KeyParameter;
+import org.spongycastle.crypto.params.ParametersWithIV;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * <p>Input stream to provide the following to backups:</p>
+ * <ul>
+ * <li>AES CBC decryption with PKCS7 padding of content produced by <code>AESUtils.encrypt</code>
+ * or {@link AESEncryptingOutputStream}, without holding the whole content in memory</li>
+ * </ul>
+ * <p>A wrong key or truncated content is reported as an <code>IOException</code> when the end of the stream is reached.</p>
+ *
+ * @since 0.0.1
+ *
+ */
+public class AESDecryptingInputStream extends FilterInputStream {
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private final BufferedBlockCipher cipher;
+
+  private final byte[] inputBuffer = new byte[BUFFER_SIZE];
+
+  private final byte[] outputBuffer;
+
+  private int outputPosition = 0;
+
+  private int outputLength = 0;
+
+  private boolean finished = false;
+
+  /**
+   * @param in                   The stream providing the encrypted bytes
+   * @param aesKey               The AES key to use for decryption
+   * @param initialisationVector The initialisation vector to use whilst decrypting
+   */
+  public AESDecryptingInputStream(InputStream in, KeyParameter aesKey, byte[] initialisationVector) {
+
+    super(in);
+
+    Preconditions.checkNotNull(in, "'in' must be present");
+    Preconditions.checkNotNull(aesKey, "'aesKey' must be present");
+    Preconditions.checkNotNull(initialisationVector, "'initialisationVector' must be present");
+
+    cipher = new PaddedBufferedBlockCipher(new CBCBlockCipher(new AESFastEngine()));
+    cipher.init(false, new ParametersWithIV(aesKey, initialisationVector));
+
+    outputBuffer = new byte[cipher.getOutputSize(BUFFER_SIZE)];
+
+  }
+
+  @Override
+  public int read() throws IOException {
+
+    if (!fill()) {
+      return -1;
+    }
+
+    return outputBuffer[outputPosition++] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+
+    if (len == 0) {
+      return 0;
+    }
+    if (!fill()) {
+      return -1;
+    }
+
+    int length = Math.min(len, outputLength - outputPosition);
+    System.arraycopy(outputBuffer, outputPosition, b, off, length);
+    outputPosition += length;
+
+    return length;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+
+    long skipped = 0;
+    while (skipped < n && fill()) {
+      int length = (int) Math.min(n - skipped, outputLength - outputPosition);
+      outputPosition += length;
+      skipped += length;
+    }
+
+    return skipped;
+  }
+
+  @Override
+  public int available() throws IOException {
+    return outputLength - outputPosition;
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+  @Override
+  public synchronized void mark(int readlimit) {
+    // Not supported
+  }
+
+  @Override
+  public synchronized void reset() throws IOException {
+    throw new IOException("Mark not supported");
+  }
+
+  /**
+   * @return True if decrypted bytes are available, false at the end of the stream
+   *
+   * @throws IOException If the underlying stream fails or the content cannot be decrypted
+   */
+  private boolean fill() throws IOException {
+
+    while (outputPosition == outputLength) {
+
+      if (finished) {
+        return false;
+      }
+
+      outputPosition = 0;
+      try {
+        int length = in.read(inputBuffer);
+        if (length == -1) {
+          // Removes the padding and verifies it
+          outputLength = cipher.doFinal(outputBuffer, 0);
+          finished = true;
+        } else {
+          outputLength = cipher.processBytes(inputBuffer, 0, length, outputBuffer, 0);
+        }
+      } catch (InvalidCipherTextException | DataLengthException e) {
+        finished = true;
+        outputLength = 0;
+        throw new IOException("Could not decrypt bytes", e);
+      }
+    }
+
+    return true;
+  }
+}
@@ -0,0 +1,128 @@
+package org.multibit.hd.core.crypto;
+
+import com.google.common.base.Preconditions;
+import org.multibit.hd.brit.crypto.AESUtils;
+import org.spongycastle.crypto.BufferedBlockCipher;
+import org.spongycastle.crypto.DataLengthException;
+import org.spongycastle.crypto.InvalidCipherTextException;
+import org.spongycastle.crypto.engines.AESFastEngine;
+import org.spongycastle.crypto.modes.CBCBlockCipher;
+import org.spongycastle.crypto.paddings.PaddedBufferedBlockCipher;
+import org.spongycastle.crypto.params.KeyParameter;
+import org.spongycastle.crypto.params.ParametersWithIV;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * <p>Output stream to provide the following to backups:</p>
+ * <ul>
+ * <li>AES CBC encryption with PKCS7 padding of everything written, without holding the whole content in memory</li>
+ * </ul>
+ * <p>The output is byte for byte identical to <code>AESUtils.encrypt</code> so either can be decrypted by
+ * <code>AESUtils.decrypt</code> or {@link AESDecryptingInputStream}. Closing or finishing the stream writes the
+ * final padded block.</p>
+ *
+ * @since 0.0.1
+ *
+ */
+public class AESEncryptingOutputStream extends FilterOutputStream {
+
+  private final BufferedBlockCipher cipher;
+
+  private byte[] cipherBuffer = new byte[8192];
+
+  private boolean finished = false;
+
+  /**
+   * @param out                  The stream to receive the encrypted bytes
+   * @param aesKey               The AES key to use for encryption
+   * @param initialisationVector The initialisation vector to use whilst encrypting
+   */
+  public AESEncryptingOutputStream(OutputStream out, KeyParameter aesKey, byte[] initialisationVector) {
+
+    super(out);
+
+    Preconditions.checkNotNull(out, "'out' must be present");
+    Preconditions.checkNotNull(aesKey, "'aesKey' must be present");
+    Preconditions.checkNotNull(initialisationVector, "'initialisationVector' must be present");
+    Preconditions.checkState(initialisationVector.length == AESUtils.BLOCK_LENGTH, "The initialisationVector must be " + AESUtils.BLOCK_LENGTH + " bytes long.");
+
+    cipher = new PaddedBufferedBlockCipher(new CBCBlockCipher(new AESFastEngine()));
+    cipher.init(true, new ParametersWithIV(aesKey, initialisationVector));
+
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    write(new byte[]{(byte) b}, 0, 1);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+
+    if (finished) {
+      throw new IOException("Stream finished");
+    }
+
+    ensureCipherBuffer(cipher.getUpdateOutputSize(len));
+    try {
+      int length = cipher.processBytes(b, off, len, cipherBuffer, 0);
+      if (length > 0) {
+        out.write(cipherBuffer, 0, length);
+      }
+    } catch (DataLengthException e) {
+      throw new IOException("Could not encrypt bytes", e);
+    }
+
+  }
+
+  /**
+   * <p>Flushes the underlying stream only since a partial block cannot be encrypted until the stream is closed</p>
+   */
+  @Override
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  /**
+   * <p>Write the final padded block and flush without closing the underlying stream</p>
+   *
+   * @throws IOException If the final block could not be written
+   */
+  public void finish() throws IOException {
+
+    if (finished) {
+      return;
+    }
+    finished = true;
+
+    try {
+      ensureCipherBuffer(cipher.getOutputSize(0));
+      int length = cipher.doFinal(cipherBuffer, 0);
+      out.write(cipherBuffer, 0, length);
+      out.flush();
+    } catch (InvalidCipherTextException | DataLengthException e) {
+      throw new IOException("Could not encrypt final block", e);
+    }
+
+  }
+
+  @Override
+  public void close() throws IOException {
+
+    try {
+      finish();
+    } finally {
+      out.close();
+    }
+
+  }
+
+  private void ensureCipherBuffer(int size) {
+    if (cipherBuffer.length < size) {
+      cipherBuffer = new byte[size];
+    }
+  }
+}
@@ -9,14 +9,22 @@ import org.multibit.hd.brit.crypto.AESUtils;
 import org.multibit.hd.core.exceptions.EncryptedFileReaderWriterException;
 import org.multibit.hd.core.files.Files;
 import org.multibit.hd.core.files.SecureFiles;
+import org.multibit.hd.core.files.ZipFiles;
 import org.multibit.hd.core.managers.WalletManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spongycastle.crypto.params.KeyParameter;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.util.Arrays;
 
 /**
@@ -36,6 +44,11 @@ public class EncryptedFileReaderWriter {
 
   private static final String TEMPORARY_FILE_EXTENSION = ".tmp";
 
+  /**
+   * The buffer size for streaming encrypted files (large enough to keep the cipher busy)
+   */
+  public static final int STREAM_BUFFER_SIZE = 65536;
+
   /**
    * Decrypt an AES encrypted file and return it as an inputStream
    */
@@ -100,18 +113,94 @@ public class EncryptedFileReaderWriter {
      Preconditions.checkNotNull(fileToEncrypt);
      Preconditions.checkNotNull(password);
      Preconditions.checkNotNull(encryptedBackupAESKey);
-     try {
-       // Decrypt the backup AES key stored in the wallet summary
-       KeyParameter walletPasswordDerivedAESKey = org.multibit.hd.core.crypto.AESUtils.createAESKey(password.getBytes(Charsets.UTF_8), WalletManager.SCRYPT_SALT);
-       byte[] backupAESKeyBytes = org.multibit.hd.brit.crypto.AESUtils.decrypt(encryptedBackupAESKey, walletPasswordDerivedAESKey, WalletManager.AES_INITIALISATION_VECTOR);
-       KeyParameter backupAESKey = new KeyParameter(backupAESKeyBytes);
-
-       return encryptAndDeleteOriginal(fileToEncrypt, backupAESKey, WalletManager.AES_INITIALISATION_VECTOR);
-     } catch (Exception e) {
-       throw new EncryptedFileReaderWriterException("Could not decrypt backup AES key", e);
-     }
+
+     KeyParameter backupAESKey = deriveBackupAESKey(password, encryptedBackupAESKey);
+
+     return encryptAndDeleteOriginal(fileToEncrypt, backupAESKey, WalletManager.AES_INITIALISATION_VECTOR);
    }
 
+  /**
+   * Decrypt the backup AES key stored in the wallet summary using the wallet password
+   * This is expensive (scrypt) so callers producing several backups should derive it once
+   *
+   * @param password              The wallet password
+   * @param encryptedBackupAESKey The encrypted backup AES key from the wallet summary
+   * @return The backup AES key
+   * @throws EncryptedFileReaderWriterException
+   */
+  public static KeyParameter deriveBackupAESKey(CharSequence password, byte[] encryptedBackupAESKey) throws EncryptedFileReaderWriterException {
+    Preconditions.checkNotNull(password);
+    Preconditions.checkNotNull(encryptedBackupAESKey);
+    try {
+      KeyParameter walletPasswordDerivedAESKey = org.multibit.hd.core.crypto.AESUtils.createAESKey(password.toString().getBytes(Charsets.UTF_8), WalletManager.SCRYPT_SALT);
+      byte[] backupAESKeyBytes = org.multibit.hd.brit.crypto.AESUtils.decrypt(encryptedBackupAESKey, walletPasswordDerivedAESKey, WalletManager.AES_INITIALISATION_VECTOR);
+
+      return new KeyParameter(backupAESKeyBytes);
+    } catch (Exception e) {
+      throw new EncryptedFileReaderWriterException("Could not decrypt backup AES key", e);
+    }
+  }
+
+  /**
+   * Zip a directory straight into an AES encrypted file so that no plaintext copy ever reaches the disk
+   * <p/>
+   * The pipeline is zip stream, AES stream, buffered file stream into a temporary file which is forced to disk. The temporary file
+   * is then decrypted as a stream and compared by SHA-256 with what was zipped before it is renamed to the output file.
+   *
+   * @param sourceDirectory      The directory to zip
+   * @param includeBlockStore    True if the block store should be included
+   * @param aesKey               The AES key to use for the encryption
+   * @param initialisationVector The initialisation vector to use for the encryption
+   * @param outputFile           The encrypted file to create
+   * @return The output file
+   * @throws EncryptedFileReaderWriterException if the file could not be written or the encryption was not reversible
+   */
+  public static File zipEncryptAndWrite(File sourceDirectory, boolean includeBlockStore, KeyParameter aesKey, byte[] initialisationVector, File outputFile) throws EncryptedFileReaderWriterException {
+    Preconditions.checkNotNull(sourceDirectory);
+    Preconditions.checkNotNull(aesKey);
+    Preconditions.checkNotNull(initialisationVector);
+    Preconditions.checkNotNull(outputFile);
+
+    File temporaryFile = new File(outputFile.getAbsolutePath() + TEMPORARY_FILE_EXTENSION);
+    try {
+      MessageDigest plainDigest = MessageDigest.getInstance("SHA-256");
+      try (FileOutputStream fos = new FileOutputStream(temporaryFile)) {
+        AESEncryptingOutputStream aesStream = new AESEncryptingOutputStream(new BufferedOutputStream(fos, STREAM_BUFFER_SIZE), aesKey, initialisationVector);
+        ZipFiles.zipFolder(sourceDirectory.getAbsolutePath(), new DigestOutputStream(aesStream, plainDigest), includeBlockStore);
+        aesStream.finish();
+
+        // Force the bits to hit the disk before the file replaces anything
+        fos.getChannel().force(true);
+      }
+
+      // Check that the encryption is reversible without materialising the plaintext
+      MessageDigest rebornDigest = MessageDigest.getInstance("SHA-256");
+      try (InputStream is = new AESDecryptingInputStream(new BufferedInputStream(new FileInputStream(temporaryFile), STREAM_BUFFER_SIZE), aesKey, initialisationVector)) {
+        byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+        int length;
+        while ((length = is.read(buffer)) != -1) {
+          rebornDigest.update(buffer, 0, length);
+        }
+      }
+
+      if (!MessageDigest.isEqual(plainDigest.digest(), rebornDigest.digest())) {
+        throw new EncryptedFileReaderWriterException("The encryption was not reversible so aborting.");
+      }
+
+      Files.replaceAtomically(temporaryFile, outputFile);
+
+      return outputFile;
+    } catch (EncryptedFileReaderWriterException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new EncryptedFileReaderWriterException("Cannot zip and encrypt the directory '" + sourceDirectory.getAbsolutePath() + "'", e);
+    } finally {
+      // Only ciphertext was written so a plain delete is sufficient
+      if (temporaryFile.exists() && !temporaryFile.delete()) {
+        log.warn("Could not delete temporary file '{}'", temporaryFile.getAbsolutePath());
+      }
+    }
+  }
 
   /**
    * Encrypt the file specified using an AES key derived from the supplied password
@@ -150,6 +239,7 @@ public class EncryptedFileReaderWriter {
         Files.writeFile(encryptedWalletByteArrayInputStream, encryptedWalletOutputStream);
 
         if (encryptedFilename.length() == encryptedBytes.length) {
+          // The original is plaintext so it is overwritten before returning
           SecureFiles.secureDelete(fileToEncrypt);
         } else {
           // The saved file isn't the correct size - do not delete the original
@@ -0,0 +1,242 @@
+package org.multibit.hd.core.dto;
+
+import com.google.bitcoin.core.Address;
+import com.google.bitcoin.core.Coin;
+import com.google.bitcoin.core.Wallet;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import org.multibit.hd.brit.dto.FeeState;
+import org.spongycastle.crypto.params.KeyParameter;
+
+import java.util.List;
+
+/**
+ * <p>Data object to provide the following to Bitcoin network service:</p>
+ * <ul>
+ * <li>Contains batch payout data (many recipients paid in a single transaction)</li>
+ * </ul>
+ *
+ * @since 0.0.1
+ */
+public class BatchSendRequestSummary {
+
+  private final List<Payee> payees;
+  private final Address changeAddress;
+  private final Coin feePerKB;
+  private final Optional<FeeState> feeState;
+
+  // Mutable values
+  private Optional<Address> feeAddress = Optional.absent();
+  private Optional<KeyParameter> keyParameter = Optional.absent();
+  private Optional<Wallet.SendRequest> sendRequest = Optional.absent();
+  private Optional<String> notes = Optional.absent();
+  private String password;
+
+  /**
+   * The client fee added to the sendRequest.tx
+   */
+  private Optional<Coin> clientFeeAdded = Optional.absent();
+
+  /**
+   * @param payees        The recipients and amounts (must not be empty)
+   * @param changeAddress The change address
+   * @param feePerKB      The fee per Kb (in coins)
+   * @param password      The wallet password
+   * @param feeState      The BRIT fee state
+   */
+  public BatchSendRequestSummary(
+    List<Payee> payees,
+    Address changeAddress,
+    Coin feePerKB,
+    String password,
+    Optional<FeeState> feeState) {
+
+    Preconditions.checkNotNull(payees, "'payees' must be present");
+    Preconditions.checkArgument(!payees.isEmpty(), "'payees' must not be empty");
+
+    this.payees = ImmutableList.copyOf(payees);
+    this.changeAddress = changeAddress;
+    this.feePerKB = feePerKB;
+    this.password = password;
+    this.feeState = feeState;
+
+  }
+
+  /**
+   * @return The recipients and amounts in the order they appear as transaction outputs
+   */
+  public List<Payee> getPayees() {
+    return payees;
+  }
+
+  /**
+   * @return The sum of the payee amounts (excluding any client fee)
+   */
+  public Coin getAmount() {
+
+    Coin total = Coin.ZERO;
+    for (Payee payee : payees) {
+      total = total.add(payee.getAmount());
+    }
+
+    return total;
+  }
+
+  /**
+   * @return The total amount sent, including the client fee
+   */
+  public Coin getTotalAmount() {
+    if (clientFeeAdded.isPresent()) {
+      return getAmount().add(clientFeeAdded.get());
+    } else {
+      return getAmount();
+    }
+  }
+
+  /**
+   * @return The change address
+   */
+  public Address getChangeAddress() {
+    return changeAddress;
+  }
+
+  /**
+   * @return The fee to pay per Kb
+   */
+  public Coin getFeePerKB() {
+    return feePerKB;
+  }
+
+  /**
+   * @return The wallet password
+   */
+  public String getPassword() {
+    return password;
+  }
+
+  public void setPassword(String password) {
+
+    // Any previously derived key may no longer match the password
+    if (this.password == null || !this.password.equals(password)) {
+      this.keyParameter = Optional.absent();
+    }
+
+    this.password = password;
+  }
+
+  /**
+   * @return The fee state to determine if a client fee is required
+   */
+  public Optional<FeeState> getFeeState() {
+    return feeState;
+  }
+
+  /**
+   * @return The client fee address (from BRIT)
+   */
+  public Optional<Address> getFeeAddress() {
+    return feeAddress;
+  }
+
+  public void setFeeAddress(Optional<Address> feeAddress) {
+    this.feeAddress = feeAddress;
+  }
+
+  /**
+   * @return The wallet AES key (derived once for the whole batch)
+   */
+  public Optional<KeyParameter> getKeyParameter() {
+    return keyParameter;
+  }
+
+  public void setKeyParameter(KeyParameter keyParameter) {
+    this.keyParameter = Optional.fromNullable(keyParameter);
+  }
+
+  /**
+   * @return The Bitcoinj send request providing detailed information about the transaction
+   */
+  public Optional<Wallet.SendRequest> getSendRequest() {
+    return sendRequest;
+  }
+
+  public void setSendRequest(Wallet.SendRequest sendRequest) {
+    this.sendRequest = Optional.of(sendRequest);
+  }
+
+  public void setNotes(Optional<String> notes) {
+    this.notes = notes;
+  }
+
+  public Optional<String> getNotes() {
+    return notes;
+  }
+
+  public Optional<Coin> getClientFeeAdded() {
+    return clientFeeAdded;
+  }
+
+  public void setClientFeeAdded(Optional<Coin> clientFeeAdded) {
+    this.clientFeeAdded = clientFeeAdded;
+  }
+
+  @Override
+  public String toString() {
+    return "BatchSendRequestSummary{" +
+      "payees=" + payees.size() +
+      ", amount=" + getAmount() +
+      ", changeAddress=" + changeAddress +
+      ", feePerKB=" + feePerKB +
+      ", password=***" +
+      ", feeStateOptional=" + feeState +
+      ", clientFeeAdded=" + clientFeeAdded +
+      ", notes = " + notes +
+      '}';
+  }
+
+  /**
+   * <p>A single recipient within a batch payout</p>
+   */
+  public static class Payee {
+
+    private final Address address;
+    private final Coin amount;
+
+    /**
+     * @param address The destination address
+     * @param amount  The amount to send (in coins)
+     */
+    public Payee(Address address, Coin amount) {
+
+      Preconditions.checkNotNull(address, "'address' must be present");
+      Preconditions.checkNotNull(amount, "'amount' must be present");
+      Preconditions.checkArgument(amount.signum() > 0, "'amount' must be positive");
+
+      this.address = address;
+      this.amount = amount;
+    }
+
+    /**
+     * @return The destination address
+     */
+    public Address getAddress() {
+      return address;
+    }
+
+    /**
+     * @return The amount to send (in coins)
+     */
+    public Coin getAmount() {
+      return amount;
+    }
+
+    @Override
+    public String toString() {
+      return "Payee{" +
+        "address=" + address +
+        ", amount=" + amount +
+        '}';
+    }
+  }
+}
@@ -0,0 +1,26 @@
+package org.multibit.hd.core.dto;
+
+/**
+ * <p>Enum to provide the following to Core API:</p>
+ * <ul>
+ * <li>Choice of how a wallet replay prepares the block store</li>
+ * </ul>
+ *
+ * @since 0.0.1
+ *
+ */
+public enum ReplayMode {
+
+  /**
+   * Delete the block store and checkpoint it afresh from the replay date (use if the block store is suspect)
+   */
+  REBUILD,
+
+  /**
+   * Keep the block store and rewind its chain head to a block at or before the replay date
+   */
+  INCREMENTAL,
+
+  // End of enum
+  ;
+}
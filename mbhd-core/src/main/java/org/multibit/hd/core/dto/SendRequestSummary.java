@@ -126,6 +126,12 @@ public class SendRequestSummary {
   }
 
   public void setPassword(String password) {
+
+    // Any previously derived key may no longer match the password
+    if (this.password == null || !this.password.equals(password)) {
+      this.keyParameter = Optional.absent();
+    }
+
     this.password = password;
   }
 
@@ -159,7 +165,7 @@ public class SendRequestSummary {
   }
 
   /**
-   * @return The wallet AES key
+   * @return The wallet AES key (derived from the password once and then reused by later send stages)
    */
   public Optional<KeyParameter> getKeyParameter() {
     return keyParameter;
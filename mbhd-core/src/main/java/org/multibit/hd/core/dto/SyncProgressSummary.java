@@ -0,0 +1,100 @@
+package org.multibit.hd.core.dto;
+
+import com.google.common.base.Optional;
+
+/**
+ * <p>Value object to provide the following to Core API:</p>
+ * <ul>
+ * <li>Information about the progress and throughput of a block chain synchronization</li>
+ * </ul>
+ *
+ * @since 0.0.1
+ *
+ */
+public class SyncProgressSummary {
+
+  private final long bestKnownHeight;
+  private final long chainHeight;
+  private final int percent;
+  private final double blocksPerSecond;
+  private final double bytesPerSecond;
+  private final Optional<Long> etaMillis;
+
+  /**
+   * @param bestKnownHeight The best chain height reported by any download peer
+   * @param chainHeight     The height reached by the local chain
+   * @param percent         The percentage complete (never decreases during a synchronization)
+   * @param blocksPerSecond The block rate over the recent window
+   * @param bytesPerSecond  The download rate over the recent window
+   * @param etaMillis       The estimated time to completion (absent until a rate is known)
+   */
+  public SyncProgressSummary(long bestKnownHeight, long chainHeight, int percent, double blocksPerSecond, double bytesPerSecond, Optional<Long> etaMillis) {
+    this.bestKnownHeight = bestKnownHeight;
+    this.chainHeight = chainHeight;
+    this.percent = percent;
+    this.blocksPerSecond = blocksPerSecond;
+    this.bytesPerSecond = bytesPerSecond;
+    this.etaMillis = etaMillis;
+  }
+
+  /**
+   * @return The best chain height reported by any download peer
+   */
+  public long getBestKnownHeight() {
+    return bestKnownHeight;
+  }
+
+  /**
+   * @return The height reached by the local chain
+   */
+  public long getChainHeight() {
+    return chainHeight;
+  }
+
+  /**
+   * @return The number of blocks left to download
+   */
+  public long getBlocksLeft() {
+    return Math.max(0, bestKnownHeight - chainHeight);
+  }
+
+  /**
+   * @return The percentage complete (never decreases during a synchronization)
+   */
+  public int getPercent() {
+    return percent;
+  }
+
+  /**
+   * @return The block rate over the recent window
+   */
+  public double getBlocksPerSecond() {
+    return blocksPerSecond;
+  }
+
+  /**
+   * @return The download rate over the recent window
+   */
+  public double getBytesPerSecond() {
+    return bytesPerSecond;
+  }
+
+  /**
+   * @return The estimated time to completion (absent until a rate is known)
+   */
+  public Optional<Long> getEtaMillis() {
+    return etaMillis;
+  }
+
+  @Override
+  public String toString() {
+    return "SyncProgressSummary{" +
+      "bestKnownHeight=" + bestKnownHeight +
+      ", chainHeight=" + chainHeight +
+      ", percent=" + percent +
+      ", blocksPerSecond=" + String.format("%.1f", blocksPerSecond) +
+      ", bytesPerSecond=" + String.format("%.0f", bytesPerSecond) +
+      ", etaMillis=" + etaMillis +
+      '}';
+  }
+}
@@ -3,8 +3,11 @@ package org.multibit.hd.core.events;
 import com.google.bitcoin.core.Address;
 import com.google.bitcoin.core.Coin;
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import org.multibit.hd.core.dto.BatchSendRequestSummary;
 
 import java.util.Arrays;
+import java.util.List;
 
 /**
  *  <p>Event to provide the following to UIEventbus subscribers
@@ -23,8 +26,16 @@ public class BitcoinSentEvent implements CoreEvent {
 
   private final Optional<Coin> clientFeePaid;
 
+  /**
+   * The destination address of a single payment (null for a batch payment)
+   */
   private final Address destinationAddress;
 
+  /**
+   * The recipients of a batch payment with the amount each was paid (empty for a single payment)
+   */
+  private final List<BatchSendRequestSummary.Payee> payees;
+
   private final Address changeAddress;
 
   private final boolean sendWasSuccessful;
@@ -42,10 +53,37 @@ public class BitcoinSentEvent implements CoreEvent {
     String[] sendFailureReasonData
   ) {
 
+    this(
+      destinationAddress,
+      ImmutableList.<BatchSendRequestSummary.Payee>of(),
+      amount,
+      changeAddress,
+      miningFeePaid,
+      clientFeePaid,
+      sendWasSuccessful,
+      sendFailureReasonKey,
+      sendFailureReasonData
+    );
+
+  }
+
+  public BitcoinSentEvent(
+    Address destinationAddress,
+    List<BatchSendRequestSummary.Payee> payees,
+    Coin amount,
+    Address changeAddress,
+    Optional<Coin> miningFeePaid,
+    Optional<Coin> clientFeePaid,
+    boolean sendWasSuccessful,
+    String sendFailureReasonKey,
+    String[] sendFailureReasonData
+  ) {
+
     this.amount = amount;
     this.miningFeePaid = miningFeePaid;
     this.clientFeePaid = clientFeePaid;
     this.destinationAddress = destinationAddress;
+    this.payees = ImmutableList.copyOf(payees);
     this.changeAddress = changeAddress;
     this.sendWasSuccessful = sendWasSuccessful;
     this.sendFailureReasonKey = sendFailureReasonKey;
@@ -67,10 +105,20 @@ public class BitcoinSentEvent implements CoreEvent {
     return clientFeePaid;
   }
 
+  /**
+   * @return The destination address of a single payment (null for a batch payment)
+   */
   public Address getDestinationAddress() {
     return destinationAddress;
   }
 
+  /**
+   * @return The recipients of a batch payment with the amount each was paid (empty for a single payment)
+   */
+  public List<BatchSendRequestSummary.Payee> getPayees() {
+    return payees;
+  }
+
   public boolean isSendWasSuccessful() {
     return sendWasSuccessful;
   }
@@ -90,6 +138,7 @@ public class BitcoinSentEvent implements CoreEvent {
             ", miningFeePaid=" + miningFeePaid +
             ", clientFeePaid=" + clientFeePaid +
             ", destinationAddress='" + destinationAddress + '\'' +
+            ", payees=" + payees +
             ", changeAddress='" + changeAddress + '\'' +
             ", sendWasSuccessful=" + sendWasSuccessful +
             ", sendFailureReasonKey='" + sendFailureReasonKey + '\'' +
@@ -3,9 +3,12 @@ package org.multibit.hd.core.events;
 import com.google.bitcoin.core.Address;
 import com.google.bitcoin.core.Coin;
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import org.multibit.hd.core.dto.BatchSendRequestSummary;
 import org.multibit.hd.core.dto.FiatPayment;
 
 import java.util.Arrays;
+import java.util.List;
 
 /**
  *  <p>Event to provide the following to UI event subscribers:</p>
@@ -37,8 +40,16 @@ public class TransactionCreationEvent implements CoreEvent {
    */
   private final Optional<Coin> clientFeePaid;
 
+  /**
+   * The destination address of a single payment (null for a batch payment)
+   */
   private final Address destinationAddress;
 
+  /**
+   * The recipients of a batch payment with the amount each was paid (empty for a single payment)
+   */
+  private final List<BatchSendRequestSummary.Payee> payees;
+
   private final Address changeAddress;
 
   private final boolean transactionCreationWasSuccessful;
@@ -63,12 +74,44 @@ public class TransactionCreationEvent implements CoreEvent {
     Optional<String> notes
   ) {
 
+    this(
+      transactionId,
+      amount,
+      fiatPayment,
+      miningFeePaid,
+      clientFeePaid,
+      destinationAddress,
+      ImmutableList.<BatchSendRequestSummary.Payee>of(),
+      changeAddress,
+      transactionCreationWasSuccessful,
+      transactionCreationFailureReasonKey,
+      transactionCreationFailureReasonData,
+      notes
+    );
+  }
+
+  public TransactionCreationEvent(
+    String transactionId,
+    Coin amount,
+    Optional<FiatPayment> fiatPayment,
+    Optional<Coin> miningFeePaid,
+    Optional<Coin> clientFeePaid,
+    Address destinationAddress,
+    List<BatchSendRequestSummary.Payee> payees,
+    Address changeAddress,
+    boolean transactionCreationWasSuccessful,
+    String transactionCreationFailureReasonKey,
+    String[] transactionCreationFailureReasonData,
+    Optional<String> notes
+  ) {
+
     this.transactionId = transactionId;
     this.amount = amount;
     this.fiatPayment = fiatPayment;
     this.miningFeePaid = miningFeePaid;
     this.clientFeePaid = clientFeePaid;
     this.destinationAddress = destinationAddress;
+    this.payees = ImmutableList.copyOf(payees);
     this.changeAddress = changeAddress;
     this.transactionCreationWasSuccessful = transactionCreationWasSuccessful;
     this.transactionCreationFailureReasonKey = transactionCreationFailureReasonKey;
@@ -94,6 +137,13 @@ public class TransactionCreationEvent implements CoreEvent {
      return clientFeePaid;
    }
 
+  /**
+   * @return The recipients of a batch payment with the amount each was paid (empty for a single payment)
+   */
+  public List<BatchSendRequestSummary.Payee> getPayees() {
+    return payees;
+  }
+
   public boolean isTransactionCreationWasSuccessful() {
     return transactionCreationWasSuccessful;
   }
@@ -122,6 +172,7 @@ public class TransactionCreationEvent implements CoreEvent {
       ", miningFeePaid=" + miningFeePaid +
       ", clientFeePaid=" + clientFeePaid +
       ", destinationAddress='" + destinationAddress + '\'' +
+      ", payees=" + payees +
       ", changeAddress='" + changeAddress + '\'' +
       ", transactionCreationWasSuccessful=" + transactionCreationWasSuccessful +
       ", transactionId='" + transactionId + '\'' +
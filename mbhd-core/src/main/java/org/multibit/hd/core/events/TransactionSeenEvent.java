@@ -4,6 +4,8 @@ import com.google.bitcoin.core.Coin;
 import com.google.bitcoin.core.Transaction;
 import com.google.bitcoin.core.TransactionConfidence;
 
+import java.util.Date;
+
 /**
  * <p>Event to provide the following to Core event subscribers</p>
  * <ul>
@@ -30,6 +32,11 @@ public class TransactionSeenEvent implements CoreEvent {
    */
   private final Coin amount;
 
+  /**
+   * The time the transaction was first seen or included in a block (used to value it at the rate of the time)
+   */
+  private final Date updateTime;
+
   /**
    * This is the first time this transaction has been seen in the wallet
    */
@@ -60,6 +67,8 @@ public class TransactionSeenEvent implements CoreEvent {
 
     this.amount = amount;
 
+    updateTime = transaction.getUpdateTime();
+
   }
 
   public TransactionConfidence.ConfidenceType getConfidenceType() {
@@ -91,6 +100,13 @@ public class TransactionSeenEvent implements CoreEvent {
     this.firstAppearanceInWallet = firstAppearanceInWallet;
   }
 
+  /**
+   * @return The time the transaction was first seen or included in a block
+   */
+  public Date getUpdateTime() {
+    return updateTime;
+  }
+
   /**
    * @return The transaction ID
    */
@@ -121,6 +137,7 @@ public class TransactionSeenEvent implements CoreEvent {
       ", numberOfPeers=" + numberOfPeers +
       ", coinbase=" + coinbase +
       ", value=" + amount +
+      ", updateTime=" + updateTime +
       ", firstAppearanceInWallet=" + firstAppearanceInWallet +
       '}';
   }
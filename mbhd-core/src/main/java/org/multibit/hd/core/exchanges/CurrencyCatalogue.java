@@ -0,0 +1,253 @@
+package org.multibit.hd.core.exchanges;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.multibit.hd.core.files.Files;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Currency;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>Catalogue to provide the following to ExchangeTickerService:</p>
+ * <ul>
+ * <li>The ISO 4217 currencies offered by each exchange, persisted across restarts</li>
+ * <li>Localised currency names computed once per exchange and locale</li>
+ * <li>Staleness checks so a refresh can happen in the background</li>
+ * </ul>
+ *
+ * <p>Entries are kept beyond their time to live so that an exchange outage does not empty the settings screen.</p>
+ *
+ * @since 0.0.1
+ *
+ */
+public class CurrencyCatalogue {
+
+  private static final Logger log = LoggerFactory.getLogger(CurrencyCatalogue.class);
+
+  private static final String SEPARATOR = "|";
+
+  private final Optional<File> cacheFile;
+
+  private final long ttlMillis;
+
+  /**
+   * The currency codes per exchange name
+   */
+  private final ConcurrentMap<String, Entry> entries = Maps.newConcurrentMap();
+
+  /**
+   * The localised names per exchange name and locale
+   */
+  private final ConcurrentMap<String, LocalisedNames> localisedNames = Maps.newConcurrentMap();
+
+  /**
+   * @param cacheFile The file in which to persist the catalogue (absent for memory only)
+   * @param ttlMillis The age after which an exchange should be asked again
+   */
+  public CurrencyCatalogue(Optional<File> cacheFile, long ttlMillis) {
+
+    Preconditions.checkNotNull(cacheFile, "'cacheFile' must be present");
+
+    this.cacheFile = cacheFile;
+    this.ttlMillis = ttlMillis;
+
+    readCache();
+
+  }
+
+  /**
+   * @param exchangeName The exchange name (e.g. "BITSTAMP")
+   *
+   * @return The currency codes offered by the exchange, regardless of age (absent if never obtained)
+   */
+  public Optional<SortedSet<String>> getCurrencyCodes(String exchangeName) {
+
+    Entry entry = entries.get(exchangeName);
+    if (entry == null) {
+      return Optional.absent();
+    }
+
+    return Optional.<SortedSet<String>>of(entry.currencyCodes);
+  }
+
+  /**
+   * @param exchangeName The exchange name
+   *
+   * @return True if the exchange has no entry or the entry has exceeded its time to live
+   */
+  public boolean isStale(String exchangeName) {
+
+    Entry entry = entries.get(exchangeName);
+
+    return entry == null || System.currentTimeMillis() - entry.timestamp > ttlMillis;
+  }
+
+  /**
+   * <p>Replace the currency codes for an exchange and persist the catalogue</p>
+   *
+   * @param exchangeName  The exchange name
+   * @param currencyCodes The ISO 4217 currency codes offered by the exchange
+   */
+  public void putCurrencyCodes(String exchangeName, Collection<String> currencyCodes) {
+
+    Preconditions.checkNotNull(exchangeName, "'exchangeName' must be present");
+    Preconditions.checkNotNull(currencyCodes, "'currencyCodes' must be present");
+
+    entries.put(exchangeName, new Entry(System.currentTimeMillis(), currencyCodes));
+
+    // Names for this exchange must be recomputed
+    for (String key : localisedNames.keySet()) {
+      if (key.startsWith(exchangeName + SEPARATOR)) {
+        localisedNames.remove(key);
+      }
+    }
+
+    writeCache();
+
+  }
+
+  /**
+   * @param exchangeName The exchange name
+   * @param locale       The locale for the currency names
+   *
+   * @return The entries for display (e.g. "USD (US Dollar)") in code order (absent if the exchange has no entry)
+   */
+  public Optional<String[]> getLocalisedNames(String exchangeName, Locale locale) {
+
+    Preconditions.checkNotNull(locale, "'locale' must be present");
+
+    Entry entry = entries.get(exchangeName);
+    if (entry == null) {
+      return Optional.absent();
+    }
+
+    String key = exchangeName + SEPARATOR + locale.toString();
+    LocalisedNames cachedNames = localisedNames.get(key);
+
+    // Names computed from an entry that has since been replaced (e.g. by a concurrent put) are computed again
+    if (cachedNames == null || cachedNames.entry != entry) {
+
+      String[] names = new String[entry.currencyCodes.size()];
+      int i = 0;
+      for (String currencyCode : entry.currencyCodes) {
+        // Use JVM to provide translated name
+        names[i++] = currencyCode + " (" + Currency.getInstance(currencyCode).getDisplayName(locale) + ")";
+      }
+      cachedNames = new LocalisedNames(entry, names);
+      localisedNames.put(key, cachedNames);
+    }
+
+    // Defensive copy since callers may sort or modify the array
+    return Optional.of(cachedNames.names.clone());
+
+  }
+
+  /**
+   * <p>Read the persisted catalogue (failures are logged and ignored since the exchanges can be asked again)</p>
+   */
+  private void readCache() {
+
+    if (!cacheFile.isPresent() || !cacheFile.get().exists()) {
+      return;
+    }
+
+    Properties properties = new Properties();
+    try (InputStream is = new FileInputStream(cacheFile.get())) {
+      properties.load(is);
+    } catch (IOException e) {
+      log.warn("Could not read currency catalogue: {}", e.getMessage());
+      return;
+    }
+
+    for (String exchangeName : properties.stringPropertyNames()) {
+      try {
+        String value = properties.getProperty(exchangeName);
+        int separatorIndex = value.indexOf(SEPARATOR);
+        long timestamp = Long.parseLong(value.substring(0, separatorIndex));
+        SortedSet<String> currencyCodes = Sets.newTreeSet();
+        for (String currencyCode : Splitter.on(',').omitEmptyStrings().trimResults().split(value.substring(separatorIndex + 1))) {
+          // Guard against a JVM that no longer recognises the code
+          Currency.getInstance(currencyCode);
+          currencyCodes.add(currencyCode);
+        }
+        entries.put(exchangeName, new Entry(timestamp, currencyCodes));
+      } catch (RuntimeException e) {
+        log.warn("Ignoring malformed currency catalogue entry for '{}'", exchangeName);
+      }
+    }
+
+  }
+
+  /**
+   * <p>Persist the catalogue atomically so a crash cannot leave a partial catalogue</p>
+   */
+  private synchronized void writeCache() {
+
+    if (!cacheFile.isPresent()) {
+      return;
+    }
+
+    Properties properties = new Properties();
+    for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+      properties.setProperty(
+        entry.getKey(),
+        entry.getValue().timestamp + SEPARATOR + Joiner.on(',').join(entry.getValue().currencyCodes)
+      );
+    }
+
+    try {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      properties.store(baos, "Currencies offered by each exchange");
+      Files.writeAtomically(baos.toByteArray(), cacheFile.get());
+    } catch (IOException e) {
+      log.warn("Could not write currency catalogue: {}", e.getMessage());
+    }
+
+  }
+
+  /**
+   * <p>The currency codes of an exchange and when they were obtained</p>
+   */
+  private static class Entry {
+
+    private final long timestamp;
+    private final SortedSet<String> currencyCodes;
+
+    private Entry(long timestamp, Collection<String> currencyCodes) {
+      this.timestamp = timestamp;
+      this.currencyCodes = ImmutableSortedSet.copyOf(currencyCodes);
+    }
+  }
+
+  /**
+   * <p>The localised names together with the entry they were computed from</p>
+   */
+  private static class LocalisedNames {
+
+    private final Entry entry;
+    private final String[] names;
+
+    private LocalisedNames(Entry entry, String[] names) {
+      this.entry = entry;
+      this.names = names;
+    }
+  }
+
+}
@@ -0,0 +1,253 @@
+package org.multibit.hd.core.exchanges;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import org.multibit.hd.core.files.SecureFiles;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.Currency;
+import java.util.Map;
+
+/**
+ * <p>Store to provide the following to WalletService and ExchangeTickerService:</p>
+ * <ul>
+ * <li>A local history of exchange rates, one append-only file per currency</li>
+ * <li>Lookup of the rate at a given time in O(log n)</li>
+ * </ul>
+ *
+ * <p>Each record is 16 bytes: the time in millis since epoch and the rate scaled by 10^8, both as big-endian longs.
+ * Records are kept in time order so that a binary search can be used.</p>
+ *
+ * @since 0.0.1
+ *
+ */
+public class ExchangeRateHistory {
+
+  private static final Logger log = LoggerFactory.getLogger(ExchangeRateHistory.class);
+
+  /**
+   * The file extension for a currency history (e.g. "USD.rates")
+   */
+  public static final String RATES_SUFFIX = ".rates";
+
+  /**
+   * The number of decimal places retained for a rate
+   */
+  static final int RATE_SCALE = 8;
+
+  private static final int RECORD_LENGTH = 16;
+
+  private final File historyDirectory;
+
+  /**
+   * The loaded histories keyed on currency code
+   */
+  private final Map<String, Series> seriesMap = Maps.newHashMap();
+
+  /**
+   * @param historyDirectory The directory holding the history files (created if necessary)
+   */
+  public ExchangeRateHistory(File historyDirectory) {
+
+    Preconditions.checkNotNull(historyDirectory, "'historyDirectory' must be present");
+
+    this.historyDirectory = historyDirectory;
+
+    SecureFiles.verifyOrCreateDirectory(historyDirectory);
+
+  }
+
+  /**
+   * <p>Append a rate to the history (rates earlier than the latest recorded are ignored to keep the history in order)</p>
+   *
+   * @param currency  The local currency
+   * @param rate      The rate in terms of the local currency
+   * @param timestamp The time of the rate (millis since epoch)
+   *
+   * @return True if the rate was recorded
+   */
+  public synchronized boolean record(Currency currency, BigDecimal rate, long timestamp) {
+
+    Preconditions.checkNotNull(currency, "'currency' must be present");
+    Preconditions.checkNotNull(rate, "'rate' must be present");
+
+    if (rate.signum() <= 0) {
+      return false;
+    }
+
+    Series series = getOrLoadSeries(currency);
+    if (series.size > 0 && timestamp <= series.timestamps[series.size - 1]) {
+      return false;
+    }
+
+    long scaledRate = rate.setScale(RATE_SCALE, RoundingMode.HALF_EVEN).unscaledValue().longValue();
+
+    File file = historyFile(currency);
+    try (DataOutputStream dos = new DataOutputStream(new FileOutputStream(file, true))) {
+      dos.writeLong(timestamp);
+      dos.writeLong(scaledRate);
+    } catch (IOException e) {
+      log.warn("Could not record exchange rate for '{}': {}", currency.getCurrencyCode(), e.getMessage());
+      return false;
+    }
+
+    series.add(timestamp, scaledRate);
+
+    return true;
+
+  }
+
+  /**
+   * @param currency     The local currency
+   * @param timestamp    The time of interest (millis since epoch)
+   * @param maxAgeMillis The greatest distance in time between the time of interest and a usable rate
+   *
+   * @return The recorded rate nearest in time to the time of interest (absent if none is close enough)
+   */
+  public synchronized Optional<BigDecimal> getRate(Currency currency, long timestamp, long maxAgeMillis) {
+
+    Preconditions.checkNotNull(currency, "'currency' must be present");
+
+    Series series = getOrLoadSeries(currency);
+    if (series.size == 0) {
+      return Optional.absent();
+    }
+
+    int index = Arrays.binarySearch(series.timestamps, 0, series.size, timestamp);
+    if (index < 0) {
+      // Choose the nearer of the records either side of the insertion point
+      int insertionPoint = -index - 1;
+      if (insertionPoint == 0) {
+        index = 0;
+      } else if (insertionPoint == series.size) {
+        index = series.size - 1;
+      } else {
+        long before = timestamp - series.timestamps[insertionPoint - 1];
+        long after = series.timestamps[insertionPoint] - timestamp;
+        index = before <= after ? insertionPoint - 1 : insertionPoint;
+      }
+    }
+
+    if (Math.abs(series.timestamps[index] - timestamp) > maxAgeMillis) {
+      return Optional.absent();
+    }
+
+    return Optional.of(BigDecimal.valueOf(series.rates[index], RATE_SCALE).stripTrailingZeros());
+
+  }
+
+  /**
+   * @param currency The local currency
+   *
+   * @return The number of rates recorded for the currency
+   */
+  public synchronized int size(Currency currency) {
+    return getOrLoadSeries(currency).size;
+  }
+
+  /**
+   * @param currency The local currency
+   *
+   * @return The history file for the currency
+   */
+  private File historyFile(Currency currency) {
+    return new File(historyDirectory, currency.getCurrencyCode() + RATES_SUFFIX);
+  }
+
+  /**
+   * @param currency The local currency
+   *
+   * @return The in-memory history, reading the file on first use
+   */
+  private Series getOrLoadSeries(Currency currency) {
+
+    Series series = seriesMap.get(currency.getCurrencyCode());
+    if (series != null) {
+      return series;
+    }
+
+    series = new Series();
+    File file = historyFile(currency);
+    if (file.exists()) {
+
+      // Discard any partial record left by an interrupted write so later records remain aligned
+      long records = file.length() / RECORD_LENGTH;
+      if (file.length() % RECORD_LENGTH != 0) {
+        log.warn("Truncating partial record in exchange rate history for '{}'", currency.getCurrencyCode());
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+          raf.setLength(records * RECORD_LENGTH);
+        } catch (IOException e) {
+          log.warn("Could not truncate exchange rate history for '{}': {}", currency.getCurrencyCode(), e.getMessage());
+        }
+      }
+      series.ensureCapacity((int) records);
+
+      try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+        for (long i = 0; i < records; i++) {
+          long timestamp = dis.readLong();
+          long scaledRate = dis.readLong();
+          if (series.size == 0 || timestamp > series.timestamps[series.size - 1]) {
+            series.add(timestamp, scaledRate);
+          }
+        }
+      } catch (EOFException e) {
+        log.warn("Exchange rate history for '{}' is truncated", currency.getCurrencyCode());
+      } catch (IOException e) {
+        log.warn("Could not read exchange rate history for '{}': {}", currency.getCurrencyCode(), e.getMessage());
+      }
+
+      log.debug("Read {} exchange rates for '{}'", series.size, currency.getCurrencyCode());
+
+    }
+
+    seriesMap.put(currency.getCurrencyCode(), series);
+
+    return series;
+
+  }
+
+  /**
+   * <p>Parallel primitive arrays to avoid boxing thousands of rates</p>
+   */
+  private static class Series {
+
+    private long[] timestamps = new long[16];
+    private long[] rates = new long[16];
+    private int size = 0;
+
+    private void ensureCapacity(int capacity) {
+
+      if (capacity > timestamps.length) {
+        timestamps = Arrays.copyOf(timestamps, capacity);
+        rates = Arrays.copyOf(rates, capacity);
+      }
+
+    }
+
+    private void add(long timestamp, long rate) {
+
+      if (size == timestamps.length) {
+        ensureCapacity(size * 2);
+      }
+      timestamps[size] = timestamp;
+      rates[size] = rate;
+      size++;
+
+    }
+  }
+
+}
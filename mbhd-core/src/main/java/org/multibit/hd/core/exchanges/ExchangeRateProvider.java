@@ -0,0 +1,221 @@
+package org.multibit.hd.core.exchanges;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.xeiam.xchange.Exchange;
+import com.xeiam.xchange.ExchangeFactory;
+import com.xeiam.xchange.currency.CurrencyPair;
+import com.xeiam.xchange.dto.marketdata.Ticker;
+import com.xeiam.xchange.service.polling.PollingMarketDataService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Currency;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * <p>Rate provider to provide the following to ExchangeTickerService:</p>
+ * <ul>
+ * <li>Access to the ticker of a single XChange exchange</li>
+ * <li>Triangulation through USD for Open Exchange Rates</li>
+ * </ul>
+ *
+ * @since 0.0.1
+ *
+ */
+public class ExchangeRateProvider implements RateProvider {
+
+  private static final Logger log = LoggerFactory.getLogger(ExchangeRateProvider.class);
+
+  private final ExchangeKey exchangeKey;
+
+  private final Optional<Exchange> exchange;
+
+  private final ListeningExecutorService triangulationExecutorService;
+
+  /**
+   * <p>Each new instance creates a new independent Exchange</p>
+   *
+   * @param exchangeKey                  The exchange key
+   * @param apiKey                       The API key (if required by the exchange)
+   * @param triangulationExecutorService The executor service for the concurrent legs of a triangulated ticker
+   */
+  public ExchangeRateProvider(ExchangeKey exchangeKey, Optional<String> apiKey, ListeningExecutorService triangulationExecutorService) {
+
+    Preconditions.checkNotNull(exchangeKey, "'exchangeKey' must be present");
+    Preconditions.checkNotNull(apiKey, "'apiKey' must be present");
+    Preconditions.checkNotNull(triangulationExecutorService, "'triangulationExecutorService' must be present");
+
+    this.exchangeKey = exchangeKey;
+    this.triangulationExecutorService = triangulationExecutorService;
+
+    // Check for a real exchange
+    if (ExchangeKey.NONE.equals(exchangeKey)) {
+
+      this.exchange = Optional.absent();
+
+    } else {
+
+      // Create a new exchange
+      String exchangeClassName = exchangeKey.getExchange().get().getExchangeSpecification().getExchangeClassName();
+      exchange = Optional.of(ExchangeFactory.INSTANCE.createExchange(exchangeClassName));
+
+      if (apiKey.isPresent()) {
+        exchange.get().getExchangeSpecification().setApiKey(apiKey.get());
+      }
+
+    }
+
+  }
+
+  /**
+   * @return The exchange key
+   */
+  public ExchangeKey getExchangeKey() {
+    return exchangeKey;
+  }
+
+  /**
+   * @return The exchange (absent if NONE)
+   */
+  public Optional<Exchange> getExchange() {
+    return exchange;
+  }
+
+  @Override
+  public String getName() {
+    return exchangeKey.getExchangeName();
+  }
+
+  @Override
+  public BigDecimal latestRate(Currency localCurrency) throws Exception {
+    return latestTicker(localCurrency).getLast();
+  }
+
+  /**
+   * <p>Get a single ticker response from the exchange (blocking)</p>
+   *
+   * @param localCurrency The local currency
+   *
+   * @return The ticker
+   *
+   * @throws Exception If the exchange could not provide the ticker
+   */
+  public Ticker latestTicker(Currency localCurrency) throws Exception {
+
+    // Apply any exchange quirks to the counter code (e.g. ISO "RUB" -> legacy "RUR")
+    final String exchangeCounterCode = ExchangeKey.exchangeCode(localCurrency.getCurrencyCode(), exchangeKey);
+    final String exchangeBaseCode = ExchangeKey.exchangeCode("XBT", exchangeKey);
+
+    if (ExchangeKey.NONE.equals(exchangeKey)) {
+
+      return getEmptyTicker(exchangeBaseCode, exchangeCounterCode);
+    }
+
+    if (ExchangeKey.OPEN_EXCHANGE_RATES.equals(exchangeKey)) {
+
+      // Triangulate through USD to reach exchange rate
+      return getTriangulatedTicker(exchangeCounterCode);
+
+    } else {
+
+      // Crypto-exchange is straightforward
+      return getDirectTicker(exchangeBaseCode, exchangeCounterCode);
+    }
+
+  }
+
+  private Ticker getDirectTicker(String exchangeBaseCode, String exchangeCounterCode) throws IOException {
+
+    log.debug("Direct ticker");
+
+    CurrencyPair directPair = new CurrencyPair(exchangeBaseCode, exchangeCounterCode);
+    return exchange.get().getPollingMarketDataService().getTicker(directPair);
+
+  }
+
+  private Ticker getTriangulatedTicker(String exchangeCounterCode) throws Exception {
+
+    log.debug("OER triangulated ticker");
+
+    CurrencyPair localToUsdPair = new CurrencyPair(exchangeCounterCode, "USD");
+    CurrencyPair bitcoinToUsdPair = new CurrencyPair("BTC", "USD");
+
+    // Need to triangulate through USD so request both legs together
+    final PollingMarketDataService marketDataService = exchange.get().getPollingMarketDataService();
+    ListenableFuture<Ticker> inverseLocalToUsdFuture = triangulationExecutorService.submit(newTickerCallable(marketDataService, localToUsdPair));
+    ListenableFuture<Ticker> inverseBitcoinToUsdFuture = triangulationExecutorService.submit(newTickerCallable(marketDataService, bitcoinToUsdPair));
+
+    Ticker inverseLocalToUsdTicker;
+    Ticker inverseBitcoinToUsdTicker;
+    try {
+      inverseLocalToUsdTicker = inverseLocalToUsdFuture.get();
+      inverseBitcoinToUsdTicker = inverseBitcoinToUsdFuture.get();
+    } catch (ExecutionException e) {
+      // Present the underlying cause to allow accurate reporting
+      if (e.getCause() instanceof Exception) {
+        throw (Exception) e.getCause();
+      }
+      throw e;
+    } finally {
+      inverseLocalToUsdFuture.cancel(true);
+      inverseBitcoinToUsdFuture.cancel(true);
+    }
+
+    // OER gives inverse values to reduce number of calculations
+    BigDecimal inverseLocalToUsd = inverseLocalToUsdTicker.getLast();
+    BigDecimal inverseBitcoinToUsd = inverseBitcoinToUsdTicker.getLast();
+
+    // Conversion rate is inverse local divided by inverse Bitcoin
+    BigDecimal conversionRate = inverseLocalToUsd.divide(inverseBitcoinToUsd, RoundingMode.HALF_EVEN);
+
+    // Infer the ticker
+    return Ticker.TickerBuilder.newInstance()
+      .withLast(conversionRate)
+        // All others are zero
+      .withAsk(BigDecimal.ZERO)
+      .withBid(BigDecimal.ZERO)
+      .withHigh(BigDecimal.ZERO)
+      .withLow(BigDecimal.ZERO)
+      .withCurrencyPair(bitcoinToUsdPair)
+      .withVolume(BigDecimal.ONE)
+      .build();
+  }
+
+  private Ticker getEmptyTicker(String exchangeBaseCode, String exchangeCounterCode) {
+
+    log.debug("Empty ticker");
+
+    CurrencyPair directPair = new CurrencyPair(exchangeBaseCode, exchangeCounterCode);
+
+    // Infer the ticker
+    return Ticker.TickerBuilder.newInstance()
+      .withLast(BigDecimal.ZERO)
+        // All others are zero
+      .withAsk(BigDecimal.ZERO)
+      .withBid(BigDecimal.ZERO)
+      .withHigh(BigDecimal.ZERO)
+      .withLow(BigDecimal.ZERO)
+      .withCurrencyPair(directPair)
+      .withVolume(BigDecimal.ONE)
+      .build();
+  }
+
+  private Callable<Ticker> newTickerCallable(final PollingMarketDataService marketDataService, final CurrencyPair currencyPair) {
+
+    return new Callable<Ticker>() {
+      @Override
+      public Ticker call() throws Exception {
+        return marketDataService.getTicker(currencyPair);
+      }
+    };
+
+  }
+
+}
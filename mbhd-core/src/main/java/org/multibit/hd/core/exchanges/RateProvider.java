@@ -0,0 +1,33 @@
+package org.multibit.hd.core.exchanges;
+
+import java.math.BigDecimal;
+import java.util.Currency;
+
+/**
+ * <p>Interface to provide the following to TickerAggregator:</p>
+ * <ul>
+ * <li>A single source of the Bitcoin exchange rate in a local currency</li>
+ * </ul>
+ *
+ * <p>Implementations are called from a background thread and may block.</p>
+ *
+ * @since 0.0.1
+ *
+ */
+public interface RateProvider {
+
+  /**
+   * @return The name of the provider for display and logging (e.g. "Bitstamp")
+   */
+  String getName();
+
+  /**
+   * @param localCurrency The local currency
+   *
+   * @return The rate in terms of the local currency (e.g. "1000" means 1000 local = 1 bitcoin)
+   *
+   * @throws Exception If the rate could not be obtained
+   */
+  BigDecimal latestRate(Currency localCurrency) throws Exception;
+
+}
@@ -0,0 +1,413 @@
+package org.multibit.hd.core.exchanges;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.multibit.hd.core.files.Files;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * <p>Aggregator to provide the following to ExchangeTickerService:</p>
+ * <ul>
+ * <li>Concurrent requests to several rate providers with a per-provider timeout</li>
+ * <li>The median of the rates that arrived in time</li>
+ * <li>The last good rate per currency persisted across restarts</li>
+ * <li>Immediate access to a stale rate while a fresh one is requested</li>
+ * </ul>
+ *
+ * <p>The first provider is treated as the primary and its failure is reported if no provider succeeds.</p>
+ *
+ * @since 0.0.1
+ *
+ */
+public class TickerAggregator {
+
+  private static final Logger log = LoggerFactory.getLogger(TickerAggregator.class);
+
+  private static final String SEPARATOR = "|";
+
+  private final List<RateProvider> providers;
+
+  private final long timeoutMillis;
+
+  private final long freshnessMillis;
+
+  private final Optional<File> cacheFile;
+
+  private final ListeningExecutorService executorService;
+
+  private final ListeningExecutorService gatherExecutorService;
+
+  /**
+   * The last good rate per currency code
+   */
+  private final ConcurrentMap<String, AggregateRate> rates = Maps.newConcurrentMap();
+
+  /**
+   * The currency codes with a refresh in progress (avoids piling up refreshes against slow providers)
+   */
+  private final ConcurrentMap<String, ListenableFuture<AggregateRate>> refreshes = Maps.newConcurrentMap();
+
+  /**
+   * @param providers       The rate providers (the first is the primary)
+   * @param timeoutMillis   The time allowed for all providers to respond
+   * @param freshnessMillis The age after which a rate is considered stale
+   * @param cacheFile             The file in which to persist the last good rates (absent for memory only)
+   * @param executorService       The executor service for the provider requests (ideally one thread per provider)
+   * @param gatherExecutorService The executor service that waits for the providers (kept apart so a waiting refresh
+   *                              never holds a thread a provider request needs)
+   */
+  public TickerAggregator(
+    List<? extends RateProvider> providers,
+    long timeoutMillis,
+    long freshnessMillis,
+    Optional<File> cacheFile,
+    ListeningExecutorService executorService,
+    ListeningExecutorService gatherExecutorService
+  ) {
+
+    Preconditions.checkNotNull(providers, "'providers' must be present");
+    Preconditions.checkState(!providers.isEmpty(), "'providers' must not be empty");
+    Preconditions.checkState(timeoutMillis > 0, "'timeoutMillis' must be positive");
+    Preconditions.checkNotNull(cacheFile, "'cacheFile' must be present");
+    Preconditions.checkNotNull(executorService, "'executorService' must be present");
+    Preconditions.checkNotNull(gatherExecutorService, "'gatherExecutorService' must be present");
+
+    this.providers = ImmutableList.copyOf(providers);
+    this.timeoutMillis = timeoutMillis;
+    this.freshnessMillis = freshnessMillis;
+    this.cacheFile = cacheFile;
+    this.executorService = executorService;
+    this.gatherExecutorService = gatherExecutorService;
+
+    readCache();
+
+  }
+
+  /**
+   * @return The rate providers
+   */
+  public List<RateProvider> getProviders() {
+    return providers;
+  }
+
+  /**
+   * @param localCurrency The local currency
+   *
+   * @return The last good rate which may be stale (absent if never obtained)
+   */
+  public Optional<AggregateRate> getCachedRate(Currency localCurrency) {
+    return Optional.fromNullable(rates.get(localCurrency.getCurrencyCode()));
+  }
+
+  /**
+   * <p>Stale-while-revalidate: return the last good rate immediately and request a fresh one in the background if it is stale</p>
+   *
+   * @param localCurrency The local currency
+   *
+   * @return The last good rate which may be stale (absent if never obtained)
+   */
+  public Optional<AggregateRate> getRate(Currency localCurrency) {
+
+    Optional<AggregateRate> cachedRate = getCachedRate(localCurrency);
+
+    if (!cachedRate.isPresent() || cachedRate.get().isStale(freshnessMillis)) {
+      refresh(localCurrency);
+    }
+
+    return cachedRate;
+
+  }
+
+  /**
+   * <p>Asynchronously request the rate from all providers</p>
+   *
+   * @param localCurrency The local currency
+   *
+   * @return The future median rate for wrapping with <code>Futures.addCallback</code> (never null, fails if no provider responds)
+   */
+  public ListenableFuture<AggregateRate> refresh(final Currency localCurrency) {
+
+    Preconditions.checkNotNull(localCurrency, "'localCurrency' must be present");
+
+    final String currencyCode = localCurrency.getCurrencyCode();
+
+    ListenableFuture<AggregateRate> inProgress = refreshes.get(currencyCode);
+    if (inProgress != null) {
+      return inProgress;
+    }
+
+    final ListenableFuture<AggregateRate> future = gatherExecutorService.submit(new Callable<AggregateRate>() {
+      @Override
+      public AggregateRate call() throws Exception {
+        return aggregate(localCurrency);
+      }
+    });
+
+    ListenableFuture<AggregateRate> existing = refreshes.putIfAbsent(currencyCode, future);
+    if (existing != null) {
+      // Lost the race so defer to the earlier request
+      future.cancel(true);
+      return existing;
+    }
+
+    // Allow the next refresh once this one completes
+    future.addListener(new Runnable() {
+      @Override
+      public void run() {
+        refreshes.remove(currencyCode, future);
+      }
+    }, MoreExecutors.sameThreadExecutor());
+
+    return future;
+
+  }
+
+  /**
+   * @param localCurrency The local currency
+   *
+   * @return The aggregate rate from all providers that responded in time
+   *
+   * @throws Exception The primary failure if no provider responded in time
+   */
+  private AggregateRate aggregate(final Currency localCurrency) throws Exception {
+
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+    // Start all requests together
+    List<Future<BigDecimal>> futures = Lists.newArrayList();
+    for (final RateProvider provider : providers) {
+      futures.add(executorService.submit(new Callable<BigDecimal>() {
+        @Override
+        public BigDecimal call() throws Exception {
+          return provider.latestRate(localCurrency);
+        }
+      }));
+    }
+
+    List<BigDecimal> values = Lists.newArrayList();
+    List<String> sources = Lists.newArrayList();
+    Optional<Exception> primaryFailure = Optional.absent();
+
+    for (int i = 0; i < providers.size(); i++) {
+
+      RateProvider provider = providers.get(i);
+      Future<BigDecimal> future = futures.get(i);
+
+      try {
+        long remainingNanos = Math.max(0, deadline - System.nanoTime());
+        BigDecimal value = future.get(remainingNanos, TimeUnit.NANOSECONDS);
+        if (value != null && value.signum() > 0) {
+          values.add(value);
+          sources.add(provider.getName());
+        } else {
+          log.warn("Rate provider '{}' returned no rate", provider.getName());
+        }
+      } catch (ExecutionException e) {
+        log.warn("Rate provider '{}' failed: {}", provider.getName(), e.getCause() == null ? e.getMessage() : e.getCause().getMessage());
+        if (i == 0) {
+          primaryFailure = Optional.of(e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+        }
+      } catch (TimeoutException e) {
+        log.warn("Rate provider '{}' did not respond within {}ms", provider.getName(), timeoutMillis);
+        future.cancel(true);
+        if (i == 0) {
+          primaryFailure = Optional.<Exception>of(e);
+        }
+      }
+
+    }
+
+    if (values.isEmpty()) {
+      if (primaryFailure.isPresent()) {
+        throw primaryFailure.get();
+      }
+      throw new IllegalStateException("No rate provider returned a rate for " + localCurrency.getCurrencyCode());
+    }
+
+    AggregateRate aggregateRate = new AggregateRate(median(values), System.currentTimeMillis(), sources);
+
+    rates.put(localCurrency.getCurrencyCode(), aggregateRate);
+    writeCache();
+
+    log.debug("Aggregate '{}' rate {} from {}", localCurrency.getCurrencyCode(), aggregateRate.getRate(), sources);
+
+    return aggregateRate;
+
+  }
+
+  /**
+   * @param values The values (not empty)
+   *
+   * @return The median (the mean of the two central values for an even number)
+   */
+  static BigDecimal median(List<BigDecimal> values) {
+
+    Preconditions.checkState(!values.isEmpty(), "'values' must not be empty");
+
+    List<BigDecimal> sorted = Lists.newArrayList(values);
+    Collections.sort(sorted);
+
+    int middle = sorted.size() / 2;
+    if (sorted.size() % 2 == 1) {
+      return sorted.get(middle);
+    }
+
+    BigDecimal sum = sorted.get(middle - 1).add(sorted.get(middle));
+    return sum.divide(BigDecimal.valueOf(2), sum.scale() + 1, RoundingMode.HALF_EVEN);
+
+  }
+
+  /**
+   * <p>Read the persisted rates (failures are logged and ignored since the cache is advisory)</p>
+   */
+  private void readCache() {
+
+    if (!cacheFile.isPresent() || !cacheFile.get().exists()) {
+      return;
+    }
+
+    Properties properties = new Properties();
+    try (InputStream is = new FileInputStream(cacheFile.get())) {
+      properties.load(is);
+    } catch (IOException e) {
+      log.warn("Could not read exchange rate cache: {}", e.getMessage());
+      return;
+    }
+
+    for (String currencyCode : properties.stringPropertyNames()) {
+      try {
+        List<String> fields = Splitter.on(SEPARATOR).limit(3).splitToList(properties.getProperty(currencyCode));
+        BigDecimal rate = new BigDecimal(fields.get(0));
+        long timestamp = Long.parseLong(fields.get(1));
+        List<String> sources = fields.size() > 2 ? Splitter.on(',').omitEmptyStrings().splitToList(fields.get(2)) : Collections.<String>emptyList();
+        rates.put(currencyCode, new AggregateRate(rate, timestamp, sources));
+      } catch (RuntimeException e) {
+        log.warn("Ignoring malformed cached exchange rate for '{}'", currencyCode);
+      }
+    }
+
+  }
+
+  /**
+   * <p>Persist the rates atomically so a crash cannot leave a partial cache</p>
+   */
+  private synchronized void writeCache() {
+
+    if (!cacheFile.isPresent()) {
+      return;
+    }
+
+    Properties properties = new Properties();
+    for (Map.Entry<String, AggregateRate> entry : rates.entrySet()) {
+      AggregateRate aggregateRate = entry.getValue();
+      properties.setProperty(
+        entry.getKey(),
+        Joiner.on(SEPARATOR).join(
+          aggregateRate.getRate().toPlainString(),
+          aggregateRate.getTimestamp(),
+          Joiner.on(',').join(aggregateRate.getSources())
+        ));
+    }
+
+    try {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      properties.store(baos, "Last good exchange rates");
+      Files.writeAtomically(baos.toByteArray(), cacheFile.get());
+    } catch (IOException e) {
+      log.warn("Could not write exchange rate cache: {}", e.getMessage());
+    }
+
+  }
+
+  /**
+   * <p>Value object to provide the following to the aggregator:</p>
+   * <ul>
+   * <li>A median rate together with its age and contributing providers</li>
+   * </ul>
+   */
+  public static class AggregateRate {
+
+    private final BigDecimal rate;
+    private final long timestamp;
+    private final List<String> sources;
+
+    /**
+     * @param rate      The median rate
+     * @param timestamp The time the rate was obtained (millis since epoch)
+     * @param sources   The names of the providers contributing to the rate
+     */
+    public AggregateRate(BigDecimal rate, long timestamp, List<String> sources) {
+      this.rate = rate;
+      this.timestamp = timestamp;
+      this.sources = ImmutableList.copyOf(sources);
+    }
+
+    /**
+     * @return The median rate
+     */
+    public BigDecimal getRate() {
+      return rate;
+    }
+
+    /**
+     * @return The time the rate was obtained (millis since epoch)
+     */
+    public long getTimestamp() {
+      return timestamp;
+    }
+
+    /**
+     * @return The names of the providers contributing to the rate
+     */
+    public List<String> getSources() {
+      return sources;
+    }
+
+    /**
+     * @param freshnessMillis The age after which the rate is stale
+     *
+     * @return True if the rate is older than the given age
+     */
+    public boolean isStale(long freshnessMillis) {
+      return System.currentTimeMillis() - timestamp > freshnessMillis;
+    }
+
+    @Override
+    public String toString() {
+      return "AggregateRate{" +
+        "rate=" + rate +
+        ", timestamp=" + timestamp +
+        ", sources=" + sources +
+        '}';
+    }
+  }
+
+}
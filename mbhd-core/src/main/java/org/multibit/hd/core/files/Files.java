@@ -8,11 +8,14 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.StandardCopyOption;
 
 /**
  * <p>Utility to provide the following to file system:</p>
  * <ul>
  * <li>Handling temporary files</li>
+ * <li>Atomic replacement of small files</li>
  * </ul>
  *
  * @since 0.0.1
@@ -78,4 +81,56 @@ public class Files {
       }
     }
   }
+
+  /**
+   * <p>Replace the content of a file so that a crash leaves either the old or the new content but never a mixture</p>
+   *
+   * <p>The content is written and synchronized to a temporary file in the same directory which is then
+   * atomically renamed over the destination</p>
+   *
+   * @param content  The complete new content
+   * @param destFile The file to replace
+   *
+   * @throws IOException If the content could not be written (the destination is unchanged)
+   */
+  public static void writeAtomically(byte[] content, File destFile) throws IOException {
+
+    File directory = destFile.getAbsoluteFile().getParentFile();
+    File temp = File.createTempFile(destFile.getName() + "-", ".tmp", directory);
+
+    try {
+      try (FileOutputStream tempStream = new FileOutputStream(temp)) {
+        tempStream.write(content);
+        tempStream.flush();
+        tempStream.getFD().sync();
+      }
+
+      replaceAtomically(temp, destFile);
+    } finally {
+      if (temp.exists() && !temp.delete()) {
+        log.warn("Could not delete temporary file '{}'", temp.getAbsolutePath());
+      }
+    }
+  }
+
+  /**
+   * <p>Move a completely written file over the destination so readers see either the old or the new file</p>
+   *
+   * <p>Unlike a delete followed by a rename there is no moment at which the destination is missing. Where the
+   * file system cannot move atomically the destination is replaced in a single move.</p>
+   *
+   * @param source   The written (and synchronized) file in the same directory as the destination
+   * @param destFile The file to replace
+   *
+   * @throws IOException If the move failed (the destination is unchanged)
+   */
+  public static void replaceAtomically(File source, File destFile) throws IOException {
+
+    try {
+      java.nio.file.Files.move(source.toPath(), destFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      log.debug("Atomic move not supported for '{}' so replacing", destFile.getAbsolutePath());
+      java.nio.file.Files.move(source.toPath(), destFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
 }
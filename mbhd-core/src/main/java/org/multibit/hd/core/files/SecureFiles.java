@@ -1,12 +1,22 @@
 package org.multibit.hd.core.files;
 
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import org.multibit.hd.core.concurrent.SafeExecutors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * <p>Utilties to provide the following to applications:</p>
@@ -45,6 +55,16 @@ public class SecureFiles {
     }
   }
 
+  /**
+   * The suffix given to files waiting on the secure delete queue
+   */
+  public static final String PENDING_DELETE_SUFFIX = ".delete";
+
+  private static final AtomicLong secureDeleteBytes = new AtomicLong();
+  private static final AtomicLong secureDeleteNanos = new AtomicLong();
+
+  private static ListeningExecutorService secureDeleteExecutorService;
+
   /**
    * Utilities have private constructor
    */
@@ -56,40 +76,202 @@ public class SecureFiles {
    * <p/>
    * Set bit patterns are used rather than random numbers to avoid a
    * futex_wait_queue_me error on Linux systems (related to /dev/random usage)
+   * <p/>
+   * The overwrite uses large direct buffers and a single force to the disk at the end. There is no global lock
+   * so independent deletes (e.g. backups and autosave) do not wait for each other.
    *
    * @param file The file to secure delete
    *
    * @throws java.io.IOException if the operation fails for any reason
    */
-  public static synchronized void secureDelete(File file) throws IOException {
+  public static void secureDelete(File file) throws IOException {
 
     log.trace("Start of secureDelete");
 
     if (file != null && file.exists()) {
-      try (RandomAccessFile raf = new RandomAccessFile(file, "rws")) {
-        // Prep for file delete as this can be fiddly on Windows
-        // Make sure it is writable and any references to it are garbage
-        // collected and finalized.
-        if (!file.setWritable(true)) {
-          throw new IOException("Could not write to file " + file.getAbsolutePath());
-        }
-        System.gc();
 
-        long length = file.length();
-        raf.seek(0);
-        raf.getFilePointer();
-        int pos = 0;
-        while (pos < length) {
-          raf.write(SECURE_DELETE_FILL_BYTES);
-          pos += SECURE_DELETE_FILL_BYTES.length;
+      // Prep for file delete as this can be fiddly on Windows
+      if (!file.setWritable(true)) {
+        throw new IOException("Could not write to file " + file.getAbsolutePath());
+      }
+
+      long start = System.nanoTime();
+      long length;
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+        FileChannel channel = raf.getChannel();
+        length = channel.size();
+        long position = 0;
+        while (position < length) {
+          ByteBuffer fill = FillBuffer.INSTANCE.duplicate();
+          fill.limit((int) Math.min(fill.capacity(), length - position));
+          while (fill.hasRemaining()) {
+            position += channel.write(fill, position);
+          }
         }
+        // One force for the whole file rather than a synchronous write per block
+        channel.force(true);
       }
+      long elapsedNanos = System.nanoTime() - start;
+
+      secureDeleteBytes.addAndGet(length);
+      secureDeleteNanos.addAndGet(elapsedNanos);
+
       boolean deleteSuccess = file.delete();
-      log.trace("Result of delete of file '" + file.getAbsolutePath() + "' was " + deleteSuccess);
+      log.debug("Secure deleted {} bytes in {} ms ({} KB/s). Result of delete of file '{}' was {}",
+        length,
+        TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+        elapsedNanos == 0 ? "-" : (length * 1000000L) / elapsedNanos,
+        file.getAbsolutePath(),
+        deleteSuccess
+      );
     }
     log.trace("End of secureDelete");
   }
 
+  /**
+   * <p>Secure delete a file on the background secure delete queue so the caller is not held up</p>
+   * <p>The file is first renamed to a unique name so that a new file with the original name (e.g. the next autosave)
+   * can never be affected by the queued delete. If the rename fails the delete happens immediately.</p>
+   * <p>Use only for files that are already encrypted: the content remains on disk until the queue reaches it (pending
+   * files left by a crash are swept by {@link #secureDeletePendingFiles(File)}). Plaintext must use {@link #secureDelete(File)}.</p>
+   *
+   * @param file The file to secure delete
+   *
+   * @return A future providing the number of bytes overwritten
+   */
+  public static ListenableFuture<Long> secureDeleteLater(File file) {
+
+    if (file == null || !file.exists()) {
+      return Futures.immediateFuture(0L);
+    }
+
+    File pendingFile = new File(file.getParentFile(), file.getName() + "." + UUID.randomUUID() + PENDING_DELETE_SUFFIX);
+    if (!file.renameTo(pendingFile)) {
+      log.debug("Could not rename '{}' so deleting immediately", file.getAbsolutePath());
+      try {
+        long length = file.length();
+        secureDelete(file);
+        return Futures.immediateFuture(length);
+      } catch (IOException e) {
+        return Futures.immediateFailedFuture(e);
+      }
+    }
+
+    final File fileToDelete = pendingFile;
+    return getOrCreateSecureDeleteExecutorService().submit(new Callable<Long>() {
+      @Override
+      public Long call() throws Exception {
+        long length = fileToDelete.length();
+        secureDelete(fileToDelete);
+        return length;
+      }
+    });
+  }
+
+  /**
+   * @param file The file
+   *
+   * @return True if the file is waiting on the secure delete queue (and must not be backed up)
+   */
+  public static boolean isPendingDelete(File file) {
+    return file.getName().endsWith(PENDING_DELETE_SUFFIX);
+  }
+
+  /**
+   * <p>Secure delete any files left waiting on the secure delete queue by a crash or an exit before the queue drained</p>
+   *
+   * @param directory The directory to sweep (including sub-directories)
+   *
+   * @return The number of files deleted
+   */
+  public static int secureDeletePendingFiles(File directory) {
+
+    int deleted = 0;
+
+    File[] files = directory == null ? null : directory.listFiles();
+    if (files == null) {
+      return deleted;
+    }
+
+    for (File file : files) {
+      if (file.isDirectory()) {
+        deleted += secureDeletePendingFiles(file);
+      } else if (isPendingDelete(file)) {
+        try {
+          secureDelete(file);
+          deleted++;
+        } catch (IOException e) {
+          log.error("Could not secure delete '{}': {}", file.getAbsolutePath(), e.getMessage());
+        }
+      }
+    }
+
+    return deleted;
+  }
+
+  /**
+   * <p>Stop accepting queued deletes and wait for those already queued to complete (e.g. at shutdown)</p>
+   * <p>A later secure delete starts a new queue</p>
+   *
+   * @param timeout The maximum time to wait
+   * @param unit    The time unit of the timeout
+   *
+   * @return True if the queue drained within the timeout
+   */
+  public static boolean drainSecureDeleteQueue(long timeout, TimeUnit unit) {
+
+    ListeningExecutorService executorService;
+    synchronized (SecureFiles.class) {
+      executorService = secureDeleteExecutorService;
+      secureDeleteExecutorService = null;
+    }
+
+    if (executorService == null) {
+      return true;
+    }
+
+    executorService.shutdown();
+    try {
+      boolean drained = executorService.awaitTermination(timeout, unit);
+      if (!drained) {
+        log.warn("Secure delete queue did not drain. Remaining files are deleted at the next startup.");
+      }
+      return drained;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  /**
+   * @return The total bytes overwritten by secure deletes since startup
+   */
+  public static long getSecureDeleteBytes() {
+    return secureDeleteBytes.get();
+  }
+
+  /**
+   * @return The mean secure delete throughput since startup in bytes per second (zero if nothing has been deleted)
+   */
+  public static long getSecureDeleteThroughput() {
+
+    long nanos = secureDeleteNanos.get();
+
+    return nanos == 0 ? 0 : (secureDeleteBytes.get() * 1000000000L) / nanos;
+  }
+
+  /**
+   * @return The single thread executor service holding the secure delete queue
+   */
+  private static synchronized ListeningExecutorService getOrCreateSecureDeleteExecutorService() {
+
+    if (secureDeleteExecutorService == null) {
+      secureDeleteExecutorService = SafeExecutors.newSingleThreadExecutor("secure-delete");
+    }
+
+    return secureDeleteExecutorService;
+  }
+
   /**
    * @param directory The directory to verify or create
    *
@@ -167,4 +349,21 @@ public class SecureFiles {
     return file;
 
   }
+
+  /**
+   * <p>Lazily allocated 1MB direct buffer of SECURE_DELETE_FILL_BYTES shared (read only) by all secure deletes</p>
+   */
+  private static class FillBuffer {
+
+    private static final ByteBuffer INSTANCE;
+
+    static {
+      ByteBuffer buffer = ByteBuffer.allocateDirect(1024 * 1024);
+      while (buffer.hasRemaining()) {
+        buffer.put(SECURE_DELETE_FILL_BYTES, 0, Math.min(SECURE_DELETE_FILL_BYTES.length, buffer.remaining()));
+      }
+      buffer.flip();
+      INSTANCE = buffer.asReadOnlyBuffer();
+    }
+  }
 }
@@ -0,0 +1,98 @@
+package org.multibit.hd.core.files;
+
+import com.google.common.base.Preconditions;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Input stream to provide the following to background jobs:</p>
+ * <ul>
+ * <li>Reads limited to an average rate so that the disk stays available to the foreground</li>
+ * </ul>
+ * <p>Interrupting the reading thread whilst it is held back raises an <code>InterruptedIOException</code>.</p>
+ *
+ * @since 0.0.1
+ *
+ */
+public class ThrottledInputStream extends FilterInputStream {
+
+  private final long bytesPerSecond;
+
+  private final long start = System.nanoTime();
+
+  private long bytesRead = 0;
+
+  /**
+   * @param in             The stream to read from
+   * @param bytesPerSecond The maximum average read rate
+   */
+  public ThrottledInputStream(InputStream in, long bytesPerSecond) {
+
+    super(in);
+
+    Preconditions.checkNotNull(in, "'in' must be present");
+    Preconditions.checkArgument(bytesPerSecond > 0, "'bytesPerSecond' must be positive");
+
+    this.bytesPerSecond = bytesPerSecond;
+
+  }
+
+  @Override
+  public int read() throws IOException {
+
+    int b = super.read();
+    if (b >= 0) {
+      throttle(1);
+    }
+
+    return b;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+
+    int length = super.read(b, off, len);
+    if (length > 0) {
+      throttle(length);
+    }
+
+    return length;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+
+    long skipped = super.skip(n);
+    if (skipped > 0) {
+      throttle(skipped);
+    }
+
+    return skipped;
+  }
+
+  /**
+   * <p>Sleep until the average rate since the stream was opened is back within the limit</p>
+   *
+   * @param length The number of bytes just read
+   */
+  private void throttle(long length) throws InterruptedIOException {
+
+    bytesRead += length;
+
+    long earliestNanos = TimeUnit.SECONDS.toNanos(1) * bytesRead / bytesPerSecond;
+    long aheadNanos = earliestNanos - (System.nanoTime() - start);
+    if (aheadNanos > 0) {
+      try {
+        TimeUnit.NANOSECONDS.sleep(aheadNanos);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted whilst throttled");
+      }
+    }
+
+  }
+}
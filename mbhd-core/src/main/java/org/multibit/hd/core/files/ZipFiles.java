@@ -1,15 +1,37 @@
 package org.multibit.hd.core.files;
 
+import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import org.multibit.hd.core.concurrent.SafeExecutors;
 import org.multibit.hd.core.managers.BackupManager;
 import org.multibit.hd.core.managers.InstallationManager;
+import org.multibit.hd.core.store.BackupCatalogue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Calendar;
+import java.util.Deque;
 import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
-import java.util.zip.ZipOutputStream;
+import java.util.zip.ZipInputStream;
 
 import static org.multibit.hd.core.files.SecureFiles.verifyOrCreateDirectory;
 
@@ -17,6 +39,7 @@ import static org.multibit.hd.core.files.SecureFiles.verifyOrCreateDirectory;
  * <p>Utilties to provide the following to applications:</p>
  * <ul>
  * <li>Access to common ZIP operations</li>
+ * <li>Parallel zipping that stores incompressible (encrypted) entries and deflates the rest</li>
  * </ul>
  * <p>Uses Java new I/O and Guava Files where possible</p>
  *
@@ -27,6 +50,38 @@ public class ZipFiles {
 
   private static final Logger log = LoggerFactory.getLogger(ZipFiles.class);
 
+  /**
+   * Files with this suffix are AES ciphertext and are stored rather than deflated
+   */
+  private static final String AES_SUFFIX = ".aes";
+
+  /**
+   * The deflate level for compressible entries (they are deflated in parallel so the default level is affordable)
+   */
+  static final int COMPRESSION_LEVEL = Deflater.DEFAULT_COMPRESSION;
+
+  /**
+   * The number of leading bytes deflated to decide if a file is worth compressing
+   */
+  private static final int PROBE_SIZE = 64 * 1024;
+
+  /**
+   * Files shorter than this are always deflated
+   */
+  private static final int MINIMUM_PROBE_SIZE = 512;
+
+  /**
+   * A probe that does not shrink below this fraction of its input means the file is stored
+   */
+  private static final double INCOMPRESSIBLE_RATIO = 0.95;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * The largest entry that can be described without Zip64 extensions
+   */
+  private static final long MAXIMUM_ENTRY_SIZE = 0xFFFFFFFFL;
+
   /**
    * Utilities have private constructor
    */
@@ -45,27 +100,152 @@ public class ZipFiles {
    * @throws java.io.IOException
    */
   public static void zipFolder(String srcFolder, String destZipFile, boolean includeBlockStore) throws IOException {
-    ZipOutputStream zip;
-    FileOutputStream fileWriter;
 
-    fileWriter = new FileOutputStream(destZipFile);
-    zip = new ZipOutputStream(fileWriter);
+    try (FileOutputStream fileWriter = new FileOutputStream(destZipFile)) {
+      zipFolder(srcFolder, fileWriter.getChannel(), includeBlockStore);
+    }
+  }
 
-    try {
-      // Add the contents of the srcFolder to the zip - note the top folder (with the wallet id) is not added as it is coded in the name of the zip
-      if (new File(srcFolder).list() != null) {
-        for (String fileName : new File(srcFolder).list()) {
-          if (!includeBlockStore && fileName.endsWith(InstallationManager.MBHD_PREFIX + InstallationManager.SPV_BLOCKCHAIN_SUFFIX)) {
-            // Do not include the block writeContacts (to save space)
-            continue;
+  /**
+   * Write the files in the specified srcFolder as a zip to the output stream
+   * This allows the zip to be encrypted as it is produced so that no plaintext copy is written to disk
+   *
+   * @param srcFolder         The directory holding the files to zip
+   * @param out               The stream to write the zip to (flushed but not closed)
+   * @param includeBlockStore if true then include the blockstore, if false then don't
+   *
+   * @throws java.io.IOException
+   */
+  public static void zipFolder(String srcFolder, OutputStream out, boolean includeBlockStore) throws IOException {
+
+    zipFolder(srcFolder, Channels.newChannel(out), includeBlockStore);
+    out.flush();
+  }
+
+  /**
+   * <p>Write the files in the specified srcFolder as a zip to the channel</p>
+   * <p>Each file is prepared on a worker thread: files that will not compress (AES ciphertext or a failed probe)
+   * are stored after a CRC pass and the rest are deflated in memory. The entries are then written in order.</p>
+   * <p>A stored file is written from the channel opened when it was prepared (so a file replaced by a rename in
+   * between is still written as checksummed) and its CRC is checked again as it is written. Files that disappear
+   * before they are prepared (e.g. an old backup being secure deleted) are skipped.</p>
+   *
+   * @param srcFolder         The directory holding the files to zip
+   * @param out               The channel to write the zip to (not closed)
+   * @param includeBlockStore if true then include the blockstore, if false then don't
+   *
+   * @throws java.io.IOException
+   */
+  private static void zipFolder(String srcFolder, WritableByteChannel out, boolean includeBlockStore) throws IOException {
+
+    // Add the contents of the srcFolder to the zip - note the top folder (with the wallet id) is not added as it is coded in the name of the zip
+    List<String> entryNames = Lists.newArrayList();
+    String[] fileNames = new File(srcFolder).list();
+    if (fileNames != null) {
+      for (String fileName : fileNames) {
+        if (!includeBlockStore && fileName.endsWith(InstallationManager.MBHD_PREFIX + InstallationManager.SPV_BLOCKCHAIN_SUFFIX)) {
+          // Do not include the block writeContacts (to save space)
+          continue;
+        }
+        addFileToZip(srcFolder, fileName, entryNames, includeBlockStore);
+      }
+    }
+
+    ZipChannelWriter writer = new ZipChannelWriter(out);
+
+    if (!entryNames.isEmpty()) {
+
+      int threads = Math.min(entryNames.size(), Runtime.getRuntime().availableProcessors());
+      ListeningExecutorService executorService = SafeExecutors.newFixedThreadPool(threads, "zip-files");
+
+      // Only prepare a few entries ahead of the writer to bound the memory held by deflated entries
+      int window = threads * 2;
+      Deque<ListenableFuture<PreparedEntry>> pending = new ArrayDeque<>();
+      Iterator<String> nextEntryName = entryNames.iterator();
+
+      try {
+        while (nextEntryName.hasNext() && pending.size() < window) {
+          pending.add(executorService.submit(newPrepareTask(srcFolder, nextEntryName.next())));
+        }
+
+        while (!pending.isEmpty()) {
+          PreparedEntry entry = getPreparedEntry(pending.poll());
+          if (entry != null) {
+            try {
+              writer.write(entry);
+            } finally {
+              entry.close();
+            }
+          }
+          if (nextEntryName.hasNext()) {
+            pending.add(executorService.submit(newPrepareTask(srcFolder, nextEntryName.next())));
           }
-          addFileToZip(srcFolder, fileName, zip, includeBlockStore);
+        }
+      } finally {
+        for (ListenableFuture<PreparedEntry> future : pending) {
+          future.cancel(true);
+        }
+        executorService.shutdownNow();
+        // Release any stored entries prepared but never written
+        for (ListenableFuture<PreparedEntry> future : pending) {
+          closeQuietly(future);
         }
       }
-    } finally {
-      zip.flush();
-      zip.close();
     }
+
+    // Write the central directory but leave the caller's channel open
+    writer.finish();
+  }
+
+  /**
+   * <p>Extract a zip as it is read from the stream (for example whilst it is decrypted) so that the zip itself is
+   * never written to disk and memory use does not depend on its size</p>
+   * <p>Reading each entry to its end checks its CRC. Entries that would be written outside the directory are rejected.</p>
+   *
+   * @param in                   The stream holding the zip (not closed)
+   * @param directoryToExtractTo The directory to extract into
+   *
+   * @throws IOException If the zip is corrupt or an entry could not be written
+   */
+  public static void unzip(InputStream in, File directoryToExtractTo) throws IOException {
+
+    verifyOrCreateDirectory(directoryToExtractTo);
+    String canonicalDirectory = directoryToExtractTo.getCanonicalPath() + File.separator;
+
+    ZipInputStream zis = new ZipInputStream(in);
+    byte[] buffer = new byte[BUFFER_SIZE];
+
+    ZipEntry entry;
+    while ((entry = zis.getNextEntry()) != null) {
+
+      File target = new File(directoryToExtractTo, entry.getName());
+      if (!target.getCanonicalPath().startsWith(canonicalDirectory)) {
+        throw new IOException("Zip entry '" + entry.getName() + "' is outside the extraction directory");
+      }
+
+      if (entry.isDirectory()) {
+        verifyOrCreateDirectory(target);
+        continue;
+      }
+
+      // Ignore certain files
+      if (entry.getName().contains(".DS_Store")) {
+        continue;
+      }
+
+      log.debug("Extracting file: " + entry.getName());
+
+      // File entries can come before the entry for their directory
+      verifyOrCreateDirectory(target.getParentFile());
+
+      try (OutputStream out = new FileOutputStream(target)) {
+        int length;
+        while ((length = zis.read(buffer)) > 0) {
+          out.write(buffer, 0, length);
+        }
+      }
+    }
+
   }
 
   public static void unzip(String zipFileName, String directoryToExtractTo) throws IOException {
@@ -119,46 +299,232 @@ public class ZipFiles {
     }
   }
 
-  private static void addFileToZip(String path, String srcFile, ZipOutputStream zip, Boolean includeBlockStore)
-    throws IOException {
+  private static void addFileToZip(String path, String srcFile, List<String> entryNames, Boolean includeBlockStore) {
 
     File srcFileOnDisk = new File(path + File.separator + srcFile);
     if (srcFileOnDisk.isDirectory()) {
-      addFolderToZip(path, srcFile, zip, includeBlockStore);
+      addFolderToZip(path, srcFile, entryNames, includeBlockStore);
+    } else if (SecureFiles.isPendingDelete(srcFileOnDisk)) {
+      // Files waiting to be secure deleted are never backed up
+      log.trace("Not zipping '{}' as it is pending secure delete", srcFile);
+    } else if (srcFileOnDisk.getName().startsWith(BackupCatalogue.CATALOGUE_FILE_NAME)) {
+      // A backup catalogue describes the directory it is in so it is rebuilt rather than restored
+      log.trace("Not zipping backup catalogue '{}'", srcFile);
     } else {
-      byte[] buf = new byte[1024];
-      int len;
-      FileInputStream in = new FileInputStream(srcFileOnDisk);
-      zip.putNextEntry(new ZipEntry(srcFile));
-
-      while ((len = in.read(buf)) > 0) {
-        zip.write(buf, 0, len);
-      }
+      entryNames.add(srcFile);
     }
   }
 
-  private static void addFolderToZip(String path, String srcFolder, ZipOutputStream zip, Boolean includeBlockStore)
-    throws IOException {
+  private static void addFolderToZip(String path, String srcFolder, List<String> entryNames, Boolean includeBlockStore) {
 
     File folder = new File(srcFolder);
     File folderOnDisk = new File(path + File.separator + srcFolder);
 
-    // Don't include the zip-backups folder in the backups
-    if (folder.getAbsolutePath().contains(BackupManager.LOCAL_ZIP_BACKUP_DIRECTORY_NAME)) {
+    // Don't include the zip-backups or snapshot-backups folders in the backups
+    if (folder.getAbsolutePath().contains(BackupManager.LOCAL_ZIP_BACKUP_DIRECTORY_NAME)
+      || folder.getAbsolutePath().contains(BackupManager.SNAPSHOT_BACKUP_DIRECTORY_NAME)) {
       return;
     }
 
-    if (folderOnDisk.list() != null) {
-      for (String fileName : folderOnDisk.list()) {
+    String[] fileNames = folderOnDisk.list();
+    if (fileNames != null) {
+      for (String fileName : fileNames) {
         if (!includeBlockStore && fileName.endsWith(InstallationManager.MBHD_PREFIX + InstallationManager.SPV_BLOCKCHAIN_SUFFIX)) {
           // Do not include the block writeContacts (to save space)
           continue;
         }
-        addFileToZip(path, srcFolder + File.separator + fileName, zip, includeBlockStore);
+        addFileToZip(path, srcFolder + File.separator + fileName, entryNames, includeBlockStore);
+      }
+    }
+  }
+
+  /**
+   * @param path      The directory holding the files to zip
+   * @param entryName The name of the entry relative to the path
+   *
+   * @return A task to read, checksum and (if worthwhile) deflate the file, providing null if the file has gone
+   */
+  static Callable<PreparedEntry> newPrepareTask(final String path, final String entryName) {
+
+    return new Callable<PreparedEntry>() {
+      @Override
+      public PreparedEntry call() throws Exception {
+        File file = new File(path + File.separator + entryName);
+        try {
+          return prepareEntry(file, entryName);
+        } catch (FileNotFoundException e) {
+          if (file.exists()) {
+            throw e;
+          }
+          log.debug("Not zipping '{}' as it no longer exists", entryName);
+          return null;
+        }
+      }
+    };
+  }
+
+  /**
+   * @param future A prepared entry future that may not have been written
+   */
+  private static void closeQuietly(ListenableFuture<PreparedEntry> future) {
+
+    try {
+      PreparedEntry entry = future.get();
+      if (entry != null) {
+        entry.close();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException | CancellationException | IOException e) {
+      // Nothing to release
+    }
+  }
+
+  /**
+   * @param future The future holding the prepared entry
+   *
+   * @return The prepared entry (null if the file disappeared before it was prepared)
+   *
+   * @throws IOException If the entry could not be prepared
+   */
+  private static PreparedEntry getPreparedEntry(ListenableFuture<PreparedEntry> future) throws IOException {
+
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted whilst zipping");
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      throw new IOException("Could not zip file", e.getCause());
+    }
+  }
+
+  /**
+   * @param file      The file to zip
+   * @param entryName The name of the zip entry
+   *
+   * @return The entry with its checksum and sizes known and either deflated content or (if it is to be stored)
+   * the open channel to write it from, which the caller must close
+   *
+   * @throws IOException If the file could not be read
+   */
+  static PreparedEntry prepareEntry(File file, String entryName) throws IOException {
+
+    FileChannel channel = new FileInputStream(file).getChannel();
+    boolean handedOver = false;
+    try {
+
+      long size = channel.size();
+      if (size > MAXIMUM_ENTRY_SIZE) {
+        throw new IOException("File '" + file.getAbsolutePath() + "' is too large to zip");
+      }
+
+      byte[] buffer = new byte[BUFFER_SIZE];
+      CRC32 crc = new CRC32();
+      long lastModified = file.lastModified();
+
+      if (isIncompressible(file, channel, buffer)) {
+
+        // Stored entries need the checksum before the content is written
+        channel.position(0);
+        long storedSize = 0;
+        int length;
+        while ((length = read(channel, buffer)) > 0) {
+          crc.update(buffer, 0, length);
+          storedSize += length;
+        }
+
+        // Keep the channel so the writer reads the same file that was checksummed
+        handedOver = true;
+        return new PreparedEntry(entryName, file, lastModified, crc.getValue(), storedSize, null, channel);
       }
+
+      channel.position(0);
+      Deflater deflater = new Deflater(COMPRESSION_LEVEL, true);
+      try {
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream((int) Math.min(size, BUFFER_SIZE) + 64);
+        byte[] deflateBuffer = new byte[BUFFER_SIZE];
+        long uncompressedSize = 0;
+        int length;
+        while ((length = read(channel, buffer)) > 0) {
+          crc.update(buffer, 0, length);
+          uncompressedSize += length;
+          deflater.setInput(buffer, 0, length);
+          while (!deflater.needsInput()) {
+            int deflatedLength = deflater.deflate(deflateBuffer);
+            deflated.write(deflateBuffer, 0, deflatedLength);
+          }
+        }
+        deflater.finish();
+        while (!deflater.finished()) {
+          int deflatedLength = deflater.deflate(deflateBuffer);
+          deflated.write(deflateBuffer, 0, deflatedLength);
+        }
+        return new PreparedEntry(entryName, file, lastModified, crc.getValue(), uncompressedSize, deflated.toByteArray(), null);
+      } finally {
+        deflater.end();
+      }
+    } finally {
+      if (!handedOver) {
+        channel.close();
+      }
+    }
+  }
+
+  /**
+   * @param file    The file
+   * @param channel The channel positioned at the start of the file
+   * @param buffer  A scratch buffer at least PROBE_SIZE long
+   *
+   * @return True if the file is AES ciphertext or a deflate of its first bytes saves too little to be worthwhile
+   *
+   * @throws IOException If the file could not be read
+   */
+  private static boolean isIncompressible(File file, FileChannel channel, byte[] buffer) throws IOException {
+
+    if (file.getName().endsWith(AES_SUFFIX)) {
+      // Ciphertext will not compress
+      return true;
+    }
+
+    int probeLength = read(channel, ByteBuffer.wrap(buffer, 0, PROBE_SIZE));
+    if (probeLength < MINIMUM_PROBE_SIZE) {
+      // Too small for the choice to matter
+      return false;
+    }
+
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+    try {
+      deflater.setInput(buffer, 0, probeLength);
+      deflater.finish();
+      byte[] probeBuffer = new byte[PROBE_SIZE];
+      long deflatedLength = 0;
+      while (!deflater.finished() && deflatedLength < probeLength) {
+        deflatedLength += deflater.deflate(probeBuffer);
+      }
+      return deflatedLength >= probeLength * INCOMPRESSIBLE_RATIO;
+    } finally {
+      deflater.end();
     }
   }
 
+  /**
+   * @return The number of bytes read into the buffer (filled unless the end of the channel is reached)
+   */
+  private static int read(FileChannel channel, byte[] buffer) throws IOException {
+    return read(channel, ByteBuffer.wrap(buffer));
+  }
+
+  private static int read(FileChannel channel, ByteBuffer byteBuffer) throws IOException {
+
+    int start = byteBuffer.position();
+    while (byteBuffer.hasRemaining() && channel.read(byteBuffer) >= 0) {
+      // Keep reading until full or the end of the file
+    }
+    return byteBuffer.position() - start;
+  }
+
   /**
    * Work out the directory part of a filename
    *
@@ -188,4 +554,226 @@ public class ZipFiles {
     out.close();
   }
 
+  /**
+   * <p>A file ready to be written as a zip entry</p>
+   */
+  static class PreparedEntry implements Closeable {
+
+    private final String name;
+    private final File file;
+    private final long lastModified;
+    private final long crc;
+    private final long size;
+    private final byte[] deflated;
+    private final FileChannel storedChannel;
+
+    /**
+     * @param deflated      The raw deflated content or null if the file is to be stored
+     * @param storedChannel The channel the checksum was computed from if the file is to be stored
+     */
+    PreparedEntry(String name, File file, long lastModified, long crc, long size, byte[] deflated, FileChannel storedChannel) {
+      this.name = name;
+      this.file = file;
+      this.lastModified = lastModified;
+      this.crc = crc;
+      this.size = size;
+      this.deflated = deflated;
+      this.storedChannel = storedChannel;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (storedChannel != null) {
+        storedChannel.close();
+      }
+    }
+
+    /**
+     * @return True if the entry is stored without compression
+     */
+    boolean isStored() {
+      return deflated == null;
+    }
+
+    long getCompressedSize() {
+      return deflated == null ? size : deflated.length;
+    }
+  }
+
+  /**
+   * <p>Minimal zip writer that accepts entries with their checksum known and content already deflated, so that
+   * compression can happen off the writing thread (ZipOutputStream always deflates on the caller's thread)</p>
+   */
+  static class ZipChannelWriter {
+
+    private static final int LOCAL_FILE_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_DIRECTORY_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+
+    private static final int LOCAL_FILE_HEADER_LENGTH = 30;
+    private static final int CENTRAL_DIRECTORY_HEADER_LENGTH = 46;
+    private static final int END_OF_CENTRAL_DIRECTORY_LENGTH = 22;
+
+    private static final short VERSION_STORED = 10;
+    private static final short VERSION_DEFLATED = 20;
+    private static final short METHOD_STORED = 0;
+    private static final short METHOD_DEFLATED = 8;
+    private static final short FLAG_UTF8 = 0x0800;
+
+    private static final int MAXIMUM_ENTRIES = 0xFFFF;
+
+    private final WritableByteChannel out;
+
+    private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+
+    private long offset = 0;
+
+    private int entryCount = 0;
+
+    ZipChannelWriter(WritableByteChannel out) {
+      this.out = out;
+    }
+
+    void write(PreparedEntry entry) throws IOException {
+
+      if (entryCount >= MAXIMUM_ENTRIES || offset > MAXIMUM_ENTRY_SIZE) {
+        throw new IOException("Too much content to zip without Zip64 extensions");
+      }
+
+      byte[] name = entry.name.getBytes(Charsets.UTF_8);
+      short version = entry.isStored() ? VERSION_STORED : VERSION_DEFLATED;
+      short method = entry.isStored() ? METHOD_STORED : METHOD_DEFLATED;
+      int dosTime = toDosTime(entry.lastModified);
+
+      ByteBuffer localHeader = newLittleEndianBuffer(LOCAL_FILE_HEADER_LENGTH + name.length);
+      localHeader.putInt(LOCAL_FILE_HEADER_SIGNATURE);
+      localHeader.putShort(version);
+      localHeader.putShort(FLAG_UTF8);
+      localHeader.putShort(method);
+      localHeader.putInt(dosTime);
+      localHeader.putInt((int) entry.crc);
+      localHeader.putInt((int) entry.getCompressedSize());
+      localHeader.putInt((int) entry.size);
+      localHeader.putShort((short) name.length);
+      localHeader.putShort((short) 0);
+      localHeader.put(name);
+      localHeader.flip();
+      writeFully(localHeader);
+
+      if (entry.isStored()) {
+        writeStored(entry);
+      } else {
+        writeFully(ByteBuffer.wrap(entry.deflated));
+      }
+
+      ByteBuffer centralHeader = newLittleEndianBuffer(CENTRAL_DIRECTORY_HEADER_LENGTH + name.length);
+      centralHeader.putInt(CENTRAL_DIRECTORY_HEADER_SIGNATURE);
+      centralHeader.putShort(VERSION_DEFLATED);
+      centralHeader.putShort(version);
+      centralHeader.putShort(FLAG_UTF8);
+      centralHeader.putShort(method);
+      centralHeader.putInt(dosTime);
+      centralHeader.putInt((int) entry.crc);
+      centralHeader.putInt((int) entry.getCompressedSize());
+      centralHeader.putInt((int) entry.size);
+      centralHeader.putShort((short) name.length);
+      // Extra field, comment, disk number and attributes are all empty
+      centralHeader.putShort((short) 0);
+      centralHeader.putShort((short) 0);
+      centralHeader.putShort((short) 0);
+      centralHeader.putShort((short) 0);
+      centralHeader.putInt(0);
+      centralHeader.putInt((int) offset);
+      centralHeader.put(name);
+      centralDirectory.write(centralHeader.array(), 0, centralHeader.position());
+
+      offset += LOCAL_FILE_HEADER_LENGTH + name.length + entry.getCompressedSize();
+      entryCount++;
+    }
+
+    /**
+     * <p>Write the central directory and end record</p>
+     */
+    void finish() throws IOException {
+
+      if (offset > MAXIMUM_ENTRY_SIZE) {
+        throw new IOException("Too much content to zip without Zip64 extensions");
+      }
+
+      writeFully(ByteBuffer.wrap(centralDirectory.toByteArray()));
+
+      ByteBuffer end = newLittleEndianBuffer(END_OF_CENTRAL_DIRECTORY_LENGTH);
+      end.putInt(END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+      end.putShort((short) 0);
+      end.putShort((short) 0);
+      end.putShort((short) entryCount);
+      end.putShort((short) entryCount);
+      end.putInt(centralDirectory.size());
+      end.putInt((int) offset);
+      end.putShort((short) 0);
+      end.flip();
+      writeFully(end);
+    }
+
+    /**
+     * <p>Write a stored entry from its prepared channel, checking the content still matches the CRC in the header</p>
+     *
+     * @throws IOException If the file changed in place since it was prepared (the zip must then be discarded)
+     */
+    private void writeStored(PreparedEntry entry) throws IOException {
+
+      ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+      CRC32 crc = new CRC32();
+      long position = 0;
+      while (position < entry.size) {
+        buffer.clear();
+        buffer.limit((int) Math.min(buffer.capacity(), entry.size - position));
+        int length = entry.storedChannel.read(buffer, position);
+        if (length <= 0) {
+          throw new IOException("File '" + entry.file.getAbsolutePath() + "' was truncated whilst being zipped");
+        }
+        crc.update(buffer.array(), 0, length);
+        buffer.flip();
+        writeFully(buffer);
+        position += length;
+      }
+
+      if (crc.getValue() != entry.crc) {
+        throw new IOException("File '" + entry.file.getAbsolutePath() + "' changed whilst being zipped");
+      }
+    }
+
+    private void writeFully(ByteBuffer byteBuffer) throws IOException {
+      while (byteBuffer.hasRemaining()) {
+        out.write(byteBuffer);
+      }
+    }
+
+    private static ByteBuffer newLittleEndianBuffer(int length) {
+      return ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * @return The MS-DOS date and time (local time, two second resolution) used in zip headers
+     */
+    private static int toDosTime(long time) {
+
+      Calendar calendar = Calendar.getInstance();
+      calendar.setTimeInMillis(time);
+
+      int year = calendar.get(Calendar.YEAR);
+      if (year < 1980) {
+        // Earliest representable date (1980-01-01)
+        return (1 << 21) | (1 << 16);
+      }
+
+      return (year - 1980) << 25
+        | (calendar.get(Calendar.MONTH) + 1) << 21
+        | calendar.get(Calendar.DAY_OF_MONTH) << 16
+        | calendar.get(Calendar.HOUR_OF_DAY) << 11
+        | calendar.get(Calendar.MINUTE) << 5
+        | calendar.get(Calendar.SECOND) >> 1;
+    }
+  }
+
 }
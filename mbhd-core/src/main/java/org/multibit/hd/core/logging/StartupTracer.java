@@ -0,0 +1,336 @@
+package org.multibit.hd.core.logging;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.multibit.hd.core.concurrent.SafeExecutors;
+import org.multibit.hd.core.config.Configuration;
+import org.multibit.hd.core.config.Configurations;
+import org.multibit.hd.core.config.LoggingConfiguration;
+import org.multibit.hd.core.managers.InstallationManager;
+import org.multibit.hd.core.utils.Dates;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>Tracer to provide the following to application startup:</p>
+ * <ul>
+ * <li>Named spans covering the startup phases (core services, wallet load, block store etc)</li>
+ * <li>A machine-readable trace file written next to the logs</li>
+ * <li>A time-to-interactive report on each run</li>
+ * </ul>
+ *
+ * <p>Spans are only recorded until the application becomes interactive so later activity
+ * (e.g. a wallet replay) does not pollute the trace.</p>
+ *
+ * <p>Time spent waiting for the user (e.g. typing a password into the credentials wizard) is not
+ * startup work so it is excluded from the time-to-interactive and reported separately.</p>
+ *
+ * @since 0.0.1
+ *
+ */
+public enum StartupTracer {
+
+  INSTANCE;
+
+  private static final Logger log = LoggerFactory.getLogger(StartupTracer.class);
+
+  /**
+   * The trace file for the most recent startup
+   */
+  public static final String TRACE_FILE_NAME = "startup-trace.json";
+
+  /**
+   * The history of time-to-interactive across runs (one CSV line per run)
+   */
+  public static final String HISTORY_FILE_NAME = "startup-history.csv";
+
+  /**
+   * The number of runs kept in the history
+   */
+  public static final int MAXIMUM_HISTORY_LINES = 100;
+
+  /**
+   * The span that represents no work (returned once tracing has finished)
+   */
+  private static final Span NO_SPAN = new Span(null, null, 0) {
+    @Override
+    public void end() {
+      // Do nothing
+    }
+  };
+
+  // The JVM start time provides a stable origin for all spans
+  private final long originMillis = ManagementFactory.getRuntimeMXBean().getStartTime();
+  private final long originNanos = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - originMillis);
+
+  private final List<Map<String, Object>> completedSpans = Lists.newArrayList();
+
+  private final AtomicBoolean interactive = new AtomicBoolean(false);
+
+  // Keep the file writes off the EDT
+  private final ListeningExecutorService traceExecutorService = SafeExecutors.newSingleThreadExecutor("startup-trace");
+
+  // The user wait in progress (negative if none) and the total so far
+  private long userWaitStartNanos = -1;
+  private long userWaitNanos = 0;
+
+  // The time the credentials were first requested (negative if never)
+  private long timeToCredentialsMillis = -1;
+
+  /**
+   * @param name The span name (e.g. "core.configuration")
+   *
+   * @return A started span which must be ended (typically in a finally block)
+   */
+  public Span begin(String name) {
+
+    Preconditions.checkNotNull(name, "'name' must be present");
+
+    if (interactive.get()) {
+      return NO_SPAN;
+    }
+
+    return new Span(this, name, System.nanoTime());
+  }
+
+  /**
+   * <p>Mark the start of a wait for the user (e.g. the credentials wizard is showing). The first call
+   * records the time to credentials. Calls while already waiting are ignored.</p>
+   */
+  public synchronized void userWaitStarted() {
+
+    if (interactive.get() || userWaitStartNanos >= 0) {
+      return;
+    }
+
+    userWaitStartNanos = System.nanoTime();
+
+    if (timeToCredentialsMillis < 0) {
+      timeToCredentialsMillis = elapsedMillis(userWaitStartNanos);
+      log.info("Time to credentials: {}ms", timeToCredentialsMillis);
+    }
+
+  }
+
+  /**
+   * <p>Mark the end of a wait for the user (e.g. the password has been submitted). Calls while not
+   * waiting are ignored.</p>
+   */
+  public synchronized void userWaitEnded() {
+
+    if (interactive.get() || userWaitStartNanos < 0) {
+      return;
+    }
+
+    userWaitNanos += System.nanoTime() - userWaitStartNanos;
+    userWaitStartNanos = -1;
+
+  }
+
+  /**
+   * <p>Mark the application as interactive. The first call reports time-to-interactive (excluding any
+   * user wait) and writes the trace file in the background, subsequent calls are ignored.</p>
+   *
+   * @return A future that completes when the trace has been written (or immediately if ignored)
+   */
+  public ListenableFuture<Boolean> interactive() {
+
+    final long timeToInteractive;
+    final long userWait;
+    synchronized (this) {
+
+      if (!interactive.compareAndSet(false, true)) {
+        return Futures.immediateFuture(false);
+      }
+
+      long nowNanos = System.nanoTime();
+
+      // A wait still in progress ends now
+      if (userWaitStartNanos >= 0) {
+        userWaitNanos += nowNanos - userWaitStartNanos;
+        userWaitStartNanos = -1;
+      }
+
+      userWait = TimeUnit.NANOSECONDS.toMillis(userWaitNanos);
+      timeToInteractive = elapsedMillis(nowNanos) - userWait;
+    }
+
+    log.info("Time to interactive: {}ms (excluding {}ms waiting for the user)", timeToInteractive, userWait);
+
+    return traceExecutorService.submit(new Callable<Boolean>() {
+      @Override
+      public Boolean call() {
+        try {
+          writeTrace(timeToInteractive, userWait);
+          return true;
+        } catch (IOException e) {
+          // The trace is diagnostic only so must never prevent operation
+          log.warn("Could not write startup trace: {}", e.getMessage());
+          return false;
+        }
+      }
+    });
+
+  }
+
+  /**
+   * @return True if the application has become interactive
+   */
+  public boolean isInteractive() {
+    return interactive.get();
+  }
+
+  /**
+   * @param span     The span that has ended
+   * @param endNanos The end time
+   */
+  private synchronized void record(Span span, long endNanos) {
+
+    if (interactive.get()) {
+      return;
+    }
+
+    Map<String, Object> entry = Maps.newLinkedHashMap();
+    entry.put("name", span.name);
+    entry.put("thread", span.thread);
+    entry.put("startMillis", elapsedMillis(span.startNanos));
+    entry.put("durationMillis", TimeUnit.NANOSECONDS.toMillis(endNanos - span.startNanos));
+    completedSpans.add(entry);
+
+    log.debug("Startup span '{}' took {}ms", span.name, entry.get("durationMillis"));
+
+  }
+
+  /**
+   * @param timeToInteractive The time to interactive in milliseconds from JVM start (excluding the user wait)
+   * @param userWait          The time spent waiting for the user in milliseconds
+   *
+   * @throws IOException If the trace could not be written
+   */
+  private synchronized void writeTrace(long timeToInteractive, long userWait) throws IOException {
+
+    File traceDirectory = getTraceDirectory();
+
+    String version = "unknown";
+    Configuration configuration = Configurations.currentConfiguration;
+    if (configuration != null && configuration.getVersion() != null) {
+      version = configuration.getVersion();
+    }
+
+    Map<String, Object> trace = Maps.newLinkedHashMap();
+    trace.put("version", version);
+    trace.put("started", Dates.formatIso8601(new DateTime(originMillis, DateTimeZone.UTC)));
+    trace.put("timeToCredentialsMillis", timeToCredentialsMillis);
+    trace.put("userWaitMillis", userWait);
+    trace.put("timeToInteractiveMillis", timeToInteractive);
+    trace.put("spans", completedSpans);
+
+    ObjectMapper mapper = new ObjectMapper();
+    mapper.enable(SerializationFeature.INDENT_OUTPUT);
+    org.multibit.hd.core.files.Files.writeAtomically(mapper.writeValueAsBytes(trace), new File(traceDirectory, TRACE_FILE_NAME));
+
+    // Keep a one line summary per run to allow regressions to be spotted across releases
+    File historyFile = new File(traceDirectory, HISTORY_FILE_NAME);
+    List<String> history = Lists.newArrayList();
+    if (historyFile.exists()) {
+      history.addAll(Files.readLines(historyFile, Charsets.UTF_8));
+    }
+    history.add(trace.get("started") + "," + version + "," + timeToInteractive);
+
+    // Only the most recent runs are of interest so keep the file small
+    List<String> recent = history.subList(Math.max(0, history.size() - MAXIMUM_HISTORY_LINES), history.size());
+    org.multibit.hd.core.files.Files.writeAtomically((Joiner.on('\n').join(recent) + "\n").getBytes(Charsets.UTF_8), historyFile);
+
+    log.debug("Startup trace written to '{}'", traceDirectory.getAbsolutePath());
+
+  }
+
+  /**
+   * @return The directory containing the current log file, or the application directory if file logging is not in use
+   */
+  private File getTraceDirectory() {
+
+    Configuration configuration = Configurations.currentConfiguration;
+    if (configuration != null) {
+      LoggingConfiguration.FileConfiguration file = configuration.getLogging().getFileConfiguration();
+      if (file.isEnabled() && file.getCurrentLogFilename() != null) {
+        File logDirectory = new File(file.getCurrentLogFilename()).getAbsoluteFile().getParentFile();
+        if (logDirectory != null && (logDirectory.isDirectory() || logDirectory.mkdirs())) {
+          return logDirectory;
+        }
+      }
+    }
+
+    return InstallationManager.getOrCreateApplicationDataDirectory();
+  }
+
+  /**
+   * @param nanos A System.nanoTime() value
+   *
+   * @return The elapsed milliseconds since JVM start
+   */
+  private long elapsedMillis(long nanos) {
+    return TimeUnit.NANOSECONDS.toMillis(nanos - originNanos);
+  }
+
+  /**
+   * <p>Use for testing only</p>
+   *
+   * <p>Start tracing afresh as if the application had just started</p>
+   */
+  synchronized void reset() {
+
+    completedSpans.clear();
+    userWaitStartNanos = -1;
+    userWaitNanos = 0;
+    timeToCredentialsMillis = -1;
+    interactive.set(false);
+
+  }
+
+  /**
+   * <p>A named span of work on a single thread</p>
+   */
+  public static class Span {
+
+    private final StartupTracer tracer;
+    private final String name;
+    private final String thread;
+    private final long startNanos;
+
+    private Span(StartupTracer tracer, String name, long startNanos) {
+      this.tracer = tracer;
+      this.name = name;
+      this.thread = Thread.currentThread().getName();
+      this.startNanos = startNanos;
+    }
+
+    /**
+     * <p>End the span and record it in the trace</p>
+     */
+    public void end() {
+      tracer.record(this, System.nanoTime());
+    }
+  }
+
+}
@@ -5,13 +5,21 @@ import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.ListeningScheduledExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.multibit.hd.brit.crypto.AESUtils;
 import org.multibit.hd.brit.seed_phrase.Bip39SeedPhraseGenerator;
 import org.multibit.hd.brit.seed_phrase.SeedPhraseGenerator;
-import org.multibit.hd.brit.utils.FileUtils;
 import org.multibit.hd.core.concurrent.SafeExecutors;
+import org.multibit.hd.core.crypto.AESDecryptingInputStream;
 import org.multibit.hd.core.crypto.EncryptedFileReaderWriter;
 import org.multibit.hd.core.dto.BackupSummary;
 import org.multibit.hd.core.dto.WalletId;
@@ -19,27 +27,41 @@ import org.multibit.hd.core.dto.WalletSummary;
 import org.multibit.hd.core.events.CoreEvents;
 import org.multibit.hd.core.events.ShutdownEvent;
 import org.multibit.hd.core.exceptions.EncryptedFileReaderWriterException;
-import org.multibit.hd.core.exceptions.ExceptionHandler;
 import org.multibit.hd.core.exceptions.WalletLoadException;
+import org.multibit.hd.core.files.Files;
 import org.multibit.hd.core.files.SecureFiles;
+import org.multibit.hd.core.files.ThrottledInputStream;
 import org.multibit.hd.core.files.ZipFiles;
+import org.multibit.hd.core.store.BackupCatalogue;
+import org.multibit.hd.core.store.BackupRepository;
 import org.multibit.hd.core.utils.Dates;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spongycastle.crypto.params.KeyParameter;
 
-import java.io.ByteArrayInputStream;
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.HashMap;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import static org.multibit.hd.core.dto.WalletId.LENGTH_OF_FORMATTED_WALLET_ID;
 import static org.multibit.hd.core.dto.WalletId.WALLET_ID_SEPARATOR;
@@ -58,6 +80,7 @@ public enum BackupManager {
 
   public static final String ROLLING_BACKUP_DIRECTORY_NAME = "rolling-backup";
   public static final int MAXIMUM_NUMBER_OF_ROLLING_BACKUPS = 4;
+  private static final int MAXIMUM_NUMBER_OF_RECOVERY_THREADS = 4;
 
   public static final String REGEX_FOR_TIMESTAMP_AND_WALLET_AND_AES_SUFFIX = ".*-\\d{14}\\.wallet\\.aes$";
 
@@ -66,8 +89,55 @@ public enum BackupManager {
   public static final int NUMBER_OF_FIRST_WALLET_ZIP_BACKUPS_TO_ALWAYS_KEEP = 2;
   public static final int NUMBER_OF_LAST_WALLET_ZIP_BACKUPS_TO_ALWAYS_KEEP = 8; // Must be at least 1.
 
+  public static final String SNAPSHOT_BACKUP_DIRECTORY_NAME = "snapshot-backup";
+  public static final int MAXIMUM_NUMBER_OF_SNAPSHOT_BACKUPS = 1000; // Snapshots share unchanged content so many more can be kept than zip backups
+
   public static final String BACKUP_TIMESTAMP_SUFFIX_FORMAT = "yyyyMMddHHmmss";
-  private DateFormat dateFormat;
+
+  /**
+   * Suffixes of the directories used whilst a zip backup replaces a wallet root directory
+   */
+  private static final String RESTORE_DIRECTORY_SUFFIX = ".restore";
+  private static final String REPLACED_DIRECTORY_SUFFIX = ".replaced";
+
+  /**
+   * Rolling backups are called mbhd-[timestamp].wallet.aes
+   */
+  private static final Pattern ROLLING_BACKUP_PATTERN = Pattern.compile(".*-(\\d{14})\\.wallet\\.aes$");
+
+  /**
+   * Zip backups are called mbhd-[formatted wallet id]-[timestamp].zip.aes
+   */
+  private static final Pattern ZIP_BACKUP_PATTERN = Pattern.compile(
+    WalletManager.WALLET_DIRECTORY_PREFIX
+      + WALLET_ID_SEPARATOR
+      + ".{" + LENGTH_OF_FORMATTED_WALLET_ID + "}"
+      + WALLET_ID_SEPARATOR
+      + "(\\d{14})"
+      + ENCRYPTED_BACKUP_ZIP_FILE_EXTENSION_REGEX
+  );
+
+  // The longest shutdown waits for the secure delete queue (anything left is swept at the next startup)
+  private static final int SECURE_DELETE_DRAIN_SECONDS = 30;
+
+  // The name of the wallet within a zip backup
+  private static final String WALLET_BACKUP_ENTRY_NAME = WalletManager.MBHD_WALLET_NAME + WalletManager.MBHD_AES_SUFFIX;
+
+  // The backup catalogues keyed on directory
+  private final Map<String, BackupCatalogue> backupCatalogues = Maps.newConcurrentMap();
+
+  // The in-memory catalogues of directories that are only read from (e.g. a restore location) keyed on directory
+  private final Map<String, BackupCatalogue> readOnlyBackupCatalogues = Maps.newConcurrentMap();
+
+  /**
+   * Selects everything
+   */
+  private static final FileFilter ALL_FILES = new FileFilter() {
+    @Override
+    public boolean accept(File file) {
+      return true;
+    }
+  };
 
   private static final Logger log = LoggerFactory.getLogger(BackupManager.class);
 
@@ -90,6 +160,19 @@ public enum BackupManager {
 
     this.applicationDataDirectory = applicationDataDirectory;
     this.cloudBackupDirectory = cloudBackupDirectory;
+
+    // Catalogues are reconciled again on first use
+    backupCatalogues.clear();
+    readOnlyBackupCatalogues.clear();
+
+    // Finish any secure deletes interrupted by a crash or an early exit
+    int swept = SecureFiles.secureDeletePendingFiles(applicationDataDirectory);
+    if (cloudBackupDirectory != null && cloudBackupDirectory.isPresent()) {
+      swept += SecureFiles.secureDeletePendingFiles(cloudBackupDirectory.get());
+    }
+    if (swept > 0) {
+      log.info("Secure deleted {} files left pending from a previous run", swept);
+    }
   }
 
   /**
@@ -98,13 +181,23 @@ public enum BackupManager {
   public void onShutdownEvent(ShutdownEvent shutdownEvent) {
 
     this.applicationDataDirectory = null;
+
+    // Do not leave thinned backups or restore leftovers waiting on the queue
+    SecureFiles.drainSecureDeleteQueue(SECURE_DELETE_DRAIN_SECONDS, TimeUnit.SECONDS);
   }
 
   /**
    * Get all the backups available in the cloud backup directory for the wallet id specified.
+   * The directory may only be a restore location so a catalogue is not written to it unless backups are written there.
    */
   public List<BackupSummary> getCloudBackups(WalletId walletId, File cloudBackupDirectory) {
-    return getWalletBackups(walletId, cloudBackupDirectory);
+
+    if (cloudBackupDirectory == null || !cloudBackupDirectory.exists()) {
+      // No directory - no backups
+      return Lists.newArrayList();
+    }
+
+    return getWalletBackups(walletId, getOrCreateReadOnlyBackupCatalogue(cloudBackupDirectory));
   }
 
   /**
@@ -126,53 +219,77 @@ public enum BackupManager {
     return getWalletBackups(walletId, zipBackupsDirectory);
   }
 
+  /**
+   * Get all the local backups of the wallet id specified that can be restored: the local zip backups and the snapshots
+   *
+   * @param walletId The wallet id
+   * @return The backups available, oldest first
+   */
+  public List<BackupSummary> getLocalBackups(WalletId walletId) {
+
+    List<BackupSummary> localBackups = getLocalZipBackups(walletId);
+
+    File walletRootDirectory = WalletManager.getOrCreateWalletDirectory(applicationDataDirectory, WalletManager.createWalletRoot(walletId));
+    File snapshotsDirectory = new File(getSnapshotRepositoryDirectory(walletRootDirectory), BackupRepository.SNAPSHOTS_DIRECTORY_NAME);
+    for (String snapshotName : getSnapshotBackups(walletId)) {
+      BackupSummary backupSummary = new BackupSummary(walletId, snapshotName, new File(snapshotsDirectory, snapshotName + BackupRepository.SNAPSHOT_SUFFIX));
+      try {
+        // Snapshots taken within the same second carry a suffix after the timestamp
+        backupSummary.setCreated(Dates.parseBackupDate(snapshotName.substring(0, Math.min(snapshotName.length(), 14))));
+      } catch (IllegalArgumentException e) {
+        log.warn("Ignoring snapshot '{}' with an unexpected name", snapshotName);
+        continue;
+      }
+      localBackups.add(backupSummary);
+    }
+
+    Collections.sort(localBackups, new Comparator<BackupSummary>() {
+      @Override
+      public int compare(BackupSummary o1, BackupSummary o2) {
+        return o1.getCreated().compareTo(o2.getCreated());
+      }
+    });
+
+    return localBackups;
+  }
+
   /**
    * Find the wallet backups in a directory.
-   * Wallet backups are called mbhd-[formatted wallet id]-timestamp.zip and the specified wallet id is used to subset all backups
+   * Wallet backups are called mbhd-[formatted wallet id]-timestamp.zip.aes and the specified wallet id is used to subset all backups
+   * The directory catalogue is reconciled once after initialisation and then kept up to date as backups are created and deleted
    *
    * @param walletId      The walletId to subset on
    * @param directoryName The directory to look in
-   * @return The wallet backups available
+   * @return The wallet backups available, oldest first
    */
   public List<BackupSummary> getWalletBackups(WalletId walletId, File directoryName) {
-    List<BackupSummary> walletBackups = Lists.newArrayList();
 
     if (directoryName == null || !directoryName.exists()) {
       // No directory - no backups
-      return walletBackups;
+      return Lists.newArrayList();
     }
 
-    File[] files = directoryName.listFiles();
+    return getWalletBackups(walletId, getOrCreateBackupCatalogue(directoryName, ZIP_BACKUP_PATTERN));
+  }
+
+  /**
+   * @param walletId  The walletId to subset on
+   * @param catalogue The catalogue of the directory to look in
+   * @return The wallet backups available, oldest first
+   */
+  private List<BackupSummary> getWalletBackups(WalletId walletId, BackupCatalogue catalogue) {
+    List<BackupSummary> walletBackups = Lists.newArrayList();
 
-    // Look for filenames with format "mbhd-" + [formatted wallet id ] + "-YYYYMMDDHHMMSS.aes"
-    String backupRegex = WalletManager.WALLET_DIRECTORY_PREFIX
+    String walletBackupPrefix = WalletManager.WALLET_DIRECTORY_PREFIX
             + WALLET_ID_SEPARATOR
             + walletId.toFormattedString()
-            + WALLET_ID_SEPARATOR
-            + "\\d{14}"
-            + ENCRYPTED_BACKUP_ZIP_FILE_EXTENSION_REGEX;
-
-    if (files != null) {
-      for (File file : files) {
-        if (file.isFile()) {
-          if (file.getName().matches(backupRegex)) {
-            if (file.length() > 0) {
-              BackupSummary backupSummary = new BackupSummary(walletId, file.getName(), file);
-              // Work out timestamp
-              int start = (WalletManager.MBHD_WALLET_PREFIX + WALLET_ID_SEPARATOR + WALLET_ID_SEPARATOR).length() + LENGTH_OF_FORMATTED_WALLET_ID;
-              int stop = start + 14;
-              String timeStampString = file.getName().substring(start, stop);
-              try {
-                DateTime timestamp = Dates.parseBackupDate(timeStampString);
-                backupSummary.setCreated(timestamp);
-              } catch (IllegalArgumentException e) {
-                // Serious problem if the backup format has failed
-                ExceptionHandler.handleThrowable(e);
-              }
-              walletBackups.add(backupSummary);
-            }
-          }
-        }
+            + WALLET_ID_SEPARATOR;
+
+    for (BackupCatalogue.Entry entry : catalogue.getEntries()) {
+      if (entry.getName().startsWith(walletBackupPrefix)) {
+        BackupSummary backupSummary = new BackupSummary(walletId, entry.getName(), entry.getFile());
+        backupSummary.setCreated(new DateTime(entry.getTimestamp(), DateTimeZone.UTC));
+        walletBackups.add(backupSummary);
       }
     }
 
@@ -190,55 +307,81 @@ public enum BackupManager {
     Preconditions.checkNotNull(walletId);
     Preconditions.checkNotNull(applicationDataDirectory);
 
-    // Calculate the directory the rolling backups are stored in for this wallet id
-    String rollingBackupDirectoryName = WalletManager.getOrCreateWalletDirectory(applicationDataDirectory, WalletManager.createWalletRoot(walletId)) +
-            File.separator + ROLLING_BACKUP_DIRECTORY_NAME;
-    log.debug("applicationDataDirectory = " + applicationDataDirectory);
-    log.debug("rollingBackupDirectoryName =" + rollingBackupDirectoryName);
-    File rollingBackupDirectory = new File(rollingBackupDirectoryName);
+    File rollingBackupDirectory = getRollingBackupDirectory(walletId);
 
     if (!rollingBackupDirectory.exists()) {
       // no directory - no backups
       return Lists.newArrayList();
     }
 
-    // See if there are any wallet rolling backups.
-    File[] files = rollingBackupDirectory.listFiles();
-
-    Map<Long, File> mapOfTimeToFile = Maps.newTreeMap(); // Note that this is sorted by long
-
-    // Look for file names with format "text"-YYYYMMDDHHMMSS.wallet.aes<eol> and are not empty.
-    if (files != null) {
-      for (File file : files) {
-        if (file.isFile()) {
-          if (file.getName().matches(REGEX_FOR_TIMESTAMP_AND_WALLET_AND_AES_SUFFIX)) {
-            if (file.length() > 0) {
-              // Work out timestamp
-              int start = (WalletManager.MBHD_WALLET_PREFIX + WALLET_ID_SEPARATOR).length();
-              int stop = start + 14;
-              String timeStampString = file.getName().substring(start, stop);
-              try {
-                long timestamp = Dates.parseBackupDate(timeStampString).getMillis();
-                mapOfTimeToFile.put(timestamp, file);
-              } catch (IllegalArgumentException e) {
-                // Serious problem if the backup format has failed
-                ExceptionHandler.handleThrowable(new IllegalArgumentException("Rolling backup files are in the wrong format. Error = '" + e.getMessage() + "'"));
-              }
-            }
-          }
+    BackupCatalogue catalogue = getOrCreateBackupCatalogue(rollingBackupDirectory, ROLLING_BACKUP_PATTERN);
+
+    List<File> walletBackups = Lists.newArrayList();
+    for (BackupCatalogue.Entry entry : catalogue.getEntries()) {
+      // Note that these are added in order of creation time, oldest first
+      walletBackups.add(entry.getFile());
+    }
+
+    return walletBackups;
+  }
+
+  /**
+   * @param walletId The wallet id
+   * @return The directory the rolling backups are stored in for this wallet id
+   */
+  private File getRollingBackupDirectory(WalletId walletId) {
+    return new File(WalletManager.getOrCreateWalletDirectory(applicationDataDirectory, WalletManager.createWalletRoot(walletId)), ROLLING_BACKUP_DIRECTORY_NAME);
+  }
+
+  /**
+   * Get the catalogue of a backup directory, reconciling it with the directory the first time it is used
+   *
+   * @param directory     The backup directory
+   * @param backupPattern The pattern for backup file names in the directory
+   * @return The catalogue
+   */
+  private BackupCatalogue getOrCreateBackupCatalogue(File directory, Pattern backupPattern) {
+
+    String key = directory.getAbsolutePath();
+    BackupCatalogue catalogue = backupCatalogues.get(key);
+    if (catalogue == null) {
+      synchronized (backupCatalogues) {
+        catalogue = backupCatalogues.get(key);
+        if (catalogue == null) {
+          catalogue = new BackupCatalogue(directory, backupPattern);
+          catalogue.reconcile();
+          backupCatalogues.put(key, catalogue);
         }
       }
     }
 
-    List<File> walletBackups = Lists.newArrayList();
+    return catalogue;
+  }
 
-    for (Long key : mapOfTimeToFile.keySet()) {
-      // Note that these are added in order of creation time, oldest first
-      // log.debug("Adding rolling backup '" + mapOfTimeToFile.get(key).getAbsoluteFile() + "' to rolling backup results");
-      walletBackups.add(mapOfTimeToFile.get(key));
+  /**
+   * Get the catalogue of a zip backup directory that may only be read from (it is held in memory and never written
+   * to the directory unless the directory already has a catalogue in use for writing backups), reconciling it without
+   * checksums the first time it is used
+   *
+   * @param directory The backup directory
+   * @return The catalogue
+   */
+  private BackupCatalogue getOrCreateReadOnlyBackupCatalogue(File directory) {
+
+    String key = directory.getAbsolutePath();
+    BackupCatalogue catalogue = backupCatalogues.get(key);
+    if (catalogue == null) {
+      synchronized (backupCatalogues) {
+        catalogue = readOnlyBackupCatalogues.get(key);
+        if (catalogue == null) {
+          catalogue = new BackupCatalogue(directory, ZIP_BACKUP_PATTERN, false);
+          catalogue.reconcile();
+          readOnlyBackupCatalogues.put(key, catalogue);
+        }
+      }
     }
 
-    return walletBackups;
+    return catalogue;
   }
 
   /**
@@ -285,18 +428,25 @@ public enum BackupManager {
     File encryptedAESCopy = EncryptedFileReaderWriter.makeAESEncryptedCopyAndDeleteOriginal(walletBackupFile, password);
     log.debug("Created rolling-backup AES copy successfully as file '{}'", encryptedAESCopy == null ? "null" : encryptedAESCopy.getAbsolutePath());
 
+    BackupCatalogue rollingBackupCatalogue = getOrCreateBackupCatalogue(new File(rollingBackupDirectoryName), ROLLING_BACKUP_PATTERN);
+    if (encryptedAESCopy != null) {
+      rollingBackupCatalogue.add(encryptedAESCopy);
+    }
+
     List<File> rollingBackups = getRollingBackups(walletSummary.getWalletId());
 
     // If there are more than the maximum number of rolling backups, secure delete the eldest
     if (rollingBackups.size() > MAXIMUM_NUMBER_OF_ROLLING_BACKUPS) {
       // Delete the eldest
-      SecureFiles.secureDelete(rollingBackups.get(0));
+      rollingBackupCatalogue.remove(rollingBackups.get(0));
+      SecureFiles.secureDeleteLater(rollingBackups.get(0));
     }
 
     // If there are even more than that trim off another one - over time this will gently reduce the number to the maximum
     if (rollingBackups.size() > MAXIMUM_NUMBER_OF_ROLLING_BACKUPS + 1) {
       // Delete the second eldest
-      SecureFiles.secureDelete(rollingBackups.get(1));
+      rollingBackupCatalogue.remove(rollingBackups.get(1));
+      SecureFiles.secureDeleteLater(rollingBackups.get(1));
     }
     return walletBackupFile;
   }
@@ -310,8 +460,42 @@ public enum BackupManager {
    * @return The created local backup as a file
    */
   public File createLocalBackup(WalletId walletId, CharSequence password) throws IOException {
+
+    return createBackups(walletId, password, true, false).get(0);
+  }
+
+  /**
+   * Create a cloud backup of the specified wallet id.
+   * The wallet manager is interrogated to find the physical directory where the wallet is stored.
+   * The whole directory (except the zip-backups) is then copied and zipped into a timestamped backup file
+   * This is then written to the cloud backup directories
+   *
+   * @return The created cloud backup as a file or null if nothing was generated
+   */
+  public File createCloudBackup(WalletId walletId, CharSequence password) throws IOException {
+
+    List<File> backups = createBackups(walletId, password, false, true);
+
+    return backups.isEmpty() ? null : backups.get(0);
+  }
+
+  /**
+   * Create local and/or cloud backups of the specified wallet id from a single encrypted archive.
+   * <p/>
+   * The wallet directory (except the zip-backups) is zipped and encrypted in one streaming pass so no plaintext
+   * zip is written to disk. The resulting file is then copied to any further destination.
+   *
+   * @param walletId The wallet id of the wallet to backup
+   * @param password The wallet password (used to decrypt the backup AES key)
+   * @param local    True if a local zip backup is required
+   * @param cloud    True if a cloud backup is required (ignored if no cloud backup directory is set)
+   * @return The created backups, local first
+   * @throws IOException if the wallet directory is missing or a backup could not be written
+   */
+  public List<File> createBackups(WalletId walletId, CharSequence password, boolean local, boolean cloud) throws IOException {
     Preconditions.checkNotNull(applicationDataDirectory);
     Preconditions.checkNotNull(walletId);
+    Preconditions.checkNotNull(password);
 
     // Find the wallet root directory for this wallet id
     File walletRootDirectory = WalletManager.getOrCreateWalletDirectory(applicationDataDirectory, WalletManager.createWalletRoot(walletId));
@@ -320,43 +504,236 @@ public enum BackupManager {
       throw new IOException("Directory " + walletRootDirectory + " does not exist. Cannot backup.");
     }
 
-    WalletSummary walletSummary = WalletManager.getOrCreateWalletSummary(walletRootDirectory, walletId);
+    List<File> backupDirectories = Lists.newArrayList();
+    if (local) {
+      File localBackupDirectory = new File(walletRootDirectory.getAbsoluteFile() + File.separator + LOCAL_ZIP_BACKUP_DIRECTORY_NAME);
+      backupDirectories.add(SecureFiles.verifyOrCreateDirectory(localBackupDirectory));
+    }
+    if (cloud) {
+      if (cloudBackupDirectory != null && cloudBackupDirectory.isPresent() && cloudBackupDirectory.get().exists()) {
+        backupDirectories.add(cloudBackupDirectory.get());
+      } else {
+        log.debug("No cloud backup made for wallet '" + walletId + "' as no cloudBackupDirectory is set.");
+      }
+    }
 
-    File localBackupDirectory = new File(walletRootDirectory.getAbsoluteFile() + File.separator + LOCAL_ZIP_BACKUP_DIRECTORY_NAME);
-    SecureFiles.verifyOrCreateDirectory(localBackupDirectory);
+    List<File> backups = Lists.newArrayList();
+    if (backupDirectories.isEmpty()) {
+      return backups;
+    }
+
+    WalletSummary walletSummary = WalletManager.getOrCreateWalletSummary(walletRootDirectory, walletId);
 
     String backupFilename = WalletManager.WALLET_DIRECTORY_PREFIX
             + WALLET_ID_SEPARATOR
             + walletId.toFormattedString()
             + WALLET_ID_SEPARATOR
             + Dates.formatBackupDate(Dates.nowUtc())
-            + BACKUP_ZIP_FILE_EXTENSION;
-    String localBackupFilename = localBackupDirectory.getAbsolutePath() + File.separator + backupFilename;
+            + ENCRYPTED_BACKUP_FILE_EXTENSION;
+
+    // Derive the backup key once for all destinations
+    KeyParameter backupAESKey = EncryptedFileReaderWriter.deriveBackupAESKey(password, walletSummary.getEncryptedBackupKey());
+    String keyGeneration = getKeyGeneration(walletSummary);
+
+    // Produce the encrypted archive once in the first destination
+    File firstBackup = new File(backupDirectories.get(0), backupFilename);
+    log.debug("Creating encrypted zip-backup '" + firstBackup.getAbsolutePath() + "'");
+    EncryptedFileReaderWriter.zipEncryptAndWrite(walletRootDirectory, false, backupAESKey, WalletManager.AES_INITIALISATION_VECTOR, firstBackup);
+    log.debug("Created encrypted zip-backup successfully. Size = " + firstBackup.length() + " bytes");
+    getOrCreateBackupCatalogue(backupDirectories.get(0), ZIP_BACKUP_PATTERN).add(firstBackup, keyGeneration);
+    backups.add(firstBackup);
+
+    // Fan the same artifact out to the remaining destinations
+    for (File backupDirectory : backupDirectories.subList(1, backupDirectories.size())) {
+      File copiedBackup = new File(backupDirectory, backupFilename);
+      copyBackup(firstBackup, copiedBackup);
+      log.debug("Copied encrypted zip-backup to '" + copiedBackup.getAbsolutePath() + "'");
+      getOrCreateBackupCatalogue(backupDirectory, ZIP_BACKUP_PATTERN).add(copiedBackup, keyGeneration);
+      backups.add(copiedBackup);
+    }
+
+    // Thin the backup directories
+    for (File backupDirectory : backupDirectories) {
+      thinBackupDirectory(walletId, backupDirectory);
+    }
+
+    return backups;
+  }
+
+  /**
+   * Verify the local and cloud zip backups of the specified wallet id that are new or have not been verified recently.
+   * Each backup is streamed through decryption and unzipping into a null sink so no plaintext reaches the disk.
+   * Reading each entry to its end checks its CRC, the wallet protobuf must parse and the file must still match its
+   * catalogued checksum. The outcome is recorded in the backup catalogue.
+   * <p/>
+   * The backup AES key survives a change of wallet password but the wallet file inside the backup does not, so the
+   * wallet is only decrypted for backups written under the current password. Older backups (and those of unknown
+   * generation) are verified through the AES, zip and CRC layers only.
+   *
+   * @param walletId            The wallet id of the wallet whose backups are to be verified
+   * @param password            The wallet password (used to decrypt the backup AES key and the wallet)
+   * @param reverifyAfterMillis Backups last verified longer ago than this are verified again
+   * @param bytesPerSecond      The maximum rate at which backups are read
+   * @return The number of backups that failed verification
+   */
+  public int verifyZipBackups(WalletId walletId, CharSequence password, long reverifyAfterMillis, long bytesPerSecond) {
+    Preconditions.checkNotNull(applicationDataDirectory);
+    Preconditions.checkNotNull(walletId);
+    Preconditions.checkNotNull(password);
+
+    File walletRootDirectory = WalletManager.getOrCreateWalletDirectory(applicationDataDirectory, WalletManager.createWalletRoot(walletId));
+
+    List<File> backupDirectories = Lists.newArrayList();
+    File localBackupDirectory = new File(walletRootDirectory, LOCAL_ZIP_BACKUP_DIRECTORY_NAME);
+    if (localBackupDirectory.exists()) {
+      backupDirectories.add(localBackupDirectory);
+    }
+    if (cloudBackupDirectory != null && cloudBackupDirectory.isPresent() && cloudBackupDirectory.get().exists()) {
+      backupDirectories.add(cloudBackupDirectory.get());
+    }
 
-    log.debug("Creating local zip-backup '" + localBackupFilename + "'");
-    ZipFiles.zipFolder(walletRootDirectory.getAbsolutePath(), localBackupFilename, false);
-    File localBackupEncryptedFilename = EncryptedFileReaderWriter.makeBackupAESEncryptedCopyAndDeleteOriginal(new File(localBackupFilename), (String) password, walletSummary.getEncryptedBackupKey());
-    log.debug("Created encrypted local zip-backup successfully. Size = " + (localBackupEncryptedFilename).length() + " bytes");
+    String walletBackupPrefix = WalletManager.WALLET_DIRECTORY_PREFIX
+            + WALLET_ID_SEPARATOR
+            + walletId.toFormattedString()
+            + WALLET_ID_SEPARATOR;
+    long reverifyBefore = System.currentTimeMillis() - reverifyAfterMillis;
+
+    // The keys are derived at most once per run, across all backup directories
+    KeyParameter backupAESKey = null;
+    KeyParameter walletKey = null;
+    String keyGeneration = null;
+    int failures = 0;
+
+    for (File backupDirectory : backupDirectories) {
+      BackupCatalogue catalogue = getOrCreateBackupCatalogue(backupDirectory, ZIP_BACKUP_PATTERN);
+      for (BackupCatalogue.Entry entry : catalogue.getEntries()) {
+        if (!entry.getName().startsWith(walletBackupPrefix) || (entry.isVerified() && entry.getVerified() > reverifyBefore)) {
+          continue;
+        }
 
-    // Thin the local backup directory
-    thinBackupDirectory(walletId, localBackupDirectory);
+        // Only derive the keys when there is something to verify
+        if (backupAESKey == null) {
+          WalletSummary walletSummary = WalletManager.getOrCreateWalletSummary(walletRootDirectory, walletId);
+          backupAESKey = EncryptedFileReaderWriter.deriveBackupAESKey(password, walletSummary.getEncryptedBackupKey());
+          walletKey = WalletManager.deriveWalletFileKey(password);
+          keyGeneration = getKeyGeneration(walletSummary);
+        }
+
+        // The current wallet key can only open a wallet written under the current password
+        Optional<KeyParameter> entryWalletKey = keyGeneration.equals(entry.getKeyGeneration()) ? Optional.of(walletKey) : Optional.<KeyParameter>absent();
+
+        String checksum = entry.getChecksum();
+        boolean passed;
+        try {
+          checksum = verifyZipBackup(entry.getFile(), backupAESKey, entryWalletKey, bytesPerSecond);
+          passed = checksum.equals(entry.getChecksum());
+          if (!passed) {
+            log.warn("Backup '{}' has changed since it was written", entry.getFile().getAbsolutePath());
+          }
+        } catch (InterruptedIOException e) {
+          // Leave the remaining backups for the next verification
+          Thread.currentThread().interrupt();
+          return failures;
+        } catch (IOException | RuntimeException e) {
+          log.warn("Backup '{}' failed verification: {}", entry.getFile().getAbsolutePath(), e.getMessage());
+          passed = false;
+        }
 
-    return localBackupEncryptedFilename;
+        catalogue.recordVerification(entry.getFile(), checksum, passed);
+        if (!passed) {
+          failures++;
+        } else {
+          log.debug("Verified backup '{}'", entry.getFile().getAbsolutePath());
+        }
+      }
+    }
+
+    return failures;
   }
 
   /**
-   * Create a cloud backup of the specified wallet id.
-   * The wallet manager is interrogated to find the physical directory where the wallet is stored.
-   * The whole directory (except the zip-backups) is then copied and zipped into a timestamped backup file
-   * This is then written to the cloud backup directories
+   * @param walletSummary The wallet summary
+   * @return Identifies the current wallet password without revealing anything about it (the encrypted backup key is
+   * re-encrypted on each password change and is already stored in the clear in the wallet summary)
+   */
+  static String getKeyGeneration(WalletSummary walletSummary) {
+
+    byte[] encryptedBackupKey = walletSummary.getEncryptedBackupKey();
+    if (encryptedBackupKey == null) {
+      return "";
+    }
+
+    return Hashing.sha256().hashBytes(encryptedBackupKey).toString().substring(0, 16);
+  }
+
+  /**
+   * @param backupFile     The encrypted zip backup
+   * @param backupAESKey   The backup AES key
+   * @param walletKey      The key for the wallet file within the backup (absent to check only that it is present and intact)
+   * @param bytesPerSecond The maximum rate at which the backup is read
+   * @return The SHA-256 of the backup file as hex
+   * @throws IOException if the backup cannot be decrypted or unzipped or does not hold a parseable wallet
+   */
+  private String verifyZipBackup(File backupFile, KeyParameter backupAESKey, Optional<KeyParameter> walletKey, long bytesPerSecond) throws IOException {
+
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException("SHA-256 is not available", e);
+    }
+
+    boolean walletFound = false;
+    try (InputStream in = new ThrottledInputStream(new FileInputStream(backupFile), bytesPerSecond);
+         AESDecryptingInputStream decrypted = new AESDecryptingInputStream(new DigestInputStream(new BufferedInputStream(in), digest), backupAESKey, WalletManager.AES_INITIALISATION_VECTOR);
+         ZipInputStream zis = new ZipInputStream(decrypted)) {
+
+      ZipEntry entry;
+      while ((entry = zis.getNextEntry()) != null) {
+        if (WALLET_BACKUP_ENTRY_NAME.equals(entry.getName()) && walletKey.isPresent()) {
+          byte[] decryptedWallet = AESUtils.decrypt(ByteStreams.toByteArray(zis), walletKey.get(), WalletManager.AES_INITIALISATION_VECTOR);
+          if (!WalletManager.isParseableWallet(decryptedWallet)) {
+            throw new IOException("The wallet does not parse");
+          }
+          walletFound = true;
+        } else if (WALLET_BACKUP_ENTRY_NAME.equals(entry.getName())) {
+          // Written under an earlier password so only the CRC of the encrypted wallet can be checked
+          ByteStreams.copy(zis, ByteStreams.nullOutputStream());
+          walletFound = true;
+        } else {
+          // Reading to the end of the entry checks its CRC
+          ByteStreams.copy(zis, ByteStreams.nullOutputStream());
+        }
+      }
+
+      // Read the central directory and final padded block so the whole file is decrypted and digested
+      ByteStreams.copy(decrypted, ByteStreams.nullOutputStream());
+    }
+
+    if (!walletFound) {
+      throw new IOException("The backup does not contain a wallet");
+    }
+
+    return BaseEncoding.base16().lowerCase().encode(digest.digest());
+  }
+
+  /**
+   * Create a deduplicated snapshot backup of the specified wallet id.
+   * Only content not already held in the wallet's snapshot repository is encrypted and written, so a snapshot
+   * of a wallet where one file changed costs roughly the size of that file. Snapshots stand in for the local zip
+   * backups between full ones and are listed for restore by {@link #getLocalBackups(WalletId)}.
+   * The oldest snapshots beyond MAXIMUM_NUMBER_OF_SNAPSHOT_BACKUPS are pruned.
    *
-   * @return The created cloud backup as a file or null if nothing was generated
+   * @param walletId The wallet id of the wallet to backup
+   * @param password The wallet password (used to decrypt the backup AES key)
+   * @return The name of the created snapshot
+   * @throws IOException if the wallet directory is missing or the snapshot could not be written
    */
-  public File createCloudBackup(WalletId walletId, CharSequence password) throws IOException {
+  public String createSnapshotBackup(WalletId walletId, CharSequence password) throws IOException {
     Preconditions.checkNotNull(applicationDataDirectory);
     Preconditions.checkNotNull(walletId);
+    Preconditions.checkNotNull(password);
 
-    // Find the wallet root directory for this wallet id
     File walletRootDirectory = WalletManager.getOrCreateWalletDirectory(applicationDataDirectory, WalletManager.createWalletRoot(walletId));
 
     if (!walletRootDirectory.exists()) {
@@ -364,36 +741,188 @@ public enum BackupManager {
     }
 
     WalletSummary walletSummary = WalletManager.getOrCreateWalletSummary(walletRootDirectory, walletId);
+    KeyParameter backupAESKey = EncryptedFileReaderWriter.deriveBackupAESKey(password, walletSummary.getEncryptedBackupKey());
 
+    BackupRepository repository = new BackupRepository(getSnapshotRepositoryDirectory(walletRootDirectory), backupAESKey);
+    String snapshotName = repository.createSnapshot(walletRootDirectory, newWalletBackupFilter(), Dates.formatBackupDate(Dates.nowUtc()));
 
-    String backupFilename = WalletManager.WALLET_DIRECTORY_PREFIX
-            + WALLET_ID_SEPARATOR
-            + walletId.toFormattedString()
-            + WALLET_ID_SEPARATOR
-            + Dates.formatBackupDate(Dates.nowUtc())
-            + BACKUP_ZIP_FILE_EXTENSION;
+    repository.prune(MAXIMUM_NUMBER_OF_SNAPSHOT_BACKUPS);
 
-    if (cloudBackupDirectory.isPresent() && cloudBackupDirectory.get().exists()) {
-      String cloudBackupFilename = cloudBackupDirectory.get().getAbsolutePath() + File.separator + backupFilename;
-      log.debug("Creating cloud zip-backup '" + cloudBackupFilename + "'");
-      ZipFiles.zipFolder(walletRootDirectory.getAbsolutePath(), cloudBackupFilename, false);
-      File cloudBackupEncryptedFilename = EncryptedFileReaderWriter.makeBackupAESEncryptedCopyAndDeleteOriginal(new File(cloudBackupFilename), (String) password, walletSummary.getEncryptedBackupKey());
+    return snapshotName;
+  }
 
-      log.debug("Created encrypted cloud zip-backup successfully. Size = " + (cloudBackupEncryptedFilename).length() + " bytes");
+  /**
+   * Get the snapshot backups of the specified wallet id
+   *
+   * @param walletId The wallet id
+   * @return The snapshot names, oldest first
+   */
+  public List<String> getSnapshotBackups(WalletId walletId) {
+    Preconditions.checkNotNull(applicationDataDirectory);
+    Preconditions.checkNotNull(walletId);
 
-      // Thin the local backup directory
-      thinBackupDirectory(walletId, cloudBackupDirectory.get());
+    File walletRootDirectory = WalletManager.getOrCreateWalletDirectory(applicationDataDirectory, WalletManager.createWalletRoot(walletId));
 
-      return cloudBackupEncryptedFilename;
-    } else {
-      log.debug("No cloud backup made for wallet '" + walletId + "' as no cloudBackupDirectory is set.");
-      return null;
+    return BackupRepository.getSnapshots(getSnapshotRepositoryDirectory(walletRootDirectory));
+  }
+
+  /**
+   * Check that a snapshot backup can be restored
+   *
+   * @param walletId     The wallet id
+   * @param password     The wallet password (used to decrypt the backup AES key)
+   * @param snapshotName The snapshot to verify
+   * @return True if every part of the snapshot is present and intact
+   */
+  public boolean verifySnapshotBackup(WalletId walletId, CharSequence password, String snapshotName) {
+    Preconditions.checkNotNull(applicationDataDirectory);
+    Preconditions.checkNotNull(walletId);
+
+    File walletRootDirectory = WalletManager.getOrCreateWalletDirectory(applicationDataDirectory, WalletManager.createWalletRoot(walletId));
+    WalletSummary walletSummary = WalletManager.getOrCreateWalletSummary(walletRootDirectory, walletId);
+    KeyParameter backupAESKey = EncryptedFileReaderWriter.deriveBackupAESKey(password, walletSummary.getEncryptedBackupKey());
+
+    return new BackupRepository(getSnapshotRepositoryDirectory(walletRootDirectory), backupAESKey).verify(snapshotName);
+  }
+
+  /**
+   * Restore a snapshot backup of the wallet root directory
+   * The seed phrase is used (as for zip backups) so a forgotten password does not prevent recovery.
+   * The snapshot is restored into a staging directory beside the wallet root which then replaces it in the same way
+   * as a zip backup, so a snapshot that cannot be restored leaves the wallet root untouched.
+   *
+   * @param walletId     The wallet id
+   * @param snapshotName The snapshot to restore
+   * @param seedPhrase   The wallet seed phrase
+   * @throws IOException if the snapshot is missing or corrupt
+   */
+  public void restoreSnapshotBackup(WalletId walletId, String snapshotName, List<String> seedPhrase) throws IOException {
+    Preconditions.checkNotNull(applicationDataDirectory);
+    Preconditions.checkNotNull(walletId);
+    Preconditions.checkNotNull(seedPhrase);
+
+    SeedPhraseGenerator seedPhraseGenerator = new Bip39SeedPhraseGenerator();
+    byte[] seed = seedPhraseGenerator.convertToSeed(seedPhrase);
+
+    File walletRootDirectory = WalletManager.getOrCreateWalletDirectory(applicationDataDirectory, WalletManager.createWalletRoot(walletId));
+
+    // Stage beside the wallet root so the final rename stays on one file system
+    File stagingDirectory = new File(walletRootDirectory.getParentFile(), walletRootDirectory.getName() + "." + UUID.randomUUID() + RESTORE_DIRECTORY_SUFFIX);
+    try {
+      KeyParameter seedDerivedAESKey = org.multibit.hd.core.crypto.AESUtils.createAESKey(seed, WalletManager.SCRYPT_SALT);
+      new BackupRepository(getSnapshotRepositoryDirectory(walletRootDirectory), seedDerivedAESKey).restore(snapshotName, stagingDirectory);
+
+      // Swap the restored directory in, keeping only what a snapshot never holds (such as the snapshots themselves)
+      // and the rolling backups so that files written since the snapshot do not linger beside the restored ones
+      replaceDirectory(walletRootDirectory, stagingDirectory, newSnapshotCarryOverFilter());
+
+    } catch (Exception e) {
+      if (stagingDirectory.exists()) {
+        secureDeleteDirectoryLater(stagingDirectory);
+      }
+      throw new EncryptedFileReaderWriterException("Cannot restore snapshot '" + snapshotName + "'", e);
+    }
+
+    forgetBackupCatalogues(walletRootDirectory);
+  }
+
+  /**
+   * The backup catalogues within a wallet root may have been replaced by a restore so they are read afresh on next use
+   *
+   * @param walletRootDirectory The wallet root directory
+   */
+  private void forgetBackupCatalogues(File walletRootDirectory) {
+
+    String walletRootPath = walletRootDirectory.getAbsolutePath() + File.separator;
+    for (String catalogueDirectory : backupCatalogues.keySet()) {
+      if (catalogueDirectory.startsWith(walletRootPath)) {
+        backupCatalogues.remove(catalogueDirectory);
+      }
+    }
+
+  }
+
+  /**
+   * @param walletRootDirectory The wallet root directory
+   * @return The directory holding the snapshot repository for the wallet
+   */
+  private File getSnapshotRepositoryDirectory(File walletRootDirectory) {
+    return new File(walletRootDirectory, SNAPSHOT_BACKUP_DIRECTORY_NAME);
+  }
+
+  /**
+   * @return A filter selecting what to keep from a wallet root replaced by a snapshot: anything a snapshot does not
+   * hold (the zip backups, snapshots and block store) and the rolling backups
+   */
+  private FileFilter newSnapshotCarryOverFilter() {
+
+    final FileFilter walletBackupFilter = newWalletBackupFilter();
+
+    return new FileFilter() {
+      @Override
+      public boolean accept(File file) {
+        if (ROLLING_BACKUP_DIRECTORY_NAME.equals(file.getName()) || ROLLING_BACKUP_DIRECTORY_NAME.equals(file.getParentFile().getName())) {
+          return true;
+        }
+        return !walletBackupFilter.accept(file) && !SecureFiles.isPendingDelete(file);
+      }
+    };
+  }
+
+  /**
+   * @return A filter selecting the same wallet files as a zip backup (no block store, backups, backup catalogues, temporary files or files pending secure delete)
+   */
+  private FileFilter newWalletBackupFilter() {
+    return new FileFilter() {
+      @Override
+      public boolean accept(File file) {
+        String name = file.getName();
+        if (file.isDirectory()) {
+          return !LOCAL_ZIP_BACKUP_DIRECTORY_NAME.equals(name) && !SNAPSHOT_BACKUP_DIRECTORY_NAME.equals(name);
+        }
+        return !name.endsWith(InstallationManager.MBHD_PREFIX + InstallationManager.SPV_BLOCKCHAIN_SUFFIX)
+          && !name.endsWith(".tmp")
+          && !name.startsWith(BackupCatalogue.CATALOGUE_FILE_NAME)
+          && !SecureFiles.isPendingDelete(file);
+      }
+    };
+  }
+
+  /**
+   * Copy an encrypted backup using a channel transfer through a temporary file so a partial copy is never visible
+   *
+   * @param source      The encrypted backup
+   * @param destination The copy to create
+   * @throws IOException if the copy fails
+   */
+  private void copyBackup(File source, File destination) throws IOException {
+
+    File temporaryFile = new File(destination.getAbsolutePath() + ".tmp");
+    try {
+      try (FileInputStream fis = new FileInputStream(source); FileOutputStream fos = new FileOutputStream(temporaryFile)) {
+        FileChannel in = fis.getChannel();
+        FileChannel out = fos.getChannel();
+        long size = in.size();
+        long position = 0;
+        while (position < size) {
+          position += in.transferTo(position, size - position, out);
+        }
+        out.force(true);
+      }
+      Files.replaceAtomically(temporaryFile, destination);
+    } finally {
+      if (temporaryFile.exists() && !temporaryFile.delete()) {
+        log.warn("Could not delete temporary file '{}'", temporaryFile.getAbsolutePath());
+      }
     }
   }
 
   /**
    * Load a rolling backup file.
    * A BackupWalletLoadedEvent is emitted
+   * <p/>
+   * The wallet key is derived once and the candidates are decrypted and header checked concurrently. The newest
+   * candidate that passes is then fully parsed, falling back to older candidates if that fails.
    *
    * @param walletId  The walletId of the wallet
    * @param password  The password used to decrypt the encrypted wallet backup
@@ -401,7 +930,7 @@ public enum BackupManager {
    */
   public Wallet loadRollingBackup(final WalletId walletId, CharSequence password) throws WalletLoadException {
     // Get the available rolling backups
-    List<File> rollingBackupFiles = getRollingBackups(walletId);
+    final List<File> rollingBackupFiles = getRollingBackups(walletId);
 
     if (rollingBackupFiles.isEmpty()) {
       // Throw WalletLoadException - no wallet could be loaded
@@ -410,17 +939,53 @@ public enum BackupManager {
       Wallet wallet = null;
       File fileLoaded = null;
 
-      // Try loading each rolling backup in turn, newest first
-      for (int i = rollingBackupFiles.size(); i > 0; i--) {
-        try {
-          wallet = WalletManager.loadWalletFromFile(rollingBackupFiles.get(i - 1), password);
-          log.debug("Wallet at read in from rolling backup file:\n" + wallet.toString());
-          fileLoaded = rollingBackupFiles.get(i - 1);
-          break;
-        } catch (Exception e) {
-          // Log the initial error (and then carry on to the next rolling backup
-          log.error("Could not load rolling backup " + rollingBackupFiles.get(i - 1).getAbsolutePath() + ", error was '" + e.getClass().getCanonicalName() + " " + e.getMessage() + "'");
+      // Derive the scrypt key once for all candidates
+      final KeyParameter walletFileKey = WalletManager.deriveWalletFileKey(password);
+
+      ListeningExecutorService recoveryExecutorService = SafeExecutors.newFixedThreadPool(
+        Math.min(rollingBackupFiles.size(), MAXIMUM_NUMBER_OF_RECOVERY_THREADS),
+        "rolling-backup-recovery"
+      );
+      List<ListenableFuture<byte[]>> candidates = Lists.newArrayList();
+      try {
+        // Validate the candidates newest first so the most likely choice is ready soonest
+        for (int i = rollingBackupFiles.size(); i > 0; i--) {
+          final File rollingBackupFile = rollingBackupFiles.get(i - 1);
+          candidates.add(recoveryExecutorService.submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+              byte[] decryptedBytes = WalletManager.decryptWalletFile(rollingBackupFile, walletFileKey);
+              if (!WalletManager.hasWalletHeader(decryptedBytes)) {
+                throw new WalletLoadException("Not a wallet for the current network");
+              }
+              return decryptedBytes;
+            }
+          }));
+        }
+
+        for (int i = 0; i < candidates.size(); i++) {
+          File rollingBackupFile = rollingBackupFiles.get(rollingBackupFiles.size() - 1 - i);
+          try {
+            wallet = WalletManager.parseWallet(candidates.get(i).get());
+            log.debug("Wallet at read in from rolling backup file:\n" + wallet.toString());
+            fileLoaded = rollingBackupFile;
+            break;
+          } catch (ExecutionException e) {
+            log.error("Could not load rolling backup " + rollingBackupFile.getAbsolutePath() + ", error was '" + e.getCause().getClass().getCanonicalName() + " " + e.getCause().getMessage() + "'");
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WalletLoadException("Interrupted whilst loading rolling backups", e);
+          } catch (Exception e) {
+            // Log the initial error (and then carry on to the next rolling backup
+            log.error("Could not load rolling backup " + rollingBackupFile.getAbsolutePath() + ", error was '" + e.getClass().getCanonicalName() + " " + e.getMessage() + "'");
+          }
         }
+      } finally {
+        // Older candidates are no longer needed
+        for (ListenableFuture<byte[]> candidate : candidates) {
+          candidate.cancel(true);
+        }
+        recoveryExecutorService.shutdownNow();
       }
 
       if (wallet == null) {
@@ -448,13 +1013,25 @@ public enum BackupManager {
   }
 
   /**
-   * Load a zip backup file, copying all the backup files to the appropriate wallet root directory
+   * Load a zip backup file (or a snapshot listed by getLocalBackups), copying all the backup files to the appropriate wallet root directory
+   * The backup is decrypted and unzipped as it is read into a staging directory beside the wallet root so that
+   * no plaintext zip is written and memory use does not depend on the backup size. The staging directory then
+   * replaces the wallet root and files that are not in the backup (such as the zip backups and block store) are
+   * carried over. A backup that cannot be restored leaves the wallet root untouched.
    */
   public WalletId loadZipBackup(File backupFileToLoad, List<String> seedPhrase) throws IOException {
 
     SeedPhraseGenerator seedPhraseGenerator = new Bip39SeedPhraseGenerator();
     byte[] seed = seedPhraseGenerator.convertToSeed(seedPhrase);
 
+    // Snapshots listed by getLocalBackups are restored from the wallet's snapshot repository
+    if (backupFileToLoad.getName().endsWith(BackupRepository.SNAPSHOT_SUFFIX)) {
+      WalletId walletId = new WalletId(seed);
+      String snapshotName = backupFileToLoad.getName().substring(0, backupFileToLoad.getName().length() - BackupRepository.SNAPSHOT_SUFFIX.length());
+      restoreSnapshotBackup(walletId, snapshotName, seedPhrase);
+      return walletId;
+    }
+
     // Work out the walletId of the backup file being loaded
     String backupFilename = backupFileToLoad.getName();
 
@@ -470,37 +1047,158 @@ public enum BackupManager {
     }
     WalletId walletId = new WalletId(walletRoot);
 
-    // Make a backup of all the current file in the wallet root directory if it exists
     File walletRootDirectory = WalletManager.getOrCreateWalletDirectory(applicationDataDirectory, WalletManager.createWalletRoot(walletId));
 
-    File temporaryFile = null;
+    // Stage beside the wallet root so the final rename stays on one file system
+    File stagingDirectory = new File(walletRootDirectory.getParentFile(), walletRootDirectory.getName() + "." + UUID.randomUUID() + RESTORE_DIRECTORY_SUFFIX);
     try {
-      // Read the encrypted file in.
-      byte[] encryptedBytes = org.multibit.hd.brit.utils.FileUtils.readFile(new File(backupFileToLoad.getAbsolutePath()));
-
       KeyParameter seedDerivedAESKey = org.multibit.hd.core.crypto.AESUtils.createAESKey(seed, WalletManager.SCRYPT_SALT);
 
-      // Decrypt the backup bytes
-      byte[] decryptedBytes = AESUtils.decrypt(encryptedBytes, seedDerivedAESKey, WalletManager.AES_INITIALISATION_VECTOR);
-
-      File tempDirectory = FileUtils.makeRandomTemporaryDirectory();
-      temporaryFile = File.createTempFile("backup", "zip", tempDirectory);
-      FileOutputStream outputFileStream = new FileOutputStream(temporaryFile);
-      try {
-        FileUtils.writeFile(new ByteArrayInputStream(decryptedBytes), outputFileStream);
-      } finally {
-        outputFileStream.close();
+      try (InputStream decryptedStream = new AESDecryptingInputStream(
+        new BufferedInputStream(new FileInputStream(backupFileToLoad), EncryptedFileReaderWriter.STREAM_BUFFER_SIZE),
+        seedDerivedAESKey,
+        WalletManager.AES_INITIALISATION_VECTOR
+      )) {
+        ZipFiles.unzip(decryptedStream, stagingDirectory);
+        // Read the final padded block so a truncated backup is rejected
+        ByteStreams.copy(decryptedStream, ByteStreams.nullOutputStream());
       }
 
-      // Unzip the backup into the wallet root directory - this overwrites files if already present (hence the backup just done)
-      ZipFiles.unzip(temporaryFile.getAbsolutePath(), walletRootDirectory.getAbsolutePath());
+      // Swap the restored directory in, keeping whatever the backup does not replace
+      replaceDirectory(walletRootDirectory, stagingDirectory, ALL_FILES);
 
-      return walletId;
     } catch (Exception e) {
+      if (stagingDirectory.exists()) {
+        secureDeleteDirectoryLater(stagingDirectory);
+      }
       throw new EncryptedFileReaderWriterException("Cannot read and decrypt the backup file '" + backupFileToLoad.getAbsolutePath() + "'", e);
-    } finally {
-      if (temporaryFile != null) {
-        SecureFiles.secureDelete(temporaryFile);
+    }
+
+    forgetBackupCatalogues(walletRootDirectory);
+
+    return walletId;
+  }
+
+  /**
+   * Replace a directory with another using renames so a failed replacement leaves the original in place
+   * Anything selected in the original that the replacement does not contain is then carried over and the rest of
+   * the original is secure deleted in the background
+   *
+   * @param directory       The directory to replace
+   * @param replacement     The directory to take its place (on the same file system)
+   * @param carryOverFilter The files and directories in the original that may be carried over
+   * @throws IOException if the replacement could not be made (the original directory is left in place)
+   */
+  private void replaceDirectory(File directory, File replacement, FileFilter carryOverFilter) throws IOException {
+
+    File replacedDirectory = new File(directory.getParentFile(), directory.getName() + "." + UUID.randomUUID() + REPLACED_DIRECTORY_SUFFIX);
+
+    if (directory.exists() && !directory.renameTo(replacedDirectory)) {
+      throw new IOException("Could not move '" + directory.getAbsolutePath() + "' aside");
+    }
+
+    if (!replacement.renameTo(directory)) {
+      // Put the original back
+      if (replacedDirectory.exists() && !replacedDirectory.renameTo(directory)) {
+        log.error("Could not restore '{}' from '{}'", directory.getAbsolutePath(), replacedDirectory.getAbsolutePath());
+      }
+      throw new IOException("Could not move '" + replacement.getAbsolutePath() + "' into place");
+    }
+
+    if (!replacedDirectory.exists()) {
+      return;
+    }
+
+    if (carryOver(replacedDirectory, directory, carryOverFilter)) {
+      secureDeleteDirectoryLater(replacedDirectory);
+    } else {
+      // Never delete something that could not be carried over
+      log.warn("Some files could not be carried over. They remain in '{}'", replacedDirectory.getAbsolutePath());
+    }
+  }
+
+  /**
+   * Move the files and directories in the source that are absent from the target into the target
+   * Directories present in both are merged so that, for example, newer rolling backups are kept
+   *
+   * @param source The directory to move from
+   * @param target The directory to move into
+   * @param filter The files and directories that may be moved
+   * @return True if everything selected and absent from the target was moved
+   */
+  private boolean carryOver(File source, File target, FileFilter filter) {
+
+    File[] files = source.listFiles(filter);
+    if (files == null) {
+      return true;
+    }
+
+    boolean allMoved = true;
+    for (File file : files) {
+      File targetFile = new File(target, file.getName());
+      if (!targetFile.exists()) {
+        if (!file.renameTo(targetFile)) {
+          log.warn("Could not move '{}' to '{}'", file.getAbsolutePath(), targetFile.getAbsolutePath());
+          allMoved = false;
+        }
+      } else if (file.isDirectory() && targetFile.isDirectory()) {
+        allMoved &= carryOver(file, targetFile, filter);
+      }
+    }
+
+    return allMoved;
+  }
+
+  /**
+   * Secure delete every file in a directory in the background, removing the emptied directories afterwards
+   *
+   * @param directory The directory to delete
+   */
+  private void secureDeleteDirectoryLater(final File directory) {
+
+    List<File> files = Lists.newArrayList();
+    final List<File> directories = Lists.newArrayList();
+    collectFiles(directory, files, directories);
+
+    Runnable removeDirectories = new Runnable() {
+      @Override
+      public void run() {
+        // Deepest first
+        for (File emptyDirectory : Lists.reverse(directories)) {
+          if (!emptyDirectory.delete()) {
+            log.warn("Could not remove directory '{}'", emptyDirectory.getAbsolutePath());
+          }
+        }
+      }
+    };
+
+    ListenableFuture<Long> lastDelete = Futures.immediateFuture(0L);
+    for (File file : files) {
+      lastDelete = SecureFiles.secureDeleteLater(file);
+    }
+
+    // Deletes run in order so the directories are empty once the last one completes
+    lastDelete.addListener(removeDirectories, MoreExecutors.sameThreadExecutor());
+  }
+
+  /**
+   * @param directory   The directory to walk
+   * @param files       The files found
+   * @param directories The directories found, parents before children
+   */
+  private void collectFiles(File directory, List<File> files, List<File> directories) {
+
+    directories.add(directory);
+
+    File[] children = directory.listFiles();
+    if (children == null) {
+      return;
+    }
+    for (File child : children) {
+      if (child.isDirectory()) {
+        collectFiles(child, files, directories);
+      } else {
+        files.add(child);
       }
     }
   }
@@ -514,15 +1212,12 @@ public enum BackupManager {
    * @param backupDirectory the directory to thin
    */
   void thinBackupDirectory(WalletId walletId, File backupDirectory) {
-    if (dateFormat == null) {
-      dateFormat = new SimpleDateFormat(BACKUP_TIMESTAMP_SUFFIX_FORMAT);
-    }
 
     if (walletId == null || backupDirectory == null) {
       return;
     }
 
-    // Find out how many wallet backups there are.
+    // Find out how many wallet backups there are (oldest first)
     List<BackupSummary> backups = getWalletBackups(walletId, backupDirectory);
 
     if (backups.size() < MAXIMUM_NUMBER_OF_ZIP_BACKUPS) {
@@ -530,34 +1225,10 @@ public enum BackupManager {
       return;
     }
 
-    // Work out the date the backup was made for each of the wallet.
-    // This is done using the timestamp rather than the write time of the file.
-    // A typical backup filename is: mbhd-0da4e1dc-3a1726d7-5456cb44-f474e117-285799bb-20140520110455.zip.aes
-    // Constructed of :
-    // 5 chars "mbhd-"
-    // 44 chars of walletId
-    // 1 char separator
-    // 14 chars of timestamp
-    // 8 chars of filetype suffix
-    Map<File, Date> mapOfFileToBackupTimes = new HashMap<>();
-    for (int i = 0; i < backups.size(); i++) {
-      String filename = backups.get(i).getName();
-      if (filename.length() > 71) {
-        int startOfTimestamp = filename.length() - BACKUP_TIMESTAMP_SUFFIX_FORMAT.length() - ENCRYPTED_BACKUP_FILE_EXTENSION.length();
-        String timestampText = filename.substring(startOfTimestamp, startOfTimestamp + BACKUP_TIMESTAMP_SUFFIX_FORMAT.length());
-        try {
-          Date parsedTimestamp = dateFormat.parse(timestampText);
-          mapOfFileToBackupTimes.put(backups.get(i).getFile(), parsedTimestamp);
-        } catch (ParseException pe) {
-          // Cannot parse text - may be some other type of file the user has put in the directory.
-          log.debug("For wallet '" + filename + " could not parse the timestamp of '" + timestampText + "'.");
-        }
-      }
-    }
-
     // See which wallet is most quickly replaced by another backup - this will be thinned.
+    // The created date comes from the catalogued timestamp rather than the write time of the file.
     int walletBackupToDeleteIndex = -1; // Not set yet.
-    long walletBackupToDeleteReplacementTimeMillis = Integer.MAX_VALUE; // How quickly the wallet was replaced by a later one.
+    long walletBackupToDeleteReplacementTimeMillis = Long.MAX_VALUE; // How quickly the wallet was replaced by a later one.
 
     for (int i = 0; i < backups.size(); i++) {
       if ((i < NUMBER_OF_FIRST_WALLET_ZIP_BACKUPS_TO_ALWAYS_KEEP)
@@ -565,10 +1236,10 @@ public enum BackupManager {
         // Keep the very first and last wallets always.
       } else {
         // Work out how quickly the wallet is replaced by the next backup.
-        Date thisWalletTimestamp = mapOfFileToBackupTimes.get(backups.get(i).getFile());
-        Date nextWalletTimestamp = mapOfFileToBackupTimes.get(backups.get(i + 1).getFile());
+        DateTime thisWalletTimestamp = backups.get(i).getCreated();
+        DateTime nextWalletTimestamp = backups.get(i + 1).getCreated();
         if (thisWalletTimestamp != null && nextWalletTimestamp != null) {
-          long deltaTimeMillis = nextWalletTimestamp.getTime() - thisWalletTimestamp.getTime();
+          long deltaTimeMillis = nextWalletTimestamp.getMillis() - thisWalletTimestamp.getMillis();
           if (deltaTimeMillis < walletBackupToDeleteReplacementTimeMillis) {
             // This is the best candidate for deletion so far.
             walletBackupToDeleteIndex = i;
@@ -579,14 +1250,11 @@ public enum BackupManager {
     }
 
     if (walletBackupToDeleteIndex > -1) {
-      try {
-        // Secure delete the chosen backup wallet.
-        log.debug("To save space, secure deleting backup wallet '"
-                + backups.get(walletBackupToDeleteIndex).getFile().getAbsolutePath() + "'.");
-        SecureFiles.secureDelete(backups.get(walletBackupToDeleteIndex).getFile());
-      } catch (IOException ioe) {
-        log.error(ioe.getClass().getName() + " " + ioe.getMessage());
-      }
+      // Secure delete the chosen backup wallet.
+      File walletBackupToDelete = backups.get(walletBackupToDeleteIndex).getFile();
+      log.debug("To save space, secure deleting backup wallet '" + walletBackupToDelete.getAbsolutePath() + "'.");
+      getOrCreateBackupCatalogue(backupDirectory, ZIP_BACKUP_PATTERN).remove(walletBackupToDelete);
+      SecureFiles.secureDeleteLater(walletBackupToDelete);
     }
   }
 
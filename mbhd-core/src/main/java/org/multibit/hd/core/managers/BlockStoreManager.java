@@ -1,16 +1,16 @@
 package org.multibit.hd.core.managers;
 
-import com.google.bitcoin.core.CheckpointManager;
 import com.google.bitcoin.core.NetworkParameters;
+import com.google.bitcoin.core.StoredBlock;
 import com.google.bitcoin.store.BlockStore;
 import com.google.bitcoin.store.BlockStoreException;
 import com.google.bitcoin.store.SPVBlockStore;
 import com.google.common.base.Preconditions;
+import org.multibit.hd.core.logging.StartupTracer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.Date;
 
@@ -18,6 +18,7 @@ import java.util.Date;
  *  <p>Manager to provide the following to BitcoinNetworkService:</p>
  *  <ul>
  *  <li>Create a blockstore</li>
+ *  <li>Rewind a blockstore for an incremental replay</li>
  *  </ul>
  */
 public class BlockStoreManager {
@@ -49,6 +50,78 @@ public class BlockStoreManager {
    */
   public BlockStore createBlockStore(File blockStoreFile, File checkpointsFile, Date checkpointDate, boolean createNew) throws BlockStoreException, IOException {
 
+    StartupTracer.Span span = StartupTracer.INSTANCE.begin("blockstore.open");
+    try {
+      return openBlockStore(blockStoreFile, checkpointsFile, checkpointDate, createNew);
+    } finally {
+      span.end();
+    }
+
+  }
+
+  /**
+   * <p>Prepare an existing block store for a replay without rebuilding it. The chain head is rewound to the most
+   * recent stored block at or before the replay date (allowing for clock drift). If the block store does not hold
+   * blocks that far back it is checkpointed from the replay date instead.</p>
+   *
+   * <p>Falls back to creating a new block store if the existing one is missing or cannot be opened.</p>
+   *
+   * @param blockStoreFile  The file to use for the block store
+   * @param checkpointsFile The file to use for the checkpoints
+   * @param replayDate      Date to replay the block chain from
+   *
+   * @return The rewound blockStore
+   *
+   * @throws BlockStoreException
+   * @throws IOException
+   */
+  public BlockStore rewindBlockStore(File blockStoreFile, File checkpointsFile, Date replayDate) throws BlockStoreException, IOException {
+
+    Preconditions.checkNotNull(replayDate, "'replayDate' must be present");
+
+    if (!blockStoreFile.exists() || blockStoreFile.length() == 0) {
+      log.debug("No existing block store to rewind");
+      return createBlockStore(blockStoreFile, checkpointsFile, replayDate, true);
+    }
+
+    BlockStore blockStore;
+    try {
+      blockStore = new SPVBlockStore(networkParameters, blockStoreFile);
+    } catch (BlockStoreException bse) {
+      log.warn("Failed to open SPV block store for rewind", bse);
+      return createBlockStore(blockStoreFile, checkpointsFile, replayDate, true);
+    }
+
+    long targetSeconds = replayDate.getTime() / 1000 - MultiBitCheckpointManager.CLOCK_DRIFT_SECONDS;
+
+    // Walk back through the stored headers (the SPV store keeps a limited number)
+    StoredBlock cursor = blockStore.getChainHead();
+    int headHeight = cursor.getHeight();
+    while (cursor != null && cursor.getHeader().getTimeSeconds() > targetSeconds) {
+      cursor = cursor.getPrev(blockStore);
+    }
+
+    if (cursor != null && cursor.getHeight() > 0) {
+      log.debug("Rewinding block store from height {} to {}", headHeight, cursor.getHeight());
+      blockStore.setChainHead(cursor);
+    } else if (checkpointsFile.exists()) {
+      log.debug("Block store does not reach replay date so checkpointing");
+      MultiBitCheckpointManager.getOrLoad(networkParameters, checkpointsFile).checkpoint(blockStore, replayDate);
+    } else {
+      // Cannot rewind and cannot checkpoint so start from scratch
+      blockStore.close();
+      return createBlockStore(blockStoreFile, checkpointsFile, replayDate, true);
+    }
+
+    return blockStore;
+
+  }
+
+  /**
+   * @see #createBlockStore(java.io.File, java.io.File, java.util.Date, boolean)
+   */
+  private BlockStore openBlockStore(File blockStoreFile, File checkpointsFile, Date checkpointDate, boolean createNew) throws BlockStoreException, IOException {
+
     boolean blockStoreCreatedNew = !blockStoreFile.exists();
 
     // TODO copy checkpoints file from installation directory if does not exist
@@ -100,22 +173,15 @@ public class BlockStoreManager {
     // Load the existing checkpoint file and checkpoint from today.
     if (checkpointsFile.exists()) {
 
-      log.debug("Checkpoints exist attempting to stream from '{}'", checkpointsFile.getAbsolutePath());
-
-      try (FileInputStream checkpointsInputStream = new FileInputStream(checkpointsFile)) {
-
-        Preconditions.checkNotNull(checkpointsInputStream, "'stream' must be present");
-
-        if (checkpointDate == null) {
-          if (blockStoreCreatedNew) {
-            // Brand new block store - managers from today. This
-            // will go back to the last managers.
-            CheckpointManager.checkpoint(networkParameters, checkpointsInputStream, blockStore, (new Date()).getTime() / 1000);
-          }
-        } else {
-          // Use managers date (block replay).
-          CheckpointManager.checkpoint(networkParameters, checkpointsInputStream, blockStore, checkpointDate.getTime() / 1000);
+      if (checkpointDate == null) {
+        if (blockStoreCreatedNew) {
+          // Brand new block store - checkpoint from today. This
+          // will go back to the last checkpoint.
+          MultiBitCheckpointManager.getOrLoad(networkParameters, checkpointsFile).checkpoint(blockStore, new Date());
         }
+      } else {
+        // Use checkpoint date (block replay) with the checkpoints parsed on an earlier run if available
+        MultiBitCheckpointManager.getOrLoad(networkParameters, checkpointsFile).checkpoint(blockStore, checkpointDate);
       }
     }
 
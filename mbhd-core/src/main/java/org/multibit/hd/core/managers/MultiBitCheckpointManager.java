@@ -4,49 +4,174 @@ import com.google.bitcoin.core.CheckpointManager;
 import com.google.bitcoin.core.NetworkParameters;
 import com.google.bitcoin.core.StoredBlock;
 import com.google.bitcoin.core.VerificationException;
+import com.google.bitcoin.store.BlockStore;
+import com.google.bitcoin.store.BlockStoreException;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSortedMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
-// TODO (JB) This class is not used - delete it?
+/**
+ * <p>Manager to provide the following to BlockStoreManager:</p>
+ * <ul>
+ * <li>Checkpoints parsed once and shared across replays</li>
+ * <li>Lookup of checkpoints by height and by date</li>
+ * </ul>
+ *
+ * @since 0.0.1
+ */
 public class MultiBitCheckpointManager extends CheckpointManager {
 
+  private static final Logger log = LoggerFactory.getLogger(MultiBitCheckpointManager.class);
 
+  /**
+   * Checkpoints are taken a week before the requested time to allow for clock drift between miners
+   * (matches CheckpointManager.checkpoint)
+   */
+  static final long CLOCK_DRIFT_SECONDS = 86400 * 7;
+
+  /**
+   * Parsed checkpoints keyed on network, file path, size and modification time so a changed file is re-read
+   */
+  private static final Cache<String, MultiBitCheckpointManager> checkpointManagerCache = CacheBuilder
+    .newBuilder()
+    .maximumSize(4)
+    .build();
+
+  /**
+   * The checkpoints indexed by height (the superclass indexes them by time)
+   */
+  private final NavigableMap<Integer, StoredBlock> checkpointsByHeight;
+
+  /**
+   * @param params             The network parameters
+   * @param checkpointFilename The checkpoints file name
+   *
+   * @throws IOException If the checkpoints cannot be read
+   */
   public MultiBitCheckpointManager(NetworkParameters params, String checkpointFilename) throws IOException {
 
-       // The created fileInputStream is closed in the super.
-       super(params, new FileInputStream(checkpointFilename));
-   }
-
-    /**
-     * Returns a {@link com.google.bitcoin.core.StoredBlock} representing the last managers before the given block height, for example, normally
-     * you would want to know the managers before the last block the wallet had seen.
-     */
-    public StoredBlock getCheckpointBeforeOrAtHeight(int height) {
-        Map.Entry<Long, StoredBlock> highestCheckpointBeforeHeight = null;
-
-        for (Map.Entry<Long, StoredBlock> loop : checkpoints.entrySet()) {
-            if (loop.getValue().getHeight() < height) {
-                // This managers is before the specified height.
-                if (highestCheckpointBeforeHeight == null) {
-                    highestCheckpointBeforeHeight = loop;
-                } else {
-                    if (highestCheckpointBeforeHeight.getValue().getHeight() < loop.getValue().getHeight()) {
-                        // This entry is later.
-                        highestCheckpointBeforeHeight = loop;
-                    }
-                }
-            }
-        }
+    // The created fileInputStream is closed in the super.
+    this(params, new FileInputStream(checkpointFilename));
+  }
+
+  /**
+   * @param params      The network parameters
+   * @param inputStream The checkpoints input stream (closed on completion)
+   *
+   * @throws IOException If the checkpoints cannot be read
+   */
+  public MultiBitCheckpointManager(NetworkParameters params, InputStream inputStream) throws IOException {
+
+    super(params, inputStream);
+
+    ImmutableSortedMap.Builder<Integer, StoredBlock> builder = ImmutableSortedMap.naturalOrder();
+    for (StoredBlock checkpoint : checkpoints.values()) {
+      builder.put(checkpoint.getHeight(), checkpoint);
+    }
+    checkpointsByHeight = builder.build();
+
+  }
+
+  /**
+   * <p>Get the parsed checkpoints for the given file, reading it only if it has not been read before or has changed</p>
+   *
+   * @param params          The network parameters
+   * @param checkpointsFile The checkpoints file
+   *
+   * @return The shared checkpoint manager
+   *
+   * @throws IOException If the checkpoints cannot be read
+   */
+  public static MultiBitCheckpointManager getOrLoad(final NetworkParameters params, final File checkpointsFile) throws IOException {
+
+    Preconditions.checkNotNull(params, "'params' must be present");
+    Preconditions.checkNotNull(checkpointsFile, "'checkpointsFile' must be present");
+
+    String key = params.getId()
+      + ":" + checkpointsFile.getAbsolutePath()
+      + ":" + checkpointsFile.length()
+      + ":" + checkpointsFile.lastModified();
+
+    try {
+      return checkpointManagerCache.get(key, new Callable<MultiBitCheckpointManager>() {
+        @Override
+        public MultiBitCheckpointManager call() throws Exception {
+
+          log.debug("Reading checkpoints from '{}'", checkpointsFile.getAbsolutePath());
 
-        if (highestCheckpointBeforeHeight == null) {
-            try {
-                return new StoredBlock(params.getGenesisBlock(), params.getGenesisBlock().getWork(), 0);
-            } catch (VerificationException e) {
-                e.printStackTrace();
-            }
+          return new MultiBitCheckpointManager(params, new FileInputStream(checkpointsFile));
         }
-        return highestCheckpointBeforeHeight.getValue();
+      });
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
     }
-}
\ No newline at end of file
+
+  }
+
+  /**
+   * Returns a {@link com.google.bitcoin.core.StoredBlock} representing the last checkpoint at or before the given block height, for example, normally
+   * you would want to know the checkpoint before the last block the wallet had seen.
+   */
+  public StoredBlock getCheckpointBeforeOrAtHeight(int height) {
+
+    Map.Entry<Integer, StoredBlock> entry = checkpointsByHeight.floorEntry(height);
+    if (entry != null) {
+      return entry.getValue();
+    }
+
+    try {
+      return new StoredBlock(params.getGenesisBlock(), params.getGenesisBlock().getWork(), 0);
+    } catch (VerificationException e) {
+      // Genesis block is always valid
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * @param date The date
+   *
+   * @return The last checkpoint at or before the date (the genesis block if none)
+   */
+  public StoredBlock getCheckpointBeforeOrAtDate(Date date) {
+
+    Preconditions.checkNotNull(date, "'date' must be present");
+
+    return getCheckpointBefore(date.getTime() / 1000);
+  }
+
+  /**
+   * <p>Equivalent to CheckpointManager.checkpoint but using the already parsed checkpoints</p>
+   *
+   * @param store          The block store to initialise
+   * @param checkpointDate The date from which the block chain is required
+   *
+   * @throws BlockStoreException If the block store could not be updated
+   */
+  public void checkpoint(BlockStore store, Date checkpointDate) throws BlockStoreException {
+
+    Preconditions.checkNotNull(store, "'store' must be present");
+    Preconditions.checkNotNull(checkpointDate, "'checkpointDate' must be present");
+
+    StoredBlock checkpoint = getCheckpointBefore(checkpointDate.getTime() / 1000 - CLOCK_DRIFT_SECONDS);
+
+    store.put(checkpoint);
+    store.setChainHead(checkpoint);
+
+  }
+}
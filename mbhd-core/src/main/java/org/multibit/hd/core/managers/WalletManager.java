@@ -13,6 +13,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.google.common.primitives.Bytes;
+import com.google.protobuf.CodedInputStream;
 import org.bitcoinj.wallet.Protos;
 import org.multibit.hd.brit.crypto.AESUtils;
 import org.multibit.hd.brit.dto.FeeState;
@@ -30,6 +31,7 @@ import org.multibit.hd.core.exceptions.ExceptionHandler;
 import org.multibit.hd.core.exceptions.WalletLoadException;
 import org.multibit.hd.core.exceptions.WalletVersionException;
 import org.multibit.hd.core.files.SecureFiles;
+import org.multibit.hd.core.logging.StartupTracer;
 import org.multibit.hd.core.services.CoreServices;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -355,15 +357,101 @@ public enum WalletManager implements WalletEventListener {
   }
 
   public static Wallet loadWalletFromFile(File walletFile, CharSequence password) throws IOException, UnreadableWalletException {
+
+    return loadWalletFromFile(walletFile, deriveWalletFileKey(password));
+  }
+
+  /**
+   * @param walletFile   The encrypted wallet file
+   * @param keyParameter The key from {@link #deriveWalletFileKey(CharSequence)}
+   *
+   * @return The loaded wallet
+   */
+  public static Wallet loadWalletFromFile(File walletFile, KeyParameter keyParameter) throws IOException, UnreadableWalletException {
+
+    return parseWallet(decryptWalletFile(walletFile, keyParameter));
+  }
+
+  /**
+   * <p>Derive the key protecting the wallet file and its rolling backups (scrypt, so expensive)</p>
+   *
+   * @param password The wallet password
+   *
+   * @return The AES key
+   */
+  public static KeyParameter deriveWalletFileKey(CharSequence password) {
+
+    KeyCrypterScrypt keyCrypterScrypt = new KeyCrypterScrypt(EncryptedFileReaderWriter.makeScryptParameters(WalletManager.SCRYPT_SALT));
+
+    return keyCrypterScrypt.deriveKey(password);
+  }
+
+  /**
+   * @param walletFile   The encrypted wallet file
+   * @param keyParameter The key from {@link #deriveWalletFileKey(CharSequence)}
+   *
+   * @return The decrypted wallet protobuf bytes
+   *
+   * @throws KeyCrypterException If the file cannot be decrypted with the key
+   */
+  public static byte[] decryptWalletFile(File walletFile, KeyParameter keyParameter) throws IOException {
+
     // Read the encrypted file in and decrypt it.
     byte[] encryptedWalletBytes = org.multibit.hd.brit.utils.FileUtils.readFile(walletFile);
     log.trace("Encrypted wallet bytes after load:\n" + Utils.HEX.encode(encryptedWalletBytes));
 
-    KeyCrypterScrypt keyCrypterScrypt = new KeyCrypterScrypt(EncryptedFileReaderWriter.makeScryptParameters(WalletManager.SCRYPT_SALT));
-    KeyParameter keyParameter = keyCrypterScrypt.deriveKey(password);
-
     // Decrypt the wallet bytes
-    byte[] decryptedBytes = AESUtils.decrypt(encryptedWalletBytes, keyParameter, WalletManager.AES_INITIALISATION_VECTOR);
+    return AESUtils.decrypt(encryptedWalletBytes, keyParameter, WalletManager.AES_INITIALISATION_VECTOR);
+  }
+
+  /**
+   * <p>Check decrypted wallet bytes are a wallet protobuf for the current network without building the wallet</p>
+   *
+   * @param decryptedBytes The decrypted wallet protobuf bytes
+   *
+   * @return True if the bytes parse as a wallet protobuf
+   */
+  public static boolean isParseableWallet(byte[] decryptedBytes) {
+
+    if (!hasWalletHeader(decryptedBytes)) {
+      return false;
+    }
+
+    try {
+      WalletProtobufSerializer.parseToProto(new ByteArrayInputStream(decryptedBytes));
+      return true;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * <p>Cheaply check decrypted wallet bytes before a full parse</p>
+   *
+   * @param decryptedBytes The decrypted wallet protobuf bytes
+   *
+   * @return True if the bytes start with the network identifier of the current network (always the first wallet field)
+   */
+  public static boolean hasWalletHeader(byte[] decryptedBytes) {
+
+    try {
+      CodedInputStream codedInputStream = CodedInputStream.newInstance(decryptedBytes);
+      // Field 1 (network_identifier) is a length delimited string
+      if (codedInputStream.readTag() != ((Protos.Wallet.NETWORK_IDENTIFIER_FIELD_NUMBER << 3) | 2)) {
+        return false;
+      }
+      return BitcoinNetwork.current().get().getId().equals(codedInputStream.readString());
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * @param decryptedBytes The decrypted wallet protobuf bytes
+   *
+   * @return The wallet
+   */
+  public static Wallet parseWallet(byte[] decryptedBytes) throws IOException, UnreadableWalletException {
 
     InputStream inputStream = new ByteArrayInputStream(decryptedBytes);
 
@@ -391,6 +479,20 @@ public enum WalletManager implements WalletEventListener {
    */
   WalletSummary loadFromWalletDirectory(File walletDirectory, CharSequence password) throws WalletLoadException, WalletVersionException {
 
+    StartupTracer.Span span = StartupTracer.INSTANCE.begin("wallet.load");
+    try {
+      return loadFromWalletDirectoryInternal(walletDirectory, password);
+    } finally {
+      span.end();
+    }
+
+  }
+
+  /**
+   * @see #loadFromWalletDirectory(java.io.File, CharSequence)
+   */
+  private WalletSummary loadFromWalletDirectoryInternal(File walletDirectory, CharSequence password) throws WalletLoadException, WalletVersionException {
+
     Preconditions.checkNotNull(walletDirectory, "'walletDirectory' must be present");
     Preconditions.checkNotNull(password, "'password' must be present");
     checkWalletDirectory(walletDirectory);
@@ -729,14 +831,17 @@ public enum WalletManager implements WalletEventListener {
   }
 
   /**
-   * @param walletSummary The wallet summary to write
+   * <p>Write the wallet summary, replacing the file atomically (unchanged summaries are not written)</p>
+   *
+   * @param walletSummaryFile The wallet summary file
+   * @param walletSummary     The wallet summary to write
    */
   public static void updateWalletSummary(File walletSummaryFile, WalletSummary walletSummary) {
 
     // Persist the new configuration
-    try (FileOutputStream fos = new FileOutputStream(walletSummaryFile)) {
+    try {
 
-      Configurations.writeYaml(fos, walletSummary);
+      Configurations.writeYamlAtomically(walletSummaryFile, walletSummary);
 
     } catch (IOException e) {
       ExceptionHandler.handleThrowable(e);
@@ -3,6 +3,7 @@ package org.multibit.hd.core.network;
 import com.google.bitcoin.core.*;
 import com.google.common.base.Optional;
 import org.multibit.hd.core.dto.BitcoinNetworkSummary;
+import org.multibit.hd.core.dto.SyncProgressSummary;
 import org.multibit.hd.core.dto.WalletSummary;
 import org.multibit.hd.core.events.CoreEvents;
 import org.multibit.hd.core.events.TransactionSeenEvent;
@@ -31,6 +32,9 @@ public class MultiBitPeerEventListener implements PeerEventListener {
   // Start with peer count suppression until blocks start to arrive
   private boolean suppressPeerCountMessages = true;
 
+  // Provides a monotonic percentage and throughput across changes of download peer
+  private final SyncProgressTracker syncProgressTracker = new SyncProgressTracker();
+
   public MultiBitPeerEventListener() {
   }
 
@@ -50,12 +54,14 @@ public class MultiBitPeerEventListener implements PeerEventListener {
       if (blocksLeft < 0 || originalBlocksLeft <= 0)
           return;
 
-      double pct = 100.0 - (100.0 * (blocksLeft / (double) originalBlocksLeft));
-      if ((int) pct != lastPercent) {
+      syncProgressTracker.onBlocksDownloaded(bestHeight(peer), blocksLeft);
+
+      int pct = syncProgressTracker.getPercent();
+      if (pct != lastPercent) {
         if (block != null) {
           progress(pct, blocksLeft, new Date(block.getTimeSeconds() * 1000));
         }
-        lastPercent = (int) pct;
+        lastPercent = pct;
       }
 
     // Determine if peer count message should be suppressed
@@ -80,6 +86,7 @@ public class MultiBitPeerEventListener implements PeerEventListener {
     log.debug("Chain download started with number of blocks left = {}", blocksLeft);
 
     startDownload(blocksLeft);
+    syncProgressTracker.onDownloadStarted(bestHeight(peer), blocksLeft);
     // Only mark this the first time, because this method can be called more than once during a chain download
     // if we switch peers during it.
     if (originalBlocksLeft == -1)
@@ -144,6 +151,16 @@ public class MultiBitPeerEventListener implements PeerEventListener {
 
   @Override
   public Message onPreMessageReceived(Peer peer, Message message) {
+
+    // Measure download throughput while synchronizing
+    if (!caughtUp && message != null) {
+      try {
+        syncProgressTracker.onBytesReceived(message.getMessageSize());
+      } catch (IllegalStateException e) {
+        // Length not known for this message so ignore it
+      }
+    }
+
     return message;
   }
 
@@ -243,6 +260,22 @@ public class MultiBitPeerEventListener implements PeerEventListener {
   protected void doneDownload() {
   }
 
+  /**
+   * @return The current synchronization progress and throughput
+   */
+  public SyncProgressSummary getSyncProgress() {
+    return syncProgressTracker.getSummary();
+  }
+
+  /**
+   * @param peer The download peer (may be null)
+   *
+   * @return The best height reported by the peer or UNKNOWN_HEIGHT
+   */
+  private long bestHeight(Peer peer) {
+    return peer == null ? SyncProgressTracker.UNKNOWN_HEIGHT : peer.getBestHeight();
+  }
+
   /**
    * Wait for the chain to be downloaded.
    */
@@ -0,0 +1,321 @@
+package org.multibit.hd.core.network;
+
+import com.google.bitcoin.core.Peer;
+import com.google.bitcoin.core.ProtocolException;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.multibit.hd.core.concurrent.SafeExecutors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Probe to provide the following to BitcoinNetworkService:</p>
+ * <ul>
+ * <li>Concurrent liveness checks of connected peers returning on the first success</li>
+ * <li>Concurrent DNS seed resolution returning on the first success</li>
+ * <li>A short-lived cache of peer liveness to avoid repeated probes</li>
+ * <li>Per-peer round trip statistics</li>
+ * </ul>
+ *
+ * @since 0.0.1
+ *
+ */
+public class PeerHealthProbe {
+
+  private static final Logger log = LoggerFactory.getLogger(PeerHealthProbe.class);
+
+  /**
+   * The maximum time to wait for any peer to respond to a ping
+   */
+  private static final int PING_TIMEOUT_SECONDS = 4;
+
+  /**
+   * The maximum time to wait for any DNS seed to resolve
+   */
+  private static final int DNS_TIMEOUT_SECONDS = 10;
+
+  /**
+   * A successful ping within this period is treated as proof of liveness
+   */
+  private static final long LIVENESS_CACHE_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+  /**
+   * The number of concurrent DNS lookups
+   */
+  private static final int DNS_THREAD_COUNT = 4;
+
+  private final ListeningExecutorService dnsExecutorService = SafeExecutors.newFixedThreadPool(DNS_THREAD_COUNT, "dns-probe");
+
+  private final ConcurrentMap<String, PeerStatistics> peerStatistics = Maps.newConcurrentMap();
+
+  /**
+   * <p>Ping all the given peers concurrently</p>
+   *
+   * @param peers The connected peers
+   *
+   * @return True if at least one peer is known to be alive (recently or by responding within the timeout)
+   */
+  public boolean probePeers(List<Peer> peers) {
+
+    if (peers == null || peers.isEmpty()) {
+      return false;
+    }
+
+    // Avoid the network round trip if a peer has recently proven itself
+    long now = System.currentTimeMillis();
+    for (Peer peer : peers) {
+      PeerStatistics statistics = peerStatistics.get(keyFor(peer));
+      if (statistics != null && now - statistics.getLastSuccessMillis() < LIVENESS_CACHE_MILLIS) {
+        log.debug("Peer '{}' is recently alive ({}ms round trip)", keyFor(peer), statistics.getLastRoundTripMillis());
+        return true;
+      }
+    }
+
+    final CountDownLatch firstSuccessOrAllFailed = new CountDownLatch(1);
+    final AtomicBoolean anySuccess = new AtomicBoolean(false);
+    final AtomicInteger outstanding = new AtomicInteger(peers.size());
+
+    for (Peer peer : peers) {
+
+      final String key = keyFor(peer);
+      final long start = System.nanoTime();
+
+      log.debug("Ping: {}", key);
+
+      try {
+        ListenableFuture<Long> result = peer.ping();
+        Futures.addCallback(result, new FutureCallback<Long>() {
+          @Override
+          public void onSuccess(Long ignored) {
+            recordSuccess(key, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            anySuccess.set(true);
+            firstSuccessOrAllFailed.countDown();
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            log.warn("Peer '{}' failed ping test. Message was {}", key, t.getMessage());
+            recordFailure(key);
+            if (outstanding.decrementAndGet() == 0) {
+              firstSuccessOrAllFailed.countDown();
+            }
+          }
+        });
+      } catch (ProtocolException e) {
+        log.warn("Peer '{}' failed ping test. Message was {}", key, e.getMessage());
+        recordFailure(key);
+        if (outstanding.decrementAndGet() == 0) {
+          firstSuccessOrAllFailed.countDown();
+        }
+      }
+    }
+
+    Uninterruptibles.awaitUninterruptibly(firstSuccessOrAllFailed, PING_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+    return anySuccess.get();
+  }
+
+  /**
+   * <p>Resolve all the given DNS seeds concurrently</p>
+   *
+   * @param dnsSeeds The DNS seeds
+   *
+   * @return True if at least one DNS seed resolved within the timeout
+   */
+  public boolean probeDnsSeeds(String[] dnsSeeds) {
+
+    if (dnsSeeds == null || dnsSeeds.length == 0) {
+      return false;
+    }
+
+    final CountDownLatch firstSuccessOrAllFailed = new CountDownLatch(1);
+    final AtomicBoolean anySuccess = new AtomicBoolean(false);
+    final AtomicInteger outstanding = new AtomicInteger(dnsSeeds.length);
+
+    for (final String dnsSeed : dnsSeeds) {
+
+      ListenableFuture<Boolean> result = dnsExecutorService.submit(new Callable<Boolean>() {
+        @Override
+        public Boolean call() throws Exception {
+          return InetAddress.getAllByName(dnsSeed) != null;
+        }
+      });
+
+      Futures.addCallback(result, new FutureCallback<Boolean>() {
+        @Override
+        public void onSuccess(Boolean resolved) {
+          if (resolved) {
+            anySuccess.set(true);
+            firstSuccessOrAllFailed.countDown();
+          } else if (outstanding.decrementAndGet() == 0) {
+            firstSuccessOrAllFailed.countDown();
+          }
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+          log.warn("Could not resolve '{}'", dnsSeed);
+          if (outstanding.decrementAndGet() == 0) {
+            firstSuccessOrAllFailed.countDown();
+          }
+        }
+      });
+    }
+
+    Uninterruptibles.awaitUninterruptibly(firstSuccessOrAllFailed, DNS_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+    return anySuccess.get();
+  }
+
+  /**
+   * @return A snapshot of the round trip statistics keyed by peer address
+   */
+  public Map<String, PeerStatistics> getPeerStatistics() {
+    return ImmutableMap.copyOf(peerStatistics);
+  }
+
+  /**
+   * <p>Release the probe threads</p>
+   */
+  public void shutdown() {
+    dnsExecutorService.shutdownNow();
+  }
+
+  /**
+   * @param key             The peer key
+   * @param roundTripMillis The observed round trip
+   */
+  private void recordSuccess(String key, long roundTripMillis) {
+
+    PeerStatistics previous;
+    PeerStatistics updated;
+    do {
+      previous = peerStatistics.get(key);
+      updated = previous == null ? PeerStatistics.first(roundTripMillis) : previous.withSuccess(roundTripMillis);
+    } while (!(previous == null ? peerStatistics.putIfAbsent(key, updated) == null : peerStatistics.replace(key, previous, updated)));
+
+  }
+
+  /**
+   * @param key The peer key
+   */
+  private void recordFailure(String key) {
+
+    PeerStatistics previous;
+    PeerStatistics updated;
+    do {
+      previous = peerStatistics.get(key);
+      updated = previous == null ? PeerStatistics.NONE.withFailure() : previous.withFailure();
+    } while (!(previous == null ? peerStatistics.putIfAbsent(key, updated) == null : peerStatistics.replace(key, previous, updated)));
+
+  }
+
+  /**
+   * @param peer The peer
+   *
+   * @return The key used for the statistics
+   */
+  private String keyFor(Peer peer) {
+    return peer.getAddress().toString();
+  }
+
+  /**
+   * <p>Immutable round trip statistics for a single peer</p>
+   */
+  public static class PeerStatistics {
+
+    private static final PeerStatistics NONE = new PeerStatistics(0, 0, 0, 0, 0);
+
+    private final long lastSuccessMillis;
+    private final long lastRoundTripMillis;
+    private final long averageRoundTripMillis;
+    private final int successCount;
+    private final int failureCount;
+
+    private PeerStatistics(long lastSuccessMillis, long lastRoundTripMillis, long averageRoundTripMillis, int successCount, int failureCount) {
+      this.lastSuccessMillis = lastSuccessMillis;
+      this.lastRoundTripMillis = lastRoundTripMillis;
+      this.averageRoundTripMillis = averageRoundTripMillis;
+      this.successCount = successCount;
+      this.failureCount = failureCount;
+    }
+
+    private static PeerStatistics first(long roundTripMillis) {
+      return new PeerStatistics(System.currentTimeMillis(), roundTripMillis, roundTripMillis, 1, 0);
+    }
+
+    private PeerStatistics withSuccess(long roundTripMillis) {
+
+      // Exponentially weighted average favouring recent observations
+      long average = successCount == 0 ? roundTripMillis : (averageRoundTripMillis * 3 + roundTripMillis) / 4;
+
+      return new PeerStatistics(System.currentTimeMillis(), roundTripMillis, average, successCount + 1, failureCount);
+    }
+
+    private PeerStatistics withFailure() {
+      return new PeerStatistics(lastSuccessMillis, lastRoundTripMillis, averageRoundTripMillis, successCount, failureCount + 1);
+    }
+
+    /**
+     * @return The system time of the last successful ping (0 if never)
+     */
+    public long getLastSuccessMillis() {
+      return lastSuccessMillis;
+    }
+
+    /**
+     * @return The most recent round trip time in milliseconds
+     */
+    public long getLastRoundTripMillis() {
+      return lastRoundTripMillis;
+    }
+
+    /**
+     * @return The weighted average round trip time in milliseconds
+     */
+    public long getAverageRoundTripMillis() {
+      return averageRoundTripMillis;
+    }
+
+    /**
+     * @return The number of successful pings
+     */
+    public int getSuccessCount() {
+      return successCount;
+    }
+
+    /**
+     * @return The number of failed pings
+     */
+    public int getFailureCount() {
+      return failureCount;
+    }
+
+    @Override
+    public String toString() {
+      return "PeerStatistics{" +
+        "lastSuccessMillis=" + lastSuccessMillis +
+        ", lastRoundTripMillis=" + lastRoundTripMillis +
+        ", averageRoundTripMillis=" + averageRoundTripMillis +
+        ", successCount=" + successCount +
+        ", failureCount=" + failureCount +
+        '}';
+    }
+  }
+
+}
@@ -0,0 +1,243 @@
+package org.multibit.hd.core.network;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import org.multibit.hd.core.dto.SyncProgressSummary;
+
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Tracker to provide the following to the peer event listener:</p>
+ * <ul>
+ * <li>A best known height that survives a change of download peer</li>
+ * <li>A percentage complete that never decreases</li>
+ * <li>Blocks per second and bytes per second over a sliding window</li>
+ * <li>A stable estimated time to completion</li>
+ * </ul>
+ *
+ * <p>Peer best heights are optional. If they are not available the initial number of blocks left is
+ * taken as the target.</p>
+ *
+ * @since 0.0.1
+ *
+ */
+public class SyncProgressTracker {
+
+  /**
+   * Indicates that the peer did not provide a best height
+   */
+  public static final long UNKNOWN_HEIGHT = -1;
+
+  /**
+   * The period over which throughput is measured
+   */
+  private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+  /**
+   * The minimum interval between samples to bound the window size on fast downloads
+   */
+  private static final long SAMPLE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+  private final LinkedList<Sample> samples = Lists.newLinkedList();
+
+  private boolean started = false;
+
+  private long startHeight = 0;
+  private long bestKnownHeight = 0;
+  private long chainHeight = 0;
+  private long totalBytes = 0;
+  private int percent = 0;
+
+  private long lastEtaMillis = -1;
+  private long lastEtaNanos = 0;
+
+  /**
+   * <p>Start (or restart after a change of download peer) the download</p>
+   *
+   * @param peerBestHeight The best height reported by the download peer or UNKNOWN_HEIGHT
+   * @param blocksLeft     The number of blocks left to download
+   */
+  public synchronized void onDownloadStarted(long peerBestHeight, int blocksLeft) {
+
+    if (!started) {
+      started = true;
+      if (peerBestHeight == UNKNOWN_HEIGHT) {
+        // Work relative to the start of the download
+        bestKnownHeight = Math.max(0, blocksLeft);
+        startHeight = 0;
+      } else {
+        bestKnownHeight = peerBestHeight;
+        startHeight = peerBestHeight - Math.max(0, blocksLeft);
+      }
+      chainHeight = startHeight;
+    }
+
+    update(peerBestHeight, blocksLeft, System.nanoTime());
+
+  }
+
+  /**
+   * @param peerBestHeight The best height reported by the download peer or UNKNOWN_HEIGHT
+   * @param blocksLeft     The number of blocks left to download
+   */
+  public synchronized void onBlocksDownloaded(long peerBestHeight, int blocksLeft) {
+
+    if (!started) {
+      onDownloadStarted(peerBestHeight, blocksLeft);
+      return;
+    }
+
+    update(peerBestHeight, blocksLeft, System.nanoTime());
+
+  }
+
+  /**
+   * @param bytes The number of bytes received from the network
+   */
+  public synchronized void onBytesReceived(long bytes) {
+
+    if (bytes > 0) {
+      totalBytes += bytes;
+    }
+
+  }
+
+  /**
+   * @return The percentage complete (never decreases)
+   */
+  public synchronized int getPercent() {
+    return percent;
+  }
+
+  /**
+   * @return A summary of the current progress and throughput
+   */
+  public synchronized SyncProgressSummary getSummary() {
+
+    long now = System.nanoTime();
+    trimWindow(now);
+
+    double blocksPerSecond = 0;
+    double bytesPerSecond = 0;
+    if (samples.size() > 1) {
+      Sample first = samples.getFirst();
+      Sample last = samples.getLast();
+      double seconds = (last.nanos - first.nanos) / 1e9;
+      if (seconds > 0) {
+        blocksPerSecond = (last.chainHeight - first.chainHeight) / seconds;
+        bytesPerSecond = (last.totalBytes - first.totalBytes) / seconds;
+      }
+    }
+
+    Optional<Long> eta = Optional.absent();
+    if (bestKnownHeight <= chainHeight) {
+      eta = Optional.of(0L);
+    } else if (lastEtaMillis >= 0) {
+      // Count down from the last estimate between updates
+      long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(now - lastEtaNanos);
+      eta = Optional.of(Math.max(0, lastEtaMillis - elapsedMillis));
+    }
+
+    return new SyncProgressSummary(bestKnownHeight, chainHeight, percent, blocksPerSecond, bytesPerSecond, eta);
+  }
+
+  /**
+   * @param peerBestHeight The best height reported by the download peer or UNKNOWN_HEIGHT
+   * @param blocksLeft     The number of blocks left to download
+   * @param now            The current nano time
+   */
+  private void update(long peerBestHeight, int blocksLeft, long now) {
+
+    if (blocksLeft < 0) {
+      return;
+    }
+
+    // Remember the best height so a peer that is behind cannot reduce the target
+    if (peerBestHeight != UNKNOWN_HEIGHT) {
+      bestKnownHeight = Math.max(bestKnownHeight, peerBestHeight);
+    }
+
+    long height = (peerBestHeight == UNKNOWN_HEIGHT ? bestKnownHeight : peerBestHeight) - blocksLeft;
+    chainHeight = Math.max(chainHeight, height);
+
+    long total = bestKnownHeight - startHeight;
+    int calculatedPercent = total <= 0 ? 100 : (int) (100.0 * (chainHeight - startHeight) / total);
+    percent = Math.min(100, Math.max(percent, calculatedPercent));
+
+    // Add a throughput sample
+    if (samples.isEmpty() || now - samples.getLast().nanos >= SAMPLE_INTERVAL_NANOS) {
+      samples.addLast(new Sample(now, chainHeight, totalBytes));
+      trimWindow(now);
+      updateEta(now);
+    }
+
+  }
+
+  /**
+   * <p>Recalculate the ETA. It counts down steadily and is only revised upwards if the countdown would
+   * finish before the download does.</p>
+   *
+   * @param now The current nano time
+   */
+  private void updateEta(long now) {
+
+    if (samples.size() < 2) {
+      return;
+    }
+
+    Sample first = samples.getFirst();
+    Sample last = samples.getLast();
+    long blocks = last.chainHeight - first.chainHeight;
+    long nanos = last.nanos - first.nanos;
+    if (blocks <= 0 || nanos <= 0) {
+      return;
+    }
+
+    long blocksLeft = Math.max(0, bestKnownHeight - chainHeight);
+    long calculatedEtaMillis = TimeUnit.NANOSECONDS.toMillis(nanos * blocksLeft / blocks);
+
+    if (lastEtaMillis < 0) {
+      lastEtaMillis = calculatedEtaMillis;
+    } else {
+      long countdownMillis = lastEtaMillis - TimeUnit.NANOSECONDS.toMillis(now - lastEtaNanos);
+      if (countdownMillis <= 0 && blocksLeft > 0) {
+        // The previous estimate was too optimistic
+        lastEtaMillis = calculatedEtaMillis;
+      } else {
+        lastEtaMillis = Math.max(0, Math.min(countdownMillis, calculatedEtaMillis));
+      }
+    }
+    lastEtaNanos = now;
+
+  }
+
+  /**
+   * @param now The current nano time
+   */
+  private void trimWindow(long now) {
+
+    // Always keep the most recent sample so a stalled download reports zero throughput later
+    while (samples.size() > 1 && now - samples.getFirst().nanos > WINDOW_NANOS) {
+      samples.removeFirst();
+    }
+
+  }
+
+  /**
+   * <p>A throughput sample</p>
+   */
+  private static class Sample {
+
+    private final long nanos;
+    private final long chainHeight;
+    private final long totalBytes;
+
+    private Sample(long nanos, long chainHeight, long totalBytes) {
+      this.nanos = nanos;
+      this.chainHeight = chainHeight;
+      this.totalBytes = totalBytes;
+    }
+  }
+
+}
@@ -0,0 +1,263 @@
+package org.multibit.hd.core.services;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>Schedule to provide the following to BackupService:</p>
+ * <ul>
+ * <li>Change generations so a wallet that has not changed since its last backup is skipped</li>
+ * <li>A minimum interval between backups and a quiet period so bursts of changes are coalesced</li>
+ * <li>Deferral of backups whilst the machine is busy (bounded so that a long synchronization still gets backups)</li>
+ * <li>Exponential backoff after a failed backup so a persistent failure does not repeat the work on every tick</li>
+ * <li>Counts of backups performed, skipped and deferred</li>
+ * </ul>
+ *
+ * @since 0.0.1
+ *
+ */
+class BackupSchedule {
+
+  /**
+   * The outcome of asking whether a backup is due
+   */
+  enum Decision {
+
+    /**
+     * Make the backup now
+     */
+    PERFORM,
+
+    /**
+     * Nothing has changed since the last backup
+     */
+    SKIP_CLEAN,
+
+    /**
+     * The minimum interval since the last backup has not passed
+     */
+    WAIT_INTERVAL,
+
+    /**
+     * Changes are still arriving so wait for them to settle
+     */
+    COALESCE,
+
+    /**
+     * The machine is busy (for example downloading blocks)
+     */
+    DEFER_BUSY,
+
+    /**
+     * The last backup failed and the retry delay has not passed
+     */
+    BACKOFF,
+
+    // End of enum
+    ;
+
+  }
+
+  /**
+   * The longest retry delay after repeated failures as a multiple of the interval
+   */
+  private static final int MAXIMUM_BACKOFF_MULTIPLE = 16;
+
+  private final long intervalMillis;
+
+  private final long quietMillis;
+
+  private final long maximumDeferralMillis;
+
+  private final boolean deferWhenBusy;
+
+  private long changeGeneration = 0;
+
+  private long backedUpGeneration = 0;
+
+  private long lastChangeMillis = 0;
+
+  /**
+   * The time of the first change after the last backup (0 if there is none)
+   */
+  private long pendingSinceMillis = 0;
+
+  private long lastBackupMillis = 0;
+
+  private long lastSkipMillis = 0;
+
+  private long performed = 0;
+
+  private long skipped = 0;
+
+  private long deferred = 0;
+
+  private long failed = 0;
+
+  private int consecutiveFailures = 0;
+
+  /**
+   * The earliest time a failed backup is tried again
+   */
+  private long retryAfterMillis = 0;
+
+  /**
+   * @param intervalMillis        The minimum time between backups
+   * @param quietMillis           The time without changes before a backup is made
+   * @param maximumDeferralMillis The longest a change waits for quiet or for the machine to be idle
+   * @param deferWhenBusy         True if the backup is heavy enough to wait whilst the machine is busy
+   */
+  BackupSchedule(long intervalMillis, long quietMillis, long maximumDeferralMillis, boolean deferWhenBusy) {
+
+    Preconditions.checkArgument(intervalMillis >= 0, "'intervalMillis' must not be negative");
+    Preconditions.checkArgument(quietMillis >= 0, "'quietMillis' must not be negative");
+    Preconditions.checkArgument(maximumDeferralMillis >= 0, "'maximumDeferralMillis' must not be negative");
+
+    this.intervalMillis = intervalMillis;
+    this.quietMillis = quietMillis;
+    this.maximumDeferralMillis = maximumDeferralMillis;
+    this.deferWhenBusy = deferWhenBusy;
+
+  }
+
+  /**
+   * <p>Record a change to the wallet</p>
+   *
+   * @param nowMillis The current time
+   */
+  synchronized void markChanged(long nowMillis) {
+
+    changeGeneration++;
+    lastChangeMillis = nowMillis;
+    if (pendingSinceMillis == 0) {
+      pendingSinceMillis = nowMillis;
+    }
+
+  }
+
+  /**
+   * <p>Forget the backup history (for example when a different wallet is opened) so the next change is backed up promptly</p>
+   */
+  synchronized void reset() {
+
+    backedUpGeneration = changeGeneration;
+    pendingSinceMillis = 0;
+    lastBackupMillis = 0;
+    consecutiveFailures = 0;
+    retryAfterMillis = 0;
+
+  }
+
+  /**
+   * @param busy      True if the machine is busy
+   * @param force     True if the backup should be made whenever there are changes (for example at shutdown)
+   * @param nowMillis The current time
+   *
+   * @return Whether to make the backup now (the counts are updated for skipped and deferred backups)
+   */
+  synchronized Decision decide(boolean busy, boolean force, long nowMillis) {
+
+    if (changeGeneration == backedUpGeneration) {
+      // Count one skip per interval (the backups a fixed schedule would have made)
+      if (nowMillis - lastSkipMillis >= intervalMillis && nowMillis - lastBackupMillis >= intervalMillis) {
+        skipped++;
+        lastSkipMillis = nowMillis;
+      }
+      return Decision.SKIP_CLEAN;
+    }
+
+    if (force) {
+      return Decision.PERFORM;
+    }
+
+    if (nowMillis < retryAfterMillis) {
+      return Decision.BACKOFF;
+    }
+
+    if (nowMillis - lastBackupMillis < intervalMillis) {
+      return Decision.WAIT_INTERVAL;
+    }
+
+    boolean overdue = nowMillis - pendingSinceMillis >= maximumDeferralMillis;
+
+    if (!overdue && nowMillis - lastChangeMillis < quietMillis) {
+      deferred++;
+      return Decision.COALESCE;
+    }
+
+    if (!overdue && busy && deferWhenBusy) {
+      deferred++;
+      return Decision.DEFER_BUSY;
+    }
+
+    return Decision.PERFORM;
+  }
+
+  /**
+   * @return The change generation to pass to {@link #recordBackup(long, long)} once the backup is made
+   */
+  synchronized long getChangeGeneration() {
+    return changeGeneration;
+  }
+
+  /**
+   * <p>Record a successful backup (changes made whilst it was running remain pending)</p>
+   *
+   * @param generation The change generation captured before the backup started
+   * @param nowMillis  The current time
+   */
+  synchronized void recordBackup(long generation, long nowMillis) {
+
+    backedUpGeneration = Math.max(backedUpGeneration, generation);
+    lastBackupMillis = nowMillis;
+    pendingSinceMillis = changeGeneration == backedUpGeneration ? 0 : lastChangeMillis;
+    performed++;
+    consecutiveFailures = 0;
+    retryAfterMillis = 0;
+
+  }
+
+  /**
+   * <p>Record a failed backup so that it is not tried again until the retry delay has passed</p>
+   *
+   * <p>The delay starts at the interval and doubles with each consecutive failure up to a limit</p>
+   *
+   * @param nowMillis The current time
+   */
+  synchronized void recordFailure(long nowMillis) {
+
+    failed++;
+    consecutiveFailures++;
+
+    long multiple = 1L << Math.min(consecutiveFailures - 1, Long.numberOfTrailingZeros(MAXIMUM_BACKOFF_MULTIPLE));
+    retryAfterMillis = nowMillis + Math.max(intervalMillis, quietMillis) * multiple;
+
+  }
+
+  /**
+   * @return The number of backups made
+   */
+  synchronized long getPerformed() {
+    return performed;
+  }
+
+  /**
+   * @return The number of intervals in which a backup was skipped since nothing had changed
+   */
+  synchronized long getSkipped() {
+    return skipped;
+  }
+
+  /**
+   * @return The number of times a backup was held back to coalesce changes or because the machine was busy
+   */
+  synchronized long getDeferred() {
+    return deferred;
+  }
+
+  /**
+   * @return The number of backups that failed
+   */
+  synchronized long getFailed() {
+    return failed;
+  }
+}
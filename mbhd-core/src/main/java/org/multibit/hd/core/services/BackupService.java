@@ -1,22 +1,32 @@
 package org.multibit.hd.core.services;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.Maps;
 import com.google.common.eventbus.Subscribe;
 import com.google.common.util.concurrent.Uninterruptibles;
+import org.joda.time.DateTime;
+import org.multibit.hd.core.dto.BackupSummary;
+import org.multibit.hd.core.dto.BitcoinNetworkStatus;
+import org.multibit.hd.core.dto.SecuritySummary;
 import org.multibit.hd.core.dto.WalletId;
 import org.multibit.hd.core.dto.WalletSummary;
+import org.multibit.hd.core.events.BitcoinNetworkChangedEvent;
+import org.multibit.hd.core.events.CoreEvents;
 import org.multibit.hd.core.events.ShutdownEvent;
 import org.multibit.hd.core.managers.BackupManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.EnumMap;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
  * <p>Service to provide the following to application API:</p>
  * <ul>
- * <li>Access to rolling, local zip and cloud zip backups</li>
+ * <li>Access to rolling, local zip, snapshot and cloud zip backups</li>
+ * <li>Counts of backups performed, skipped (nothing changed) and deferred (coalescing or busy)</li>
  * </ul>
  * <p/>
  * Wallet backup strategy:
@@ -30,35 +40,61 @@ import java.util.concurrent.TimeUnit;
  * make a save at MBHD exit
  * <p/>
  * <p/>
+ * Each remembered wallet save is a change. A backup is only made when there has been a change since the last
+ * backup of that type, at least the interval has passed and no change has arrived for the quiet period
+ * (so a burst of saves produces one backup). A change never waits longer than the maximum deferral.
+ * A failed backup is retried after a delay that doubles with each consecutive failure.
+ * The remembered password is forgotten once a backup has been made unless a newer one has arrived. After a failure
+ * it is kept so that the retry can use it.
+ * <p/>
+ * <p/>
  * Rolling backups
  * <p/>
- * make saves every 2 minutes
+ * make saves at most every 2 minutes
  * make first save 1 minutes after MBHD start (most likely after initial sync)
  * make a save at MBHD exit
  * <p/>
  * <p/>
  * Local zip backups
  * <p/>
- * make saves every 10 minutes
- * make first save 1 minutes after MBHD start
+ * make saves at most every 10 minutes
+ * make a full zip backup every 6 hours and a deduplicated snapshot (holding only what changed) in between
+ * defer whilst the block chain is downloading (for up to an hour)
  * make a save at MBHD exit
  * <p/>
  * <p/>
  * Cloud backups
  * <p/>
- * make saves every 30 minutes
- * make first save 1 minutes after MBHD start
+ * make saves at most every 30 minutes
+ * defer whilst the block chain is downloading (for up to an hour)
  * make a save at MBHD exit
  * <p/>
  * <p/>
- * Do not bother tracking if the wallet is dirty, this only really affects the rolling backups and
- * is not worth the bother of writing a wallet extension to track it.
+ * Verification
+ * <p/>
+ * after each zip backup verify new backups on a separate thread at a throttled read rate
+ * after each snapshot verify that it can be restored on the same thread
+ * verify each backup again after a week (a restore drill) to find backups damaged since they were written
  *
  * @since 0.0.1
- *  
+ *
  */
 public class BackupService extends AbstractService {
 
+  /**
+   * The types of backup made by this service
+   */
+  public enum BackupType {
+
+    ROLLING,
+    LOCAL_ZIP,
+    CLOUD_ZIP,
+
+    // End of enum
+    ;
+
+  }
+
   /**
    * Initial delay in seconds after startup before making a backup.
    * This delay is so that the wallet can sync.
@@ -66,26 +102,56 @@ public class BackupService extends AbstractService {
   private static final int INITIAL_DELAY = 60;
 
   /**
-   * This is the fastest tick in seconds used for backups.
-   * Everything else is done on a multiple of this
+   * The tick in seconds at which the schedules are checked
    */
-  private static final int TICK_TIME_SECONDS = 120;
+  private static final int TICK_TIME_SECONDS = 15;
+
   /**
-   * The slowdown rate for performing local zip backups
+   * The minimum time between rolling backups
    */
-  private static final int LOCAL_ZIP_BACKUP_MODULO = 5;
+  private static final long ROLLING_BACKUP_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(2);
+
   /**
-   * The slowdown rate for performing local zip backups
+   * The minimum time between local zip backups
    */
+  private static final long LOCAL_ZIP_BACKUP_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(10);
 
-  private static final int CLOUD_ZIP_BACKUP_MODULO = 15;
+  /**
+   * The minimum time between cloud zip backups
+   */
+  private static final long CLOUD_ZIP_BACKUP_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+  /**
+   * The time after which a local backup is made as a full zip rather than a snapshot
+   */
+  private static final long FULL_LOCAL_ZIP_BACKUP_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(6);
+
+  /**
+   * The time without a wallet save before a backup is made
+   */
+  private static final long QUIET_PERIOD_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+  /**
+   * The longest a zip backup is deferred whilst changes keep arriving or the block chain is downloading
+   */
+  private static final long MAXIMUM_ZIP_BACKUP_DEFERRAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+  /**
+   * The maximum rate at which backups are read during verification
+   */
+  private static final long VERIFY_BYTES_PER_SECOND = 4 * 1024 * 1024;
+
+  /**
+   * The time after which a verified backup is verified again
+   */
+  private static final long REVERIFY_AFTER_MILLIS = TimeUnit.DAYS.toMillis(7);
 
   private static final Logger log = LoggerFactory.getLogger(BackupService.class);
 
   /**
-   * The number of times the backup main loop has incremented
+   * The schedule for each type of backup
    */
-  private static int tickCount;
+  private final EnumMap<BackupType, BackupSchedule> schedules = Maps.newEnumMap(BackupType.class);
 
   /**
    * The wallet summary to use for the next rolling backup
@@ -127,9 +193,18 @@ public class BackupService extends AbstractService {
    */
   private boolean backupsAreRunning = false;
 
+  /**
+   * Whether the block chain is downloading (heavy backups are deferred)
+   */
+  private volatile boolean downloadingBlockChain = false;
+
 
   public BackupService() {
 
+    schedules.put(BackupType.ROLLING, new BackupSchedule(ROLLING_BACKUP_INTERVAL_MILLIS, QUIET_PERIOD_MILLIS, ROLLING_BACKUP_INTERVAL_MILLIS, false));
+    schedules.put(BackupType.LOCAL_ZIP, new BackupSchedule(LOCAL_ZIP_BACKUP_INTERVAL_MILLIS, QUIET_PERIOD_MILLIS, MAXIMUM_ZIP_BACKUP_DEFERRAL_MILLIS, true));
+    schedules.put(BackupType.CLOUD_ZIP, new BackupSchedule(CLOUD_ZIP_BACKUP_INTERVAL_MILLIS, QUIET_PERIOD_MILLIS, MAXIMUM_ZIP_BACKUP_DEFERRAL_MILLIS, true));
+
   }
 
   @Override
@@ -137,40 +212,25 @@ public class BackupService extends AbstractService {
 
     log.debug("Starting service");
 
-    // The first tick (at time INITIAL_DELAY seconds) all of a rolling backup,
-    // local backup and a cloud backup
+    // The first tick (at time INITIAL_DELAY seconds) makes any backups of wallets changed since startup
     // The users copy of MBHD will most likely be fully synchronised by then
-    tickCount = 0;
 
     // Use the provided executor service management
     requireSingleThreadScheduledExecutor("backup");
 
+    // Verification runs on its own thread so it never delays a backup
+    requireSingleThreadExecutor("backup-verify");
+
     // Use the provided executor service management
     getScheduledExecutorService().scheduleAtFixedRate(new Runnable() {
       public void run() {
         backupsAreRunning = true;
         try {
           // Main backup loop
-          //log.debug("The tickCount is {}", tickCount);
-
-          // A rolling backup is performed every tick
           if (backupsAreEnabled) {
-            performRollingBackup();
-          }
-
-          // Local zip backups are done every LOCAL_ZIP_BACKUP_MODULO number of ticks
-          if (backupsAreEnabled && tickCount % LOCAL_ZIP_BACKUP_MODULO == 0) {
-            performLocalZipBackup();
+            performDueBackups(false);
           }
-
-          // Check if a cloud zip backup is required
-          // Cloud backups are done every CLOUD_ZIP_BACKUP_MODULO number of ticks
-          if (backupsAreEnabled && tickCount % CLOUD_ZIP_BACKUP_MODULO == 0) {
-            performCloudZipBackup();
-          }
-
         } finally {
-          tickCount++;
           backupsAreRunning = false;
         }
       }
@@ -180,12 +240,38 @@ public class BackupService extends AbstractService {
     return true;
   }
 
+  /**
+   * Make each type of backup that its schedule says is due
+   *
+   * @param force True to make every backup with pending changes regardless of interval, quiet period or load
+   */
+  private void performDueBackups(boolean force) {
+
+    long now = System.currentTimeMillis();
+    boolean busy = downloadingBlockChain;
+
+    if (schedules.get(BackupType.ROLLING).decide(busy, force, now) == BackupSchedule.Decision.PERFORM) {
+      performRollingBackup();
+    }
+
+    boolean localDue = schedules.get(BackupType.LOCAL_ZIP).decide(busy, force, now) == BackupSchedule.Decision.PERFORM;
+    boolean cloudDue = schedules.get(BackupType.CLOUD_ZIP).decide(busy, force, now) == BackupSchedule.Decision.PERFORM;
+    if (localDue || cloudDue) {
+      performZipBackups(localDue, cloudDue);
+    }
+
+  }
 
   /**
    * Remember a wallet summary and password.
    * This will be used at the next rolling backup.
    */
-  public void rememberWalletSummaryAndPasswordForRollingBackup(WalletSummary walletSummary, CharSequence password) {
+  public synchronized void rememberWalletSummaryAndPasswordForRollingBackup(WalletSummary walletSummary, CharSequence password) {
+    markChanged(
+      BackupType.ROLLING,
+      rememberedWalletSummaryForRollingBackup.isPresent() ? rememberedWalletSummaryForRollingBackup.get().getWalletId() : null,
+      walletSummary.getWalletId()
+    );
     rememberedWalletSummaryForRollingBackup = Optional.of(walletSummary);
     rememberedPasswordForRollingBackup = Optional.of(password);
   }
@@ -197,16 +283,15 @@ public class BackupService extends AbstractService {
     if (rememberedWalletSummaryForRollingBackup.isPresent() && rememberedPasswordForRollingBackup.isPresent()) {
       log.debug("Performing a rolling backup");
 
+      long generation = schedules.get(BackupType.ROLLING).getChangeGeneration();
       try {
         BackupManager.INSTANCE.createRollingBackup(rememberedWalletSummaryForRollingBackup.get(), rememberedPasswordForRollingBackup.get());
 
-        // Don't use anything remembered in the past at this point again
-        // (This will miss anything newly remembered whilst the backup is taking place
-        rememberedWalletSummaryForRollingBackup = Optional.absent();
-        rememberedPasswordForRollingBackup = Optional.absent();
+        recordBackup(BackupType.ROLLING, generation);
+        forgetRollingBackupPassword(generation);
       } catch (IOException ioe) {
-        ioe.printStackTrace();
-        // TODO handle exception (which is thrown inside the main runnable)
+        log.error("Failed to perform a rolling backup", ioe);
+        recordFailure(BackupType.ROLLING);
       }
     }
   }
@@ -215,37 +300,99 @@ public class BackupService extends AbstractService {
    * Remember a wallet id and password.
    * This will be used at the next local zip backup.
    */
-  public void rememberWalletIdAndPasswordForLocalZipBackup(WalletId walletId, CharSequence password) {
+  public synchronized void rememberWalletIdAndPasswordForLocalZipBackup(WalletId walletId, CharSequence password) {
+    markChanged(BackupType.LOCAL_ZIP, rememberedWalletIdForLocalBackup.orNull(), walletId);
     rememberedWalletIdForLocalBackup = Optional.of(walletId);
     rememberedPasswordForLocalBackup = Optional.of(password);
   }
 
   /**
-   * Perform a local zip backup
+   * Perform a local zip backup, as a snapshot unless a full zip backup is due
    */
   private void performLocalZipBackup() {
     if (rememberedWalletIdForLocalBackup.isPresent() && rememberedPasswordForLocalBackup.isPresent()) {
-      log.debug("Performing a local zip backup");
 
+      WalletId walletId = rememberedWalletIdForLocalBackup.get();
+      CharSequence password = rememberedPasswordForLocalBackup.get();
+
+      long generation = schedules.get(BackupType.LOCAL_ZIP).getChangeGeneration();
       try {
-        BackupManager.INSTANCE.createLocalBackup(rememberedWalletIdForLocalBackup.get(), rememberedPasswordForLocalBackup.get());
+        if (isFullLocalZipBackupDue(walletId)) {
+          log.debug("Performing a local zip backup");
+          BackupManager.INSTANCE.createLocalBackup(walletId, password);
+
+          verifyZipBackupsLater(walletId, password);
+        } else {
+          // Only what changed is written so this is much cheaper than another full zip
+          log.debug("Performing a local snapshot backup");
+          String snapshotName = BackupManager.INSTANCE.createSnapshotBackup(walletId, password);
+
+          verifySnapshotBackupLater(walletId, password, snapshotName);
+        }
 
-        // Don't use anything remembered in the past at this point again
-        // (This will miss anything newly remembered whilst the backup is taking place
-        rememberedWalletIdForLocalBackup = Optional.absent();
-        rememberedPasswordForLocalBackup = Optional.absent();
+        recordBackup(BackupType.LOCAL_ZIP, generation);
+        forgetLocalZipBackupPassword(generation);
       } catch (IOException ioe) {
-        ioe.printStackTrace();
-        // TODO handle exception (which is thrown inside the main runnable)
+        log.error("Failed to perform a local zip backup", ioe);
+        recordFailure(BackupType.LOCAL_ZIP);
+
+        // Alert the user since the wallet may be left without a recent backup
+        CoreEvents.fireSecurityEvent(SecuritySummary.newBackupFailed());
       }
     }
   }
 
+  /**
+   * Perform the local and cloud zip backups that are due
+   * When both are due for the same wallet a single encrypted archive is produced and shared
+   *
+   * @param localDue True if a local zip backup is due
+   * @param cloudDue True if a cloud zip backup is due
+   */
+  private void performZipBackups(boolean localDue, boolean cloudDue) {
+
+    if (localDue && cloudDue
+      && rememberedWalletIdForLocalBackup.isPresent() && rememberedPasswordForLocalBackup.isPresent()
+      && rememberedWalletIdForLocalBackup.equals(rememberedWalletIdForCloudBackup)
+      && rememberedPasswordForCloudBackup.isPresent()) {
+      log.debug("Performing a local and cloud zip backup");
+
+      long localGeneration = schedules.get(BackupType.LOCAL_ZIP).getChangeGeneration();
+      long cloudGeneration = schedules.get(BackupType.CLOUD_ZIP).getChangeGeneration();
+      try {
+        BackupManager.INSTANCE.createBackups(rememberedWalletIdForLocalBackup.get(), rememberedPasswordForLocalBackup.get(), true, true);
+
+        verifyZipBackupsLater(rememberedWalletIdForLocalBackup.get(), rememberedPasswordForLocalBackup.get());
+
+        recordBackup(BackupType.LOCAL_ZIP, localGeneration);
+        recordBackup(BackupType.CLOUD_ZIP, cloudGeneration);
+        forgetLocalZipBackupPassword(localGeneration);
+        forgetCloudZipBackupPassword(cloudGeneration);
+      } catch (IOException ioe) {
+        log.error("Failed to perform a local and cloud zip backup", ioe);
+        recordFailure(BackupType.LOCAL_ZIP);
+        recordFailure(BackupType.CLOUD_ZIP);
+
+        // Alert the user since the wallet may be left without a recent backup
+        CoreEvents.fireSecurityEvent(SecuritySummary.newBackupFailed());
+      }
+      return;
+    }
+
+    if (localDue) {
+      performLocalZipBackup();
+    }
+    if (cloudDue) {
+      performCloudZipBackup();
+    }
+  }
+
   /**
    * Remember a wallet id and password.
    * This will be used at the next cloud zip backup.
    */
-  public void rememberWalletIdAndPasswordForCloudZipBackup(WalletId walletId, CharSequence password) {
+  public synchronized void rememberWalletIdAndPasswordForCloudZipBackup(WalletId walletId, CharSequence password) {
+    markChanged(BackupType.CLOUD_ZIP, rememberedWalletIdForCloudBackup.orNull(), walletId);
     rememberedWalletIdForCloudBackup = Optional.of(walletId);
     rememberedPasswordForCloudBackup = Optional.of(password);
   }
@@ -257,23 +404,206 @@ public class BackupService extends AbstractService {
     if (rememberedWalletIdForCloudBackup.isPresent() && rememberedPasswordForCloudBackup.isPresent()) {
       log.debug("Performing a cloud zip backup");
 
+      long generation = schedules.get(BackupType.CLOUD_ZIP).getChangeGeneration();
       try {
         BackupManager.INSTANCE.createCloudBackup(rememberedWalletIdForCloudBackup.get(), rememberedPasswordForCloudBackup.get());
 
-        // Don't use anything remembered in the past at this point again
-        // (This will miss anything newly remembered whilst the backup is taking place
-        rememberedWalletIdForCloudBackup = Optional.absent();
-        rememberedPasswordForCloudBackup = Optional.absent();
+        verifyZipBackupsLater(rememberedWalletIdForCloudBackup.get(), rememberedPasswordForCloudBackup.get());
+
+        recordBackup(BackupType.CLOUD_ZIP, generation);
+        forgetCloudZipBackupPassword(generation);
       } catch (IOException ioe) {
-        ioe.printStackTrace();
-        // TODO handle exception (which is thrown inside the main runnable)
+        log.error("Failed to perform a cloud zip backup", ioe);
+        recordFailure(BackupType.CLOUD_ZIP);
+
+        // Alert the user since the wallet may be left without a recent backup
+        CoreEvents.fireSecurityEvent(SecuritySummary.newBackupFailed());
+      }
+    }
+  }
+
+  /**
+   * @param walletId The wallet id
+   * @return True if there is no local zip backup or the newest is older than the full backup interval
+   */
+  private boolean isFullLocalZipBackupDue(WalletId walletId) {
+
+    List<BackupSummary> localZipBackups = BackupManager.INSTANCE.getLocalZipBackups(walletId);
+    if (localZipBackups.isEmpty()) {
+      return true;
+    }
+
+    DateTime newest = localZipBackups.get(localZipBackups.size() - 1).getCreated();
+    return newest == null || newest.getMillis() < System.currentTimeMillis() - FULL_LOCAL_ZIP_BACKUP_INTERVAL_MILLIS;
+  }
+
+  /**
+   * Record a change for a type of backup, starting afresh if a different wallet is now being backed up
+   *
+   * @param backupType       The type of backup
+   * @param previousWalletId The wallet id previously remembered for this type of backup (null if none)
+   * @param walletId         The wallet id of the changed wallet
+   */
+  private void markChanged(BackupType backupType, WalletId previousWalletId, WalletId walletId) {
+
+    BackupSchedule schedule = schedules.get(backupType);
+    if (previousWalletId != null && !previousWalletId.equals(walletId)) {
+      schedule.reset();
+    }
+    schedule.markChanged(System.currentTimeMillis());
+
+  }
+
+  /**
+   * @param backupType The type of backup just made
+   * @param generation The change generation captured before the backup started
+   */
+  private void recordBackup(BackupType backupType, long generation) {
+
+    BackupSchedule schedule = schedules.get(backupType);
+    schedule.recordBackup(generation, System.currentTimeMillis());
+
+    log.debug(
+      "{} backups performed: {}, skipped (no change): {}, deferred: {}",
+      backupType,
+      schedule.getPerformed(),
+      schedule.getSkipped(),
+      schedule.getDeferred()
+    );
+
+  }
+
+  /**
+   * @param backupType The type of backup that failed
+   */
+  private void recordFailure(BackupType backupType) {
+
+    BackupSchedule schedule = schedules.get(backupType);
+    schedule.recordFailure(System.currentTimeMillis());
+
+    log.debug("{} backups failed: {}", backupType, schedule.getFailed());
+
+  }
+
+  /**
+   * Don't use the remembered password again once the backup has been made unless a newer one was remembered whilst
+   * the backup was taking place
+   *
+   * @param generation The change generation captured before the backup started
+   */
+  private synchronized void forgetRollingBackupPassword(long generation) {
+
+    if (schedules.get(BackupType.ROLLING).getChangeGeneration() == generation) {
+      rememberedWalletSummaryForRollingBackup = Optional.absent();
+      rememberedPasswordForRollingBackup = Optional.absent();
+    }
+
+  }
+
+  /**
+   * Don't use the remembered password again once the backup has been made unless a newer one was remembered whilst
+   * the backup was taking place
+   *
+   * @param generation The change generation captured before the backup started
+   */
+  private synchronized void forgetLocalZipBackupPassword(long generation) {
+
+    if (schedules.get(BackupType.LOCAL_ZIP).getChangeGeneration() == generation) {
+      rememberedWalletIdForLocalBackup = Optional.absent();
+      rememberedPasswordForLocalBackup = Optional.absent();
+    }
+
+  }
+
+  /**
+   * Don't use the remembered password again once the backup has been made unless a newer one was remembered whilst
+   * the backup was taking place
+   *
+   * @param generation The change generation captured before the backup started
+   */
+  private synchronized void forgetCloudZipBackupPassword(long generation) {
+
+    if (schedules.get(BackupType.CLOUD_ZIP).getChangeGeneration() == generation) {
+      rememberedWalletIdForCloudBackup = Optional.absent();
+      rememberedPasswordForCloudBackup = Optional.absent();
+    }
+
+  }
+
+  /**
+   * Verify the new (and any long unverified) zip backups of a wallet on the verification thread
+   * Nothing is verified once backups are disabled since the application is shutting down
+   *
+   * @param walletId The wallet id of the backups
+   * @param password The wallet password
+   */
+  private void verifyZipBackupsLater(final WalletId walletId, final CharSequence password) {
+
+    if (!backupsAreEnabled || !getExecutorServiceOptional().isPresent()) {
+      return;
+    }
+
+    getExecutorService().submit(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          int failures = BackupManager.INSTANCE.verifyZipBackups(walletId, password, REVERIFY_AFTER_MILLIS, VERIFY_BYTES_PER_SECOND);
+          if (failures > 0) {
+            log.warn("{} zip backup(s) of wallet '{}' failed verification", failures, walletId);
+
+            // A backup that cannot be restored is as bad as a backup that was never written
+            CoreEvents.fireSecurityEvent(SecuritySummary.newBackupFailed());
+          }
+        } catch (RuntimeException e) {
+          log.warn("Could not verify the zip backups of wallet '{}': {}", walletId, e.getMessage());
+        }
       }
+    });
+  }
+
+  /**
+   * Verify a new snapshot on the verification thread
+   *
+   * @param walletId     The wallet id of the snapshot
+   * @param password     The wallet password
+   * @param snapshotName The snapshot to verify
+   */
+  private void verifySnapshotBackupLater(final WalletId walletId, final CharSequence password, final String snapshotName) {
+
+    if (!backupsAreEnabled || !getExecutorServiceOptional().isPresent()) {
+      return;
     }
+
+    getExecutorService().submit(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          if (!BackupManager.INSTANCE.verifySnapshotBackup(walletId, password, snapshotName)) {
+            log.warn("Snapshot '{}' of wallet '{}' failed verification", snapshotName, walletId);
+            CoreEvents.fireSecurityEvent(SecuritySummary.newBackupFailed());
+          }
+        } catch (RuntimeException e) {
+          log.warn("Could not verify snapshot '{}' of wallet '{}': {}", snapshotName, walletId, e.getMessage());
+        }
+      }
+    });
+  }
+
+  /**
+   * <p>Track whether the block chain is downloading so heavy backups can be deferred</p>
+   *
+   * @param event The Bitcoin network changed event
+   */
+  @Subscribe
+  public void onBitcoinNetworkChangedEvent(BitcoinNetworkChangedEvent event) {
+
+    downloadingBlockChain = event.getSummary().getStatus() == BitcoinNetworkStatus.DOWNLOADING_BLOCKCHAIN;
+
   }
 
   /**
    * On shutdown disable any more backups, wait until any current backup is finished and then perform
-   * a rolling, local and cloud backup
+   * a rolling, local and cloud backup of any changes not yet backed up
    * @param shutdownEvent Shutdown event
    */
   @Subscribe
@@ -294,11 +624,7 @@ public class BackupService extends AbstractService {
             Uninterruptibles.sleepUninterruptibly(200, TimeUnit.MILLISECONDS);
           }
 
-          performRollingBackup();
-
-          performLocalZipBackup();
-
-          performCloudZipBackup();
+          performDueBackups(true);
 
         }
 
@@ -324,4 +650,36 @@ public class BackupService extends AbstractService {
   public boolean isBackupsAreRunning() {
     return backupsAreRunning;
   }
-}
\ No newline at end of file
+
+  /**
+   * @param backupType The type of backup
+   * @return The number of backups of this type made since the service was created
+   */
+  public long getBackupsPerformed(BackupType backupType) {
+    return schedules.get(backupType).getPerformed();
+  }
+
+  /**
+   * @param backupType The type of backup
+   * @return The number of intervals in which a backup of this type was skipped because nothing had changed
+   */
+  public long getBackupsSkipped(BackupType backupType) {
+    return schedules.get(backupType).getSkipped();
+  }
+
+  /**
+   * @param backupType The type of backup
+   * @return The number of times a backup of this type was held back to coalesce changes or whilst the block chain downloaded
+   */
+  public long getBackupsDeferred(BackupType backupType) {
+    return schedules.get(backupType).getDeferred();
+  }
+
+  /**
+   * @param backupType The type of backup
+   * @return The number of backups of this type that failed
+   */
+  public long getBackupsFailed(BackupType backupType) {
+    return schedules.get(backupType).getFailed();
+  }
+}
@@ -8,9 +8,10 @@ import com.google.bitcoin.store.BlockStoreException;
 import com.google.bitcoin.wallet.KeyChain;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
-import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.collect.ImmutableList;
 import com.subgraph.orchid.TorClient;
 import org.joda.time.DateTime;
+import org.multibit.hd.brit.dto.FeeState;
 import org.multibit.hd.core.config.Configurations;
 import org.multibit.hd.core.crypto.EncryptedFileReaderWriter;
 import org.multibit.hd.core.dto.*;
@@ -21,6 +22,7 @@ import org.multibit.hd.core.managers.BlockStoreManager;
 import org.multibit.hd.core.managers.InstallationManager;
 import org.multibit.hd.core.managers.WalletManager;
 import org.multibit.hd.core.network.MultiBitPeerEventListener;
+import org.multibit.hd.core.network.PeerHealthProbe;
 import org.multibit.hd.core.utils.Coins;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,11 +32,8 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.math.BigDecimal;
-import java.net.InetAddress;
-import java.net.UnknownHostException;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
 import java.util.concurrent.TimeoutException;
 
 /**
@@ -69,6 +68,8 @@ public class BitcoinNetworkService extends AbstractService {
   private BlockChain blockChain;
   private MultiBitPeerEventListener peerEventListener;
 
+  private final PeerHealthProbe peerHealthProbe = new PeerHealthProbe();
+
   private final NetworkParameters networkParameters;
 
   private boolean startedOk = false;
@@ -143,6 +144,9 @@ public class BitcoinNetworkService extends AbstractService {
     // Close the wallet
     closeWallet();
 
+    // Release the probe threads
+    peerHealthProbe.shutdown();
+
     // Hand over to the superclass to finalise service executors
     super.stopAndWait();
 
@@ -184,7 +188,7 @@ public class BitcoinNetworkService extends AbstractService {
           log.debug("Blockchain download was interrupted. Error was : '" + re.getMessage() + "'");
         }
 
-        log.debug("Block chain downloaded.");
+        log.debug("Block chain downloaded. Final progress: {}", getSyncProgress().orNull());
 
         CoreEvents.fireBitcoinNetworkChangedEvent(BitcoinNetworkSummary.newNetworkReady(peerGroup.numConnectedPeers()));
       }
@@ -198,7 +202,21 @@ public class BitcoinNetworkService extends AbstractService {
    */
   public void replayWallet(DateTime dateToReplayFrom) throws IOException, BlockStoreException, TimeoutException {
 
+    replayWallet(dateToReplayFrom, ReplayMode.REBUILD);
+
+  }
+
+  /**
+   * Sync the current wallet from the date specified.
+   * Depending on the replay mode the blockstore is either rebuilt or rewound, then the blockchain is downloaded.
+   *
+   * @param dateToReplayFrom The date to replay from
+   * @param replayMode       The replay mode (incremental avoids deleting the blockstore and re-downloading unaffected headers)
+   */
+  public void replayWallet(DateTime dateToReplayFrom, ReplayMode replayMode) throws IOException, BlockStoreException, TimeoutException {
+
     Preconditions.checkNotNull(dateToReplayFrom);
+    Preconditions.checkNotNull(replayMode);
     Preconditions.checkState(WalletManager.INSTANCE.getCurrentWalletSummary().isPresent());
     Preconditions.checkState(!SwingUtilities.isEventDispatchThread(), "Replay should not take place on the EDT");
 
@@ -211,10 +229,7 @@ public class BitcoinNetworkService extends AbstractService {
     closeBlockstore();
 
     log.info("Starting replay of wallet with id '" + WalletManager.INSTANCE.getCurrentWalletSummary().get().getWalletId()
-            + "' from date " + dateToReplayFrom);
-
-    // TODO (JB) The current best height should be remembered and used to generate percentage completeWithoutSigning as
-    // TODO (JB) then if the peer is replaced the percentage increases monotonically
+            + "' from date " + dateToReplayFrom + " using " + replayMode);
 
     File applicationDataDirectory = InstallationManager.getOrCreateApplicationDataDirectory();
     String walletRoot = WalletManager.INSTANCE.getCurrentWalletFile(applicationDataDirectory).get().getParentFile().getAbsolutePath();
@@ -222,8 +237,13 @@ public class BitcoinNetworkService extends AbstractService {
     File blockchainFile = new File(walletRoot + File.separator + InstallationManager.MBHD_PREFIX + InstallationManager.SPV_BLOCKCHAIN_SUFFIX);
     File checkpointsFile = new File(walletRoot + File.separator + InstallationManager.MBHD_PREFIX + InstallationManager.CHECKPOINTS_SUFFIX);
 
-    log.debug("Recreating blockstore with checkpoint date of " + dateToReplayFrom + " ...");
-    blockStore = new BlockStoreManager(networkParameters).createBlockStore(blockchainFile, checkpointsFile, dateToReplayFrom.toDate(), true);
+    if (replayMode == ReplayMode.INCREMENTAL) {
+      log.debug("Rewinding blockstore to " + dateToReplayFrom + " ...");
+      blockStore = new BlockStoreManager(networkParameters).rewindBlockStore(blockchainFile, checkpointsFile, dateToReplayFrom.toDate());
+    } else {
+      log.debug("Recreating blockstore with checkpoint date of " + dateToReplayFrom + " ...");
+      blockStore = new BlockStoreManager(networkParameters).createBlockStore(blockchainFile, checkpointsFile, dateToReplayFrom.toDate(), true);
+    }
     log.debug("Blockstore is '{}'", blockStore);
 
     restartNetwork();
@@ -272,28 +292,268 @@ public class BitcoinNetworkService extends AbstractService {
     // Get the current wallet
     Wallet wallet = WalletManager.INSTANCE.getCurrentWalletSummary().get().getWallet();
 
-    // Derive and append the key parameter to unlock the wallet
+    SendPipeline pipeline = new SendPipeline("send");
+
+    // Derive and append the key parameter to unlock the wallet (once only)
+    pipeline.begin(SendPipeline.Stage.DERIVE_KEY);
     if (!appendKeyParameter(sendRequestSummary, wallet)) {
+      pipeline.complete(false);
       return false;
     }
 
     // Attempt to sign the transaction and signAndCommit it
+    pipeline.begin(SendPipeline.Stage.SIGN_AND_COMMIT);
     if (!signAndCommit(sendRequestSummary, wallet)) {
+      pipeline.complete(false);
       return false;
     }
 
     // Attempt to broadcast it
+    pipeline.begin(SendPipeline.Stage.BROADCAST);
     if (!broadcast(sendRequestSummary, wallet)) {
+      pipeline.complete(false);
       return false;
     }
 
     // Must be OK to be here
+    pipeline.complete(true);
     log.debug("Send coins has completed");
 
     return true;
 
   }
 
+  /**
+   * <p>Send bitcoin to many recipients in a single transaction</p>
+   *
+   * <p>The wallet key is derived once, coins are selected once and any BRIT client fee is applied once for the
+   * whole batch. The result is reported once for the whole transaction through a TransactionCreationEvent and, if
+   * the transaction is created ok, a BitcoinSentEvent so that the fees and payments are recorded only once.</p>
+   *
+   * @param batchSendRequestSummary The information required to send bitcoin to the payees
+   */
+  public void sendBatch(final BatchSendRequestSummary batchSendRequestSummary) {
+    getExecutorService().submit(new Runnable() {
+      @Override
+      public void run() {
+
+        performBatchSend(batchSendRequestSummary);
+      }
+
+    });
+  }
+
+  /**
+   * <p>Package access for testing</p>
+   *
+   * @param batchSendRequestSummary The information required to send bitcoin to the payees
+   *
+   * @return True if the batch was created and broadcast successfully
+   */
+  boolean performBatchSend(BatchSendRequestSummary batchSendRequestSummary) {
+
+    log.debug("Starting the batch send process for {} payees", batchSendRequestSummary.getPayees().size());
+
+    // Verify the wallet summary
+    if (!WalletManager.INSTANCE.getCurrentWalletSummary().isPresent()) {
+      log.debug("Wallet summary check fail");
+      fireBatchTransactionCreationFailed(batchSendRequestSummary, null, CoreMessageKey.NO_ACTIVE_WALLET.getKey(), new String[]{""});
+      return false;
+    }
+
+    // Get the current wallet
+    Wallet wallet = WalletManager.INSTANCE.getCurrentWalletSummary().get().getWallet();
+
+    SendPipeline pipeline = new SendPipeline("batch-send");
+
+    Wallet.SendRequest sendRequest = null;
+    try {
+
+      // Build a single transaction with an output per payee
+      pipeline.begin(SendPipeline.Stage.PREPARE);
+      sendRequest = Wallet.SendRequest.forTx(new Transaction(networkParameters));
+      for (BatchSendRequestSummary.Payee payee : batchSendRequestSummary.getPayees()) {
+        sendRequest.tx.addOutput(payee.getAmount(), payee.getAddress());
+      }
+      sendRequest.fee = Coin.ZERO;
+      sendRequest.feePerKb = batchSendRequestSummary.getFeePerKB();
+      sendRequest.changeAddress = batchSendRequestSummary.getChangeAddress();
+
+      // The client fee output is added before completion so the mining fee includes it
+      appendBatchClientFee(batchSendRequestSummary, sendRequest);
+
+      // Derive the key once for the whole batch
+      pipeline.begin(SendPipeline.Stage.DERIVE_KEY);
+      if (!batchSendRequestSummary.getKeyParameter().isPresent()) {
+        if (wallet.getKeyCrypter() == null) {
+          throw new IllegalStateException("No key crypter in wallet when one is expected.");
+        }
+        batchSendRequestSummary.setKeyParameter(wallet.getKeyCrypter().deriveKey(batchSendRequestSummary.getPassword()));
+      }
+      sendRequest.aesKey = batchSendRequestSummary.getKeyParameter().get();
+
+      // Select coins, calculate the mining fee and sign in a single pass
+      pipeline.begin(SendPipeline.Stage.SIGN_AND_COMMIT);
+      sendRequest.signInputs = true;
+      wallet.completeTx(sendRequest);
+
+      // Commit to the wallet (informs the wallet of the transaction)
+      wallet.commitTx(sendRequest.tx);
+
+      batchSendRequestSummary.setSendRequest(sendRequest);
+
+    } catch (Exception e) {
+
+      log.error(e.getMessage(), e);
+
+      String transactionId = sendRequest != null && sendRequest.tx != null ? sendRequest.tx.getHashAsString() : "?";
+
+      fireBatchTransactionCreationFailed(
+        batchSendRequestSummary,
+        transactionId,
+        CoreMessageKey.THE_ERROR_WAS.getKey(),
+        new String[]{e.getClass().getCanonicalName() + " " + e.getMessage()}
+      );
+
+      pipeline.complete(false);
+      return false;
+    }
+
+    // Fire a single successful transaction creation event for the whole batch (not yet broadcast)
+    CoreEvents.fireTransactionCreationEvent(newBatchTransactionCreationEvent(
+      batchSendRequestSummary,
+      sendRequest.tx.getHashAsString(),
+      Optional.of(sendRequest.fee) /* the actual mining fee paid */,
+      true,
+      null,
+      null
+    ));
+
+    // Attempt to broadcast it
+    pipeline.begin(SendPipeline.Stage.BROADCAST);
+    boolean success = broadcastBatch(batchSendRequestSummary, sendRequest);
+
+    pipeline.complete(success);
+
+    if (success) {
+      log.debug("Batch send has completed");
+    }
+
+    return success;
+  }
+
+  /**
+   * <p>Add the BRIT client fee output once for the whole batch (if required and above the dust level)</p>
+   *
+   * @param batchSendRequestSummary The information required to send bitcoin to the payees
+   * @param sendRequest             The send request under construction
+   */
+  private void appendBatchClientFee(BatchSendRequestSummary batchSendRequestSummary, Wallet.SendRequest sendRequest) {
+
+    if (!batchSendRequestSummary.getFeeState().isPresent()) {
+      // Nothing more to be done
+      return;
+    }
+
+    FeeState feeState = batchSendRequestSummary.getFeeState().get();
+    if (feeState.getCurrentNumberOfSends() != feeState.getNextFeeSendCount()) {
+      log.debug("No client fee address added for this tx");
+      return;
+    }
+
+    if (feeState.getFeeOwed().compareTo(Transaction.MIN_NONDUST_OUTPUT) <= 0) {
+      log.debug("Not adding client fee as it is smaller than dust : {}", feeState.getFeeOwed());
+      return;
+    }
+
+    Address feeAddress = feeState.getNextFeeAddress();
+    sendRequest.tx.addOutput(feeState.getFeeOwed(), feeAddress);
+
+    batchSendRequestSummary.setFeeAddress(Optional.of(feeAddress));
+    batchSendRequestSummary.setClientFeeAdded(Optional.of(feeState.getFeeOwed()));
+
+    log.debug("Added client fee to address: '{}'", feeAddress);
+  }
+
+  /**
+   * @param batchSendRequestSummary The information required to send bitcoin to the payees
+   * @param sendRequest             The completed and committed send request
+   *
+   * @return True if the broadcast operation was successful
+   */
+  private boolean broadcastBatch(BatchSendRequestSummary batchSendRequestSummary, Wallet.SendRequest sendRequest) {
+
+    log.debug("Attempting to broadcast batch transaction");
+
+    // The batch is reported as a single payment of the total with a breakdown by payee
+    return broadcastAndReport(
+      sendRequest,
+      null,
+      batchSendRequestSummary.getPayees(),
+      batchSendRequestSummary.getTotalAmount(),
+      batchSendRequestSummary.getChangeAddress(),
+      batchSendRequestSummary.getClientFeeAdded()
+    );
+
+  }
+
+  /**
+   * @param batchSendRequestSummary The information required to send bitcoin to the payees
+   * @param transactionId           The transaction ID if known
+   * @param failureKey              The failure reason key
+   * @param failureData             The failure reason data
+   */
+  private void fireBatchTransactionCreationFailed(BatchSendRequestSummary batchSendRequestSummary, String transactionId, String failureKey, String[] failureData) {
+
+    CoreEvents.fireTransactionCreationEvent(newBatchTransactionCreationEvent(
+      batchSendRequestSummary,
+      transactionId,
+      Optional.<Coin>absent(),
+      false,
+      failureKey,
+      failureData
+    ));
+
+  }
+
+  /**
+   * <p>Describe a batch transaction as a single payment so that listeners record the transaction, its fees and
+   * its notes once. The amount is the batch total and each payee is listed with the amount they were paid.</p>
+   *
+   * @param batchSendRequestSummary The information required to send bitcoin to the payees
+   * @param transactionId           The transaction ID if known
+   * @param miningFee               The mining fee paid (absent on failure)
+   * @param success                 True if the transaction was created
+   * @param failureKey              The failure reason key
+   * @param failureData             The failure reason data
+   *
+   * @return The transaction creation event for the whole batch
+   */
+  static TransactionCreationEvent newBatchTransactionCreationEvent(
+    BatchSendRequestSummary batchSendRequestSummary,
+    String transactionId,
+    Optional<Coin> miningFee,
+    boolean success,
+    String failureKey,
+    String[] failureData) {
+
+    return new TransactionCreationEvent(
+      transactionId,
+      batchSendRequestSummary.getTotalAmount(),
+      Optional.<FiatPayment>absent(),
+      miningFee,
+      success ? batchSendRequestSummary.getClientFeeAdded() : Optional.<Coin>absent(),
+      null,
+      batchSendRequestSummary.getPayees(),
+      batchSendRequestSummary.getChangeAddress(),
+      success,
+      failureKey,
+      failureData,
+      batchSendRequestSummary.getNotes()
+    );
+
+  }
+
   /**
    * @param sendRequestSummary The information required to send bitcoin
    * @param wallet             The wallet
@@ -304,10 +564,16 @@ public class BitcoinNetworkService extends AbstractService {
     // Wrap it all up in a try-catch to ensure we fire a failure event
     try {
 
-      log.debug("Deriving key parameter");
-
       Preconditions.checkNotNull(wallet, "'wallet' must be present");
 
+      // Avoid repeating the expensive derivation if an earlier stage (or the caller) has already provided the key
+      if (sendRequestSummary.getKeyParameter().isPresent()) {
+        log.debug("Reusing derived key parameter");
+        return true;
+      }
+
+      log.debug("Deriving key parameter");
+
       if (wallet.getKeyCrypter() == null) {
         throw new IllegalStateException("No key crypter in wallet when one is expected.");
       }
@@ -537,6 +803,23 @@ public class BitcoinNetworkService extends AbstractService {
   public boolean prepareTransaction(SendRequestSummary sendRequestSummary) {
     log.debug("Starting the prepare transaction process");
 
+    SendPipeline pipeline = new SendPipeline("prepare");
+    pipeline.begin(SendPipeline.Stage.PREPARE);
+
+    boolean success = performPrepareTransaction(sendRequestSummary);
+
+    pipeline.complete(success);
+
+    return success;
+  }
+
+  /**
+   * @param sendRequestSummary The information required to prepare a transaction for sending
+   *
+   * @return whether the prepareTransaction was successful or not
+   */
+  private boolean performPrepareTransaction(SendRequestSummary sendRequestSummary) {
+
     // Verify the wallet summary
     if (!checkWalletSummary(sendRequestSummary)) {
       log.debug("Wallet summary check fail");
@@ -746,8 +1029,9 @@ public class BitcoinNetworkService extends AbstractService {
     Wallet.SendRequest sendRequest = sendRequestSummary.getSendRequest().get();
 
     try {
-      // Ensure the aeskey for decrypting the keys is present in the sendRequest
-      sendRequest.aesKey = wallet.getKeyCrypter().deriveKey(sendRequestSummary.getPassword());
+      // Ensure the aeskey for decrypting the keys is present in the sendRequest (derived in an earlier stage)
+      Preconditions.checkState(sendRequestSummary.getKeyParameter().isPresent(), "'keyParameter' must be present");
+      sendRequest.aesKey = sendRequestSummary.getKeyParameter().get();
 
       // Sign the transaction
       sendRequest.signInputs=true;
@@ -811,7 +1095,36 @@ public class BitcoinNetworkService extends AbstractService {
 
     log.debug("Attempting to broadcast transaction");
 
-    Wallet.SendRequest sendRequest = sendRequestSummary.getSendRequest().get();
+    return broadcastAndReport(
+      sendRequestSummary.getSendRequest().get(),
+      sendRequestSummary.getDestinationAddress(),
+      ImmutableList.<BatchSendRequestSummary.Payee>of(),
+      sendRequestSummary.getTotalAmount(),
+      sendRequestSummary.getChangeAddress(),
+      sendRequestSummary.getClientFeeAdded()
+    );
+
+  }
+
+  /**
+   * <p>Broadcast a completed transaction and report the outcome with a single BitcoinSentEvent</p>
+   *
+   * @param sendRequest        The completed and committed send request
+   * @param destinationAddress The destination address to report (null for a batch)
+   * @param payees             The payees of a batch to report (empty for a single payment)
+   * @param totalAmount        The total amount to report
+   * @param changeAddress      The change address
+   * @param clientFeeAdded     The client fee added to the transaction
+   *
+   * @return True if the broadcast operation was successful
+   */
+  private boolean broadcastAndReport(
+    Wallet.SendRequest sendRequest,
+    Address destinationAddress,
+    List<BatchSendRequestSummary.Payee> payees,
+    Coin totalAmount,
+    Address changeAddress,
+    Optional<Coin> clientFeeAdded) {
 
     try {
 
@@ -820,9 +1133,10 @@ public class BitcoinNetworkService extends AbstractService {
 
         // Declare the send a failure
         CoreEvents.fireBitcoinSentEvent(new BitcoinSentEvent(
-                sendRequestSummary.getDestinationAddress(),
-                sendRequestSummary.getTotalAmount(),
-                sendRequestSummary.getChangeAddress(),
+                destinationAddress,
+                payees,
+                totalAmount,
+                changeAddress,
                 Optional.<Coin>absent(),
                 Optional.<Coin>absent(),
                 false,
@@ -841,10 +1155,12 @@ public class BitcoinNetworkService extends AbstractService {
 
       // Declare the send a success
       CoreEvents.fireBitcoinSentEvent(new BitcoinSentEvent(
-              sendRequestSummary.getDestinationAddress(), sendRequestSummary.getTotalAmount(),
-              sendRequestSummary.getChangeAddress(),
+              destinationAddress,
+              payees,
+              totalAmount,
+              changeAddress,
               Optional.of(sendRequest.fee),
-              sendRequestSummary.getClientFeeAdded(),
+              clientFeeAdded,
               true,
               CoreMessageKey.BITCOIN_SENT_OK.getKey(),
               null
@@ -856,8 +1172,10 @@ public class BitcoinNetworkService extends AbstractService {
 
       // Declare the send a failure
       CoreEvents.fireBitcoinSentEvent(new BitcoinSentEvent(
-              sendRequestSummary.getDestinationAddress(), sendRequestSummary.getTotalAmount(),
-              sendRequestSummary.getChangeAddress(),
+              destinationAddress,
+              payees,
+              totalAmount,
+              changeAddress,
               Optional.<Coin>absent(),
               Optional.<Coin>absent(),
               false,
@@ -872,7 +1190,6 @@ public class BitcoinNetworkService extends AbstractService {
 
     // Must be OK to be here
     return true;
-
   }
 
   /**
@@ -926,31 +1243,33 @@ public class BitcoinNetworkService extends AbstractService {
   }
 
   /**
-   * Ping all connected peers to see if there is an active network connection
+   * Ping all connected peers concurrently to see if there is an active network connection
    *
-   * @return true is one or more peers respond to the ping
+   * @return true is one or more peers respond to the ping (or have recently done so)
    */
   public boolean pingPeers() {
 
-    List<Peer> connectedPeers = peerGroup.getConnectedPeers();
-    boolean atLeastOnePingWorked = false;
-    if (connectedPeers != null) {
-      for (Peer peer : connectedPeers) {
+    return peerHealthProbe.probePeers(peerGroup.getConnectedPeers());
 
-        log.debug("Ping: {}", peer.getAddress().toString());
+  }
 
-        try {
-          ListenableFuture<Long> result = peer.ping();
-          result.get(4, TimeUnit.SECONDS);
-          atLeastOnePingWorked = true;
-          break;
-        } catch (ProtocolException | InterruptedException | ExecutionException | TimeoutException e) {
-          log.warn("Peer '" + peer.getAddress().toString() + "' failed ping test. Message was " + e.getMessage());
-        }
-      }
+  /**
+   * @return The progress and throughput of the current block chain synchronization (absent if no peer group)
+   */
+  public Optional<SyncProgressSummary> getSyncProgress() {
+
+    if (peerEventListener == null) {
+      return Optional.absent();
     }
 
-    return atLeastOnePingWorked;
+    return Optional.of(peerEventListener.getSyncProgress());
+  }
+
+  /**
+   * @return A snapshot of the ping round trip statistics keyed by peer address
+   */
+  public Map<String, PeerHealthProbe.PeerStatistics> getPeerStatistics() {
+    return peerHealthProbe.getPeerStatistics();
   }
 
   /**
@@ -958,21 +1277,9 @@ public class BitcoinNetworkService extends AbstractService {
    */
   private boolean isNetworkPresent() {
 
-    final String[] dnsSeeds = networkParameters.getDnsSeeds();
-
-    // Attempt to lookup each address - first success indicates working network
-    for (String dnsSeed : dnsSeeds) {
-      try {
-        if (InetAddress.getAllByName(dnsSeed) != null) {
-          return true;
-        }
-      } catch (UnknownHostException e) {
-        log.warn("Could not resolve '{}'", dnsSeed);
-      }
-    }
+    // Resolve all DNS seeds together - first success indicates working network
+    return peerHealthProbe.probeDnsSeeds(networkParameters.getDnsSeeds());
 
-    // All DNS seeds failed
-    return false;
   }
 
   /**
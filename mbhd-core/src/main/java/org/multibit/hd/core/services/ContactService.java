@@ -39,6 +39,11 @@ public interface ContactService {
    */
   List<Contact> allContacts();
 
+  /**
+   * @return A counter that changes whenever contacts are added, removed, updated or loaded (allows caches to detect changes)
+   */
+  long getGeneration();
+
   /**
    * @param address The Bitcoin address to query on
    *
@@ -22,7 +22,10 @@ import org.multibit.hd.core.events.CoreEvents;
 import org.multibit.hd.core.events.ShutdownEvent;
 import org.multibit.hd.core.exceptions.CoreException;
 import org.multibit.hd.core.exceptions.ExceptionHandler;
+import org.multibit.hd.core.exchanges.CurrencyCatalogue;
+import org.multibit.hd.core.exchanges.ExchangeRateHistory;
 import org.multibit.hd.core.logging.LoggingFactory;
+import org.multibit.hd.core.logging.StartupTracer;
 import org.multibit.hd.core.managers.InstallationManager;
 import org.multibit.hd.core.managers.WalletManager;
 import org.slf4j.Logger;
@@ -105,6 +108,16 @@ public class CoreServices {
    */
   private static BackupService backupService;
 
+  /**
+   * Keep track of the currencies offered by each exchange (shared by all exchange ticker services)
+   */
+  private static CurrencyCatalogue currencyCatalogue;
+
+  /**
+   * Keep track of exchange rates over time (shared by the exchange ticker and wallet services)
+   */
+  private static ExchangeRateHistory exchangeRateHistory;
+
   static {
 
     // Order is important here
@@ -134,27 +147,44 @@ public class CoreServices {
 
     log.debug("Loading configuration...");
 
-    Optional<Configuration> configuration;
-    try (InputStream is = new FileInputStream(InstallationManager.getConfigurationFile())) {
-      // Load configuration (providing a default if none exists)
-      configuration = Configurations.readYaml(is, Configuration.class);
-    } catch (IOException e) {
-      configuration = Optional.absent();
-    }
+    StartupTracer.Span span = StartupTracer.INSTANCE.begin("core.configuration");
+    try {
 
-    if (configuration.isPresent()) {
-      log.info("Using current configuration");
-      Configurations.currentConfiguration = configuration.get();
-    } else {
-      log.warn("Using default configuration");
-      Configurations.currentConfiguration = Configurations.newDefaultConfiguration();
+      Optional<Configuration> configuration;
+      try (InputStream is = new FileInputStream(InstallationManager.getConfigurationFile())) {
+        // Load configuration (providing a default if none exists)
+        configuration = Configurations.readYaml(is, Configuration.class);
+      } catch (IOException e) {
+        configuration = Optional.absent();
+      }
+
+      if (configuration.isPresent()) {
+        log.info("Using current configuration");
+        Configurations.currentConfiguration = configuration.get();
+      } else {
+        log.warn("Using default configuration");
+        Configurations.currentConfiguration = Configurations.newDefaultConfiguration();
+      }
+
+    } finally {
+      span.end();
     }
 
     // Configure logging
-    new LoggingFactory(Configurations.currentConfiguration.getLogging(), "MBHD").configure();
+    span = StartupTracer.INSTANCE.begin("core.logging");
+    try {
+      new LoggingFactory(Configurations.currentConfiguration.getLogging(), "MBHD").configure();
+    } finally {
+      span.end();
+    }
 
     // Start security checking service
-    securityCheckingService.start();
+    span = StartupTracer.INSTANCE.begin("core.security");
+    try {
+      securityCheckingService.start();
+    } finally {
+      span.end();
+    }
 
   }
 
@@ -226,6 +256,35 @@ public class CoreServices {
 
   }
 
+  /**
+   * @return Create a new currency catalogue (reading any persisted entries) or return the extant one
+   */
+  public static synchronized CurrencyCatalogue getOrCreateCurrencyCatalogue() {
+    log.trace("Getting currency catalogue");
+    if (currencyCatalogue == null) {
+      File applicationDirectory = InstallationManager.getOrCreateApplicationDataDirectory();
+      currencyCatalogue = new CurrencyCatalogue(
+        Optional.of(new File(applicationDirectory, ExchangeTickerService.CURRENCY_CATALOGUE_NAME)),
+        TimeUnit.HOURS.toMillis(ExchangeTickerService.CURRENCY_CATALOGUE_TTL_HOURS)
+      );
+    }
+
+    return currencyCatalogue;
+  }
+
+  /**
+   * @return Create a new exchange rate history or return the extant one
+   */
+  public static synchronized ExchangeRateHistory getOrCreateExchangeRateHistory() {
+    log.trace("Getting exchange rate history");
+    if (exchangeRateHistory == null) {
+      File applicationDirectory = InstallationManager.getOrCreateApplicationDataDirectory();
+      exchangeRateHistory = new ExchangeRateHistory(new File(applicationDirectory, ExchangeTickerService.EXCHANGE_RATE_HISTORY_DIRECTORY_NAME));
+    }
+
+    return exchangeRateHistory;
+  }
+
   /**
    * @return Create a new backup service or return the extant one
    */
@@ -1,38 +1,48 @@
 package org.multibit.hd.core.services;
 
+import com.google.common.base.Function;
+import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
 import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.xeiam.xchange.Exchange;
-import com.xeiam.xchange.ExchangeFactory;
 import com.xeiam.xchange.NotAvailableFromExchangeException;
 import com.xeiam.xchange.currency.CurrencyPair;
 import com.xeiam.xchange.dto.marketdata.Ticker;
 import com.xeiam.xchange.service.BaseExchangeService;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.multibit.hd.core.concurrent.SafeExecutors;
 import org.multibit.hd.core.config.BitcoinConfiguration;
 import org.multibit.hd.core.config.Configurations;
 import org.multibit.hd.core.dto.ExchangeSummary;
 import org.multibit.hd.core.dto.SecuritySummary;
 import org.multibit.hd.core.events.CoreEvents;
+import org.multibit.hd.core.exchanges.CurrencyCatalogue;
 import org.multibit.hd.core.exchanges.ExchangeKey;
+import org.multibit.hd.core.exchanges.ExchangeRateProvider;
+import org.multibit.hd.core.exchanges.TickerAggregator;
+import org.multibit.hd.core.managers.InstallationManager;
 import org.multibit.hd.core.utils.CurrencyUtils;
 import org.multibit.hd.core.utils.Dates;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.net.ssl.SSLHandshakeException;
-import java.io.IOException;
+import java.io.File;
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.net.UnknownHostException;
 import java.util.*;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * <p>Service to provide the following to application API:</p>
@@ -54,16 +64,69 @@ public class ExchangeTickerService extends AbstractService {
    */
   public static final int TICKER_REFRESH_SECONDS = 900;
 
+  /**
+   * The time allowed for all exchanges to respond before the median is taken from those that did
+   */
+  public static final int TICKER_TIMEOUT_SECONDS = 10;
+
+  /**
+   * The file in the application directory holding the last good exchange rates
+   */
+  public static final String EXCHANGE_RATES_CACHE_NAME = "exchange-rates.properties";
+
+  /**
+   * The file in the application directory holding the currencies offered by each exchange
+   */
+  public static final String CURRENCY_CATALOGUE_NAME = "exchange-currencies.properties";
+
+  /**
+   * Exchanges rarely change their currency offerings so only ask once a day
+   */
+  public static final int CURRENCY_CATALOGUE_TTL_HOURS = 24;
+
+  /**
+   * The directory in the application directory holding the exchange rate history of each currency
+   */
+  public static final String EXCHANGE_RATE_HISTORY_DIRECTORY_NAME = "exchange-rates";
+
   private final ExchangeKey exchangeKey;
   private final Currency localCurrency;
 
   private final Optional<Exchange> exchange;
 
+  /**
+   * The current exchange (provides an empty ticker for NONE)
+   */
+  private final ExchangeRateProvider primaryProvider;
+
+  /**
+   * The current exchange followed by any additional exchanges
+   */
+  private final List<ExchangeRateProvider> rateProviders = Lists.newArrayList();
+
   /**
    * The executor service for managing one off dynamic "all currency" lookups against exchanges
    */
   final ListeningExecutorService allCurrenciesExecutorService = SafeExecutors.newSingleThreadExecutor("all-currencies");
   private ListeningExecutorService latestTickerExecutorService = SafeExecutors.newSingleThreadExecutor("latest-ticker");
+  private ListeningExecutorService triangulationExecutorService = SafeExecutors.newFixedThreadPool(2, "ticker-triangulation");
+
+  /**
+   * The executor service for the aggregator requests (one thread per exchange, created on start)
+   */
+  private ListeningExecutorService aggregatorExecutorService;
+
+  /**
+   * The executor service that gathers the aggregator results (separate so it cannot starve the requests, created on start)
+   */
+  private ListeningExecutorService aggregatorGatherExecutorService;
+
+  private volatile Optional<TickerAggregator> tickerAggregator = Optional.absent();
+
+  /**
+   * The currency catalogue refresh that is pending or running (at most one at a time)
+   */
+  private final AtomicReference<ListenableFuture<?>> currencyCatalogueRefresh = new AtomicReference<>();
 
   /**
    * <p>Each new instance of the exchange ticker service creates a new independent Exchange</p>
@@ -75,23 +138,37 @@ public class ExchangeTickerService extends AbstractService {
     this.exchangeKey = ExchangeKey.valueOf(bitcoinConfiguration.getCurrentExchange());
     this.localCurrency = Currency.getInstance(bitcoinConfiguration.getLocalCurrencyCode());
 
-    // Check for a real exchange
-    if (ExchangeKey.NONE.equals(exchangeKey)) {
+    Map<String, String> exchangeApiKeys = bitcoinConfiguration.getExchangeApiKeys();
 
-      this.exchange = Optional.absent();
+    // The current exchange is always the primary provider
+    this.primaryProvider = new ExchangeRateProvider(
+      exchangeKey,
+      Optional.fromNullable(exchangeApiKeys.get(exchangeKey.name())),
+      triangulationExecutorService
+    );
+    this.exchange = primaryProvider.getExchange();
 
-    } else {
+    // Check for a real exchange
+    if (!ExchangeKey.NONE.equals(exchangeKey)) {
 
-      // Create a new exchange
-      String exchangeClassName = exchangeKey.getExchange().get().getExchangeSpecification().getExchangeClassName();
-      exchange = Optional.of(ExchangeFactory.INSTANCE.createExchange(exchangeClassName));
+      rateProviders.add(primaryProvider);
 
-      // Apply the Bitcoin configuration to this exchange
-      Map<String, String> exchangeApiKeys = bitcoinConfiguration.getExchangeApiKeys();
-      if (exchangeApiKeys.containsKey(exchangeKey.name())) {
-        exchange.get().getExchangeSpecification().setApiKey(exchangeApiKeys.get(exchangeKey.name()));
+      // Add any further exchanges to provide a median rate
+      for (String additionalExchange : bitcoinConfiguration.getAdditionalExchanges()) {
+        try {
+          ExchangeKey additionalKey = ExchangeKey.valueOf(additionalExchange);
+          if (ExchangeKey.NONE.equals(additionalKey) || exchangeKey.equals(additionalKey)) {
+            continue;
+          }
+          rateProviders.add(new ExchangeRateProvider(
+            additionalKey,
+            Optional.fromNullable(exchangeApiKeys.get(additionalKey.name())),
+            triangulationExecutorService
+          ));
+        } catch (IllegalArgumentException e) {
+          log.warn("Ignoring unknown additional exchange '{}'", additionalExchange);
+        }
       }
-
     }
 
   }
@@ -104,6 +181,62 @@ public class ExchangeTickerService extends AbstractService {
     // Use the provided executor service management
     requireSingleThreadScheduledExecutor("exchange-ticker");
 
+    if (!rateProviders.isEmpty()) {
+
+      // Only a started service aggregates so a service created for a single lookup has no aggregator threads
+      aggregatorExecutorService = SafeExecutors.newFixedThreadPool(rateProviders.size(), "ticker-aggregator");
+      aggregatorGatherExecutorService = SafeExecutors.newSingleThreadExecutor("ticker-aggregator-gather");
+
+      Optional<File> cacheFile = Optional.absent();
+      try {
+        cacheFile = Optional.of(new File(InstallationManager.getOrCreateApplicationDataDirectory(), EXCHANGE_RATES_CACHE_NAME));
+      } catch (IllegalStateException e) {
+        log.warn("Exchange rates will not be cached: {}", e.getMessage());
+      }
+
+      tickerAggregator = Optional.of(new TickerAggregator(
+        rateProviders,
+        TimeUnit.SECONDS.toMillis(TICKER_TIMEOUT_SECONDS),
+        TimeUnit.SECONDS.toMillis(TICKER_REFRESH_SECONDS),
+        cacheFile,
+        aggregatorExecutorService,
+        aggregatorGatherExecutorService
+      ));
+
+      // Show the last good rate immediately rather than waiting for the exchanges (unless it has already expired)
+      Optional<TickerAggregator.AggregateRate> cachedRate = tickerAggregator.get().getCachedRate(localCurrency);
+      if (cachedRate.isPresent() && !cachedRate.get().isStale(TimeUnit.SECONDS.toMillis(TICKER_REFRESH_SECONDS))) {
+        log.debug("Using cached '{}' rate: '{}'", localCurrency.getCurrencyCode(), cachedRate.get().getRate());
+        CoreEvents.fireExchangeRateChangedEvent(
+          cachedRate.get().getRate(),
+          localCurrency,
+          Optional.of(Joiner.on(", ").join(cachedRate.get().getSources())),
+          // Exchange rate expires at the same time as it would have originally
+          new DateTime(cachedRate.get().getTimestamp(), DateTimeZone.UTC).plusSeconds(TICKER_REFRESH_SECONDS + 5)
+        );
+      }
+    }
+
+    if (!ExchangeKey.NONE.equals(exchangeKey)) {
+
+      // Load the currency catalogue in the background so the settings screen can populate instantly
+      allCurrenciesExecutorService.submit(new Runnable() {
+        @Override
+        public void run() {
+
+          CurrencyCatalogue currencyCatalogue = CoreServices.getOrCreateCurrencyCatalogue();
+          Locale currentLocale = Configurations.currentConfiguration.getLocale();
+
+          if (currencyCatalogue.isStale(exchangeKey.name())) {
+            refreshCurrencyCatalogue(currencyCatalogue, currentLocale);
+          } else {
+            currencyCatalogue.getLocalisedNames(exchangeKey.name(), currentLocale);
+          }
+
+        }
+      });
+    }
+
     // Use the provided executor service management
     getScheduledExecutorService().scheduleAtFixedRate(new Runnable() {
 
@@ -111,40 +244,59 @@ public class ExchangeTickerService extends AbstractService {
 
       public void run() {
 
-        // Get the latest ticker asynchronously to fit in with non-scheduled users of the method
-        ListenableFuture<Ticker> futureTicker = latestTicker();
-
-        Futures.addCallback(futureTicker, new FutureCallback<Ticker>() {
-
+        // Get the latest rate asynchronously to fit in with non-scheduled users of the method
+        final ListenableFuture<TickerAggregator.AggregateRate> futureRate;
+        if (tickerAggregator.isPresent()) {
+          futureRate = tickerAggregator.get().refresh(localCurrency);
+        } else {
+          futureRate = Futures.transform(latestTicker(), new Function<Ticker, TickerAggregator.AggregateRate>() {
             @Override
-            public void onSuccess(Ticker ticker) {
-
-              // Network or exchange might be down
+            public TickerAggregator.AggregateRate apply(Ticker ticker) {
               if (ticker == null) {
-                CoreEvents.fireExchangeStatusChangedEvent(ExchangeSummary.newExchangeDown(exchangeKey.getExchangeName(), ""));
-                return;
+                // Fail rather than complete with no rate
+                throw new IllegalStateException("Exchange '" + exchangeKey.getExchangeName() + "' returned no ticker");
               }
+              return new TickerAggregator.AggregateRate(
+                ticker.getLast(),
+                System.currentTimeMillis(),
+                Lists.newArrayList(exchangeKey.getExchangeName())
+              );
+            }
+          });
+        }
+
+        Futures.addCallback(futureRate, new FutureCallback<TickerAggregator.AggregateRate>() {
+
+            @Override
+            public void onSuccess(TickerAggregator.AggregateRate aggregateRate) {
 
               // Fire the event in case the exchange is restored (or a new exchange comes online from a settings change)
               CoreEvents.fireExchangeStatusChangedEvent(ExchangeSummary.newExchangeOK(exchangeKey.getExchangeName()));
 
-              if (previous == null || !ticker.getLast().equals(previous)) {
+              BigDecimal rate = aggregateRate.getRate();
+
+              // Keep a history to value transactions seen later (e.g. during a replay)
+              try {
+                CoreServices.getOrCreateExchangeRateHistory().record(localCurrency, rate, aggregateRate.getTimestamp());
+              } catch (RuntimeException e) {
+                log.warn("Exchange rate history is not available: {}", e.getMessage());
+              }
 
-                BigDecimal rate = ticker.getLast();
+              if (previous == null || !rate.equals(previous)) {
 
-                String exchangeName = exchangeKey.getExchangeName();
+                String rateProvider = Joiner.on(", ").join(aggregateRate.getSources());
 
                 CoreEvents.fireExchangeRateChangedEvent(
                   rate,
                   localCurrency,
-                  Optional.of(exchangeName),
+                  Optional.of(rateProvider),
                   // Exchange rate will expire just after the next update (with small overlap)
                   Dates.nowUtc().plusSeconds(TICKER_REFRESH_SECONDS + 5)
                 );
 
-                log.debug("Updated '{}' ticker: '{}'", exchangeName, ticker.getLast());
+                log.debug("Updated '{}' ticker: '{}'", rateProvider, rate);
 
-                previous = ticker.getLast();
+                previous = rate;
               }
             }
 
@@ -163,7 +315,13 @@ public class ExchangeTickerService extends AbstractService {
                 CoreEvents.fireExchangeStatusChangedEvent(ExchangeSummary.newExchangeError(exchangeKey.getExchangeName(), t.getMessage()));
               }
 
-              if (t instanceof UnknownHostException) {
+              if (t instanceof IllegalStateException) {
+                // Network or exchange might be down since no rate was returned
+                log.warn("Exchange '{}' returned no rate: {}", exchangeKey.getExchangeName(), t.getMessage());
+                CoreEvents.fireExchangeStatusChangedEvent(ExchangeSummary.newExchangeDown(exchangeKey.getExchangeName(), t.getMessage()));
+              }
+
+              if (t instanceof UnknownHostException || t instanceof TimeoutException) {
                 // The exchange is either down or we have no network connection
                 log.warn("Exchange '{}' reported an unknown host error: {}", exchangeKey.getExchangeName(), t.getMessage());
                 CoreEvents.fireExchangeStatusChangedEvent(ExchangeSummary.newExchangeDown(exchangeKey.getExchangeName(), t.getMessage()));
@@ -196,192 +354,223 @@ public class ExchangeTickerService extends AbstractService {
 
     allCurrenciesExecutorService.shutdownNow();
     latestTickerExecutorService.shutdownNow();
+    if (aggregatorExecutorService != null) {
+      aggregatorExecutorService.shutdownNow();
+      aggregatorGatherExecutorService.shutdownNow();
+    }
+    triangulationExecutorService.shutdownNow();
 
   }
 
   /**
-   * <p>Asynchronously get a single ticker response from the exchange</p>
+   * <p>Release the threads of a service created for a single request (it is never started) once the request has
+   * completed. Work already queued (e.g. a currency catalogue refresh) is allowed to finish.</p>
    *
-   * @return The future ticker for wrapping with <code>Futures.addCallback</code>
+   * @param future The future of the single request
    */
-  public ListenableFuture<Ticker> latestTicker() {
+  public void shutdownAfter(ListenableFuture<?> future) {
 
+    future.addListener(new Runnable() {
+      @Override
+      public void run() {
 
-    // Apply any exchange quirks to the counter code (e.g. ISO "RUB" -> legacy "RUR")
-    final String exchangeCounterCode = ExchangeKey.exchangeCode(localCurrency.getCurrencyCode(), exchangeKey);
-    final String exchangeBaseCode = ExchangeKey.exchangeCode("XBT", exchangeKey);
+        allCurrenciesExecutorService.shutdown();
+        latestTickerExecutorService.shutdown();
+        triangulationExecutorService.shutdown();
 
-    // Perform an asynchronous call to the exchange
-    return latestTickerExecutorService.submit(new Callable<Ticker>() {
-
-      @Override
-      public Ticker call() throws Exception {
+      }
+    }, MoreExecutors.sameThreadExecutor());
 
-        if (ExchangeKey.NONE.equals(exchangeKey)) {
+  }
 
-          return getEmptyTicker();
-        }
+  /**
+   * <p>Stale-while-revalidate access to the median exchange rate</p>
+   *
+   * @return The last good rate (absent if not started or never obtained), a fresh rate is requested in the background if stale
+   */
+  public Optional<TickerAggregator.AggregateRate> getRate() {
 
-        if (ExchangeKey.OPEN_EXCHANGE_RATES.equals(exchangeKey)) {
+    if (!tickerAggregator.isPresent()) {
+      return Optional.absent();
+    }
 
-          // Triangulate through USD to reach exchange rate
-          return getTriangulatedTicker();
+    return tickerAggregator.get().getRate(localCurrency);
 
-        } else {
+  }
 
-          // Crypto-exchange is straightforward
-          return getDirectTicker();
-        }
-      }
+  /**
+   * <p>Asynchronously get a single ticker response from the current exchange</p>
+   *
+   * @return The future ticker for wrapping with <code>Futures.addCallback</code>
+   */
+  public ListenableFuture<Ticker> latestTicker() {
 
-      private Ticker getDirectTicker() throws IOException {
+    // Perform an asynchronous call to the exchange
+    return latestTickerExecutorService.submit(new Callable<Ticker>() {
 
-        log.debug("Direct ticker");
+      @Override
+      public Ticker call() throws Exception {
 
-        CurrencyPair directPair = new CurrencyPair(exchangeBaseCode, exchangeCounterCode);
-        return exchange.get().getPollingMarketDataService().getTicker(directPair);
+        return primaryProvider.latestTicker(localCurrency);
 
       }
 
-      private Ticker getTriangulatedTicker() throws IOException {
+    });
 
-        log.debug("OER triangulated ticker");
+  }
 
-        CurrencyPair localToUsdPair = new CurrencyPair(exchangeCounterCode, "USD");
-        CurrencyPair bitcoinToUsdPair = new CurrencyPair("BTC", "USD");
+  /**
+   * <p>Served from the currency catalogue where possible so the exchange is only asked if the entry is missing
+   * (a stale entry is returned immediately and refreshed in the background)</p>
+   *
+   * @return All the currencies supported by the exchange
+   */
+  public ListenableFuture<String[]> allCurrencies() {
 
-        // Need to triangulate through USD
-        Ticker inverseLocalToUsdTicker = exchange.get().getPollingMarketDataService().getTicker(localToUsdPair);
-        Ticker inverseBitcoinToUsdTicker = exchange.get().getPollingMarketDataService().getTicker(bitcoinToUsdPair);
+    if (ExchangeKey.NONE.equals(exchangeKey)) {
+      return Futures.immediateFuture(new String[]{"BTC"});
+    }
 
-        // OER gives inverse values to reduce number of calculations
-        BigDecimal inverseLocalToUsd = inverseLocalToUsdTicker.getLast();
-        BigDecimal inverseBitcoinToUsd = inverseBitcoinToUsdTicker.getLast();
+    final Locale currentLocale = Configurations.currentConfiguration.getLocale();
+    final CurrencyCatalogue currencyCatalogue = CoreServices.getOrCreateCurrencyCatalogue();
 
-        // Conversion rate is inverse local divided by inverse Bitcoin
-        BigDecimal conversionRate = inverseLocalToUsd.divide(inverseBitcoinToUsd, RoundingMode.HALF_EVEN);
+    Optional<String[]> localisedNames = currencyCatalogue.getLocalisedNames(exchangeKey.name(), currentLocale);
+    if (localisedNames.isPresent()) {
 
-        // Infer the ticker
-        return Ticker.TickerBuilder.newInstance()
-          .withLast(conversionRate)
-            // All others are zero
-          .withAsk(BigDecimal.ZERO)
-          .withBid(BigDecimal.ZERO)
-          .withHigh(BigDecimal.ZERO)
-          .withLow(BigDecimal.ZERO)
-          .withCurrencyPair(bitcoinToUsdPair)
-          .withVolume(BigDecimal.ONE)
-          .build();
+      if (currencyCatalogue.isStale(exchangeKey.name())) {
+        refreshCurrencyCatalogue(currencyCatalogue, currentLocale);
       }
 
-      private Ticker getEmptyTicker() throws IOException {
+      return Futures.immediateFuture(localisedNames.get());
+    }
+
+    return allCurrenciesExecutorService.submit(new Callable<String[]>() {
+      @Override
+      public String[] call() throws Exception {
+
+        SortedSet<String> currencyCodes = exchangeCurrencyCodes();
 
-        log.debug("Empty ticker");
+        // Fail fast
+        if (currencyCodes.isEmpty()) {
+          return new String[]{};
+        }
 
-        CurrencyPair directPair = new CurrencyPair(exchangeBaseCode, exchangeCounterCode);
+        currencyCatalogue.putCurrencyCodes(exchangeKey.name(), currencyCodes);
+
+        return currencyCatalogue.getLocalisedNames(exchangeKey.name(), currentLocale).get();
 
-        // Infer the ticker
-        return Ticker.TickerBuilder.newInstance()
-          .withLast(BigDecimal.ZERO)
-            // All others are zero
-          .withAsk(BigDecimal.ZERO)
-          .withBid(BigDecimal.ZERO)
-          .withHigh(BigDecimal.ZERO)
-          .withLow(BigDecimal.ZERO)
-          .withCurrencyPair(directPair)
-          .withVolume(BigDecimal.ONE)
-          .build();
       }
 
     });
-
   }
 
   /**
-   * @return All the currencies supported by the exchange
+   * <p>Update the catalogue entry for this exchange in the background, keeping the existing entry on failure</p>
+   *
+   * @param currencyCatalogue The currency catalogue
+   * @param locale            The locale for which to prepare the currency names
    */
-  public ListenableFuture<String[]> allCurrencies() {
+  private void refreshCurrencyCatalogue(final CurrencyCatalogue currencyCatalogue, final Locale locale) {
 
-    return allCurrenciesExecutorService.submit(new Callable<String[]>() {
+    ListenableFuture<?> inProgress = currencyCatalogueRefresh.get();
+    if (inProgress != null && !inProgress.isDone()) {
+      // Already refreshing so do not queue another request to the exchange
+      return;
+    }
+
+    ListenableFutureTask<Void> refresh = ListenableFutureTask.create(new Runnable() {
       @Override
-      public String[] call() throws Exception {
+      public void run() {
 
-        if (ExchangeKey.NONE.equals(exchangeKey)) {
-          return new String[]{"BTC"};
+        try {
+          SortedSet<String> currencyCodes = exchangeCurrencyCodes();
+          if (!currencyCodes.isEmpty()) {
+            currencyCatalogue.putCurrencyCodes(exchangeKey.name(), currencyCodes);
+          }
+        } catch (Exception e) {
+          log.warn("Exchange '{}' currencies could not be refreshed: {}", exchangeKey.getExchangeName(), e.getMessage());
         }
 
-        Locale currentLocale = Configurations.currentConfiguration.getLocale();
-
-        // This may involve a call to the exchange or not
-        Collection<CurrencyPair> currencyPairs;
-        BaseExchangeService exchangeService = (BaseExchangeService) exchange.get().getPollingMarketDataService();
-        if (exchangeService != null) {
-          try {
-            // Use dynamic lookup (may result in null or SSL failures)
-            currencyPairs = exchangeService.getExchangeSymbols();
-          } catch (SSLHandshakeException e) {
-            // Inform the user of a serious problem with current certificates
-            CoreEvents.fireSecurityEvent(SecuritySummary.newCertificateFailed());
-            // Trigger the failure handler
-            throw new IllegalStateException(e.getMessage(), e);
-          }
+        // Prepare the names ahead of the settings screen
+        currencyCatalogue.getLocalisedNames(exchangeKey.name(), locale);
 
-        } else {
-          log.warn("Exchange '{}' does not support dynamic currency lookup.", ExchangeKey.current().getExchangeName());
-          currencyPairs = Lists.newArrayList();
-        }
+      }
+    }, null);
 
-        // Fail fast
-        if (currencyPairs == null || currencyPairs.isEmpty()) {
-          return new String[]{};
-        }
+    // Only the caller that installs the refresh runs it
+    if (currencyCatalogueRefresh.compareAndSet(inProgress, refresh)) {
+      allCurrenciesExecutorService.execute(refresh);
+    }
 
-        // Must have at least one currency pair to be here
+  }
 
-        SortedSet<String> allCurrencies = Sets.newTreeSet();
-        for (CurrencyPair currencyPair : currencyPairs) {
+  /**
+   * <p>Ask the exchange for its currency pairs (blocking)</p>
+   *
+   * @return The ISO 4217 currency codes supported by the exchange (empty if not available)
+   *
+   * @throws Exception If the exchange could not be reached
+   */
+  private SortedSet<String> exchangeCurrencyCodes() throws Exception {
+
+    // This may involve a call to the exchange or not
+    Collection<CurrencyPair> currencyPairs;
+    BaseExchangeService exchangeService = (BaseExchangeService) exchange.get().getPollingMarketDataService();
+    if (exchangeService != null) {
+      try {
+        // Use dynamic lookup (may result in null or SSL failures)
+        currencyPairs = exchangeService.getExchangeSymbols();
+      } catch (SSLHandshakeException e) {
+        // Inform the user of a serious problem with current certificates
+        CoreEvents.fireSecurityEvent(SecuritySummary.newCertificateFailed());
+        // Trigger the failure handler
+        throw new IllegalStateException(e.getMessage(), e);
+      }
 
-          // Add the currency (if non-BTC we can triangulate through USD)
-          String baseCode = currencyPair.baseSymbol;
-          String counterCode = currencyPair.counterSymbol;
+    } else {
+      log.warn("Exchange '{}' does not support dynamic currency lookup.", exchangeKey.getExchangeName());
+      currencyPairs = Lists.newArrayList();
+    }
 
-          // Ignore any malformed currency pairs
-          if (baseCode == null || counterCode == null) {
-            continue;
-          }
+    SortedSet<String> currencyCodes = Sets.newTreeSet();
 
-          // Make any adjustments
-          counterCode = CurrencyUtils.isoCandidateFor(counterCode);
+    // Fail fast
+    if (currencyPairs == null) {
+      return currencyCodes;
+    }
 
-          try {
-            // Use JVM to determine if currency is in ISO 4217
-            Currency base = Currency.getInstance(baseCode);
-            if (base != null) {
-              // Use JVM to provide translated name
-              String localName = Currency.getInstance(baseCode).getDisplayName(currentLocale);
-              allCurrencies.add(baseCode + " (" + localName + ")");
-            }
-          } catch (IllegalArgumentException e) {
-            // Base code is not in ISO 4217 so attempt to locate counter currency (e.g. BTC/RUR)
-            try {
-              // Use JVM to determine supported currency
-              Currency counter = Currency.getInstance(counterCode);
-              if (counter != null) {
-                // Use JVM to provide translated name
-                String localName = Currency.getInstance(counterCode).getDisplayName(currentLocale);
-                allCurrencies.add(counterCode + " (" + localName + ")");
-              }
-            } catch (IllegalArgumentException e1) {
-              // Neither base nor counter code is in ISO 4217 so ignore since we're only working with fiat
-            }
-          }
-        }
+    for (CurrencyPair currencyPair : currencyPairs) {
 
-        // Return the unique list of currencies
-        return allCurrencies.toArray(new String[allCurrencies.size()]);
+      // Add the currency (if non-BTC we can triangulate through USD)
+      String baseCode = currencyPair.baseSymbol;
+      String counterCode = currencyPair.counterSymbol;
 
+      // Ignore any malformed currency pairs
+      if (baseCode == null || counterCode == null) {
+        continue;
       }
 
-    });
+      // Make any adjustments
+      counterCode = CurrencyUtils.isoCandidateFor(counterCode);
+
+      try {
+        // Use JVM to determine if currency is in ISO 4217
+        Currency.getInstance(baseCode);
+        currencyCodes.add(baseCode);
+      } catch (IllegalArgumentException e) {
+        // Base code is not in ISO 4217 so attempt to locate counter currency (e.g. BTC/RUR)
+        try {
+          // Use JVM to determine supported currency
+          Currency.getInstance(counterCode);
+          currencyCodes.add(counterCode);
+        } catch (IllegalArgumentException e1) {
+          // Neither base nor counter code is in ISO 4217 so ignore since we're only working with fiat
+        }
+      }
+    }
+
+    // Return the unique list of currencies
+    return currencyCodes;
+
   }
-}
\ No newline at end of file
+}
@@ -5,7 +5,6 @@ import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
 import org.multibit.hd.core.crypto.EncryptedFileReaderWriter;
 import org.multibit.hd.core.dto.Contact;
 import org.multibit.hd.core.dto.WalletId;
@@ -23,9 +22,12 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * <p>Service to provide the following to application:</p>
@@ -43,7 +45,12 @@ public class PersistentContactService implements ContactService {
   /**
    * The in-memory cache of contacts for the current wallet
    */
-  private final Set<Contact> contacts = Sets.newHashSet();
+  private final Set<Contact> contacts = Collections.newSetFromMap(new ConcurrentHashMap<Contact, Boolean>());
+
+  /**
+   * Incremented on every change to the contacts
+   */
+  private final AtomicLong generation = new AtomicLong();
 
   /**
    * The location of the backing writeContacts for the contacts
@@ -127,6 +134,11 @@ public class PersistentContactService implements ContactService {
 
   }
 
+  @Override
+  public long getGeneration() {
+    return generation.get();
+  }
+
   @Override
   public List<Contact> filterContactsByBitcoinAddress(Address address) {
 
@@ -248,6 +260,7 @@ public class PersistentContactService implements ContactService {
   public void addAll(Collection<Contact> selectedContacts) {
 
     contacts.addAll(selectedContacts);
+    generation.incrementAndGet();
 
   }
 
@@ -264,6 +277,7 @@ public class PersistentContactService implements ContactService {
       Set<Contact> loadedContacts = protobufSerializer.readContacts(decryptedInputStream);
       contacts.clear();
       contacts.addAll(loadedContacts);
+      generation.incrementAndGet();
 
     } catch (EncryptedFileReaderWriterException e) {
       throw new ContactsLoadException("Could not loadContacts contacts db '" + backingStoreFile.getAbsolutePath() + "'. Error was '" + e.getMessage() + "'.");
@@ -276,6 +290,7 @@ public class PersistentContactService implements ContactService {
    */
   void clear() {
     contacts.clear();
+    generation.incrementAndGet();
   }
 
   @Override
@@ -286,6 +301,7 @@ public class PersistentContactService implements ContactService {
     log.debug("Removing {} contact(s)", selectedContacts.size());
 
     contacts.removeAll(selectedContacts);
+    generation.incrementAndGet();
 
   }
 
@@ -306,6 +322,9 @@ public class PersistentContactService implements ContactService {
 
     }
 
+    // Edits are made in place so always signal a change
+    generation.incrementAndGet();
+
   }
 
   @Override
@@ -365,6 +384,8 @@ public class PersistentContactService implements ContactService {
     contact6.setEmail("alicia.lower@example.org");
     contacts.add(contact6);
 
+    generation.incrementAndGet();
+
   }
 
 }
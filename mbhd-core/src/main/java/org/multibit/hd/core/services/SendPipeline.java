@@ -0,0 +1,107 @@
+package org.multibit.hd.core.services;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Pipeline to provide the following to Bitcoin network service:</p>
+ * <ul>
+ * <li>Ordered stages of a send (prepare, derive key, sign and commit, broadcast)</li>
+ * <li>Per-stage timings</li>
+ * </ul>
+ *
+ * <p>The state carried between the stages (derived AES key, fee state and completed send request) lives in
+ * the <code>SendRequestSummary</code> so that each stage only performs its own work. In particular the
+ * expensive key derivation is performed at most once per summary.</p>
+ *
+ * @since 0.0.1
+ *
+ */
+public class SendPipeline {
+
+  private static final Logger log = LoggerFactory.getLogger(SendPipeline.class);
+
+  /**
+   * The stages of a send in the order they are performed
+   */
+  public enum Stage {
+
+    PREPARE,
+    DERIVE_KEY,
+    SIGN_AND_COMMIT,
+    BROADCAST,
+
+    // End of enum
+    ;
+
+  }
+
+  private final String name;
+
+  private final Map<Stage, Long> timings = Maps.newEnumMap(Stage.class);
+
+  private Stage currentStage = null;
+  private long currentStageStart = 0;
+
+  /**
+   * @param name The name of the pipeline for logging (e.g. "send")
+   */
+  public SendPipeline(String name) {
+
+    Preconditions.checkNotNull(name, "'name' must be present");
+
+    this.name = name;
+  }
+
+  /**
+   * <p>Begin a stage, ending any stage in progress</p>
+   *
+   * @param stage The stage
+   */
+  public void begin(Stage stage) {
+
+    Preconditions.checkNotNull(stage, "'stage' must be present");
+
+    endCurrentStage();
+
+    currentStage = stage;
+    currentStageStart = System.nanoTime();
+
+  }
+
+  /**
+   * <p>End the pipeline and report the timings</p>
+   *
+   * @param success True if all stages completed successfully
+   */
+  public void complete(boolean success) {
+
+    endCurrentStage();
+
+    log.debug("Send pipeline '{}' {} with timings {}", name, success ? "completed" : "failed", timings);
+
+  }
+
+  /**
+   * @return The elapsed time in milliseconds of each stage that ran
+   */
+  public Map<Stage, Long> getTimings() {
+    return ImmutableMap.copyOf(timings);
+  }
+
+  private void endCurrentStage() {
+
+    if (currentStage != null) {
+      timings.put(currentStage, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - currentStageStart));
+      currentStage = null;
+    }
+
+  }
+
+}
@@ -13,6 +13,7 @@ import com.googlecode.jcsv.writer.CSVEntryConverter;
 import org.joda.time.DateMidnight;
 import org.joda.time.DateTime;
 import org.multibit.hd.core.concurrent.SafeExecutors;
+import org.multibit.hd.core.config.Configurations;
 import org.multibit.hd.core.crypto.EncryptedFileReaderWriter;
 import org.multibit.hd.core.dto.*;
 import org.multibit.hd.core.events.*;
@@ -40,6 +41,7 @@ import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  *  <p>Service to provide the following to GUI classes:</p>
@@ -68,6 +70,16 @@ public class WalletService {
    */
   public static final String PREFIX_SEPARATOR = ": ";
 
+  /**
+   * Transactions older than the exchange rate refresh period are valued from the exchange rate history
+   */
+  private static final long HISTORIC_RATE_THRESHOLD_MILLIS = TimeUnit.SECONDS.toMillis(ExchangeTickerService.TICKER_REFRESH_SECONDS);
+
+  /**
+   * The greatest gap between a transaction and a recorded exchange rate for the rate to be used
+   */
+  private static final long HISTORIC_RATE_MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(1);
+
   /**
    * The Bitcoin network parameters
    */
@@ -108,6 +120,23 @@ public class WalletService {
    */
   private List<PaymentData> lastSeenPaymentDataList = Lists.newArrayList();
 
+  /**
+   * True once a block chain download has started so the transactions it finds are revalued when it completes
+   */
+  private volatile boolean revalueAfterDownload = false;
+
+  /**
+   * True until an exchange rate has been used to value the whole wallet (payments read from an earlier session may
+   * have no fiat amount)
+   */
+  private volatile boolean revalueOnNextRate = true;
+
+  /**
+   * The transactions seen without a fiat amount (e.g. before any exchange rate was available) so a new rate only
+   * needs to value these rather than every transaction in the wallet
+   */
+  private final Set<String> unvaluedTransactionIds = Sets.newConcurrentHashSet();
+
   private static ExecutorService executorService;
 
   public WalletService(NetworkParameters networkParameters) {
@@ -131,6 +160,9 @@ public class WalletService {
 
     this.walletId = walletId;
 
+    revalueOnNextRate = true;
+    unvaluedTransactionIds.clear();
+
     // Work out where to write the contacts for this wallet id.
     String walletRoot = WalletManager.createWalletRoot(walletId);
 
@@ -309,7 +341,7 @@ public class WalletService {
     Coin amountBTC = transaction.getValue(wallet);
 
     // Fiat amount
-    FiatPayment amountFiat = calculateFiatPayment(amountBTC, transactionHashAsString);
+    FiatPayment amountFiat = calculateFiatPayment(amountBTC, transactionHashAsString, updateTime);
 
     TransactionConfidence transactionConfidence = transaction.getConfidence();
 
@@ -533,8 +565,7 @@ public class WalletService {
     return outputAddresses;
   }
 
-  private FiatPayment calculateFiatPayment(Coin amountBTC, String transactionHashAsString) {
-    FiatPayment amountFiat = new FiatPayment();
+  private FiatPayment calculateFiatPayment(Coin amountBTC, String transactionHashAsString, Date updateTime) {
 
     // Get the transactionInfo that contains the fiat exchange info, if it is available from the backing store
     // This will use the fiat rate at time of send/ receive
@@ -544,35 +575,177 @@ public class WalletService {
       return transactionInfo.getAmountFiat();
     }
 
-    // Else work it out from the current settings
-    amountFiat.setExchangeName(Optional.of(ExchangeKey.current().getExchangeName()));
+    // Else work it out from the rate at the time of the transaction
+    FiatPayment amountFiat = calculateFiatPaymentAt(amountBTC, Optional.fromNullable(updateTime));
+
+    log.trace("For the hash " + transactionHashAsString + "  a bitcoin amount of " + amountBTC + " the local amount is " + amountFiat.getAmount() + " NEW");
+
+    // Remember the fiat information just worked out
+    TransactionInfo newTransactionInfo = new TransactionInfo();
+    newTransactionInfo.setHash(transactionHashAsString);
+    newTransactionInfo.setAmountFiat(amountFiat);
+
+    transactionInfoMap.put(transactionHashAsString, newTransactionInfo);
+    if (!amountFiat.getAmount().isPresent()) {
+      unvaluedTransactionIds.add(transactionHashAsString);
+    }
+    return amountFiat;
+  }
+
+  /**
+   * <p>Value an amount using the latest exchange rate, or the recorded rate of the time if the transaction is older
+   * than the latest rate (e.g. seen during a replay or while offline)</p>
+   *
+   * @param amountBTC  The amount
+   * @param updateTime The time of the transaction (absent to use the latest rate)
+   *
+   * @return The fiat payment (amount is absent if no rate is available)
+   */
+  private FiatPayment calculateFiatPaymentAt(Coin amountBTC, Optional<Date> updateTime) {
+
+    Optional<BigDecimal> rate = Optional.absent();
+    Optional<Currency> currency = Optional.absent();
 
     Optional<ExchangeRateChangedEvent> exchangeRateChangedEvent = CoreServices.getApplicationEventService().getLatestExchangeRateChangedEvent();
     if (exchangeRateChangedEvent.isPresent() && exchangeRateChangedEvent.get().getRate() != null) {
-      amountFiat.setRate(Optional.of(exchangeRateChangedEvent.get().getRate().toString()));
-      BigDecimal localAmount = Coins.toLocalAmount(amountBTC, exchangeRateChangedEvent.get().getRate());
+      rate = Optional.of(exchangeRateChangedEvent.get().getRate());
+      currency = Optional.of(exchangeRateChangedEvent.get().getCurrency());
+    }
+
+    if (updateTime.isPresent() && System.currentTimeMillis() - updateTime.get().getTime() > HISTORIC_RATE_THRESHOLD_MILLIS) {
+      Currency historicCurrency = currency.isPresent() ? currency.get() : localCurrency();
+      Optional<BigDecimal> historicRate = historicRate(historicCurrency, updateTime.get());
+      if (historicRate.isPresent()) {
+        rate = historicRate;
+        currency = Optional.of(historicCurrency);
+      }
+    }
+
+    return newFiatPayment(amountBTC, rate, currency);
+
+  }
+
+  /**
+   * @param amountBTC The amount
+   * @param rate      The exchange rate
+   * @param currency  The local currency of the exchange rate
+   *
+   * @return The fiat payment (amount is absent if no rate is available)
+   */
+  private FiatPayment newFiatPayment(Coin amountBTC, Optional<BigDecimal> rate, Optional<Currency> currency) {
+
+    FiatPayment amountFiat = new FiatPayment();
+    amountFiat.setExchangeName(Optional.of(ExchangeKey.current().getExchangeName()));
+
+    if (rate.isPresent() && currency.isPresent()) {
+      amountFiat.setRate(Optional.of(rate.get().toString()));
+      BigDecimal localAmount = Coins.toLocalAmount(amountBTC, rate.get());
       if (localAmount.compareTo(BigDecimal.ZERO) != 0) {
         amountFiat.setAmount(Optional.of(localAmount));
       } else {
         amountFiat.setAmount(Optional.<BigDecimal>absent());
       }
-      amountFiat.setCurrency(Optional.of(exchangeRateChangedEvent.get().getCurrency()));
+      amountFiat.setCurrency(currency);
     } else {
       amountFiat.setRate(Optional.<String>absent());
       amountFiat.setAmount(Optional.<BigDecimal>absent());
       amountFiat.setCurrency(Optional.<Currency>absent());
     }
-    log.trace("For the hash " + transactionHashAsString + "  a bitcoin amount of " + amountBTC + " the local amount is " + amountFiat.getAmount() + " NEW");
-
-    // Remember the fiat information just worked out
-    TransactionInfo newTransactionInfo = new TransactionInfo();
-    newTransactionInfo.setHash(transactionHashAsString);
-    newTransactionInfo.setAmountFiat(amountFiat);
 
-    transactionInfoMap.put(transactionHashAsString, newTransactionInfo);
     return amountFiat;
   }
 
+  /**
+   * @param currency The local currency
+   * @param time     The time of interest
+   *
+   * @return The recorded exchange rate nearest the time of interest (absent if none recorded close enough)
+   */
+  private Optional<BigDecimal> historicRate(Currency currency, Date time) {
+
+    try {
+      return CoreServices.getOrCreateExchangeRateHistory().getRate(currency, time.getTime(), HISTORIC_RATE_MAX_AGE_MILLIS);
+    } catch (RuntimeException e) {
+      log.warn("Exchange rate history is not available: {}", e.getMessage());
+      return Optional.absent();
+    }
+
+  }
+
+  /**
+   * @return The local currency from the configuration
+   */
+  private Currency localCurrency() {
+    return Currency.getInstance(Configurations.currentConfiguration.getBitcoin().getLocalCurrencyCode());
+  }
+
+  /**
+   * <p>Value all transactions in the wallet that have no fiat amount using the recorded exchange rate of their time.
+   * Each lookup is a binary search so thousands of transactions can be revalued quickly.</p>
+   *
+   * <p>This happens automatically once a replay or restore has downloaded the block chain and when the first
+   * exchange rate is recorded. Later rates only value the transactions seen without a fiat amount.</p>
+   *
+   * @param wallet The wallet containing the transactions
+   *
+   * @return The number of transactions revalued (call <code>writePayments</code> to persist them)
+   */
+  public int revalueFiatPayments(Wallet wallet) {
+
+    Preconditions.checkNotNull(wallet, "'wallet' must be present");
+
+    return revalueFiatPayments(wallet, wallet.getTransactions(false));
+
+  }
+
+  /**
+   * @param wallet       The wallet containing the transactions
+   * @param transactions The transactions to value if they have no fiat amount
+   *
+   * @return The number of transactions revalued
+   */
+  private int revalueFiatPayments(Wallet wallet, Iterable<Transaction> transactions) {
+
+    Currency currency = localCurrency();
+
+    int count = 0;
+    for (Transaction transaction : transactions) {
+
+      String transactionHashAsString = transaction.getHashAsString();
+
+      TransactionInfo transactionInfo = transactionInfoMap.get(transactionHashAsString);
+      if (transactionInfo != null && transactionInfo.getAmountFiat() != null && transactionInfo.getAmountFiat().getAmount().isPresent()) {
+        // Keep the rate of the time already stored
+        unvaluedTransactionIds.remove(transactionHashAsString);
+        continue;
+      }
+
+      if (transaction.getUpdateTime() == null) {
+        continue;
+      }
+
+      Optional<BigDecimal> rate = historicRate(currency, transaction.getUpdateTime());
+      if (!rate.isPresent()) {
+        continue;
+      }
+
+      if (transactionInfo == null) {
+        transactionInfo = new TransactionInfo();
+        transactionInfo.setHash(transactionHashAsString);
+        transactionInfoMap.put(transactionHashAsString, transactionInfo);
+      }
+      transactionInfo.setAmountFiat(newFiatPayment(transaction.getValue(wallet), rate, Optional.of(currency)));
+      unvaluedTransactionIds.remove(transactionHashAsString);
+
+      count++;
+    }
+
+    log.debug("Revalued {} transactions using the exchange rate history", count);
+
+    return count;
+
+  }
+
   /**
    * Work out a fiatPayment holding the exchange rate information only.
    * @return fiat payment containing exchange rate details
@@ -734,6 +907,17 @@ public class WalletService {
 
   }
 
+  /**
+   * @param transactionHashAsString The transaction hash
+   *
+   * @return The additional transaction information (absent if none is held)
+   */
+  public Optional<TransactionInfo> getTransactionInfoByHash(String transactionHashAsString) {
+
+    return Optional.fromNullable(transactionInfoMap.get(transactionHashAsString));
+
+  }
+
   public void addTransactionInfo(TransactionInfo transactionInfo) {
     transactionInfoMap.put(transactionInfo.getHash(), transactionInfo);
   }
@@ -857,11 +1041,7 @@ public class WalletService {
    */
   public static void changeWalletPassword(final WalletSummary walletSummary, final String oldPassword, final String newPassword) {
 
-    if (executorService == null) {
-      executorService = SafeExecutors.newSingleThreadExecutor("wallet-service");
-    }
-
-    executorService.submit(new Runnable() {
+    getOrCreateExecutorService().submit(new Runnable() {
       @Override
       public void run() {
         WalletService.changeWalletPasswordInternal(walletSummary, oldPassword, newPassword);
@@ -869,6 +1049,18 @@ public class WalletService {
     });
   }
 
+  /**
+   * @return The executor for wallet work that must not run on the calling thread
+   */
+  private static synchronized ExecutorService getOrCreateExecutorService() {
+
+    if (executorService == null) {
+      executorService = SafeExecutors.newSingleThreadExecutor("wallet-service");
+    }
+
+    return executorService;
+  }
+
   static void changeWalletPasswordInternal(final WalletSummary walletSummary, final String oldPassword, final String newPassword) {
 
     if (walletSummary.getWallet() != null) {
@@ -962,39 +1154,114 @@ public class WalletService {
       transactionInfo = new TransactionInfo();
       transactionInfo.setHash(event.getTransactionId());
 
-      // Create the fiat payment
-      FiatPayment amountFiat = new FiatPayment();
-      amountFiat.setExchangeName(Optional.of(ExchangeKey.current().getExchangeName()));
+      // Create the fiat payment using the rate at the time of the transaction
+      FiatPayment amountFiat = calculateFiatPaymentAt(event.getAmount(), Optional.fromNullable(event.getUpdateTime()));
 
-      Optional<ExchangeRateChangedEvent> exchangeRateChangedEvent = CoreServices.getApplicationEventService().getLatestExchangeRateChangedEvent();
-      if (exchangeRateChangedEvent.isPresent() && exchangeRateChangedEvent.get().getRate() != null) {
+      transactionInfo.setAmountFiat(amountFiat);
 
-        amountFiat.setRate(Optional.of(exchangeRateChangedEvent.get().getRate().toString()));
-        BigDecimal localAmount = Coins.toLocalAmount(event.getAmount(), exchangeRateChangedEvent.get().getRate());
+      log.debug("Created TransactionInfo: " + transactionInfo.toString());
+      transactionInfoMap.put(event.getTransactionId(), transactionInfo);
 
-        if (localAmount.compareTo(BigDecimal.ZERO) != 0) {
-          amountFiat.setAmount(Optional.of(localAmount));
-        } else {
-          amountFiat.setAmount(Optional.<BigDecimal>absent());
-        }
+      if (!amountFiat.getAmount().isPresent()) {
+        // Value it when the next exchange rate arrives
+        unvaluedTransactionIds.add(event.getTransactionId());
+      }
+    } else {
+      log.trace("There was already a TransactionInfo: for " + event.getTransactionId() + ", value = " + transactionInfo.toString());
+    }
+  }
 
-        amountFiat.setCurrency(Optional.of(exchangeRateChangedEvent.get().getCurrency()));
+  /**
+   * <p>Once a replay or restore has downloaded the block chain, value the transactions it found that could not be
+   * valued when they were seen</p>
+   *
+   * @param event The Bitcoin network changed event
+   */
+  @Subscribe
+  public void onBitcoinNetworkChangedEvent(BitcoinNetworkChangedEvent event) {
 
-      } else {
+    BitcoinNetworkStatus status = event.getSummary().getStatus();
 
-        amountFiat.setRate(Optional.<String>absent());
-        amountFiat.setAmount(Optional.<BigDecimal>absent());
-        amountFiat.setCurrency(Optional.<Currency>absent());
+    if (BitcoinNetworkStatus.DOWNLOADING_BLOCKCHAIN.equals(status)) {
+      revalueAfterDownload = true;
+    } else if (BitcoinNetworkStatus.SYNCHRONIZED.equals(status) && revalueAfterDownload) {
+      // Peer count changes also report synchronized so only revalue once per download
+      revalueAfterDownload = false;
+      revalueCurrentWallet(true);
+    }
 
-      }
+  }
 
-      transactionInfo.setAmountFiat(amountFiat);
+  /**
+   * <p>A new rate has been added to the exchange rate history so transactions seen before it can now be valued</p>
+   *
+   * @param event The exchange rate changed event
+   */
+  @Subscribe
+  public void onExchangeRateChangedEvent(ExchangeRateChangedEvent event) {
 
-      log.debug("Created TransactionInfo: " + transactionInfo.toString());
-      transactionInfoMap.put(event.getTransactionId(), transactionInfo);
-    } else {
-      log.trace("There was already a TransactionInfo: for " + event.getTransactionId() + ", value = " + transactionInfo.toString());
+    if (!revalueOnNextRate && unvaluedTransactionIds.isEmpty()) {
+      // Nothing is waiting for a rate (the usual case on each rate tick)
+      return;
     }
+
+    boolean allTransactions = revalueOnNextRate;
+    revalueOnNextRate = false;
+
+    revalueCurrentWallet(allTransactions);
+
+  }
+
+  /**
+   * <p>Revalue the transactions of the current wallet (if it is the wallet of this service) off the calling thread
+   * and persist the payments if any changed</p>
+   *
+   * @param allTransactions True to value every transaction without a fiat amount, false for only those seen without one
+   */
+  private void revalueCurrentWallet(final boolean allTransactions) {
+
+    getOrCreateExecutorService().submit(new Runnable() {
+      @Override
+      public void run() {
+
+        Optional<WalletSummary> currentWalletSummary = WalletManager.INSTANCE.getCurrentWalletSummary();
+        if (backingStoreFile == null
+          || !currentWalletSummary.isPresent()
+          || currentWalletSummary.get().getWallet() == null
+          || !currentWalletSummary.get().getWalletId().equals(walletId)) {
+          return;
+        }
+
+        Wallet wallet = currentWalletSummary.get().getWallet();
+
+        int count;
+        if (allTransactions) {
+          count = revalueFiatPayments(wallet);
+        } else {
+          List<Transaction> transactions = Lists.newArrayList();
+          for (String transactionId : unvaluedTransactionIds) {
+            Transaction transaction = wallet.getTransaction(new Sha256Hash(transactionId));
+            if (transaction == null) {
+              // No longer in the wallet (e.g. a double spend that was dropped)
+              unvaluedTransactionIds.remove(transactionId);
+            } else {
+              transactions.add(transaction);
+            }
+          }
+          count = revalueFiatPayments(wallet, transactions);
+        }
+
+        if (count > 0) {
+          try {
+            writePayments();
+          } catch (PaymentsSaveException pse) {
+            log.error("Failed to write revalued payments.", pse);
+          }
+        }
+
+      }
+    });
+
   }
 
   /**
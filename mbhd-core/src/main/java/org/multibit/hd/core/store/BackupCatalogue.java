@@ -0,0 +1,423 @@
+package org.multibit.hd.core.store;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import org.multibit.hd.core.utils.Dates;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Catalogue to provide the following to BackupManager:</p>
+ * <ul>
+ * <li>The backups in a backup directory with their timestamp, size and checksum</li>
+ * <li>Bookkeeping on create and delete without listing the directory or parsing file names</li>
+ * <li>A reconciliation scan to pick up changes made outside the application (run once per directory on first use)</li>
+ * <li>The outcome of the last verification of each backup</li>
+ * <li>The generation of the wallet password each backup was written under (so old backups survive a password change)</li>
+ * </ul>
+ *
+ * <p>The catalogue is persisted alongside the backups so the reconciliation scan only needs to checksum new or changed
+ * files. A catalogue of a directory the application only reads from (e.g. a restore location) is never written and
+ * does not checksum its backups since a restore reads the backup anyway.</p>
+ *
+ * @since 0.0.1
+ *
+ */
+public class BackupCatalogue {
+
+  private static final Logger log = LoggerFactory.getLogger(BackupCatalogue.class);
+
+  public static final String CATALOGUE_FILE_NAME = "backup-catalogue.properties";
+
+  private static final String SEPARATOR = "|";
+
+  private static final Comparator<Entry> OLDEST_FIRST = new Comparator<Entry>() {
+    @Override
+    public int compare(Entry o1, Entry o2) {
+      int result = Long.compare(o1.timestamp, o2.timestamp);
+      return result != 0 ? result : o1.name.compareTo(o2.name);
+    }
+  };
+
+  private final File directory;
+
+  private final Pattern backupPattern;
+
+  private final File catalogueFile;
+
+  private final boolean persistent;
+
+  /**
+   * The backups keyed on file name
+   */
+  private final Map<String, Entry> entries = Maps.newHashMap();
+
+  /**
+   * @param directory     The backup directory
+   * @param backupPattern The pattern matching backup file names with the backup timestamp (yyyyMMddHHmmss) as group 1
+   */
+  public BackupCatalogue(File directory, Pattern backupPattern) {
+    this(directory, backupPattern, true);
+  }
+
+  /**
+   * @param directory     The backup directory
+   * @param backupPattern The pattern matching backup file names with the backup timestamp (yyyyMMddHHmmss) as group 1
+   * @param persistent    True if the catalogue is written to the directory and checksums its backups, false if it is
+   *                      only held in memory (entries then have an empty checksum)
+   */
+  public BackupCatalogue(File directory, Pattern backupPattern, boolean persistent) {
+
+    Preconditions.checkNotNull(directory, "'directory' must be present");
+    Preconditions.checkNotNull(backupPattern, "'backupPattern' must be present");
+
+    this.directory = directory;
+    this.backupPattern = backupPattern;
+    this.catalogueFile = new File(directory, CATALOGUE_FILE_NAME);
+    this.persistent = persistent;
+
+    readCatalogue();
+
+  }
+
+  /**
+   * <p>Record a new or replaced backup whose key generation is unknown</p>
+   *
+   * @param file The backup file (must be in the catalogue directory)
+   *
+   * @return The entry or null if the file is not a backup
+   */
+  public synchronized Entry add(File file) {
+    return add(file, "");
+  }
+
+  /**
+   * <p>Record a new or replaced backup</p>
+   *
+   * @param file          The backup file (must be in the catalogue directory)
+   * @param keyGeneration Identifies the wallet password the backup content was encrypted under (empty if unknown)
+   *
+   * @return The entry or null if the file is not a backup
+   */
+  public synchronized Entry add(File file, String keyGeneration) {
+
+    Preconditions.checkNotNull(file, "'file' must be present");
+    Preconditions.checkNotNull(keyGeneration, "'keyGeneration' must be present");
+
+    Entry entry = newEntry(file, keyGeneration);
+    if (entry == null) {
+      return null;
+    }
+
+    entries.put(entry.name, entry);
+    writeCatalogue();
+
+    return entry;
+  }
+
+  /**
+   * <p>Forget a backup (call before the file is deleted)</p>
+   *
+   * @param file The backup file
+   */
+  public synchronized void remove(File file) {
+
+    if (entries.remove(file.getName()) != null) {
+      writeCatalogue();
+    }
+
+  }
+
+  /**
+   * <p>Record the outcome of verifying a backup (ignored if the backup is no longer catalogued)</p>
+   *
+   * @param file     The backup file
+   * @param checksum The checksum of the content that was verified
+   * @param passed   True if the backup could be restored
+   */
+  public synchronized void recordVerification(File file, String checksum, boolean passed) {
+
+    Entry entry = entries.get(file.getName());
+    if (entry == null) {
+      return;
+    }
+
+    // A backup that no longer matches its catalogued checksum has changed on disk
+    boolean matched = entry.checksum.equals(checksum);
+    entries.put(entry.name, new Entry(entry.name, entry.timestamp, entry.size, entry.lastModified, entry.checksum, System.currentTimeMillis(), passed && matched, entry.keyGeneration));
+    writeCatalogue();
+
+  }
+
+  /**
+   * @return The backups, oldest first
+   */
+  public synchronized List<Entry> getEntries() {
+
+    List<Entry> sortedEntries = Lists.newArrayList(entries.values());
+    Collections.sort(sortedEntries, OLDEST_FIRST);
+
+    return sortedEntries;
+  }
+
+  /**
+   * <p>Bring the catalogue into line with the directory: new backups are added, missing ones removed and
+   * changed ones (by size or modification time) checksummed again</p>
+   *
+   * <p>Unchanged backups are matched on name, size and modification time alone so only new or changed files are read</p>
+   */
+  public synchronized void reconcile() {
+
+    Map<String, Entry> reconciledEntries = Maps.newHashMap();
+
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (!file.isFile() || file.length() == 0 || !backupPattern.matcher(file.getName()).matches()) {
+          continue;
+        }
+        Entry existing = entries.get(file.getName());
+        if (existing != null && existing.size == file.length() && existing.lastModified == file.lastModified()) {
+          reconciledEntries.put(existing.name, existing);
+        } else {
+          Entry entry = newEntry(file, "");
+          if (entry != null) {
+            reconciledEntries.put(entry.name, entry);
+          }
+        }
+      }
+    }
+
+    if (!reconciledEntries.equals(entries)) {
+      log.debug("Reconciled backup catalogue for '{}': {} entries, previously {}", directory.getAbsolutePath(), reconciledEntries.size(), entries.size());
+      entries.clear();
+      entries.putAll(reconciledEntries);
+      writeCatalogue();
+    }
+
+  }
+
+  /**
+   * @param file          The backup file
+   * @param keyGeneration The key generation (empty if unknown)
+   *
+   * @return A new entry (with an empty checksum if the catalogue is not persistent) or null if the file is not a backup or cannot be read
+   */
+  private Entry newEntry(File file, String keyGeneration) {
+
+    Matcher matcher = backupPattern.matcher(file.getName());
+    if (!matcher.matches() || !file.isFile()) {
+      return null;
+    }
+
+    try {
+      long timestamp = Dates.parseBackupDate(matcher.group(1)).getMillis();
+      String checksum = persistent ? Files.hash(file, Hashing.sha256()).toString() : "";
+      return new Entry(file.getName(), timestamp, file.length(), file.lastModified(), checksum, 0, false, keyGeneration);
+    } catch (IllegalArgumentException | IOException e) {
+      log.warn("Could not catalogue backup '{}': {}", file.getAbsolutePath(), e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * <p>Read the persisted catalogue (failures are logged and ignored since a reconciliation scan rebuilds it)</p>
+   */
+  private void readCatalogue() {
+
+    if (!catalogueFile.exists()) {
+      return;
+    }
+
+    Properties properties = new Properties();
+    try (InputStream is = new FileInputStream(catalogueFile)) {
+      properties.load(is);
+    } catch (IOException e) {
+      log.warn("Could not read backup catalogue: {}", e.getMessage());
+      return;
+    }
+
+    for (String name : properties.stringPropertyNames()) {
+      try {
+        List<String> fields = Splitter.on(SEPARATOR).splitToList(properties.getProperty(name));
+        // Verification fields are absent from catalogues written before backups were verified
+        boolean hasVerification = fields.size() > 5;
+        boolean hasKeyGeneration = fields.size() > 6;
+        entries.put(name, new Entry(
+          name,
+          Long.parseLong(fields.get(0)),
+          Long.parseLong(fields.get(1)),
+          Long.parseLong(fields.get(2)),
+          fields.get(3),
+          hasVerification ? Long.parseLong(fields.get(4)) : 0,
+          hasVerification && Boolean.parseBoolean(fields.get(5)),
+          hasKeyGeneration ? fields.get(6) : ""
+        ));
+      } catch (RuntimeException e) {
+        log.warn("Ignoring malformed backup catalogue entry for '{}'", name);
+      }
+    }
+
+  }
+
+  /**
+   * <p>Persist the catalogue atomically so a crash cannot leave a partial catalogue</p>
+   */
+  private void writeCatalogue() {
+
+    if (!persistent) {
+      return;
+    }
+
+    Properties properties = new Properties();
+    for (Entry entry : entries.values()) {
+      properties.setProperty(
+        entry.name,
+        entry.timestamp + SEPARATOR + entry.size + SEPARATOR + entry.lastModified + SEPARATOR + entry.checksum
+          + SEPARATOR + entry.verified + SEPARATOR + entry.verificationPassed + SEPARATOR + entry.keyGeneration
+      );
+    }
+
+    try {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      properties.store(baos, "Backups in this directory");
+      org.multibit.hd.core.files.Files.writeAtomically(baos.toByteArray(), catalogueFile);
+    } catch (IOException e) {
+      log.warn("Could not write backup catalogue: {}", e.getMessage());
+    }
+
+  }
+
+  /**
+   * <p>A catalogued backup</p>
+   */
+  public class Entry {
+
+    private final String name;
+    private final long timestamp;
+    private final long size;
+    private final long lastModified;
+    private final String checksum;
+    private final long verified;
+    private final boolean verificationPassed;
+    private final String keyGeneration;
+
+    private Entry(String name, long timestamp, long size, long lastModified, String checksum, long verified, boolean verificationPassed, String keyGeneration) {
+      this.name = name;
+      this.timestamp = timestamp;
+      this.size = size;
+      this.lastModified = lastModified;
+      this.checksum = checksum;
+      this.verified = verified;
+      this.verificationPassed = verificationPassed;
+      this.keyGeneration = keyGeneration;
+    }
+
+    /**
+     * @return The backup file name
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * @return The backup file
+     */
+    public File getFile() {
+      return new File(directory, name);
+    }
+
+    /**
+     * @return The time of the backup taken from its name (millis since epoch)
+     */
+    public long getTimestamp() {
+      return timestamp;
+    }
+
+    /**
+     * @return The size in bytes
+     */
+    public long getSize() {
+      return size;
+    }
+
+    /**
+     * @return The SHA-256 of the backup file as hex
+     */
+    public String getChecksum() {
+      return checksum;
+    }
+
+    /**
+     * @return True if the backup has been verified at least once
+     */
+    public boolean isVerified() {
+      return verified > 0;
+    }
+
+    /**
+     * @return The time of the last verification (millis since epoch) or 0 if never verified
+     */
+    public long getVerified() {
+      return verified;
+    }
+
+    /**
+     * @return True if the last verification showed the backup could be restored
+     */
+    public boolean isVerificationPassed() {
+      return verificationPassed;
+    }
+
+    /**
+     * @return Identifies the wallet password the backup was encrypted under (empty if unknown)
+     */
+    public String getKeyGeneration() {
+      return keyGeneration;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Entry)) {
+        return false;
+      }
+
+      Entry other = (Entry) o;
+      return name.equals(other.name)
+        && timestamp == other.timestamp
+        && size == other.size
+        && lastModified == other.lastModified
+        && checksum.equals(other.checksum)
+        && verified == other.verified
+        && verificationPassed == other.verificationPassed
+        && keyGeneration.equals(other.keyGeneration);
+    }
+
+    @Override
+    public int hashCode() {
+      return name.hashCode();
+    }
+  }
+
+}
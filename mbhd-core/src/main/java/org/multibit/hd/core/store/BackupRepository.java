@@ -0,0 +1,569 @@
+package org.multibit.hd.core.store;
+
+import com.google.bitcoin.core.Utils;
+import com.google.bitcoin.crypto.KeyCrypterException;
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+import org.multibit.hd.brit.crypto.AESUtils;
+import org.multibit.hd.core.files.SecureFiles;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spongycastle.crypto.params.KeyParameter;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>Repository to provide the following to BackupManager:</p>
+ * <ul>
+ * <li>Deduplicated backups of a wallet directory as encrypted, content addressed chunks</li>
+ * <li>A lightweight encrypted manifest per snapshot listing the chunks of each file</li>
+ * <li>Restore, verify and prune of snapshots</li>
+ * </ul>
+ *
+ * <p>Files are split into chunks of at most {@link #CHUNK_SIZE} bytes. A chunk is identified by an HMAC-SHA256 of its
+ * plaintext keyed from the backup AES key, so identical content is stored once without revealing its hash. Each chunk
+ * and manifest is AES encrypted with its own random initialisation vector prepended.</p>
+ *
+ * <p>Manifests are written last so an interrupted snapshot only leaves unreferenced chunks which are removed by the next prune.</p>
+ *
+ * @since 0.0.1
+ *
+ */
+public class BackupRepository {
+
+  private static final Logger log = LoggerFactory.getLogger(BackupRepository.class);
+
+  public static final String CHUNKS_DIRECTORY_NAME = "chunks";
+  public static final String SNAPSHOTS_DIRECTORY_NAME = "snapshots";
+  public static final String SNAPSHOT_SUFFIX = ".snapshot";
+
+  /**
+   * The largest chunk in bytes
+   */
+  static final int CHUNK_SIZE = 1024 * 1024;
+
+  private static final String MANIFEST_HEADER = "mbhd-snapshot-1";
+  private static final String TEMPORARY_FILE_EXTENSION = ".tmp";
+  private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+  /**
+   * The locks keyed on repository directory so separate instances for the same directory (e.g. one to back up and
+   * one to restore) never interleave their writes and prunes
+   */
+  private static final ConcurrentMap<String, Object> directoryLocks = Maps.newConcurrentMap();
+
+  private final File chunksDirectory;
+  private final File snapshotsDirectory;
+
+  private final KeyParameter aesKey;
+  private final SecretKeySpec chunkIdKey;
+
+  private final SecureRandom secureRandom = new SecureRandom();
+
+  private final Object lock;
+
+  /**
+   * @param repositoryDirectory The directory holding the repository (created if necessary)
+   * @param aesKey              The backup AES key
+   */
+  public BackupRepository(File repositoryDirectory, KeyParameter aesKey) {
+
+    Preconditions.checkNotNull(repositoryDirectory, "'repositoryDirectory' must be present");
+    Preconditions.checkNotNull(aesKey, "'aesKey' must be present");
+
+    this.aesKey = aesKey;
+
+    directoryLocks.putIfAbsent(repositoryDirectory.getAbsolutePath(), new Object());
+    this.lock = directoryLocks.get(repositoryDirectory.getAbsolutePath());
+
+    SecureFiles.verifyOrCreateDirectory(repositoryDirectory);
+    this.chunksDirectory = SecureFiles.verifyOrCreateDirectory(new File(repositoryDirectory, CHUNKS_DIRECTORY_NAME));
+    this.snapshotsDirectory = SecureFiles.verifyOrCreateDirectory(new File(repositoryDirectory, SNAPSHOTS_DIRECTORY_NAME));
+
+    // Use a separate key for chunk ids rather than the encryption key itself
+    try {
+      Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+      mac.init(new SecretKeySpec(aesKey.getKey(), HMAC_ALGORITHM));
+      this.chunkIdKey = new SecretKeySpec(mac.doFinal("mbhd-chunk-id".getBytes(Charsets.UTF_8)), HMAC_ALGORITHM);
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Could not create chunk id key", e);
+    }
+
+  }
+
+  /**
+   * <p>Store a snapshot of a directory, writing only the chunks the repository does not already hold</p>
+   *
+   * <p>Existing chunks are matched on id and size without being read so a snapshot costs little more than reading
+   * the source files. Damage that keeps the size is left for {@link #verify(String)} to report.</p>
+   *
+   * @param sourceDirectory The directory to snapshot
+   * @param filter          The files and directories to include
+   * @param snapshotName    The snapshot name, which must sort in time order (a suffix is added if already taken)
+   *
+   * @return The snapshot name
+   *
+   * @throws IOException If the snapshot could not be written
+   */
+  public String createSnapshot(File sourceDirectory, FileFilter filter, String snapshotName) throws IOException {
+
+    Preconditions.checkNotNull(sourceDirectory, "'sourceDirectory' must be present");
+    Preconditions.checkNotNull(filter, "'filter' must be present");
+    Preconditions.checkNotNull(snapshotName, "'snapshotName' must be present");
+
+    synchronized (lock) {
+
+      Mac mac = newChunkIdMac();
+      List<FileEntry> entries = Lists.newArrayList();
+      byte[] buffer = new byte[CHUNK_SIZE];
+      int chunksWritten = 0;
+      long bytesWritten = 0;
+
+      for (String path : listFiles(sourceDirectory, "", filter)) {
+
+        File file = new File(sourceDirectory, path.replace('/', File.separatorChar));
+        List<String> chunkIds = Lists.newArrayList();
+        long length = 0;
+
+        try (InputStream is = new FileInputStream(file)) {
+          int chunkLength;
+          while ((chunkLength = readFully(is, buffer)) > 0) {
+
+            mac.update(buffer, 0, chunkLength);
+            String chunkId = Utils.HEX.encode(mac.doFinal());
+            chunkIds.add(chunkId);
+            length += chunkLength;
+
+            // An existing chunk is trusted by id and size (verify checks the content) while a partial one is replaced
+            File chunkFile = chunkFile(chunkId);
+            if (chunkFile.length() != encryptedLength(chunkLength)) {
+              writeAtomically(encrypt(Arrays.copyOf(buffer, chunkLength)), chunkFile);
+              chunksWritten++;
+              bytesWritten += chunkFile.length();
+            }
+          }
+        }
+
+        entries.add(new FileEntry(path, length, chunkIds));
+      }
+
+      // Avoid overwriting a snapshot taken within the same second
+      String uniqueName = snapshotName;
+      for (int i = 1; snapshotFile(uniqueName).exists(); i++) {
+        uniqueName = snapshotName + "-" + i;
+      }
+
+      writeAtomically(encrypt(writeManifest(entries)), snapshotFile(uniqueName));
+
+      log.debug("Created snapshot '{}' of {} files writing {} new chunks ({} bytes)", uniqueName, entries.size(), chunksWritten, bytesWritten);
+
+      return uniqueName;
+    }
+
+  }
+
+  /**
+   * @return The snapshot names, oldest first
+   */
+  public List<String> getSnapshots() {
+    synchronized (lock) {
+      return getSnapshots(snapshotsDirectory.getParentFile());
+    }
+  }
+
+  /**
+   * <p>List the snapshots without needing the backup key</p>
+   *
+   * @param repositoryDirectory The directory holding the repository
+   *
+   * @return The snapshot names, oldest first (empty if there is no repository)
+   */
+  public static List<String> getSnapshots(File repositoryDirectory) {
+
+    List<String> snapshots = Lists.newArrayList();
+
+    File[] files = new File(repositoryDirectory, SNAPSHOTS_DIRECTORY_NAME).listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (file.isFile() && file.getName().endsWith(SNAPSHOT_SUFFIX)) {
+          snapshots.add(file.getName().substring(0, file.getName().length() - SNAPSHOT_SUFFIX.length()));
+        }
+      }
+    }
+
+    Collections.sort(snapshots);
+
+    return snapshots;
+  }
+
+  /**
+   * <p>Restore a snapshot into a new directory (the caller swaps it into place once the restore has succeeded)</p>
+   *
+   * @param snapshotName    The snapshot to restore
+   * @param targetDirectory The directory to restore into (created if necessary, and must be empty if it exists)
+   *
+   * @throws IOException If the target is not empty or the snapshot is missing, corrupt or could not be written
+   */
+  public void restore(String snapshotName, File targetDirectory) throws IOException {
+
+    Preconditions.checkNotNull(targetDirectory, "'targetDirectory' must be present");
+
+    synchronized (lock) {
+
+      String[] existingFiles = targetDirectory.list();
+      if (existingFiles != null && existingFiles.length > 0) {
+        throw new IOException("Cannot restore snapshot '" + snapshotName + "' into '" + targetDirectory.getAbsolutePath() + "' since it is not empty");
+      }
+
+      SecureFiles.verifyOrCreateDirectory(targetDirectory);
+      String canonicalTarget = targetDirectory.getCanonicalPath() + File.separator;
+
+      Mac mac = newChunkIdMac();
+      for (FileEntry entry : readManifest(snapshotName)) {
+
+        File file = new File(targetDirectory, entry.path.replace('/', File.separatorChar));
+        if (!file.getCanonicalPath().startsWith(canonicalTarget)) {
+          throw new IOException("Snapshot '" + snapshotName + "' contains an invalid path '" + entry.path + "'");
+        }
+        SecureFiles.verifyOrCreateDirectory(file.getParentFile());
+
+        File temporaryFile = new File(file.getAbsolutePath() + TEMPORARY_FILE_EXTENSION);
+        try {
+          try (OutputStream os = new BufferedOutputStream(new FileOutputStream(temporaryFile))) {
+            for (String chunkId : entry.chunkIds) {
+              os.write(readChunk(chunkId, mac));
+            }
+          }
+          if (temporaryFile.length() != entry.length) {
+            throw new IOException("Restored file '" + entry.path + "' has the wrong length");
+          }
+          org.multibit.hd.core.files.Files.replaceAtomically(temporaryFile, file);
+        } finally {
+          if (temporaryFile.exists()) {
+            SecureFiles.secureDelete(temporaryFile);
+          }
+        }
+      }
+
+      log.debug("Restored snapshot '{}'", snapshotName);
+    }
+
+  }
+
+  /**
+   * <p>Check that every chunk of a snapshot is present, decrypts and matches its id</p>
+   *
+   * @param snapshotName The snapshot to verify
+   *
+   * @return True if the snapshot can be restored
+   */
+  public boolean verify(String snapshotName) {
+
+    synchronized (lock) {
+      try {
+        Mac mac = newChunkIdMac();
+        for (FileEntry entry : readManifest(snapshotName)) {
+          long length = 0;
+          for (String chunkId : entry.chunkIds) {
+            length += readChunk(chunkId, mac).length;
+          }
+          if (length != entry.length) {
+            log.warn("Snapshot '{}' has the wrong length for '{}'", snapshotName, entry.path);
+            return false;
+          }
+        }
+      } catch (IOException e) {
+        log.warn("Snapshot '{}' failed verification: {}", snapshotName, e.getMessage());
+        return false;
+      }
+
+      return true;
+    }
+
+  }
+
+  /**
+   * <p>Remove the oldest snapshots beyond the maximum then delete chunks no longer referenced</p>
+   *
+   * <p>The remaining manifests are only read when a snapshot has been removed, so pruning a repository that is
+   * within its limit costs a directory listing. Chunks left by an interrupted snapshot go at the next removal.</p>
+   *
+   * @param maximumNumberOfSnapshots The number of snapshots to keep
+   *
+   * @return The number of chunks deleted
+   *
+   * @throws IOException If a remaining manifest cannot be read (no chunks are deleted in this case)
+   */
+  public int prune(int maximumNumberOfSnapshots) throws IOException {
+
+    Preconditions.checkArgument(maximumNumberOfSnapshots > 0, "'maximumNumberOfSnapshots' must be positive");
+
+    synchronized (lock) {
+
+      List<String> snapshots = getSnapshots();
+      if (snapshots.size() <= maximumNumberOfSnapshots) {
+        return 0;
+      }
+
+      for (String snapshotName : snapshots.subList(0, snapshots.size() - maximumNumberOfSnapshots)) {
+        if (!snapshotFile(snapshotName).delete()) {
+          log.warn("Could not delete snapshot '{}'", snapshotName);
+        }
+      }
+
+      Set<String> referencedChunkIds = Sets.newHashSet();
+      for (String snapshotName : getSnapshots()) {
+        for (FileEntry entry : readManifest(snapshotName)) {
+          referencedChunkIds.addAll(entry.chunkIds);
+        }
+      }
+
+      // Chunks are already encrypted so an ordinary delete is sufficient
+      int deleted = 0;
+      File[] prefixDirectories = chunksDirectory.listFiles();
+      if (prefixDirectories != null) {
+        for (File prefixDirectory : prefixDirectories) {
+          File[] chunkFiles = prefixDirectory.listFiles();
+          if (chunkFiles == null) {
+            continue;
+          }
+          for (File chunkFile : chunkFiles) {
+            if (!referencedChunkIds.contains(chunkFile.getName()) && chunkFile.delete()) {
+              deleted++;
+            }
+          }
+        }
+      }
+
+      log.debug("Pruned {} chunks", deleted);
+
+      return deleted;
+    }
+
+  }
+
+  /**
+   * @param directory The directory to list
+   * @param prefix    The relative path of the directory ("" for the root)
+   * @param filter    The files and directories to include
+   *
+   * @return The relative paths ('/' separated) of the files beneath the directory in a stable order
+   */
+  private List<String> listFiles(File directory, String prefix, FileFilter filter) {
+
+    List<String> paths = Lists.newArrayList();
+
+    File[] files = directory.listFiles(filter);
+    if (files == null) {
+      return paths;
+    }
+    Arrays.sort(files);
+
+    for (File file : files) {
+      if (file.isDirectory()) {
+        paths.addAll(listFiles(file, prefix + file.getName() + "/", filter));
+      } else if (file.isFile()) {
+        paths.add(prefix + file.getName());
+      }
+    }
+
+    return paths;
+  }
+
+  /**
+   * @param chunkId The chunk id
+   * @param mac     The chunk id MAC to check the content against
+   *
+   * @return The decrypted chunk
+   *
+   * @throws IOException If the chunk is missing, cannot be decrypted or does not match its id
+   */
+  private byte[] readChunk(String chunkId, Mac mac) throws IOException {
+
+    File chunkFile = chunkFile(chunkId);
+    if (!chunkFile.exists()) {
+      throw new IOException("Missing chunk '" + chunkId + "'");
+    }
+
+    byte[] plainBytes = decrypt(Files.toByteArray(chunkFile));
+    if (!Utils.HEX.encode(mac.doFinal(plainBytes)).equals(chunkId)) {
+      throw new IOException("Chunk '" + chunkId + "' does not match its content");
+    }
+
+    return plainBytes;
+  }
+
+  /**
+   * @param plainLength The length of the plaintext
+   *
+   * @return The length of the stored bytes (the initialisation vector followed by the padded AES blocks)
+   */
+  static long encryptedLength(int plainLength) {
+    return AESUtils.BLOCK_LENGTH + (plainLength / AESUtils.BLOCK_LENGTH + 1) * AESUtils.BLOCK_LENGTH;
+  }
+
+  private List<FileEntry> readManifest(String snapshotName) throws IOException {
+
+    File file = snapshotFile(snapshotName);
+    if (!file.exists()) {
+      throw new IOException("Missing snapshot '" + snapshotName + "'");
+    }
+
+    List<String> lines = Splitter.on('\n').omitEmptyStrings().splitToList(new String(decrypt(Files.toByteArray(file)), Charsets.UTF_8));
+    if (lines.isEmpty() || !MANIFEST_HEADER.equals(lines.get(0))) {
+      throw new IOException("Snapshot '" + snapshotName + "' has an unknown format");
+    }
+
+    List<FileEntry> entries = Lists.newArrayList();
+    try {
+      for (String line : lines.subList(1, lines.size())) {
+        List<String> fields = Splitter.on('\t').splitToList(line);
+        entries.add(new FileEntry(
+          fields.get(0),
+          Long.parseLong(fields.get(1)),
+          Splitter.on(',').omitEmptyStrings().splitToList(fields.get(2))
+        ));
+      }
+    } catch (RuntimeException e) {
+      throw new IOException("Snapshot '" + snapshotName + "' is malformed", e);
+    }
+
+    return entries;
+  }
+
+  private byte[] writeManifest(List<FileEntry> entries) {
+
+    StringBuilder builder = new StringBuilder(MANIFEST_HEADER).append('\n');
+    for (FileEntry entry : entries) {
+      builder
+        .append(entry.path).append('\t')
+        .append(entry.length).append('\t')
+        .append(Joiner.on(',').join(entry.chunkIds)).append('\n');
+    }
+
+    return builder.toString().getBytes(Charsets.UTF_8);
+  }
+
+  /**
+   * @return The initialisation vector followed by the AES encrypted bytes
+   */
+  private byte[] encrypt(byte[] plainBytes) throws IOException {
+
+    byte[] initialisationVector = new byte[AESUtils.BLOCK_LENGTH];
+    secureRandom.nextBytes(initialisationVector);
+
+    try {
+      byte[] encryptedBytes = AESUtils.encrypt(plainBytes, aesKey, initialisationVector);
+
+      byte[] storedBytes = Arrays.copyOf(initialisationVector, initialisationVector.length + encryptedBytes.length);
+      System.arraycopy(encryptedBytes, 0, storedBytes, initialisationVector.length, encryptedBytes.length);
+
+      return storedBytes;
+    } catch (KeyCrypterException e) {
+      throw new IOException("Could not encrypt", e);
+    }
+  }
+
+  private byte[] decrypt(byte[] storedBytes) throws IOException {
+
+    if (storedBytes.length < 2 * AESUtils.BLOCK_LENGTH) {
+      throw new IOException("Encrypted content is truncated");
+    }
+
+    try {
+      return AESUtils.decrypt(
+        Arrays.copyOfRange(storedBytes, AESUtils.BLOCK_LENGTH, storedBytes.length),
+        aesKey,
+        Arrays.copyOf(storedBytes, AESUtils.BLOCK_LENGTH)
+      );
+    } catch (KeyCrypterException e) {
+      throw new IOException("Could not decrypt", e);
+    }
+  }
+
+  private Mac newChunkIdMac() {
+
+    try {
+      Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+      mac.init(chunkIdKey);
+      return mac;
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Could not create chunk id MAC", e);
+    }
+  }
+
+  private File chunkFile(String chunkId) {
+    return new File(new File(chunksDirectory, chunkId.substring(0, 2)), chunkId);
+  }
+
+  private File snapshotFile(String snapshotName) {
+    return new File(snapshotsDirectory, snapshotName + SNAPSHOT_SUFFIX);
+  }
+
+  /**
+   * <p>Write so a crash cannot leave a partial chunk or manifest</p>
+   */
+  private void writeAtomically(byte[] bytes, File file) throws IOException {
+
+    SecureFiles.verifyOrCreateDirectory(file.getParentFile());
+
+    org.multibit.hd.core.files.Files.writeAtomically(bytes, file);
+  }
+
+  /**
+   * @return The number of bytes read into the buffer (0 at the end of the stream)
+   */
+  private static int readFully(InputStream is, byte[] buffer) throws IOException {
+
+    int total = 0;
+    while (total < buffer.length) {
+      int length = is.read(buffer, total, buffer.length - total);
+      if (length == -1) {
+        break;
+      }
+      total += length;
+    }
+
+    return total;
+  }
+
+  /**
+   * <p>A file in a snapshot and the chunks holding its content</p>
+   */
+  private static class FileEntry {
+
+    private final String path;
+    private final long length;
+    private final List<String> chunkIds;
+
+    private FileEntry(String path, long length, List<String> chunkIds) {
+      this.path = path;
+      this.length = length;
+      this.chunkIds = ImmutableList.copyOf(chunkIds);
+    }
+  }
+
+}
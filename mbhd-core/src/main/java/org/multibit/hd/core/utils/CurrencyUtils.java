@@ -1,6 +1,7 @@
 package org.multibit.hd.core.utils;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import org.multibit.hd.core.config.Configurations;
@@ -23,34 +24,45 @@ public class CurrencyUtils {
   private static final Logger log = LoggerFactory.getLogger(CurrencyUtils.class);
 
   /**
-   * A map of all available currencies for available locales
+   * A map of all ISO 4217 codes known to the JVM and their symbol in their native locale (built once)
    */
-  private final static SortedMap<Locale, Currency> localeCurrencyMap;
+  private final static Map<String, String> symbolMap;
 
   /**
    * A map of all common currency names and their appropriate ISO candidates
    */
   private final static Map<String, List<String>> isoCandidateMap;
 
+  /**
+   * A map of all non-standard codes (upper case) and their ISO candidate (built once from the ISO candidate map)
+   */
+  private final static Map<String, String> nonIsoCodeMap;
+
   static {
-    localeCurrencyMap = Maps.newTreeMap(new Comparator<Locale>() {
+
+    SortedMap<Locale, Currency> localeCurrencyMap = Maps.newTreeMap(new Comparator<Locale>() {
 
       @Override
       public int compare(Locale l1, Locale l2) {
         return l1.toString().compareTo(l2.toString());
       }
     });
-    populateCurrencyLocaleMap();
+    populateCurrencyLocaleMap(localeCurrencyMap);
+
+    symbolMap = buildSymbolMap(localeCurrencyMap);
+
+    Map<String, List<String>> candidates = Maps.newLinkedHashMap();
+    populateIsoCandidateMap(localeCurrencyMap, candidates);
+    isoCandidateMap = ImmutableMap.copyOf(candidates);
 
-    isoCandidateMap = Maps.newLinkedHashMap();
+    nonIsoCodeMap = buildNonIsoCodeMap(isoCandidateMap);
 
-    populateIsoCandidateMap();
   }
 
   /**
    * Populate ISO candidate currencies and replace legacy entries
    */
-  private static void populateIsoCandidateMap() {
+  private static void populateIsoCandidateMap(SortedMap<Locale, Currency> localeCurrencyMap, Map<String, List<String>> isoCandidateMap) {
 
     // Generate the ISO code from known entries (including legacy)
     for (Map.Entry<Locale, Currency> entry : localeCurrencyMap.entrySet()) {
@@ -71,7 +83,7 @@ public class CurrencyUtils {
    * Populate currencies over all available locales (this ensure we can get the correct
    * symbol for the currency using its native locale)
    */
-  private static void populateCurrencyLocaleMap() {
+  private static void populateCurrencyLocaleMap(SortedMap<Locale, Currency> localeCurrencyMap) {
 
     // Iterate over all the available locales
     for (Locale locale : Locale.getAvailableLocales()) {
@@ -85,6 +97,48 @@ public class CurrencyUtils {
     }
   }
 
+  /**
+   * @param localeCurrencyMap The currencies of all available locales in locale order
+   *
+   * @return The first symbol (in locale order) that differs from the ISO code for each currency
+   */
+  private static Map<String, String> buildSymbolMap(SortedMap<Locale, Currency> localeCurrencyMap) {
+
+    Map<String, String> symbols = Maps.newHashMap();
+    for (Map.Entry<Locale, Currency> entry : localeCurrencyMap.entrySet()) {
+      String isoCode = entry.getValue().getCurrencyCode();
+      if (symbols.containsKey(isoCode)) {
+        continue;
+      }
+      String symbol = entry.getValue().getSymbol(entry.getKey());
+      if (!isoCode.equals(symbol)) {
+        symbols.put(isoCode, symbol);
+      }
+    }
+
+    return ImmutableMap.copyOf(symbols);
+  }
+
+  /**
+   * @param isoCandidateMap The ISO candidate map in priority order
+   *
+   * @return The ISO code for each non-standard code (the first ISO code wins if a code is listed more than once)
+   */
+  private static Map<String, String> buildNonIsoCodeMap(Map<String, List<String>> isoCandidateMap) {
+
+    Map<String, String> nonIsoCodes = Maps.newHashMap();
+    for (Map.Entry<String, List<String>> entry : isoCandidateMap.entrySet()) {
+      for (String nonIsoCode : entry.getValue()) {
+        String key = nonIsoCode.toUpperCase(Locale.ENGLISH);
+        if (!nonIsoCodes.containsKey(key)) {
+          nonIsoCodes.put(key, entry.getKey());
+        }
+      }
+    }
+
+    return ImmutableMap.copyOf(nonIsoCodes);
+  }
+
   /**
    * @return The current local currency symbol (e.g. "£", "$" etc)
    */
@@ -103,13 +157,9 @@ public class CurrencyUtils {
    */
   public static String symbolFor(String isoCode) {
 
-    for (Map.Entry<Locale, Currency> entry : localeCurrencyMap.entrySet()) {
-      if (entry.getValue().getCurrencyCode().equalsIgnoreCase(isoCode)) {
-        String symbol = entry.getValue().getSymbol(entry.getKey());
-        if (!isoCode.equals(symbol)) {
-          return symbol;
-        }
-      }
+    String symbol = symbolMap.get(isoCode.toUpperCase(Locale.ENGLISH));
+    if (symbol != null && !isoCode.equals(symbol)) {
+      return symbol;
     }
 
     // Must have failed to find it in the JVM so attempt to find it in the ISO 4217 spec
@@ -361,29 +411,15 @@ public class CurrencyUtils {
 
     Preconditions.checkNotNull(currency, "'currency' must be present");
 
-    log.debug("Searching for ISO candidate for '{}'", currency);
-
     if (isoCandidateMap.containsKey(currency)) {
       // The currency is ISO so no searching is required
       return currency;
     }
 
-    // Iterate over all currencies looking for a match
-    for (Map.Entry<String, List<String>> entry : isoCandidateMap.entrySet()) {
-
-      // Search the non-standard codes
-      List<String> nonStandard = entry.getValue();
-
-      for (String nonIsoCode : nonStandard) {
-
-        if (nonIsoCode.equalsIgnoreCase(currency)) {
-
-          // Found a match so return the ISO code
-          return entry.getKey();
-        }
-
-      }
-
+    // Look up the non-standard codes
+    String isoCode = nonIsoCodeMap.get(currency.toUpperCase(Locale.ENGLISH));
+    if (isoCode != null) {
+      return isoCode;
     }
 
     // Must have failed to find a match here
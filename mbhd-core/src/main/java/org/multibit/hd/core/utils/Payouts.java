@@ -0,0 +1,80 @@
+package org.multibit.hd.core.utils;
+
+import com.google.bitcoin.core.Address;
+import com.google.bitcoin.core.AddressFormatException;
+import com.google.bitcoin.core.Coin;
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import org.multibit.hd.core.dto.BatchSendRequestSummary;
+
+import java.util.List;
+
+/**
+ * <p>Utility to provide the following to batch payouts:</p>
+ * <ul>
+ * <li>Parsing of payee lists from CSV</li>
+ * </ul>
+ *
+ * @since 0.0.1
+ */
+public class Payouts {
+
+  private static final Splitter LINE_SPLITTER = Splitter.onPattern("\r?\n");
+  private static final Splitter FIELD_SPLITTER = Splitter.on(',').trimResults();
+
+  /**
+   * Utilities have private constructors
+   */
+  private Payouts() {
+  }
+
+  /**
+   * <p>Parse lines of "address,amount" where the amount is in bitcoin (e.g. "0.0125")</p>
+   * <p>Blank lines and lines starting with "#" are ignored</p>
+   *
+   * @param csv               The CSV content
+   * @param networkParameters The network parameters for address validation
+   *
+   * @return The payees in the order they appear
+   *
+   * @throws IllegalArgumentException If any line cannot be parsed (the message identifies the line)
+   */
+  public static List<BatchSendRequestSummary.Payee> parseCsv(String csv, NetworkParameters networkParameters) {
+
+    Preconditions.checkNotNull(csv, "'csv' must be present");
+    Preconditions.checkNotNull(networkParameters, "'networkParameters' must be present");
+
+    List<BatchSendRequestSummary.Payee> payees = Lists.newArrayList();
+
+    int lineNumber = 0;
+    for (String line : LINE_SPLITTER.split(csv)) {
+
+      lineNumber++;
+
+      String trimmed = line.trim();
+      if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+        continue;
+      }
+
+      List<String> fields = Lists.newArrayList(FIELD_SPLITTER.split(trimmed));
+      if (fields.size() != 2) {
+        throw new IllegalArgumentException("Line " + lineNumber + " must contain 'address,amount'");
+      }
+
+      try {
+        Address address = new Address(networkParameters, fields.get(0));
+        Coin amount = Coin.parseCoin(fields.get(1));
+        payees.add(new BatchSendRequestSummary.Payee(address, amount));
+      } catch (AddressFormatException e) {
+        throw new IllegalArgumentException("Line " + lineNumber + " has an invalid address '" + fields.get(0) + "'", e);
+      } catch (IllegalArgumentException | ArithmeticException e) {
+        throw new IllegalArgumentException("Line " + lineNumber + " has an invalid amount '" + fields.get(1) + "'", e);
+      }
+    }
+
+    return payees;
+  }
+
+}
@@ -0,0 +1,92 @@
+package org.multibit.hd.core.concurrent;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class StartupGraphTest {
+
+  @Test
+  public void testExecute_RespectsDependencies() throws Exception {
+
+    final List<String> order = Collections.synchronizedList(Lists.<String>newArrayList());
+
+    StartupGraph testObject = new StartupGraph("test")
+      .addTask("a", newRecordingTask(order, "a"))
+      .addTask("b", newRecordingTask(order, "b"), "a")
+      .addTask("c", newRecordingTask(order, "c"), "b");
+
+    assertThat(testObject.execute()).isTrue();
+    assertThat(order).containsExactly("a", "b", "c");
+    assertThat(testObject.getTimings().keySet()).containsOnly("a", "b", "c");
+
+  }
+
+  @Test
+  public void testExecute_RunsIndependentTasksConcurrently() throws Exception {
+
+    // Each task waits for the other so this only completes if they run together
+    final CountDownLatch latch = new CountDownLatch(2);
+
+    Callable<Boolean> task = new Callable<Boolean>() {
+      @Override
+      public Boolean call() throws Exception {
+        latch.countDown();
+        return latch.await(5, TimeUnit.SECONDS);
+      }
+    };
+
+    StartupGraph testObject = new StartupGraph("test")
+      .addTask("a", task)
+      .addTask("b", task);
+
+    assertThat(testObject.execute()).isTrue();
+
+  }
+
+  @Test
+  public void testExecute_FailureSkipsDependants() throws Exception {
+
+    final List<String> order = Collections.synchronizedList(Lists.<String>newArrayList());
+
+    StartupGraph testObject = new StartupGraph("test")
+      .addTask("a", new Callable<Boolean>() {
+        @Override
+        public Boolean call() throws Exception {
+          throw new IllegalStateException("Expected");
+        }
+      })
+      .addTask("b", newRecordingTask(order, "b"), "a")
+      .addTask("c", newRecordingTask(order, "c"));
+
+    assertThat(testObject.execute()).isFalse();
+    assertThat(order).containsExactly("c");
+
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testAddTask_UnknownDependency() throws Exception {
+
+    new StartupGraph("test").addTask("b", newRecordingTask(Lists.<String>newArrayList(), "b"), "a");
+
+  }
+
+  private Callable<Boolean> newRecordingTask(final List<String> order, final String name) {
+
+    return new Callable<Boolean>() {
+      @Override
+      public Boolean call() throws Exception {
+        order.add(name);
+        return true;
+      }
+    };
+  }
+
+}
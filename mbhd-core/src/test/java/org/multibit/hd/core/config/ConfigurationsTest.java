@@ -1,10 +1,13 @@
 package org.multibit.hd.core.config;
 
 import com.google.common.base.Optional;
+import com.google.common.io.Files;
 import org.junit.Test;
 import org.multibit.hd.core.testing.FixtureAsserts;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.InputStream;
 
 import static org.fest.assertions.Assertions.assertThat;
@@ -48,4 +51,30 @@ public class ConfigurationsTest {
 
   }
 
+  @Test
+  public void testWriteYamlAtomically() throws Exception {
+
+    File directory = Files.createTempDir();
+    File file = new File(directory, "mbhd.yaml");
+
+    Configuration configuration = Configurations.newDefaultConfiguration();
+    assertThat(Configurations.writeYamlAtomically(file, configuration)).isTrue();
+
+    // An unchanged configuration is not written again
+    assertThat(Configurations.writeYamlAtomically(file, configuration)).isFalse();
+
+    configuration.getAppearance().setLastFrameBounds("1,2,3,4");
+    assertThat(Configurations.writeYamlAtomically(file, configuration)).isTrue();
+
+    try (InputStream is = new FileInputStream(file)) {
+      Optional<Configuration> reloaded = Configurations.readYaml(is, Configuration.class);
+      assertThat(reloaded.isPresent()).isTrue();
+      assertThat(reloaded.get().getAppearance().getLastFrameBounds()).isEqualTo("1,2,3,4");
+    }
+
+    // No temporary files are left behind
+    assertThat(directory.list()).containsOnly("mbhd.yaml");
+
+  }
+
 }
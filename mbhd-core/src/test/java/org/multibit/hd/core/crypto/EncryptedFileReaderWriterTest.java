@@ -18,6 +18,9 @@ package org.multibit.hd.core.crypto;
 
 import com.google.bitcoin.core.Utils;
 import com.google.bitcoin.utils.BriefLogFormatter;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
 import org.junit.Before;
 import org.junit.Test;
 import org.multibit.hd.brit.crypto.AESUtils;
@@ -29,10 +32,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spongycastle.crypto.params.KeyParameter;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.InputStream;
 import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import static org.fest.assertions.Assertions.assertThat;
 
@@ -97,4 +105,66 @@ public class EncryptedFileReaderWriterTest {
 
     decryptedInputstream.close();
   }
+
+  @Test
+  public void testZipEncryptAndWrite() throws Exception {
+
+    // Create a random temporary directory to zip, including a nested directory
+    File sourceDirectory = WalletManagerTest.makeRandomTemporaryApplicationDirectory();
+    byte[] largeBytes = new byte[100000];
+    secureRandom.nextBytes(largeBytes);
+    com.google.common.io.Files.write(largeBytes, new File(sourceDirectory, "large.bin"));
+    File nestedDirectory = new File(sourceDirectory, "nested");
+    assertThat(nestedDirectory.mkdir()).isTrue();
+    com.google.common.io.Files.write(EXAMPLE_TEXT.getBytes(Charsets.UTF_8), new File(nestedDirectory, "example.txt"));
+
+    File outputFile = new File(WalletManagerTest.makeRandomTemporaryApplicationDirectory(), "backup.zip.aes");
+
+    EncryptedFileReaderWriter.zipEncryptAndWrite(sourceDirectory, false, keyParameter, WalletManager.AES_INITIALISATION_VECTOR, outputFile);
+
+    assertThat(outputFile.exists()).isTrue();
+    assertThat(new File(outputFile.getAbsolutePath() + ".tmp").exists()).isFalse();
+
+    // The streamed output must be readable by the existing in-memory decryption
+    byte[] zipBytes = AESUtils.decrypt(FileUtils.readFile(outputFile), keyParameter, WalletManager.AES_INITIALISATION_VECTOR);
+
+    Map<String, byte[]> entries = Maps.newHashMap();
+    try (ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(zipBytes))) {
+      ZipEntry entry;
+      while ((entry = zis.getNextEntry()) != null) {
+        entries.put(entry.getName(), ByteStreams.toByteArray(zis));
+      }
+    }
+
+    assertThat(entries.size()).isEqualTo(2);
+    assertThat(Arrays.equals(entries.get("large.bin"), largeBytes)).isTrue();
+    assertThat(new String(entries.get("nested" + File.separator + "example.txt"), Charsets.UTF_8)).isEqualTo(EXAMPLE_TEXT);
+  }
+
+  @Test
+  public void testStreamsMatchAESUtils() throws Exception {
+
+    // Lengths either side of block and buffer boundaries
+    for (int length : new int[]{0, 1, 15, 16, 17, 8191, 8192, 8193, 50000}) {
+      byte[] plainBytes = new byte[length];
+      secureRandom.nextBytes(plainBytes);
+
+      ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+      try (AESEncryptingOutputStream os = new AESEncryptingOutputStream(encrypted, keyParameter, WalletManager.AES_INITIALISATION_VECTOR)) {
+        // Write in uneven chunks
+        int offset = 0;
+        while (offset < length) {
+          int chunk = Math.min(1000 + offset % 7, length - offset);
+          os.write(plainBytes, offset, chunk);
+          offset += chunk;
+        }
+      }
+
+      assertThat(Arrays.equals(encrypted.toByteArray(), AESUtils.encrypt(plainBytes, keyParameter, WalletManager.AES_INITIALISATION_VECTOR))).isTrue();
+
+      try (InputStream is = new AESDecryptingInputStream(new ByteArrayInputStream(encrypted.toByteArray()), keyParameter, WalletManager.AES_INITIALISATION_VECTOR)) {
+        assertThat(Arrays.equals(ByteStreams.toByteArray(is), plainBytes)).isTrue();
+      }
+    }
+  }
 }
@@ -0,0 +1,95 @@
+package org.multibit.hd.core.exchanges;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class CurrencyCatalogueTest {
+
+  private File cacheFile;
+
+  @Before
+  public void setUp() {
+
+    cacheFile = new File(Files.createTempDir(), "exchange-currencies.properties");
+
+  }
+
+  @Test
+  public void testLocalisedNames() throws Exception {
+
+    CurrencyCatalogue testObject = new CurrencyCatalogue(Optional.<File>absent(), 60000);
+
+    assertThat(testObject.isStale("BITSTAMP")).isTrue();
+    assertThat(testObject.getLocalisedNames("BITSTAMP", Locale.UK).isPresent()).isFalse();
+
+    testObject.putCurrencyCodes("BITSTAMP", Lists.newArrayList("USD", "EUR"));
+
+    assertThat(testObject.isStale("BITSTAMP")).isFalse();
+    assertThat(testObject.getLocalisedNames("BITSTAMP", Locale.UK).get()).containsExactly("EUR (Euro)", "USD (US Dollar)");
+    assertThat(testObject.getLocalisedNames("BITSTAMP", Locale.GERMANY).get()[1]).isEqualTo("USD (US-Dollar)");
+
+    // Replacing the codes must replace the names
+    testObject.putCurrencyCodes("BITSTAMP", Lists.newArrayList("GBP"));
+    assertThat(testObject.getLocalisedNames("BITSTAMP", Locale.UK).get()).hasSize(1);
+    assertThat(testObject.getLocalisedNames("BITSTAMP", Locale.UK).get()[0]).startsWith("GBP (");
+
+  }
+
+  @Test
+  public void testLocalisedNames_CurrentAfterConcurrentPut() throws Exception {
+
+    final CurrencyCatalogue testObject = new CurrencyCatalogue(Optional.<File>absent(), 60000);
+    testObject.putCurrencyCodes("BITSTAMP", Lists.newArrayList("USD", "EUR"));
+
+    // A reader computing names from the old codes while they are replaced
+    final AtomicBoolean running = new AtomicBoolean(true);
+    Thread reader = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        while (running.get()) {
+          testObject.getLocalisedNames("BITSTAMP", Locale.UK);
+        }
+      }
+    });
+    reader.start();
+
+    for (int i = 0; i < 100; i++) {
+      testObject.putCurrencyCodes("BITSTAMP", Lists.newArrayList("USD", "EUR"));
+      testObject.putCurrencyCodes("BITSTAMP", Lists.newArrayList("GBP"));
+      assertThat(testObject.getLocalisedNames("BITSTAMP", Locale.UK).get()).hasSize(1);
+    }
+
+    running.set(false);
+    reader.join();
+
+  }
+
+  @Test
+  public void testPersistence_StaleEntryRetained() throws Exception {
+
+    CurrencyCatalogue first = new CurrencyCatalogue(Optional.of(cacheFile), 60000);
+    first.putCurrencyCodes("KRAKEN", Lists.newArrayList("EUR", "USD"));
+
+    assertThat(cacheFile.exists()).isTrue();
+
+    // A zero time to live makes the entry stale immediately but it remains available
+    CurrencyCatalogue second = new CurrencyCatalogue(Optional.of(cacheFile), 0);
+
+    Thread.sleep(5);
+
+    assertThat(second.isStale("KRAKEN")).isTrue();
+    assertThat(second.getCurrencyCodes("KRAKEN").get()).containsExactly("EUR", "USD");
+    assertThat(second.getLocalisedNames("KRAKEN", Locale.UK).get()).hasSize(2);
+
+  }
+
+}
@@ -0,0 +1,83 @@
+package org.multibit.hd.core.exchanges;
+
+import com.google.common.io.Files;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.math.BigDecimal;
+import java.util.Currency;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ExchangeRateHistoryTest {
+
+  private static final Currency USD = Currency.getInstance("USD");
+  private static final Currency EUR = Currency.getInstance("EUR");
+
+  private static final long HOUR = 3600000L;
+
+  private File historyDirectory;
+
+  @Before
+  public void setUp() {
+
+    historyDirectory = new File(Files.createTempDir(), "exchange-rates");
+
+  }
+
+  @Test
+  public void testRecordAndGetRate() throws Exception {
+
+    ExchangeRateHistory testObject = new ExchangeRateHistory(historyDirectory);
+
+    assertThat(testObject.getRate(USD, 0, HOUR).isPresent()).isFalse();
+
+    for (int i = 0; i < 1000; i++) {
+      assertThat(testObject.record(USD, new BigDecimal(100 + i + ".25"), i * HOUR)).isTrue();
+    }
+
+    // Out of order and non-positive rates are rejected
+    assertThat(testObject.record(USD, new BigDecimal("1"), 10 * HOUR)).isFalse();
+    assertThat(testObject.record(USD, BigDecimal.ZERO, 2000 * HOUR)).isFalse();
+    assertThat(testObject.size(USD)).isEqualTo(1000);
+
+    // Exact, nearest before and nearest after
+    assertThat(testObject.getRate(USD, 10 * HOUR, HOUR).get()).isEqualTo(new BigDecimal("110.25"));
+    assertThat(testObject.getRate(USD, 10 * HOUR + HOUR / 4, HOUR).get()).isEqualTo(new BigDecimal("110.25"));
+    assertThat(testObject.getRate(USD, 10 * HOUR + 3 * HOUR / 4, HOUR).get()).isEqualTo(new BigDecimal("111.25"));
+
+    // Too far from any record
+    assertThat(testObject.getRate(USD, 1010 * HOUR, HOUR).isPresent()).isFalse();
+
+    // Currencies are independent
+    assertThat(testObject.getRate(EUR, 10 * HOUR, HOUR).isPresent()).isFalse();
+
+  }
+
+  @Test
+  public void testReload_DiscardsPartialRecord() throws Exception {
+
+    ExchangeRateHistory first = new ExchangeRateHistory(historyDirectory);
+    first.record(USD, new BigDecimal("600.12345678"), HOUR);
+    first.record(USD, new BigDecimal("650"), 2 * HOUR);
+
+    // Simulate an interrupted write
+    try (FileOutputStream fos = new FileOutputStream(new File(historyDirectory, "USD" + ExchangeRateHistory.RATES_SUFFIX), true)) {
+      fos.write(new byte[]{1, 2, 3});
+    }
+
+    ExchangeRateHistory second = new ExchangeRateHistory(historyDirectory);
+
+    assertThat(second.size(USD)).isEqualTo(2);
+    assertThat(second.getRate(USD, HOUR, 0).get()).isEqualTo(new BigDecimal("600.12345678"));
+    assertThat(second.getRate(USD, 2 * HOUR, 0).get().compareTo(new BigDecimal("650"))).isEqualTo(0);
+
+    // Later records must remain aligned
+    second.record(USD, new BigDecimal("700"), 3 * HOUR);
+    assertThat(new ExchangeRateHistory(historyDirectory).getRate(USD, 3 * HOUR, 0).get().compareTo(new BigDecimal("700"))).isEqualTo(0);
+
+  }
+
+}
@@ -0,0 +1,197 @@
+package org.multibit.hd.core.exchanges;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.multibit.hd.core.concurrent.SafeExecutors;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Currency;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class TickerAggregatorTest {
+
+  private static final Currency USD = Currency.getInstance("USD");
+
+  private ListeningExecutorService executorService;
+
+  private ListeningExecutorService gatherExecutorService;
+
+  private File temporaryDirectory;
+
+  @Before
+  public void setUp() {
+
+    executorService = SafeExecutors.newFixedThreadPool(4, "test-aggregator");
+    gatherExecutorService = SafeExecutors.newSingleThreadExecutor("test-aggregator-gather");
+    temporaryDirectory = Files.createTempDir();
+
+  }
+
+  @After
+  public void tearDown() {
+
+    executorService.shutdownNow();
+    gatherExecutorService.shutdownNow();
+
+  }
+
+  @Test
+  public void testMedian() throws Exception {
+
+    assertThat(TickerAggregator.median(Lists.newArrayList(new BigDecimal("3"), new BigDecimal("1"), new BigDecimal("2"))))
+      .isEqualTo(new BigDecimal("2"));
+    assertThat(TickerAggregator.median(Lists.newArrayList(new BigDecimal("100.5"), new BigDecimal("101.0"))).compareTo(new BigDecimal("100.75")))
+      .isEqualTo(0);
+
+  }
+
+  @Test
+  public void testRefresh_SlowProviderIgnored() throws Exception {
+
+    List<RateProvider> providers = Lists.<RateProvider>newArrayList(
+      new StubRateProvider("A", "600", 0),
+      new StubRateProvider("B", "610", 0),
+      new StubRateProvider("Slow", "10000", 5000),
+      new StubRateProvider("C", "620", 0)
+    );
+
+    TickerAggregator testObject = new TickerAggregator(providers, 500, 60000, Optional.<File>absent(), executorService, gatherExecutorService);
+
+    long start = System.nanoTime();
+    TickerAggregator.AggregateRate rate = testObject.refresh(USD).get();
+
+    assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(2000);
+    assertThat(rate.getRate()).isEqualTo(new BigDecimal("610"));
+    assertThat(rate.getSources()).containsExactly("A", "B", "C");
+
+  }
+
+  @Test
+  public void testRefresh_ProvidersNotStarved() throws Exception {
+
+    List<RateProvider> providers = Lists.<RateProvider>newArrayList(
+      new StubRateProvider("A", "600", 0),
+      new StubRateProvider("B", "610", 0)
+    );
+
+    // Exactly one request thread per provider with two currencies refreshing at once
+    ListeningExecutorService requestExecutorService = SafeExecutors.newFixedThreadPool(providers.size(), "test-aggregator-requests");
+    try {
+      TickerAggregator testObject = new TickerAggregator(providers, 500, 60000, Optional.<File>absent(), requestExecutorService, gatherExecutorService);
+
+      ListenableFuture<TickerAggregator.AggregateRate> usd = testObject.refresh(USD);
+      ListenableFuture<TickerAggregator.AggregateRate> eur = testObject.refresh(Currency.getInstance("EUR"));
+
+      assertThat(usd.get().getSources()).containsExactly("A", "B");
+      assertThat(eur.get().getSources()).containsExactly("A", "B");
+    } finally {
+      requestExecutorService.shutdownNow();
+    }
+
+  }
+
+  @Test
+  public void testRefresh_PrimaryFailureReported() throws Exception {
+
+    List<RateProvider> providers = Lists.<RateProvider>newArrayList(
+      new StubRateProvider("Slow", "600", 5000)
+    );
+
+    TickerAggregator testObject = new TickerAggregator(providers, 100, 60000, Optional.<File>absent(), executorService, gatherExecutorService);
+
+    try {
+      testObject.refresh(USD).get();
+      fail("Expected a timeout");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause()).isInstanceOf(TimeoutException.class);
+    }
+
+    assertThat(testObject.getCachedRate(USD).isPresent()).isFalse();
+
+  }
+
+  @Test
+  public void testCache_ReloadedAndServedWhileStale() throws Exception {
+
+    File cacheFile = new File(temporaryDirectory, "exchange-rates.properties");
+
+    List<RateProvider> providers = Lists.<RateProvider>newArrayList(
+      new StubRateProvider("A", "600", 0),
+      new StubRateProvider("B", "700", 0)
+    );
+
+    TickerAggregator first = new TickerAggregator(providers, 500, 60000, Optional.of(cacheFile), executorService, gatherExecutorService);
+    first.refresh(USD).get();
+    assertThat(cacheFile.exists()).isTrue();
+
+    // A new instance (e.g. after a restart) with failing providers and a zero freshness period
+    StubRateProvider failing = new StubRateProvider("A", null, 0);
+    TickerAggregator second = new TickerAggregator(Lists.<RateProvider>newArrayList(failing), 500, 0, Optional.of(cacheFile), executorService, gatherExecutorService);
+
+    Optional<TickerAggregator.AggregateRate> rate = second.getRate(USD);
+
+    assertThat(rate.isPresent()).isTrue();
+    assertThat(rate.get().getRate().compareTo(new BigDecimal("650"))).isEqualTo(0);
+    assertThat(rate.get().getSources()).containsExactly("A", "B");
+
+    // The stale rate triggered a background refresh which failed, leaving the last good rate in place
+    Uninterruptibles.sleepUninterruptibly(200, TimeUnit.MILLISECONDS);
+    assertThat(failing.calls).isGreaterThan(0);
+    assertThat(second.getCachedRate(USD).get().getRate().compareTo(new BigDecimal("650"))).isEqualTo(0);
+
+  }
+
+  /**
+   * <p>Rate provider with a fixed rate (null to fail) and delay</p>
+   */
+  private static class StubRateProvider implements RateProvider {
+
+    private final String name;
+    private final String rate;
+    private final long delayMillis;
+
+    private volatile int calls = 0;
+
+    private StubRateProvider(String name, String rate, long delayMillis) {
+      this.name = name;
+      this.rate = rate;
+      this.delayMillis = delayMillis;
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public BigDecimal latestRate(Currency localCurrency) throws Exception {
+
+      calls++;
+
+      if (delayMillis > 0) {
+        Thread.sleep(delayMillis);
+      }
+      if (rate == null) {
+        throw new IOException("Exchange is down");
+      }
+
+      return new BigDecimal(rate);
+    }
+  }
+
+}
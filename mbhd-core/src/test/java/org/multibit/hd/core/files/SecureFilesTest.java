@@ -1,12 +1,101 @@
 package org.multibit.hd.core.files;
 
+import com.google.common.io.Files;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
 
 public class SecureFilesTest {
 
-  // TODO (GR) Verify operation
-  public void testSecureDelete() {
+  @Test
+  public void testSecureDelete() throws Exception {
+
+    File directory = Files.createTempDir();
+    File file = new File(directory, "secret.txt");
+
+    // Larger than the fill buffer and not a multiple of it
+    byte[] bytes = new byte[1024 * 1024 + 1234];
+    Files.write(bytes, file);
+
+    long before = SecureFiles.getSecureDeleteBytes();
+
+    SecureFiles.secureDelete(file);
+
+    assertThat(file.exists()).isFalse();
+    assertThat(SecureFiles.getSecureDeleteBytes() - before).isEqualTo(bytes.length);
+    assertThat(SecureFiles.getSecureDeleteThroughput()).isGreaterThan(0);
+
+    // Missing files are ignored
+    SecureFiles.secureDelete(file);
+
+  }
+
+  @Test
+  public void testSecureDeleteLater() throws Exception {
+
+    File directory = Files.createTempDir();
+    File file = new File(directory, "mbhd.wallet");
+    Files.write(new byte[5000], file);
+
+    long deleted = SecureFiles.secureDeleteLater(file).get();
+
+    assertThat(deleted).isEqualTo(5000);
+    assertThat(file.exists()).isFalse();
+
+    // No pending files remain once the queue has run
+    File[] pending = directory.listFiles(new FileFilter() {
+      @Override
+      public boolean accept(File pathname) {
+        return pathname.getName().endsWith(SecureFiles.PENDING_DELETE_SUFFIX);
+      }
+    });
+    assertThat(pending).isEmpty();
+
+    assertThat(SecureFiles.secureDeleteLater(file).get()).isEqualTo(0);
+
+  }
+
+  @Test
+  public void testDrainSecureDeleteQueue() throws Exception {
+
+    File directory = Files.createTempDir();
+    File file = new File(directory, "mbhd-20140101120000.wallet.aes");
+    Files.write(new byte[5000], file);
+
+    SecureFiles.secureDeleteLater(file);
+
+    assertThat(SecureFiles.drainSecureDeleteQueue(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(directory.list()).isEmpty();
+
+    // A new queue is started after draining
+    Files.write(new byte[10], file);
+    assertThat(SecureFiles.secureDeleteLater(file).get()).isEqualTo(10);
+
+  }
+
+  @Test
+  public void testSecureDeletePendingFiles() throws Exception {
+
+    File directory = Files.createTempDir();
+    File subDirectory = new File(directory, "rolling-backup");
+    assertThat(subDirectory.mkdir()).isTrue();
+
+    // Left behind by a crash before the queue reached them
+    File pending = new File(subDirectory, "mbhd-20140101120000.wallet.aes.1234" + SecureFiles.PENDING_DELETE_SUFFIX);
+    Files.write(new byte[100], pending);
+    File kept = new File(subDirectory, "mbhd-20140102120000.wallet.aes");
+    Files.write(new byte[100], kept);
 
+    assertThat(SecureFiles.isPendingDelete(pending)).isTrue();
+    assertThat(SecureFiles.isPendingDelete(kept)).isFalse();
 
+    assertThat(SecureFiles.secureDeletePendingFiles(directory)).isEqualTo(1);
+    assertThat(pending.exists()).isFalse();
+    assertThat(kept.exists()).isTrue();
 
   }
 
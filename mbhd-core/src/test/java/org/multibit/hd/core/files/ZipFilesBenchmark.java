@@ -0,0 +1,136 @@
+package org.multibit.hd.core.files;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * <p>Benchmark to provide the following to ZipFiles changes:</p>
+ * <ul>
+ * <li>Wall time to zip a large wallet directory compared with a single threaded ZipOutputStream</li>
+ * </ul>
+ *
+ * <p>Run from the IDE with an optional argument giving the wallet size in MB (default 64).</p>
+ *
+ * @since 0.0.1
+ *
+ */
+public class ZipFilesBenchmark {
+
+  private static final int RUNS = 5;
+
+  public static void main(String[] args) throws IOException {
+
+    int walletMegabytes = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+
+    File walletDirectory = createWalletDirectory(walletMegabytes);
+    File zipFile = File.createTempFile("benchmark", ".zip");
+
+    System.out.printf("Wallet directory of %d MB in '%s'%n", walletMegabytes, walletDirectory.getAbsolutePath());
+
+    // Warm up both paths
+    zipSingleThreaded(walletDirectory, zipFile);
+    ZipFiles.zipFolder(walletDirectory.getAbsolutePath(), zipFile.getAbsolutePath(), false);
+
+    long singleThreadedMillis = Long.MAX_VALUE;
+    long zipFilesMillis = Long.MAX_VALUE;
+    long singleThreadedSize = 0;
+    long zipFilesSize = 0;
+
+    for (int i = 0; i < RUNS; i++) {
+
+      long start = System.nanoTime();
+      zipSingleThreaded(walletDirectory, zipFile);
+      singleThreadedMillis = Math.min(singleThreadedMillis, (System.nanoTime() - start) / 1000000);
+      singleThreadedSize = zipFile.length();
+
+      start = System.nanoTime();
+      ZipFiles.zipFolder(walletDirectory.getAbsolutePath(), zipFile.getAbsolutePath(), false);
+      zipFilesMillis = Math.min(zipFilesMillis, (System.nanoTime() - start) / 1000000);
+      zipFilesSize = zipFile.length();
+    }
+
+    System.out.printf("ZipOutputStream (single thread): %6d ms, %10d bytes%n", singleThreadedMillis, singleThreadedSize);
+    System.out.printf("ZipFiles.zipFolder:              %6d ms, %10d bytes%n", zipFilesMillis, zipFilesSize);
+
+  }
+
+  /**
+   * @param walletMegabytes The approximate size of the directory
+   *
+   * @return A directory shaped like a wallet: mostly AES ciphertext with some compressible payment and contact files
+   */
+  private static File createWalletDirectory(int walletMegabytes) throws IOException {
+
+    Random random = new Random(42);
+    File walletDirectory = Files.createTempDir();
+
+    // Ciphertext is indistinguishable from random bytes
+    byte[] wallet = new byte[walletMegabytes * 1024 * 1024 / 2];
+    random.nextBytes(wallet);
+    Files.write(wallet, new File(walletDirectory, "mbhd.wallet.aes"));
+
+    File rollingBackupDirectory = new File(walletDirectory, "rolling-backup");
+    if (!rollingBackupDirectory.mkdir()) {
+      throw new IOException("Could not create '" + rollingBackupDirectory.getAbsolutePath() + "'");
+    }
+    for (int i = 0; i < 4; i++) {
+      byte[] rollingBackup = new byte[wallet.length / 8];
+      random.nextBytes(rollingBackup);
+      Files.write(rollingBackup, new File(rollingBackupDirectory, "mbhd-2014010112000" + i + ".wallet.aes"));
+    }
+
+    // Compressible content such as exported payments and configuration
+    StringBuilder text = new StringBuilder();
+    int line = 0;
+    while (text.length() < wallet.length / 2) {
+      text.append("payment,").append(line).append(",").append(random.nextInt(100000)).append(",mBTC,Example description\n");
+      line++;
+    }
+    for (int i = 0; i < 4; i++) {
+      Files.write(text.toString().getBytes(Charsets.UTF_8), new File(walletDirectory, "payments-" + i + ".csv"));
+    }
+
+    return walletDirectory;
+  }
+
+  /**
+   * <p>The approach used before entries were stored and compressed in parallel</p>
+   */
+  private static void zipSingleThreaded(File walletDirectory, File zipFile) throws IOException {
+
+    try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(zipFile)))) {
+      addToZip(walletDirectory, "", zip);
+    }
+  }
+
+  private static void addToZip(File directory, String prefix, ZipOutputStream zip) throws IOException {
+
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+
+    for (File file : files) {
+      if (file.isDirectory()) {
+        addToZip(file, prefix + file.getName() + File.separator, zip);
+      } else {
+        zip.putNextEntry(new ZipEntry(prefix + file.getName()));
+        try (InputStream in = new FileInputStream(file)) {
+          ByteStreams.copy(in, zip);
+        }
+        zip.closeEntry();
+      }
+    }
+  }
+}
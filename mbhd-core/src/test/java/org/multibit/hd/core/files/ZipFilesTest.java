@@ -0,0 +1,210 @@
+package org.multibit.hd.core.files;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import org.junit.Before;
+import org.junit.Test;
+import org.multibit.hd.core.store.BackupCatalogue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ZipFilesTest {
+
+  private File walletDirectory;
+
+  private byte[] cipherText;
+
+  @Before
+  public void setUp() throws Exception {
+
+    walletDirectory = Files.createTempDir();
+
+    cipherText = new byte[200 * 1024];
+    new SecureRandom().nextBytes(cipherText);
+    Files.write(cipherText, new File(walletDirectory, "mbhd.wallet.aes"));
+
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 10000; i++) {
+      text.append("Line ").append(i).append('\n');
+    }
+    Files.write(text.toString().getBytes(Charsets.UTF_8), new File(walletDirectory, "mbhd.yaml"));
+
+    File rollingBackupDirectory = new File(walletDirectory, "rolling-backup");
+    assertThat(rollingBackupDirectory.mkdir()).isTrue();
+    Files.write(new byte[0], new File(rollingBackupDirectory, "empty.txt"));
+
+    File zipBackupDirectory = new File(walletDirectory, "zip-backup");
+    assertThat(zipBackupDirectory.mkdir()).isTrue();
+    Files.write(cipherText, new File(zipBackupDirectory, "excluded.zip.aes"));
+
+  }
+
+  @Test
+  public void testZipFolder_StoresCipherText() throws Exception {
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ZipFiles.zipFolder(walletDirectory.getAbsolutePath(), out, false);
+
+    int entries = 0;
+    try (ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+      ZipEntry entry;
+      while ((entry = zis.getNextEntry()) != null) {
+        entries++;
+
+        byte[] content = ByteStreams.toByteArray(zis);
+        File original = new File(walletDirectory, entry.getName());
+        assertThat(Arrays.equals(content, Files.toByteArray(original))).isTrue();
+
+        if (entry.getName().endsWith(".aes")) {
+          assertThat(entry.getMethod()).isEqualTo(ZipEntry.STORED);
+        } else if (content.length > 0) {
+          assertThat(entry.getMethod()).isEqualTo(ZipEntry.DEFLATED);
+          assertThat(entry.getCompressedSize()).isLessThan(entry.getSize());
+        }
+      }
+    }
+
+    // The zip-backup directory is not included
+    assertThat(entries).isEqualTo(3);
+
+  }
+
+  @Test
+  public void testZipFolder_ExcludesPendingDeletes() throws Exception {
+
+    Files.write(cipherText, new File(walletDirectory, "rolling-backup" + File.separator + "mbhd-20140101120000.wallet.aes.1234" + SecureFiles.PENDING_DELETE_SUFFIX));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ZipFiles.zipFolder(walletDirectory.getAbsolutePath(), out, false);
+
+    try (ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+      ZipEntry entry;
+      while ((entry = zis.getNextEntry()) != null) {
+        assertThat(entry.getName().endsWith(SecureFiles.PENDING_DELETE_SUFFIX)).isFalse();
+      }
+    }
+
+  }
+
+  @Test
+  public void testZipFolder_ExcludesBackupCatalogues() throws Exception {
+
+    Files.write("catalogue".getBytes(Charsets.UTF_8), new File(walletDirectory, "rolling-backup" + File.separator + BackupCatalogue.CATALOGUE_FILE_NAME));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ZipFiles.zipFolder(walletDirectory.getAbsolutePath(), out, false);
+
+    try (ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+      ZipEntry entry;
+      while ((entry = zis.getNextEntry()) != null) {
+        assertThat(entry.getName().endsWith(BackupCatalogue.CATALOGUE_FILE_NAME)).isFalse();
+      }
+    }
+
+  }
+
+  @Test
+  public void testZipFolder_ProbesUnknownFiles() throws Exception {
+
+    // Random content without a ciphertext suffix is detected by the probe
+    File random = new File(walletDirectory, "random.bin");
+    Files.write(cipherText, random);
+
+    try (ZipFiles.PreparedEntry entry = ZipFiles.prepareEntry(random, random.getName())) {
+      assertThat(entry.isStored()).isTrue();
+      assertThat(entry.getCompressedSize()).isEqualTo(cipherText.length);
+    }
+
+  }
+
+  @Test
+  public void testZipFolder_WritesStoredContentAsChecksummed() throws Exception {
+
+    File wallet = new File(walletDirectory, "mbhd.wallet.aes");
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ZipFiles.ZipChannelWriter writer = new ZipFiles.ZipChannelWriter(Channels.newChannel(out));
+
+    try (ZipFiles.PreparedEntry entry = ZipFiles.prepareEntry(wallet, wallet.getName())) {
+
+      // An autosave replaces the wallet by a rename after it was checksummed
+      File autosave = new File(walletDirectory, "autosave.tmp");
+      Files.write(new byte[1000], autosave);
+      assertThat(wallet.delete()).isTrue();
+      assertThat(autosave.renameTo(wallet)).isTrue();
+
+      writer.write(entry);
+    }
+    writer.finish();
+
+    // The zip holds the content that was checksummed
+    try (ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+      assertThat(zis.getNextEntry().getName()).isEqualTo("mbhd.wallet.aes");
+      assertThat(Arrays.equals(ByteStreams.toByteArray(zis), cipherText)).isTrue();
+    }
+
+  }
+
+  @Test
+  public void testZipFolder_SkipsVanishedFiles() throws Exception {
+
+    // A file listed but gone before it is prepared is skipped rather than failing the backup
+    assertThat(ZipFiles.newPrepareTask(walletDirectory.getAbsolutePath(), "mbhd-20140101120000.wallet.aes").call()).isNull();
+
+  }
+
+  @Test
+  public void testZipFolderToFileAndUnzip() throws Exception {
+
+    File zipFile = File.createTempFile("wallet", ".zip");
+    ZipFiles.zipFolder(walletDirectory.getAbsolutePath(), zipFile.getAbsolutePath(), false);
+
+    File unzipDirectory = Files.createTempDir();
+    ZipFiles.unzip(zipFile.getAbsolutePath(), unzipDirectory.getAbsolutePath());
+
+    assertThat(Arrays.equals(Files.toByteArray(new File(unzipDirectory, "mbhd.wallet.aes")), cipherText)).isTrue();
+    assertThat(new File(unzipDirectory, "mbhd.yaml").length()).isEqualTo(new File(walletDirectory, "mbhd.yaml").length());
+    assertThat(new File(unzipDirectory, "rolling-backup" + File.separator + "empty.txt").exists()).isTrue();
+    assertThat(new File(unzipDirectory, "zip-backup").exists()).isFalse();
+
+  }
+
+  @Test
+  public void testUnzipStream() throws Exception {
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ZipFiles.zipFolder(walletDirectory.getAbsolutePath(), out, false);
+
+    File unzipDirectory = new File(Files.createTempDir(), "restored");
+    ZipFiles.unzip(new ByteArrayInputStream(out.toByteArray()), unzipDirectory);
+
+    assertThat(Arrays.equals(Files.toByteArray(new File(unzipDirectory, "mbhd.wallet.aes")), cipherText)).isTrue();
+    assertThat(new File(unzipDirectory, "rolling-backup" + File.separator + "empty.txt").exists()).isTrue();
+
+  }
+
+  @Test(expected = IOException.class)
+  public void testUnzipStream_RejectsEntriesOutsideDirectory() throws Exception {
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ZipOutputStream zip = new ZipOutputStream(out)) {
+      zip.putNextEntry(new ZipEntry(".." + File.separator + "outside.txt"));
+      zip.write(1);
+      zip.closeEntry();
+    }
+
+    ZipFiles.unzip(new ByteArrayInputStream(out.toByteArray()), new File(Files.createTempDir(), "restored"));
+
+  }
+}
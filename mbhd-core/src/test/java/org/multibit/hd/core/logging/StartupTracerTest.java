@@ -0,0 +1,123 @@
+package org.multibit.hd.core.logging;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.multibit.hd.core.config.Configurations;
+import org.multibit.hd.core.managers.InstallationManager;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class StartupTracerTest {
+
+  private File temporaryDirectory;
+
+  private StartupTracer testObject = StartupTracer.INSTANCE;
+
+  @Before
+  public void setUp() throws Exception {
+
+    Configurations.currentConfiguration = Configurations.newDefaultConfiguration();
+
+    // File logging is off by default so the trace is written to the application directory
+    temporaryDirectory = Files.createTempDir();
+    temporaryDirectory.deleteOnExit();
+    InstallationManager.setCurrentApplicationDataDirectory(temporaryDirectory);
+
+    testObject.reset();
+
+  }
+
+  @After
+  public void tearDown() throws Exception {
+
+    testObject.reset();
+
+  }
+
+  @Test
+  public void testInteractive_WritesTraceWithSpans() throws Exception {
+
+    StartupTracer.Span span = testObject.begin("test.span");
+    span.end();
+
+    assertThat(testObject.interactive().get()).isTrue();
+    assertThat(testObject.isInteractive()).isTrue();
+
+    JsonNode trace = readTrace();
+    assertThat(trace.get("spans").size()).isEqualTo(1);
+    assertThat(trace.get("spans").get(0).get("name").asText()).isEqualTo("test.span");
+
+    // Only the first call is reported and later spans are ignored
+    testObject.begin("test.late").end();
+    assertThat(testObject.interactive().get()).isFalse();
+    assertThat(readTrace().get("spans").size()).isEqualTo(1);
+
+  }
+
+  @Test
+  public void testInteractive_ExcludesUserWait() throws Exception {
+
+    testObject.userWaitStarted();
+
+    // The user takes a while to type their password
+    Uninterruptibles.sleepUninterruptibly(300, TimeUnit.MILLISECONDS);
+
+    // Repeated notifications do not restart the wait
+    testObject.userWaitStarted();
+    testObject.userWaitEnded();
+    testObject.userWaitEnded();
+
+    assertThat(testObject.interactive().get()).isTrue();
+
+    JsonNode trace = readTrace();
+    long timeToCredentials = trace.get("timeToCredentialsMillis").asLong();
+    long userWait = trace.get("userWaitMillis").asLong();
+    long timeToInteractive = trace.get("timeToInteractiveMillis").asLong();
+
+    assertThat(timeToCredentials).isGreaterThanOrEqualTo(0);
+    assertThat(userWait).isGreaterThanOrEqualTo(300);
+
+    // The wait is not counted as startup work
+    assertThat(timeToInteractive).isLessThan(timeToCredentials + 300);
+    assertThat(timeToInteractive).isGreaterThanOrEqualTo(timeToCredentials);
+
+  }
+
+  @Test
+  public void testInteractive_HistoryIsCapped() throws Exception {
+
+    File historyFile = new File(temporaryDirectory, StartupTracer.HISTORY_FILE_NAME);
+    StringBuilder history = new StringBuilder();
+    for (int i = 0; i < StartupTracer.MAXIMUM_HISTORY_LINES + 50; i++) {
+      history.append("earlier,").append(i).append(",1000\n");
+    }
+    Files.write(history.toString(), historyFile, Charsets.UTF_8);
+
+    assertThat(testObject.interactive().get()).isTrue();
+
+    List<String> lines = Files.readLines(historyFile, Charsets.UTF_8);
+    assertThat(lines.size()).isEqualTo(StartupTracer.MAXIMUM_HISTORY_LINES);
+
+    // The oldest runs are dropped and this run is last
+    assertThat(lines.get(0)).isEqualTo("earlier,51,1000");
+    assertThat(lines.get(lines.size() - 1).startsWith("earlier")).isFalse();
+
+  }
+
+  private JsonNode readTrace() throws Exception {
+
+    return new ObjectMapper().readTree(new File(temporaryDirectory, StartupTracer.TRACE_FILE_NAME));
+
+  }
+
+}
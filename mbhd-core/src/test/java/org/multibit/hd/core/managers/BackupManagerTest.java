@@ -16,10 +16,13 @@
 package org.multibit.hd.core.managers;
 
 import com.google.bitcoin.core.Wallet;
+import com.google.common.base.Charsets;
 import com.google.common.base.Optional;
+import com.google.common.io.Files;
 import com.google.common.util.concurrent.Uninterruptibles;
 import org.junit.Before;
 import org.junit.Test;
+import org.multibit.hd.brit.crypto.AESUtils;
 import org.multibit.hd.brit.seed_phrase.Bip39SeedPhraseGenerator;
 import org.multibit.hd.brit.seed_phrase.SeedPhraseGenerator;
 import org.multibit.hd.core.config.Configurations;
@@ -27,14 +30,18 @@ import org.multibit.hd.core.dto.BackupSummary;
 import org.multibit.hd.core.dto.WalletId;
 import org.multibit.hd.core.dto.WalletIdTest;
 import org.multibit.hd.core.dto.WalletSummary;
+import org.multibit.hd.core.exceptions.WalletLoadException;
 import org.multibit.hd.core.utils.Dates;
+import org.spongycastle.crypto.params.KeyParameter;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
 
 public class BackupManagerTest {
 
@@ -111,6 +118,9 @@ public class BackupManagerTest {
     WalletId recreatedWalletId= BackupManager.INSTANCE.loadZipBackup(localBackupFile, Bip39SeedPhraseGenerator.split(WalletIdTest.SEED_PHRASE_1));
     assertThat(walletSummary.getWalletId()).isEqualTo(recreatedWalletId);
 
+    // The local zip backups are not in the backup but survive the restore
+    assertThat(BackupManager.INSTANCE.getLocalZipBackups(walletSummary.getWalletId()).size()).isEqualTo(2);
+
     // Open
     String walletRoot = WalletManager.createWalletRoot(recreatedWalletId);
     File walletDirectory = WalletManager.getOrCreateWalletDirectory(temporaryApplicationDirectory, walletRoot);
@@ -122,4 +132,165 @@ public class BackupManagerTest {
     Wallet wallet = BackupManager.INSTANCE.loadRollingBackup(walletSummary.getWalletId(), password);
     assertThat(wallet).isNotNull();
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testRestoreSnapshotBackup() throws IOException {
+
+    File temporaryApplicationDirectory = WalletManagerTest.makeRandomTemporaryApplicationDirectory();
+
+    BackupManager.INSTANCE.initialise(temporaryApplicationDirectory, Optional.<File>absent());
+
+    SeedPhraseGenerator seedGenerator = new Bip39SeedPhraseGenerator();
+    byte[] seed = seedGenerator.convertToSeed(Bip39SeedPhraseGenerator.split(WalletIdTest.SEED_PHRASE_1));
+    String password = "password";
+    WalletSummary walletSummary = WalletManager
+      .INSTANCE
+      .getOrCreateWalletSummary(
+        temporaryApplicationDirectory,
+        seed,
+        Dates.nowInSeconds(),
+        password,
+        "Example",
+        "Example"
+      );
+
+    BackupManager.INSTANCE.createSnapshotBackup(walletSummary.getWalletId(), password);
+
+    // The snapshot is offered for restore alongside the local zip backups
+    List<BackupSummary> localBackups = BackupManager.INSTANCE.getLocalBackups(walletSummary.getWalletId());
+    assertThat(localBackups.size()).isEqualTo(1);
+
+    // A file written after the snapshot must not survive the restore
+    File walletDirectory = WalletManager.getOrCreateWalletDirectory(temporaryApplicationDirectory, WalletManager.createWalletRoot(walletSummary.getWalletId()));
+    File strayFile = new File(walletDirectory, "stray.txt");
+    Files.write(new byte[]{1, 2, 3}, strayFile);
+
+    WalletId restoredWalletId = BackupManager.INSTANCE.loadZipBackup(localBackups.get(0).getFile(), Bip39SeedPhraseGenerator.split(WalletIdTest.SEED_PHRASE_1));
+    assertThat(restoredWalletId).isEqualTo(walletSummary.getWalletId());
+    assertThat(strayFile.exists()).isFalse();
+
+    WalletSummary restoredWalletSummary = WalletManager.INSTANCE.loadFromWalletDirectory(walletDirectory, password);
+    assertThat(restoredWalletSummary.getWallet()).isNotNull();
+
+    // The snapshots themselves are carried over
+    assertThat(BackupManager.INSTANCE.getSnapshotBackups(walletSummary.getWalletId()).size()).isEqualTo(1);
+  }
+
+  @Test
+  public void testLoadRollingBackup_SkipsCorruptNewest() throws IOException {
+
+    File temporaryApplicationDirectory = WalletManagerTest.makeRandomTemporaryApplicationDirectory();
+
+    BackupManager.INSTANCE.initialise(temporaryApplicationDirectory, Optional.<File>absent());
+
+    SeedPhraseGenerator seedGenerator = new Bip39SeedPhraseGenerator();
+    byte[] seed = seedGenerator.convertToSeed(Bip39SeedPhraseGenerator.split(WalletIdTest.SEED_PHRASE_1));
+    String password = "password";
+    WalletSummary walletSummary = WalletManager
+      .INSTANCE
+      .getOrCreateWalletSummary(
+        temporaryApplicationDirectory,
+        seed,
+        Dates.nowInSeconds(),
+        password,
+        "Example",
+        "Example"
+      );
+
+    BackupManager.INSTANCE.createRollingBackup(walletSummary, password);
+    Uninterruptibles.sleepUninterruptibly(1, TimeUnit.SECONDS);
+    BackupManager.INSTANCE.createRollingBackup(walletSummary, password);
+
+    List<File> rollingBackups = BackupManager.INSTANCE.getRollingBackups(walletSummary.getWalletId());
+    assertThat(rollingBackups.size()).isEqualTo(2);
+
+    // Truncate the newest so that it cannot be decrypted
+    File newest = rollingBackups.get(1);
+    byte[] bytes = Files.toByteArray(newest);
+    Files.write(Arrays.copyOf(bytes, bytes.length / 2 + 1), newest);
+
+    Wallet wallet = BackupManager.INSTANCE.loadRollingBackup(walletSummary.getWalletId(), password);
+    assertThat(wallet).isNotNull();
+
+    // A wrong password cannot load any of them
+    try {
+      BackupManager.INSTANCE.loadRollingBackup(walletSummary.getWalletId(), "wrong password");
+      fail("Expected WalletLoadException");
+    } catch (WalletLoadException e) {
+      // Expected
+    }
+  }
+
+  @Test
+  public void testVerifyZipBackups() throws IOException {
+
+    File temporaryApplicationDirectory = WalletManagerTest.makeRandomTemporaryApplicationDirectory();
+
+    BackupManager.INSTANCE.initialise(temporaryApplicationDirectory, Optional.<File>absent());
+
+    SeedPhraseGenerator seedGenerator = new Bip39SeedPhraseGenerator();
+    byte[] seed = seedGenerator.convertToSeed(Bip39SeedPhraseGenerator.split(WalletIdTest.SEED_PHRASE_1));
+    String password = "password";
+    WalletSummary walletSummary = WalletManager
+      .INSTANCE
+      .getOrCreateWalletSummary(
+        temporaryApplicationDirectory,
+        seed,
+        Dates.nowInSeconds(),
+        password,
+        "Example",
+        "Example"
+      );
+
+    File localBackupFile = BackupManager.INSTANCE.createLocalBackup(walletSummary.getWalletId(), password);
+
+    // A new backup is verified once
+    assertThat(BackupManager.INSTANCE.verifyZipBackups(walletSummary.getWalletId(), password, TimeUnit.DAYS.toMillis(7), Long.MAX_VALUE)).isEqualTo(0);
+
+    // Damage the backup after it was written
+    byte[] bytes = Files.toByteArray(localBackupFile);
+    bytes[bytes.length / 2] ^= 0x55;
+    Files.write(bytes, localBackupFile);
+
+    // Not verified again until the restore drill is due
+    assertThat(BackupManager.INSTANCE.verifyZipBackups(walletSummary.getWalletId(), password, TimeUnit.DAYS.toMillis(7), Long.MAX_VALUE)).isEqualTo(0);
+    assertThat(BackupManager.INSTANCE.verifyZipBackups(walletSummary.getWalletId(), password, 0, Long.MAX_VALUE)).isEqualTo(1);
+  }
+
+  @Test
+  public void testVerifyZipBackups_AfterPasswordChange() throws Exception {
+
+    File temporaryApplicationDirectory = WalletManagerTest.makeRandomTemporaryApplicationDirectory();
+
+    BackupManager.INSTANCE.initialise(temporaryApplicationDirectory, Optional.<File>absent());
+
+    SeedPhraseGenerator seedGenerator = new Bip39SeedPhraseGenerator();
+    byte[] seed = seedGenerator.convertToSeed(Bip39SeedPhraseGenerator.split(WalletIdTest.SEED_PHRASE_1));
+    String oldPassword = "password";
+    String newPassword = "new password";
+    WalletSummary walletSummary = WalletManager
+      .INSTANCE
+      .getOrCreateWalletSummary(
+        temporaryApplicationDirectory,
+        seed,
+        Dates.nowInSeconds(),
+        oldPassword,
+        "Example",
+        "Example"
+      );
+
+    BackupManager.INSTANCE.createLocalBackup(walletSummary.getWalletId(), oldPassword);
+
+    // Re-encrypt the backup key under the new password as a change of password does
+    KeyParameter oldKey = org.multibit.hd.core.crypto.AESUtils.createAESKey(oldPassword.getBytes(Charsets.UTF_8), WalletManager.SCRYPT_SALT);
+    KeyParameter newKey = org.multibit.hd.core.crypto.AESUtils.createAESKey(newPassword.getBytes(Charsets.UTF_8), WalletManager.SCRYPT_SALT);
+    byte[] backupKey = AESUtils.decrypt(walletSummary.getEncryptedBackupKey(), oldKey, WalletManager.AES_INITIALISATION_VECTOR);
+    walletSummary.setEncryptedBackupKey(AESUtils.encrypt(backupKey, newKey, WalletManager.AES_INITIALISATION_VECTOR));
+
+    File walletRootDirectory = WalletManager.getOrCreateWalletDirectory(temporaryApplicationDirectory, WalletManager.createWalletRoot(walletSummary.getWalletId()));
+    WalletManager.updateWalletSummary(new File(walletRootDirectory, WalletManager.MBHD_SUMMARY_NAME), walletSummary);
+
+    // The backup made under the old password still verifies with the new one
+    assertThat(BackupManager.INSTANCE.verifyZipBackups(walletSummary.getWalletId(), newPassword, 0, Long.MAX_VALUE)).isEqualTo(0);
+  }
+}
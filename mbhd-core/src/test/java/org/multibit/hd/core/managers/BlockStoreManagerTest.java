@@ -0,0 +1,81 @@
+package org.multibit.hd.core.managers;
+
+import com.google.bitcoin.core.Block;
+import com.google.bitcoin.core.ECKey;
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.bitcoin.core.StoredBlock;
+import com.google.bitcoin.params.UnitTestParams;
+import com.google.bitcoin.store.BlockStore;
+import com.google.bitcoin.store.SPVBlockStore;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class BlockStoreManagerTest {
+
+  private static final NetworkParameters networkParameters = UnitTestParams.get();
+
+  private static final long ONE_DAY_SECONDS = TimeUnit.DAYS.toSeconds(1);
+
+  private File blockStoreFile;
+  private File checkpointsFile;
+
+  private long firstBlockTimeSeconds;
+
+  @Before
+  public void setUp() throws Exception {
+
+    File temporaryDirectory = WalletManagerTest.makeRandomTemporaryApplicationDirectory();
+
+    blockStoreFile = new File(temporaryDirectory, "mbhd.spvchain");
+    checkpointsFile = new File(temporaryDirectory, "mbhd.checkpoints");
+
+    // Build a chain of 20 blocks one day apart
+    BlockStore blockStore = new SPVBlockStore(networkParameters, blockStoreFile);
+    StoredBlock chainHead = blockStore.getChainHead();
+    firstBlockTimeSeconds = chainHead.getHeader().getTimeSeconds() + ONE_DAY_SECONDS;
+    for (int i = 0; i < 20; i++) {
+      Block block = chainHead.getHeader().createNextBlock(new ECKey().toAddress(networkParameters), firstBlockTimeSeconds + i * ONE_DAY_SECONDS);
+      chainHead = chainHead.build(block);
+      blockStore.put(chainHead);
+    }
+    blockStore.setChainHead(chainHead);
+    blockStore.close();
+
+  }
+
+  @Test
+  public void testRewindBlockStore() throws Exception {
+
+    // Replay from block 15 which allows for a week of clock drift (block 8)
+    Date replayDate = new Date((firstBlockTimeSeconds + 14 * ONE_DAY_SECONDS) * 1000);
+
+    BlockStore blockStore = new BlockStoreManager(networkParameters).rewindBlockStore(blockStoreFile, checkpointsFile, replayDate);
+    try {
+      assertThat(blockStore.getChainHead().getHeight()).isEqualTo(8);
+    } finally {
+      blockStore.close();
+    }
+
+  }
+
+  @Test
+  public void testRewindBlockStore_NoRewindRequired() throws Exception {
+
+    Date replayDate = new Date((firstBlockTimeSeconds + 100 * ONE_DAY_SECONDS) * 1000);
+
+    BlockStore blockStore = new BlockStoreManager(networkParameters).rewindBlockStore(blockStoreFile, checkpointsFile, replayDate);
+    try {
+      assertThat(blockStore.getChainHead().getHeight()).isEqualTo(20);
+    } finally {
+      blockStore.close();
+    }
+
+  }
+
+}
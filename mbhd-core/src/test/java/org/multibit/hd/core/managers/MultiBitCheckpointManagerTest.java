@@ -0,0 +1,70 @@
+package org.multibit.hd.core.managers;
+
+import com.google.bitcoin.core.StoredBlock;
+import com.google.bitcoin.params.MainNetParams;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.Date;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class MultiBitCheckpointManagerTest {
+
+  @Test
+  public void testGetCheckpointBeforeOrAtHeight() throws Exception {
+
+    MultiBitCheckpointManager testObject = new MultiBitCheckpointManager(MainNetParams.get(), openCheckpoints());
+
+    // Before the first checkpoint is the genesis block
+    assertThat(testObject.getCheckpointBeforeOrAtHeight(0).getHeight()).isEqualTo(0);
+
+    // A later height finds an earlier checkpoint
+    StoredBlock checkpoint = testObject.getCheckpointBeforeOrAtHeight(300000);
+    assertThat(checkpoint.getHeight()).isGreaterThan(0);
+    assertThat(checkpoint.getHeight()).isLessThanOrEqualTo(300000);
+
+    // An exact height finds itself
+    assertThat(testObject.getCheckpointBeforeOrAtHeight(checkpoint.getHeight()).getHeight()).isEqualTo(checkpoint.getHeight());
+
+    // One before finds an earlier checkpoint
+    assertThat(testObject.getCheckpointBeforeOrAtHeight(checkpoint.getHeight() - 1).getHeight()).isLessThan(checkpoint.getHeight());
+
+  }
+
+  @Test
+  public void testGetCheckpointBeforeOrAtDate() throws Exception {
+
+    MultiBitCheckpointManager testObject = new MultiBitCheckpointManager(MainNetParams.get(), openCheckpoints());
+
+    Date now = new Date();
+    StoredBlock checkpoint = testObject.getCheckpointBeforeOrAtDate(now);
+
+    assertThat(checkpoint.getHeader().getTimeSeconds()).isLessThanOrEqualTo(now.getTime() / 1000);
+
+  }
+
+  @Test
+  public void testGetOrLoad_Shared() throws Exception {
+
+    File checkpointsFile = File.createTempFile("mbhd", ".checkpoints");
+    checkpointsFile.deleteOnExit();
+    try (InputStream is = openCheckpoints()) {
+      Files.write(ByteStreams.toByteArray(is), checkpointsFile);
+    }
+
+    MultiBitCheckpointManager first = MultiBitCheckpointManager.getOrLoad(MainNetParams.get(), checkpointsFile);
+    MultiBitCheckpointManager second = MultiBitCheckpointManager.getOrLoad(MainNetParams.get(), checkpointsFile);
+
+    assertThat(second).isSameAs(first);
+
+  }
+
+  private InputStream openCheckpoints() {
+    return MultiBitCheckpointManagerTest.class.getResourceAsStream("/mbhd.checkpoints");
+  }
+
+}
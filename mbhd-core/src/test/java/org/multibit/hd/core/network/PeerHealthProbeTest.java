@@ -0,0 +1,55 @@
+package org.multibit.hd.core.network;
+
+import com.google.bitcoin.core.Peer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class PeerHealthProbeTest {
+
+  private PeerHealthProbe testObject;
+
+  @Before
+  public void setUp() {
+
+    testObject = new PeerHealthProbe();
+
+  }
+
+  @After
+  public void tearDown() {
+
+    testObject.shutdown();
+
+  }
+
+  @Test
+  public void testProbePeers_None() throws Exception {
+
+    assertThat(testObject.probePeers(null)).isFalse();
+    assertThat(testObject.probePeers(Collections.<Peer>emptyList())).isFalse();
+    assertThat(testObject.getPeerStatistics()).isEmpty();
+
+  }
+
+  @Test
+  public void testProbeDnsSeeds() throws Exception {
+
+    // Any single resolvable seed is sufficient
+    assertThat(testObject.probeDnsSeeds(new String[]{"unresolvable.invalid", "localhost"})).isTrue();
+
+  }
+
+  @Test
+  public void testProbeDnsSeeds_AllFail() throws Exception {
+
+    assertThat(testObject.probeDnsSeeds(new String[]{})).isFalse();
+    assertThat(testObject.probeDnsSeeds(new String[]{"unresolvable.invalid"})).isFalse();
+
+  }
+
+}
@@ -0,0 +1,76 @@
+package org.multibit.hd.core.network;
+
+import org.junit.Test;
+import org.multibit.hd.core.dto.SyncProgressSummary;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class SyncProgressTrackerTest {
+
+  @Test
+  public void testPercent_UnknownHeight() throws Exception {
+
+    SyncProgressTracker testObject = new SyncProgressTracker();
+
+    testObject.onDownloadStarted(SyncProgressTracker.UNKNOWN_HEIGHT, 200);
+    assertThat(testObject.getPercent()).isEqualTo(0);
+
+    testObject.onBlocksDownloaded(SyncProgressTracker.UNKNOWN_HEIGHT, 150);
+    assertThat(testObject.getPercent()).isEqualTo(25);
+
+    testObject.onBlocksDownloaded(SyncProgressTracker.UNKNOWN_HEIGHT, 0);
+    assertThat(testObject.getPercent()).isEqualTo(100);
+    assertThat(testObject.getSummary().getEtaMillis().get()).isEqualTo(0L);
+
+  }
+
+  @Test
+  public void testPercent_MonotonicAcrossPeerChange() throws Exception {
+
+    SyncProgressTracker testObject = new SyncProgressTracker();
+
+    // Start at height 1000 with a peer at 1200
+    testObject.onDownloadStarted(1200, 200);
+    testObject.onBlocksDownloaded(1200, 100);
+    assertThat(testObject.getPercent()).isEqualTo(50);
+
+    // Switch to a peer that is behind (reports fewer blocks left)
+    testObject.onDownloadStarted(1150, 50);
+    assertThat(testObject.getPercent()).isEqualTo(50);
+
+    SyncProgressSummary summary = testObject.getSummary();
+    assertThat(summary.getBestKnownHeight()).isEqualTo(1200);
+    assertThat(summary.getChainHeight()).isEqualTo(1100);
+    assertThat(summary.getBlocksLeft()).isEqualTo(100);
+
+    // Switch to a peer that is ahead (target grows but percentage is held)
+    testObject.onDownloadStarted(1400, 300);
+    assertThat(testObject.getPercent()).isEqualTo(50);
+    assertThat(testObject.getSummary().getBestKnownHeight()).isEqualTo(1400);
+
+    testObject.onBlocksDownloaded(1400, 0);
+    assertThat(testObject.getPercent()).isEqualTo(100);
+
+  }
+
+  @Test
+  public void testThroughput() throws Exception {
+
+    SyncProgressTracker testObject = new SyncProgressTracker();
+
+    testObject.onDownloadStarted(2000, 2000);
+    testObject.onBytesReceived(1000);
+
+    // Allow a second sample to be taken
+    Thread.sleep(300);
+    testObject.onBytesReceived(9000);
+    testObject.onBlocksDownloaded(2000, 1000);
+
+    SyncProgressSummary summary = testObject.getSummary();
+    assertThat(summary.getBlocksPerSecond()).isGreaterThan(0);
+    assertThat(summary.getBytesPerSecond()).isGreaterThan(0);
+    assertThat(summary.getEtaMillis().isPresent()).isTrue();
+
+  }
+
+}
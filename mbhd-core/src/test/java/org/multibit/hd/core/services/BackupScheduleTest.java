@@ -0,0 +1,168 @@
+package org.multibit.hd.core.services;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class BackupScheduleTest {
+
+  private static final long INTERVAL = 1000;
+
+  private static final long QUIET = 100;
+
+  private static final long MAXIMUM_DEFERRAL = 5000;
+
+  private BackupSchedule testObject;
+
+  @Before
+  public void setUp() throws Exception {
+
+    testObject = new BackupSchedule(INTERVAL, QUIET, MAXIMUM_DEFERRAL, true);
+
+  }
+
+  @Test
+  public void testDecide_SkipsWhenClean() throws Exception {
+
+    assertThat(testObject.decide(false, false, 10000)).isEqualTo(BackupSchedule.Decision.SKIP_CLEAN);
+    assertThat(testObject.decide(false, true, 10100)).isEqualTo(BackupSchedule.Decision.SKIP_CLEAN);
+
+    // One skip is counted per interval
+    assertThat(testObject.getSkipped()).isEqualTo(1);
+    testObject.decide(false, false, 11000);
+    assertThat(testObject.getSkipped()).isEqualTo(2);
+
+  }
+
+  @Test
+  public void testDecide_CoalescesThenPerforms() throws Exception {
+
+    testObject.markChanged(10000);
+    testObject.markChanged(10050);
+
+    assertThat(testObject.decide(false, false, 10100)).isEqualTo(BackupSchedule.Decision.COALESCE);
+    assertThat(testObject.getDeferred()).isEqualTo(1);
+
+    assertThat(testObject.decide(false, false, 10150)).isEqualTo(BackupSchedule.Decision.PERFORM);
+
+    testObject.recordBackup(testObject.getChangeGeneration(), 10150);
+    assertThat(testObject.getPerformed()).isEqualTo(1);
+    assertThat(testObject.decide(false, false, 20000)).isEqualTo(BackupSchedule.Decision.SKIP_CLEAN);
+
+  }
+
+  @Test
+  public void testDecide_WaitsForInterval() throws Exception {
+
+    testObject.markChanged(10000);
+    testObject.recordBackup(testObject.getChangeGeneration(), 10000);
+
+    testObject.markChanged(10200);
+    assertThat(testObject.decide(false, false, 10500)).isEqualTo(BackupSchedule.Decision.WAIT_INTERVAL);
+    assertThat(testObject.decide(false, false, 11000)).isEqualTo(BackupSchedule.Decision.PERFORM);
+
+  }
+
+  @Test
+  public void testDecide_DefersWhenBusyUntilOverdue() throws Exception {
+
+    testObject.markChanged(10000);
+
+    assertThat(testObject.decide(true, false, 10500)).isEqualTo(BackupSchedule.Decision.DEFER_BUSY);
+    assertThat(testObject.decide(true, false, 10000 + MAXIMUM_DEFERRAL)).isEqualTo(BackupSchedule.Decision.PERFORM);
+
+    // A light backup ignores the load
+    BackupSchedule light = new BackupSchedule(INTERVAL, QUIET, MAXIMUM_DEFERRAL, false);
+    light.markChanged(10000);
+    assertThat(light.decide(true, false, 10500)).isEqualTo(BackupSchedule.Decision.PERFORM);
+
+  }
+
+  @Test
+  public void testDecide_OverdueDespiteContinuousChanges() throws Exception {
+
+    for (long now = 10000; now < 10000 + MAXIMUM_DEFERRAL; now += 50) {
+      testObject.markChanged(now);
+      assertThat(testObject.decide(false, false, now)).isEqualTo(BackupSchedule.Decision.COALESCE);
+    }
+
+    testObject.markChanged(10000 + MAXIMUM_DEFERRAL);
+    assertThat(testObject.decide(false, false, 10000 + MAXIMUM_DEFERRAL)).isEqualTo(BackupSchedule.Decision.PERFORM);
+
+  }
+
+  @Test
+  public void testDecide_Force() throws Exception {
+
+    testObject.markChanged(10000);
+    testObject.recordBackup(testObject.getChangeGeneration(), 10000);
+    testObject.markChanged(10010);
+
+    assertThat(testObject.decide(true, true, 10010)).isEqualTo(BackupSchedule.Decision.PERFORM);
+
+  }
+
+  @Test
+  public void testRecordBackup_KeepsChangesMadeDuringBackup() throws Exception {
+
+    testObject.markChanged(10000);
+    long generation = testObject.getChangeGeneration();
+
+    // A change arrives whilst the backup is being written
+    testObject.markChanged(10200);
+    testObject.recordBackup(generation, 10300);
+
+    assertThat(testObject.decide(false, false, 20000)).isEqualTo(BackupSchedule.Decision.PERFORM);
+
+  }
+
+  @Test
+  public void testRecordFailure_BacksOffExponentially() throws Exception {
+
+    testObject.markChanged(10000);
+    assertThat(testObject.decide(false, false, 10200)).isEqualTo(BackupSchedule.Decision.PERFORM);
+
+    // The first failure waits one interval before trying again
+    testObject.recordFailure(10200);
+    assertThat(testObject.getFailed()).isEqualTo(1);
+    assertThat(testObject.decide(false, false, 10200 + INTERVAL - 1)).isEqualTo(BackupSchedule.Decision.BACKOFF);
+    assertThat(testObject.decide(false, false, 10200 + INTERVAL)).isEqualTo(BackupSchedule.Decision.PERFORM);
+
+    // The second waits twice as long
+    testObject.recordFailure(11200);
+    assertThat(testObject.decide(false, false, 11200 + 2 * INTERVAL - 1)).isEqualTo(BackupSchedule.Decision.BACKOFF);
+    assertThat(testObject.decide(false, false, 11200 + 2 * INTERVAL)).isEqualTo(BackupSchedule.Decision.PERFORM);
+
+    // The delay is capped
+    for (int i = 0; i < 10; i++) {
+      testObject.recordFailure(20000);
+    }
+    assertThat(testObject.decide(false, false, 20000 + 16 * INTERVAL - 1)).isEqualTo(BackupSchedule.Decision.BACKOFF);
+    assertThat(testObject.decide(false, false, 20000 + 16 * INTERVAL)).isEqualTo(BackupSchedule.Decision.PERFORM);
+
+    // Shutdown still makes an attempt and a success clears the backoff
+    testObject.recordFailure(40000);
+    assertThat(testObject.decide(false, true, 40000)).isEqualTo(BackupSchedule.Decision.PERFORM);
+    testObject.recordBackup(testObject.getChangeGeneration(), 40000);
+    testObject.markChanged(41000);
+    assertThat(testObject.decide(false, false, 41200)).isEqualTo(BackupSchedule.Decision.PERFORM);
+
+  }
+
+  @Test
+  public void testReset() throws Exception {
+
+    testObject.markChanged(10000);
+    testObject.recordBackup(testObject.getChangeGeneration(), 10000);
+    testObject.markChanged(10100);
+
+    // A different wallet starts afresh so its first change is not held back by the previous interval
+    testObject.reset();
+    assertThat(testObject.decide(false, false, 10300)).isEqualTo(BackupSchedule.Decision.SKIP_CLEAN);
+
+    testObject.markChanged(10300);
+    assertThat(testObject.decide(false, false, 10400)).isEqualTo(BackupSchedule.Decision.PERFORM);
+
+  }
+}
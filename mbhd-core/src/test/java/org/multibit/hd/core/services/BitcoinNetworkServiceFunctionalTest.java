@@ -133,6 +133,42 @@ public class BitcoinNetworkServiceFunctionalTest {
     assertThat(transactions.size() > 0).isTrue();
   }
 
+  // Compares the time taken by a full rebuild replay with an incremental replay of the same wallet
+  @Test
+  public void testReplayModesBenchmark() throws Exception {
+
+    // Create a random temporary directory and use it for wallet storage
+    File temporaryDirectory = WalletManagerTest.makeRandomTemporaryApplicationDirectory();
+
+    BackupManager.INSTANCE.initialise(temporaryDirectory, null);
+
+    SeedPhraseGenerator seedGenerator = new Bip39SeedPhraseGenerator();
+    byte[] seed = seedGenerator.convertToSeed(Bip39SeedPhraseGenerator.split(seedProperties.getProperty(WALLET_SEED_1_PROPERTY_NAME)));
+    WalletSummary walletSummary = createWallet(temporaryDirectory, seed, "Example", "Example");
+
+    DateTime timestamp1 = Dates.parseSeedTimestamp(seedProperties.getProperty(WALLET_TIMESTAMP_1_PROPERTY_NAME));
+
+    // Initial synchronization to populate the block store
+    replayWallet(timestamp1, ReplayMode.REBUILD);
+    Coin expectedBalance = walletSummary.getWallet().getBalance(Wallet.BalanceType.ESTIMATED);
+
+    // Replay a recent period using each mode
+    DateTime recentReplayDate = Dates.nowUtc().minusDays(14);
+
+    long rebuildStart = System.currentTimeMillis();
+    replayWallet(recentReplayDate, ReplayMode.REBUILD);
+    long rebuildMillis = System.currentTimeMillis() - rebuildStart;
+
+    long incrementalStart = System.currentTimeMillis();
+    replayWallet(recentReplayDate, ReplayMode.INCREMENTAL);
+    long incrementalMillis = System.currentTimeMillis() - incrementalStart;
+
+    log.info("Replay benchmark: rebuild = {}ms, incremental = {}ms", rebuildMillis, incrementalMillis);
+
+    // Both modes must leave the wallet in the same state
+    assertThat(walletSummary.getWallet().getBalance(Wallet.BalanceType.ESTIMATED)).isEqualTo(expectedBalance);
+  }
+
   @Test
   public void testSendBetweenTwoRealWallets() throws Exception {
 
@@ -278,12 +314,18 @@ public class BitcoinNetworkServiceFunctionalTest {
 
   private void replayWallet(DateTime replayDate) throws IOException, BlockStoreException, TimeoutException {
 
+    replayWallet(replayDate, ReplayMode.REBUILD);
+
+  }
+
+  private void replayWallet(DateTime replayDate, ReplayMode replayMode) throws IOException, BlockStoreException, TimeoutException {
+
     bitcoinNetworkService = CoreServices.getOrCreateBitcoinNetworkService();
 
     // Clear percentage complete
     percentComplete = 0;
 
-    bitcoinNetworkService.replayWallet(replayDate);
+    bitcoinNetworkService.replayWallet(replayDate, replayMode);
 
     int timeout = 0;
     while (timeout < MAX_TIMEOUT && (percentComplete < 100)) {
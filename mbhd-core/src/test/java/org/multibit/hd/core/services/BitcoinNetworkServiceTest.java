@@ -0,0 +1,180 @@
+package org.multibit.hd.core.services;
+
+import com.google.bitcoin.core.Address;
+import com.google.bitcoin.core.Coin;
+import com.google.bitcoin.core.ECKey;
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.eventbus.Subscribe;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.multibit.hd.brit.dto.FeeState;
+import org.multibit.hd.brit.seed_phrase.Bip39SeedPhraseGenerator;
+import org.multibit.hd.brit.seed_phrase.SeedPhraseGenerator;
+import org.multibit.hd.core.config.BitcoinNetwork;
+import org.multibit.hd.core.config.Configurations;
+import org.multibit.hd.core.dto.BatchSendRequestSummary;
+import org.multibit.hd.core.dto.WalletIdTest;
+import org.multibit.hd.core.dto.WalletSummary;
+import org.multibit.hd.core.events.BitcoinSentEvent;
+import org.multibit.hd.core.events.TransactionCreationEvent;
+import org.multibit.hd.core.managers.BackupManager;
+import org.multibit.hd.core.managers.InstallationManager;
+import org.multibit.hd.core.managers.WalletManager;
+import org.multibit.hd.core.managers.WalletManagerTest;
+import org.multibit.hd.core.utils.Dates;
+
+import java.io.File;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class BitcoinNetworkServiceTest {
+
+  private static final String PASSWORD = "1throckSplockChockAdock";
+
+  private NetworkParameters networkParameters;
+
+  private BitcoinNetworkService bitcoinNetworkService;
+
+  private WalletSummary walletSummary;
+
+  private final List<TransactionCreationEvent> transactionCreationEvents = Lists.newArrayList();
+
+  private final List<BitcoinSentEvent> bitcoinSentEvents = Lists.newArrayList();
+
+  @Before
+  public void setUp() throws Exception {
+
+    Configurations.currentConfiguration = Configurations.newDefaultConfiguration();
+    networkParameters = BitcoinNetwork.current().get();
+
+    // Create an empty wallet so that the batch cannot be funded
+    File temporaryDirectory = WalletManagerTest.makeRandomTemporaryApplicationDirectory();
+
+    SeedPhraseGenerator seedGenerator = new Bip39SeedPhraseGenerator();
+    byte[] seed1 = seedGenerator.convertToSeed(Bip39SeedPhraseGenerator.split(WalletIdTest.SEED_PHRASE_1));
+
+    BackupManager.INSTANCE.initialise(temporaryDirectory, null);
+    InstallationManager.setCurrentApplicationDataDirectory(temporaryDirectory);
+
+    walletSummary = WalletManager
+      .INSTANCE
+      .getOrCreateWalletSummary(
+        temporaryDirectory,
+        seed1,
+        Dates.nowInSeconds(),
+        PASSWORD,
+        "Example",
+        "Example"
+      );
+    WalletManager.INSTANCE.setCurrentWalletSummary(walletSummary);
+
+    bitcoinNetworkService = new BitcoinNetworkService(networkParameters);
+
+    CoreServices.uiEventBus.register(this);
+
+  }
+
+  @After
+  public void tearDown() throws Exception {
+
+    CoreServices.uiEventBus.unregister(this);
+
+  }
+
+  @Test
+  public void testPerformBatchSend_FailureIsReportedOnce() throws Exception {
+
+    BatchSendRequestSummary batchSendRequestSummary = newBatchSendRequestSummary();
+
+    assertThat(bitcoinNetworkService.performBatchSend(batchSendRequestSummary)).isFalse();
+
+    // One failed transaction for the whole batch, and nothing is broadcast
+    assertThat(transactionCreationEvents.size()).isEqualTo(1);
+    assertThat(transactionCreationEvents.get(0).isTransactionCreationWasSuccessful()).isFalse();
+    assertThat(transactionCreationEvents.get(0).getAmount()).isEqualTo(batchSendRequestSummary.getAmount());
+    assertThat(bitcoinSentEvents).isEmpty();
+
+  }
+
+  @Test
+  public void testNewBatchTransactionCreationEvent_FeesReportedOnce() throws Exception {
+
+    BatchSendRequestSummary batchSendRequestSummary = newBatchSendRequestSummary();
+    batchSendRequestSummary.setClientFeeAdded(Optional.of(Coin.valueOf(10_000)));
+
+    TransactionCreationEvent event = BitcoinNetworkService.newBatchTransactionCreationEvent(
+      batchSendRequestSummary,
+      "abc123",
+      Optional.of(Coin.valueOf(20_000)),
+      true,
+      null,
+      null
+    );
+
+    // The batch is a single payment of the total, carrying each fee exactly once
+    assertThat(event.getTransactionId()).isEqualTo("abc123");
+    assertThat(event.getAmount()).isEqualTo(Coin.valueOf(610_000));
+    assertThat(event.getMiningFeePaid().get()).isEqualTo(Coin.valueOf(20_000));
+    assertThat(event.getClientFeePaid().get()).isEqualTo(Coin.valueOf(10_000));
+    assertThat(event.getNotes().get()).isEqualTo("Payroll");
+
+    // Each recipient is reported with their own amount rather than the total against the first
+    assertThat(event.getPayees().size()).isEqualTo(3);
+    for (int i = 0; i < 3; i++) {
+      BatchSendRequestSummary.Payee payee = batchSendRequestSummary.getPayees().get(i);
+      assertThat(event.getPayees().get(i).getAddress()).isEqualTo(payee.getAddress());
+      assertThat(event.getPayees().get(i).getAmount()).isEqualTo(Coin.valueOf((i + 1) * 100_000));
+    }
+
+    // A failed batch carries no fees
+    TransactionCreationEvent failed = BitcoinNetworkService.newBatchTransactionCreationEvent(
+      batchSendRequestSummary,
+      null,
+      Optional.<Coin>absent(),
+      false,
+      "failure",
+      new String[]{""}
+    );
+    assertThat(failed.isTransactionCreationWasSuccessful()).isFalse();
+    assertThat(failed.getMiningFeePaid().isPresent()).isFalse();
+    assertThat(failed.getClientFeePaid().isPresent()).isFalse();
+
+  }
+
+  @Subscribe
+  public void onTransactionCreationEvent(TransactionCreationEvent transactionCreationEvent) {
+    transactionCreationEvents.add(transactionCreationEvent);
+  }
+
+  @Subscribe
+  public void onBitcoinSentEvent(BitcoinSentEvent bitcoinSentEvent) {
+    bitcoinSentEvents.add(bitcoinSentEvent);
+  }
+
+  /**
+   * @return A batch of three payees totalling 600,000 satoshi
+   */
+  private BatchSendRequestSummary newBatchSendRequestSummary() {
+
+    List<BatchSendRequestSummary.Payee> payees = Lists.newArrayList();
+    for (int i = 1; i <= 3; i++) {
+      Address address = new ECKey().toAddress(networkParameters);
+      payees.add(new BatchSendRequestSummary.Payee(address, Coin.valueOf(i * 100_000)));
+    }
+
+    BatchSendRequestSummary batchSendRequestSummary = new BatchSendRequestSummary(
+      payees,
+      walletSummary.getWallet().freshReceiveKey().toAddress(networkParameters),
+      Coin.valueOf(10_000),
+      PASSWORD,
+      Optional.<FeeState>absent()
+    );
+    batchSendRequestSummary.setNotes(Optional.of("Payroll"));
+
+    return batchSendRequestSummary;
+  }
+}
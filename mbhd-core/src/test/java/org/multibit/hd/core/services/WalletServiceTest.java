@@ -2,12 +2,15 @@ package org.multibit.hd.core.services;
 
 import com.google.bitcoin.core.Coin;
 import com.google.bitcoin.core.NetworkParameters;
+import com.google.bitcoin.core.Transaction;
 import com.google.bitcoin.core.Wallet;
 import com.google.bitcoin.crypto.MnemonicCode;
+import com.google.bitcoin.testing.FakeTxBuilder;
 import com.google.bitcoin.wallet.DeterministicSeed;
 import com.google.common.base.Optional;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.joda.time.DateTime;
 import org.junit.Before;
 import org.junit.Test;
@@ -16,10 +19,13 @@ import org.multibit.hd.brit.seed_phrase.SeedPhraseGenerator;
 import org.multibit.hd.core.config.BitcoinNetwork;
 import org.multibit.hd.core.config.Configurations;
 import org.multibit.hd.core.dto.*;
+import org.multibit.hd.core.events.BitcoinNetworkChangedEvent;
+import org.multibit.hd.core.events.ExchangeRateChangedEvent;
 import org.multibit.hd.core.managers.BackupManager;
 import org.multibit.hd.core.managers.InstallationManager;
 import org.multibit.hd.core.managers.WalletManager;
 import org.multibit.hd.core.managers.WalletManagerTest;
+import org.multibit.hd.core.store.TransactionInfo;
 import org.multibit.hd.core.utils.Dates;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,6 +35,7 @@ import java.math.BigDecimal;
 import java.util.Collection;
 import java.util.Currency;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static org.fest.assertions.Assertions.assertThat;
 
@@ -141,6 +148,87 @@ public class WalletServiceTest {
     assertThat(fiatPayment.getExchangeName()).isEqualTo(otherFiatPayment.getExchangeName());
   }
 
+  @Test
+  public void testRevalueFiatPayments_AfterReplay() throws Exception {
+
+    Wallet wallet = walletSummary.getWallet();
+    Currency currency = Currency.getInstance(Configurations.currentConfiguration.getBitcoin().getLocalCurrencyCode());
+
+    // A transaction found during a replay before any exchange rate was recorded for its time
+    Transaction transaction = FakeTxBuilder.createFakeTx(networkParameters, Coin.COIN, wallet.currentReceiveAddress());
+    wallet.receivePending(transaction, null);
+    String transactionHash = transaction.getHashAsString();
+    wallet.getTransaction(transaction.getHash()).setUpdateTime(Dates.nowUtc().toDate());
+
+    assertThat(walletService.getTransactionInfoByHash(transactionHash).isPresent()).isFalse();
+
+    CoreServices.getOrCreateExchangeRateHistory().record(currency, new BigDecimal("500"), System.currentTimeMillis());
+
+    // The download completing triggers the revaluation
+    CoreServices.uiEventBus.post(new BitcoinNetworkChangedEvent(BitcoinNetworkSummary.newChainDownloadStarted()));
+    CoreServices.uiEventBus.post(new BitcoinNetworkChangedEvent(BitcoinNetworkSummary.newNetworkReady(4)));
+
+    Optional<TransactionInfo> transactionInfo = awaitFiatAmount(transactionHash);
+    assertThat(transactionInfo.isPresent()).isTrue();
+    assertThat(transactionInfo.get().getAmountFiat().getAmount().isPresent()).isTrue();
+    assertThat(transactionInfo.get().getAmountFiat().getCurrency().get()).isEqualTo(currency);
+
+    // The revalued payments were persisted (allowing for the write that follows the revaluation)
+    boolean persisted = false;
+    for (int i = 0; i < 50 && !persisted; i++) {
+      WalletService reloaded = new WalletService(networkParameters);
+      reloaded.initialise(InstallationManager.getOrCreateApplicationDataDirectory(), walletId);
+      Optional<TransactionInfo> reloadedInfo = reloaded.getTransactionInfoByHash(transactionHash);
+      persisted = reloadedInfo.isPresent() && reloadedInfo.get().getAmountFiat().getAmount().isPresent();
+      if (!persisted) {
+        Uninterruptibles.sleepUninterruptibly(100, TimeUnit.MILLISECONDS);
+      }
+    }
+    assertThat(persisted).isTrue();
+
+  }
+
+  @Test
+  public void testRevalueFiatPayments_OnFirstRate() throws Exception {
+
+    Wallet wallet = walletSummary.getWallet();
+    Currency currency = Currency.getInstance(Configurations.currentConfiguration.getBitcoin().getLocalCurrencyCode());
+
+    // A transaction from an earlier session that was never valued
+    Transaction transaction = FakeTxBuilder.createFakeTx(networkParameters, Coin.COIN, wallet.currentReceiveAddress());
+    wallet.receivePending(transaction, null);
+    String transactionHash = transaction.getHashAsString();
+    wallet.getTransaction(transaction.getHash()).setUpdateTime(Dates.nowUtc().toDate());
+
+    CoreServices.getOrCreateExchangeRateHistory().record(currency, new BigDecimal("500"), System.currentTimeMillis());
+
+    // The first rate values the whole wallet off the event thread
+    CoreServices.uiEventBus.post(new ExchangeRateChangedEvent(new BigDecimal("500"), currency, Optional.of("Test"), Dates.nowUtc().plusMinutes(5)));
+
+    Optional<TransactionInfo> transactionInfo = awaitFiatAmount(transactionHash);
+    assertThat(transactionInfo.isPresent()).isTrue();
+    assertThat(transactionInfo.get().getAmountFiat().getAmount().isPresent()).isTrue();
+
+  }
+
+  /**
+   * @param transactionHash The transaction hash
+   *
+   * @return The transaction info once it has a fiat amount (revaluation happens on the wallet service thread)
+   */
+  private Optional<TransactionInfo> awaitFiatAmount(String transactionHash) {
+
+    for (int i = 0; i < 50; i++) {
+      Optional<TransactionInfo> transactionInfo = walletService.getTransactionInfoByHash(transactionHash);
+      if (transactionInfo.isPresent() && transactionInfo.get().getAmountFiat().getAmount().isPresent()) {
+        return transactionInfo;
+      }
+      Uninterruptibles.sleepUninterruptibly(100, TimeUnit.MILLISECONDS);
+    }
+
+    return walletService.getTransactionInfoByHash(transactionHash);
+  }
+
   @Test
   public void testChangePassword() throws Exception {
     log.debug("Start of testChangePassword");
@@ -0,0 +1,146 @@
+package org.multibit.hd.core.store;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import org.junit.Before;
+import org.junit.Test;
+import org.multibit.hd.core.utils.Dates;
+
+import java.io.File;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class BackupCatalogueTest {
+
+  private static final Pattern BACKUP_PATTERN = Pattern.compile(".*-(\\d{14})\\.wallet\\.aes$");
+
+  private File directory;
+
+  @Before
+  public void setUp() throws Exception {
+
+    directory = Files.createTempDir();
+
+  }
+
+  @Test
+  public void testAddAndRemove() throws Exception {
+
+    BackupCatalogue testObject = new BackupCatalogue(directory, BACKUP_PATTERN);
+    assertThat(testObject.getEntries()).isEmpty();
+
+    File newer = writeBackup("mbhd-20140102120000.wallet.aes", "newer");
+    File older = writeBackup("mbhd-20140101120000.wallet.aes", "older");
+
+    BackupCatalogue.Entry entry = testObject.add(newer);
+    assertThat(entry).isNotNull();
+    assertThat(entry.getChecksum()).isEqualTo(Files.hash(newer, Hashing.sha256()).toString());
+    assertThat(entry.getTimestamp()).isEqualTo(Dates.parseBackupDate("20140102120000").getMillis());
+    assertThat(entry.getSize()).isEqualTo(newer.length());
+
+    testObject.add(older);
+
+    // Oldest first regardless of the order added
+    List<BackupCatalogue.Entry> entries = testObject.getEntries();
+    assertThat(entries.size()).isEqualTo(2);
+    assertThat(entries.get(0).getFile()).isEqualTo(older);
+    assertThat(entries.get(1).getFile()).isEqualTo(newer);
+
+    // Files that are not backups are ignored
+    assertThat(testObject.add(writeBackup("notes.txt", "notes"))).isNull();
+
+    testObject.remove(older);
+    assertThat(testObject.getEntries().size()).isEqualTo(1);
+
+  }
+
+  @Test
+  public void testPersistence() throws Exception {
+
+    BackupCatalogue testObject = new BackupCatalogue(directory, BACKUP_PATTERN);
+    testObject.add(writeBackup("mbhd-20140101120000.wallet.aes", "older"));
+    testObject.add(writeBackup("mbhd-20140102120000.wallet.aes", "newer"), "0123456789abcdef");
+
+    assertThat(new File(directory, BackupCatalogue.CATALOGUE_FILE_NAME).exists()).isTrue();
+
+    // A new catalogue reads the persisted entries without a scan
+    BackupCatalogue reloaded = new BackupCatalogue(directory, BACKUP_PATTERN);
+    assertThat(reloaded.getEntries()).isEqualTo(testObject.getEntries());
+    assertThat(reloaded.getEntries().get(0).getKeyGeneration()).isEqualTo("");
+    assertThat(reloaded.getEntries().get(1).getKeyGeneration()).isEqualTo("0123456789abcdef");
+
+  }
+
+  @Test
+  public void testReadOnly_NeverWritten() throws Exception {
+
+    writeBackup("mbhd-20140101120000.wallet.aes", "backup");
+
+    BackupCatalogue testObject = new BackupCatalogue(directory, BACKUP_PATTERN, false);
+    testObject.reconcile();
+    testObject.add(writeBackup("mbhd-20140102120000.wallet.aes", "newer"));
+
+    // A restore location is listed without leaving anything behind
+    assertThat(testObject.getEntries().size()).isEqualTo(2);
+    assertThat(new File(directory, BackupCatalogue.CATALOGUE_FILE_NAME).exists()).isFalse();
+
+    // Listing a restore location does not read every backup
+    assertThat(testObject.getEntries().get(0).getChecksum()).isEmpty();
+
+  }
+
+  @Test
+  public void testRecordVerification() throws Exception {
+
+    BackupCatalogue testObject = new BackupCatalogue(directory, BACKUP_PATTERN);
+    File backup = writeBackup("mbhd-20140101120000.wallet.aes", "backup");
+    BackupCatalogue.Entry entry = testObject.add(backup);
+    assertThat(entry.isVerified()).isFalse();
+
+    testObject.recordVerification(backup, entry.getChecksum(), true);
+
+    BackupCatalogue.Entry verified = new BackupCatalogue(directory, BACKUP_PATTERN).getEntries().get(0);
+    assertThat(verified.isVerified()).isTrue();
+    assertThat(verified.isVerificationPassed()).isTrue();
+
+    // Content that no longer matches the catalogue fails
+    testObject.recordVerification(backup, "0000", true);
+    assertThat(testObject.getEntries().get(0).isVerificationPassed()).isFalse();
+
+  }
+
+  @Test
+  public void testReconcile() throws Exception {
+
+    BackupCatalogue testObject = new BackupCatalogue(directory, BACKUP_PATTERN);
+    File removed = writeBackup("mbhd-20140101120000.wallet.aes", "removed");
+    File changed = writeBackup("mbhd-20140102120000.wallet.aes", "original");
+    testObject.add(removed);
+    testObject.add(changed);
+
+    // Changes made behind the catalogue's back
+    assertThat(removed.delete()).isTrue();
+    Files.write("changed content".getBytes(Charsets.UTF_8), changed);
+    File added = writeBackup("mbhd-20140103120000.wallet.aes", "added");
+
+    testObject.reconcile();
+
+    List<BackupCatalogue.Entry> entries = testObject.getEntries();
+    assertThat(entries.size()).isEqualTo(2);
+    assertThat(entries.get(0).getFile()).isEqualTo(changed);
+    assertThat(entries.get(0).getChecksum()).isEqualTo(Files.hash(changed, Hashing.sha256()).toString());
+    assertThat(entries.get(1).getFile()).isEqualTo(added);
+
+  }
+
+  private File writeBackup(String name, String content) throws Exception {
+
+    File file = new File(directory, name);
+    Files.write(content.getBytes(Charsets.UTF_8), file);
+
+    return file;
+  }
+}
@@ -0,0 +1,205 @@
+package org.multibit.hd.core.store;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import org.junit.Before;
+import org.junit.Test;
+import org.spongycastle.crypto.params.KeyParameter;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class BackupRepositoryTest {
+
+  private static final FileFilter ALL_FILES = new FileFilter() {
+    @Override
+    public boolean accept(File file) {
+      return !file.getName().equals("repository");
+    }
+  };
+
+  private File walletDirectory;
+  private File repositoryDirectory;
+  private KeyParameter aesKey;
+  private byte[] largeBytes;
+
+  @Before
+  public void setUp() throws Exception {
+
+    walletDirectory = Files.createTempDir();
+    repositoryDirectory = new File(walletDirectory, "repository");
+
+    SecureRandom secureRandom = new SecureRandom();
+    byte[] keyBytes = new byte[32];
+    secureRandom.nextBytes(keyBytes);
+    aesKey = new KeyParameter(keyBytes);
+
+    // Spans several chunks
+    largeBytes = new byte[BackupRepository.CHUNK_SIZE * 2 + 100];
+    secureRandom.nextBytes(largeBytes);
+
+    Files.write(largeBytes, new File(walletDirectory, "wallet.aes"));
+    Files.write("contacts".getBytes(Charsets.UTF_8), new File(walletDirectory, "contacts.aes"));
+    File nested = new File(walletDirectory, "rolling-backup");
+    assertThat(nested.mkdir()).isTrue();
+    Files.write(new byte[0], new File(nested, "empty.aes"));
+
+  }
+
+  @Test
+  public void testSnapshotRestoreAndDeduplication() throws Exception {
+
+    BackupRepository testObject = new BackupRepository(repositoryDirectory, aesKey);
+
+    String first = testObject.createSnapshot(walletDirectory, ALL_FILES, "20140101120000");
+    int chunksAfterFirst = countChunks();
+    assertThat(chunksAfterFirst).isEqualTo(4);
+
+    // Only the changed file is stored again
+    Files.write("contacts changed".getBytes(Charsets.UTF_8), new File(walletDirectory, "contacts.aes"));
+    String second = testObject.createSnapshot(walletDirectory, ALL_FILES, "20140101120000");
+    assertThat(second).isEqualTo("20140101120000-1");
+    assertThat(countChunks()).isEqualTo(chunksAfterFirst + 1);
+
+    assertThat(testObject.getSnapshots()).containsExactly(first, second);
+    assertThat(BackupRepository.getSnapshots(repositoryDirectory)).containsExactly(first, second);
+    assertThat(testObject.verify(first)).isTrue();
+
+    File restoreDirectory = Files.createTempDir();
+    testObject.restore(first, restoreDirectory);
+
+    assertThat(Arrays.equals(Files.toByteArray(new File(restoreDirectory, "wallet.aes")), largeBytes)).isTrue();
+    assertThat(Files.toString(new File(restoreDirectory, "contacts.aes"), Charsets.UTF_8)).isEqualTo("contacts");
+    assertThat(new File(restoreDirectory, "rolling-backup" + File.separator + "empty.aes").length()).isEqualTo(0);
+
+    // A different key cannot read the repository
+    byte[] otherKeyBytes = new byte[32];
+    new SecureRandom().nextBytes(otherKeyBytes);
+    assertThat(new BackupRepository(repositoryDirectory, new KeyParameter(otherKeyBytes)).verify(first)).isFalse();
+
+  }
+
+  @Test
+  public void testVerifyDetectsCorruption() throws Exception {
+
+    BackupRepository testObject = new BackupRepository(repositoryDirectory, aesKey);
+    String snapshot = testObject.createSnapshot(walletDirectory, ALL_FILES, "20140101120000");
+
+    // Corrupt one chunk
+    File chunk = listChunks().get(0);
+    byte[] bytes = Files.toByteArray(chunk);
+    bytes[bytes.length - 1] ^= 0x55;
+    Files.write(bytes, chunk);
+
+    assertThat(testObject.verify(snapshot)).isFalse();
+    try {
+      testObject.restore(snapshot, Files.createTempDir());
+      fail("Expected restore to fail");
+    } catch (IOException e) {
+      // Expected
+    }
+
+  }
+
+  @Test
+  public void testCreateSnapshot_ReplacesTruncatedChunk() throws Exception {
+
+    BackupRepository testObject = new BackupRepository(repositoryDirectory, aesKey);
+    testObject.createSnapshot(walletDirectory, ALL_FILES, "20140101120000");
+
+    // Truncate every chunk so whichever is picked the next snapshot must rewrite it
+    for (File chunk : listChunks()) {
+      byte[] bytes = Files.toByteArray(chunk);
+      Files.write(Arrays.copyOf(bytes, bytes.length - 1), chunk);
+    }
+
+    String second = testObject.createSnapshot(walletDirectory, ALL_FILES, "20140101120100");
+    assertThat(testObject.verify(second)).isTrue();
+
+  }
+
+  @Test
+  public void testVerify_ReportsDamagedChunk() throws Exception {
+
+    BackupRepository testObject = new BackupRepository(repositoryDirectory, aesKey);
+    testObject.createSnapshot(walletDirectory, ALL_FILES, "20140101120000");
+
+    // Damage that keeps the size is not looked for when a snapshot is taken
+    for (File chunk : listChunks()) {
+      byte[] bytes = Files.toByteArray(chunk);
+      bytes[bytes.length - 1] ^= 0x55;
+      Files.write(bytes, chunk);
+    }
+
+    String second = testObject.createSnapshot(walletDirectory, ALL_FILES, "20140101120100");
+    assertThat(testObject.verify(second)).isFalse();
+
+  }
+
+  @Test
+  public void testRestore_RequiresEmptyDirectory() throws Exception {
+
+    BackupRepository testObject = new BackupRepository(repositoryDirectory, aesKey);
+    String snapshot = testObject.createSnapshot(walletDirectory, ALL_FILES, "20140101120000");
+
+    // Restoring over a live directory would leave stale files behind
+    try {
+      testObject.restore(snapshot, walletDirectory);
+      fail("Expected restore to fail");
+    } catch (IOException e) {
+      // Expected
+    }
+
+    File restoreDirectory = new File(Files.createTempDir(), "staging");
+    testObject.restore(snapshot, restoreDirectory);
+    assertThat(Files.toString(new File(restoreDirectory, "contacts.aes"), Charsets.UTF_8)).isEqualTo("contacts");
+
+  }
+
+  @Test
+  public void testPrune() throws Exception {
+
+    BackupRepository testObject = new BackupRepository(repositoryDirectory, aesKey);
+    testObject.createSnapshot(walletDirectory, ALL_FILES, "20140101120000");
+
+    Files.write("contacts changed".getBytes(Charsets.UTF_8), new File(walletDirectory, "contacts.aes"));
+    String second = testObject.createSnapshot(walletDirectory, ALL_FILES, "20140101120100");
+
+    // The old contacts chunk is no longer referenced
+    assertThat(testObject.prune(1)).isEqualTo(1);
+    assertThat(testObject.getSnapshots()).containsExactly(second);
+    assertThat(testObject.verify(second)).isTrue();
+
+    // Nothing further to prune
+    assertThat(testObject.prune(1)).isEqualTo(0);
+
+  }
+
+  private int countChunks() {
+    return listChunks().size();
+  }
+
+  private List<File> listChunks() {
+
+    List<File> chunks = Lists.newArrayList();
+    File[] prefixDirectories = new File(repositoryDirectory, BackupRepository.CHUNKS_DIRECTORY_NAME).listFiles();
+    if (prefixDirectories != null) {
+      for (File prefixDirectory : prefixDirectories) {
+        File[] files = prefixDirectory.listFiles();
+        if (files != null) {
+          chunks.addAll(Arrays.asList(files));
+        }
+      }
+    }
+
+    return chunks;
+  }
+}
@@ -81,6 +81,24 @@ public class CurrencyUtilsTest {
     assertThat(CurrencyUtils.isoCandidateFor("RUR")).isEqualTo("RUB");
     assertThat(CurrencyUtils.isoCandidateFor("USD")).isEqualTo("USD");
 
+    // Non-standard codes are matched regardless of case
+    assertThat(CurrencyUtils.isoCandidateFor("btc")).isEqualTo("XBT");
+    assertThat(CurrencyUtils.isoCandidateFor("rur")).isEqualTo("RUB");
+
+    // Unknown codes are returned unchanged
+    assertThat(CurrencyUtils.isoCandidateFor("ABC")).isEqualTo("ABC");
+
+  }
+
+  @Test
+  public void testSymbolFor() throws Exception {
+
+    assertThat(CurrencyUtils.symbolFor("GBP")).isEqualTo("£");
+    assertThat(CurrencyUtils.symbolFor("EUR")).isEqualTo("\u20ac");
+
+    // Unknown codes are returned unchanged
+    assertThat(CurrencyUtils.symbolFor("ABC")).isEqualTo("ABC");
+
   }
 
 }
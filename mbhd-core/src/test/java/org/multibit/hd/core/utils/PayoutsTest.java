@@ -0,0 +1,56 @@
+package org.multibit.hd.core.utils;
+
+import com.google.bitcoin.core.Coin;
+import com.google.bitcoin.params.MainNetParams;
+import org.junit.Test;
+import org.multibit.hd.core.dto.BatchSendRequestSummary;
+
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class PayoutsTest {
+
+  private static final String ADDRESS_1 = "16R2kAxaUNM4xj6ykKbxEugpJdYyJzTP13";
+  private static final String ADDRESS_2 = "1AhN6rPdrMuKBGFDKR1k9A8SCLYaNgXhty";
+
+  @Test
+  public void testParseCsv() throws Exception {
+
+    String csv = "# Payout run\n" +
+      ADDRESS_1 + ",0.01\r\n" +
+      "\n" +
+      ADDRESS_2 + " , 1.5\n";
+
+    List<BatchSendRequestSummary.Payee> payees = Payouts.parseCsv(csv, MainNetParams.get());
+
+    assertThat(payees.size()).isEqualTo(2);
+    assertThat(payees.get(0).getAddress().toString()).isEqualTo(ADDRESS_1);
+    assertThat(payees.get(0).getAmount()).isEqualTo(Coin.parseCoin("0.01"));
+    assertThat(payees.get(1).getAddress().toString()).isEqualTo(ADDRESS_2);
+    assertThat(payees.get(1).getAmount()).isEqualTo(Coin.parseCoin("1.5"));
+
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParseCsv_InvalidAddress() throws Exception {
+
+    Payouts.parseCsv("1NotAnAddress,0.01", MainNetParams.get());
+
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParseCsv_InvalidAmount() throws Exception {
+
+    Payouts.parseCsv(ADDRESS_1 + ",lots", MainNetParams.get());
+
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParseCsv_MissingAmount() throws Exception {
+
+    Payouts.parseCsv(ADDRESS_1, MainNetParams.get());
+
+  }
+
+}
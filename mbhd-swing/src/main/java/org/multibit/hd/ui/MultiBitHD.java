@@ -1,9 +1,11 @@
 package org.multibit.hd.ui;
 
 import com.google.common.base.Preconditions;
+import org.multibit.hd.core.concurrent.StartupGraph;
 import org.multibit.hd.core.config.Configurations;
 import org.multibit.hd.core.events.CoreEvents;
 import org.multibit.hd.core.events.ShutdownEvent;
+import org.multibit.hd.core.logging.StartupTracer;
 import org.multibit.hd.core.managers.InstallationManager;
 import org.multibit.hd.core.managers.WalletManager;
 import org.multibit.hd.core.services.CoreServices;
@@ -16,6 +18,7 @@ import org.multibit.hd.ui.platform.GenericApplicationFactory;
 import org.multibit.hd.ui.platform.GenericApplicationSpecification;
 import org.multibit.hd.ui.services.BitcoinURIListeningService;
 import org.multibit.hd.ui.views.MainView;
+import org.multibit.hd.ui.views.fonts.TitleFontDecorator;
 import org.multibit.hd.ui.views.themes.ThemeKey;
 import org.multibit.hd.ui.views.themes.Themes;
 import org.slf4j.Logger;
@@ -27,6 +30,7 @@ import javax.swing.text.DefaultEditorKit;
 import java.awt.event.KeyEvent;
 import java.io.File;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 /**
  * <p>Main entry point to the application</p>
@@ -35,8 +39,17 @@ public class MultiBitHD {
 
   private static final Logger log = LoggerFactory.getLogger(MultiBitHD.class);
 
+  private static final String SINGLE_INSTANCE_TASK = "single-instance";
+  private static final String JVM_TASK = "jvm";
+  private static final String CORE_TASK = "core";
+  private static final String ASSETS_TASK = "assets";
+  private static final String CONTROLLERS_TASK = "controllers";
+  private static final String GENERIC_APP_TASK = "generic-app";
+
   private MainController mainController;
 
+  private BitcoinURIListeningService bitcoinURIListeningService;
+
   /**
    * <p>Main entry point to the application</p>
    *
@@ -52,7 +65,16 @@ public class MultiBitHD {
 
     // Hand over to an instance to simplify FEST tests
     final MultiBitHD multiBitHD = new MultiBitHD();
-    if (!multiBitHD.start(args)) {
+
+    final boolean started;
+    StartupTracer.Span span = StartupTracer.INSTANCE.begin("ui.start");
+    try {
+      started = multiBitHD.start(args);
+    } finally {
+      span.end();
+    }
+
+    if (!started) {
 
       // Failed to start so issue a hard shutdown
       multiBitHD.stop(ShutdownEvent.ShutdownType.HARD);
@@ -84,27 +106,60 @@ public class MultiBitHD {
    *
    * @throws Exception If something goes wrong
    */
-  public boolean start(String[] args) throws Exception {
-
-    // Prepare the JVM (Nimbus, system properties etc)
-    initialiseJVM();
-
-    // Create controllers so that the generic app can access listeners
-    if (!initialiseUIControllers(args)) {
+  public boolean start(final String[] args) throws Exception {
 
-      // Required to shut down
-      return false;
-
-    }
-
-    // Prepare platform-specific integration (protocol handlers, quit events etc)
-    initialiseGenericApp();
+    // Independent tasks run concurrently, dependants wait for their prerequisites
+    StartupGraph startupGraph = new StartupGraph("startup")
+      .addTask(JVM_TASK, new Callable<Boolean>() {
+        @Override
+        public Boolean call() throws Exception {
+          // Prepare the JVM (Nimbus, system properties etc) before any networking is initialised
+          initialiseJVM();
+          return true;
+        }
+      })
+      .addTask(SINGLE_INSTANCE_TASK, new Callable<Boolean>() {
+        @Override
+        public Boolean call() throws Exception {
+          // Hand over to another running instance before any other work is started
+          return initialiseSingleInstance(args);
+        }
+      }, JVM_TASK)
+      .addTask(CORE_TASK, new Callable<Boolean>() {
+        @Override
+        public Boolean call() throws Exception {
+          // Start core services (logging, security alerts, configuration etc)
+          initialiseCore(args);
+          return true;
+        }
+      }, SINGLE_INSTANCE_TASK)
+      .addTask(ASSETS_TASK, new Callable<Boolean>() {
+        @Override
+        public Boolean call() throws Exception {
+          // Pre-load sounds and fonts away from the EDT
+          initialiseAssets();
+          return true;
+        }
+      }, SINGLE_INSTANCE_TASK)
+      .addTask(CONTROLLERS_TASK, new Callable<Boolean>() {
+        @Override
+        public Boolean call() throws Exception {
+          // Create controllers so that the generic app can access listeners
+          return initialiseUIControllers();
+        }
+      }, SINGLE_INSTANCE_TASK)
+      .addTask(GENERIC_APP_TASK, new Callable<Boolean>() {
+        @Override
+        public Boolean call() throws Exception {
+          // Prepare platform-specific integration (protocol handlers, quit events etc)
+          initialiseGenericApp();
+          return true;
+        }
+      }, CONTROLLERS_TASK);
 
-    // Start core services (logging, security alerts, configuration, Bitcoin URI handling etc)
-    initialiseCore(args);
+    // A failure here requires a shut down
+    return startupGraph.execute();
 
-    // Must be OK to be here
-    return true;
   }
 
   /**
@@ -116,6 +171,23 @@ public class MultiBitHD {
 
   }
 
+  /**
+   * <p>Determine if another instance is running. This occurs once the JVM is prepared (the networking system
+   * properties must be set before the loopback socket is opened) and before any services are started so that
+   * a second instance hands over any Bitcoin URI and shuts down.</p>
+   *
+   * @param args The command line arguments
+   *
+   * @return True if this is the only instance, false if a shutdown is required
+   */
+  private boolean initialiseSingleInstance(String[] args) {
+
+    bitcoinURIListeningService = new BitcoinURIListeningService(args);
+
+    return bitcoinURIListeningService.start();
+
+  }
+
   /**
    * <p>Initialise the JVM. This occurs before anything else is called.</p>
    */
@@ -176,19 +248,26 @@ public class MultiBitHD {
    * <li>Backup service</li>
    * <li>Bitcoin network service</li>
    * </ul>
+   *
+   * @return True if the controllers are in place, false if a shutdown is required
+   *
+   * @throws Exception If the unsupported platform dialog could not be shown
    */
-  public boolean initialiseUIControllers(String[] args) {
+  public boolean initialiseUIControllers() throws Exception {
 
-    // Determine if another instance is running and shutdown if this is the case
-    BitcoinURIListeningService bitcoinURIListeningService = new BitcoinURIListeningService(args);
-    if (!bitcoinURIListeningService.start()) {
-      return false;
-    }
+    Preconditions.checkNotNull(bitcoinURIListeningService, "'bitcoinURIListeningService' must be present");
 
     if (OSUtils.isWindowsXPOrEarlier()) {
       log.error("Windows XP or earlier detected. Forcing shutdown.");
-      JOptionPane.showMessageDialog(null, "This version of Windows is not supported for security reasons.\nPlease upgrade.", "Error",
-        JOptionPane.ERROR_MESSAGE);
+
+      // Startup tasks run on a pool thread so the dialog must be shown on the EDT
+      SwingUtilities.invokeAndWait(new Runnable() {
+        @Override
+        public void run() {
+          JOptionPane.showMessageDialog(null, "This version of Windows is not supported for security reasons.\nPlease upgrade.", "Error",
+            JOptionPane.ERROR_MESSAGE);
+        }
+      });
       return false;
     }
 
@@ -249,9 +328,21 @@ public class MultiBitHD {
     // Start the core services
     CoreServices.main(args);
 
-    // Pre-loadContacts sound library
+  }
+
+  /**
+   * <p>Initialise the sound library and title fonts</p>
+   */
+  private void initialiseAssets() {
+
+    log.debug("Initialising assets...");
+
+    // Pre-load sound library
     Sounds.initialise();
 
+    // Pre-load and register the title fonts
+    TitleFontDecorator.preload();
+
   }
 
   /**
@@ -271,42 +362,49 @@ public class MultiBitHD {
 
     log.debug("Initialising UI...");
 
-    Preconditions.checkNotNull(mainController, "'mainController' must be present. FEST will cause this if another instance is running.");
+    StartupTracer.Span span = StartupTracer.INSTANCE.begin("ui.views");
+    try {
 
-    // Ensure that we are using the configured theme
-    ThemeKey themeKey = ThemeKey.valueOf(Configurations.currentConfiguration.getAppearance().getCurrentTheme());
-    Themes.switchTheme(themeKey.theme());
+      Preconditions.checkNotNull(mainController, "'mainController' must be present. FEST will cause this if another instance is running.");
 
-    // Build a new MainView
-    final MainView mainView = new MainView();
-    mainController.setMainView(mainView);
+      // Ensure that we are using the configured theme
+      ThemeKey themeKey = ThemeKey.valueOf(Configurations.currentConfiguration.getAppearance().getCurrentTheme());
+      Themes.switchTheme(themeKey.theme());
 
-    // Check for any pre-existing wallets in the application directory
-    File applicationDataDirectory = InstallationManager.getOrCreateApplicationDataDirectory();
-    List<File> walletDirectories = WalletManager.findWalletDirectories(applicationDataDirectory);
+      // Build a new MainView
+      final MainView mainView = new MainView();
+      mainController.setMainView(mainView);
 
-    if (walletDirectories.isEmpty() || !Configurations.currentConfiguration.isLicenceAccepted()) {
+      // Check for any pre-existing wallets in the application directory
+      File applicationDataDirectory = InstallationManager.getOrCreateApplicationDataDirectory();
+      List<File> walletDirectories = WalletManager.findWalletDirectories(applicationDataDirectory);
 
-      log.debug("No wallets in the directory or licence not accepted - showing the welcome wizard");
-      mainView.setShowExitingWelcomeWizard(true);
-      mainView.setShowExitingPasswordWizard(false);
+      if (walletDirectories.isEmpty() || !Configurations.currentConfiguration.isLicenceAccepted()) {
 
-    } else {
+        log.debug("No wallets in the directory or licence not accepted - showing the welcome wizard");
+        mainView.setShowExitingWelcomeWizard(true);
+        mainView.setShowExitingPasswordWizard(false);
 
-      log.debug("Wallets are present - showing the password wizard");
-      mainView.setShowExitingPasswordWizard(true);
-      mainView.setShowExitingWelcomeWizard(false);
+      } else {
 
-    }
+        log.debug("Wallets are present - showing the password wizard");
+        mainView.setShowExitingPasswordWizard(true);
+        mainView.setShowExitingWelcomeWizard(false);
 
-    // Provide a backdrop to the user and trigger the showing of the wizard
-    mainView.refresh();
+      }
 
-    log.debug("Initialising UI: Refresh complete");
+      // Provide a backdrop to the user and trigger the showing of the wizard
+      mainView.refresh();
 
-    // See the MainController wizard hide event for the next stage
+      log.debug("Initialising UI: Refresh complete");
 
-    return mainView;
+      // See the MainController wizard hide event for the next stage
+
+      return mainView;
+
+    } finally {
+      span.end();
+    }
 
   }
 }
@@ -192,6 +192,7 @@ public enum MessageKey {
 
   NETWORK_CONFIGURATION_ERROR("network_configuration_error"),
   HELP("help"),
+  HELP_SEARCH_NO_RESULTS("help_search_no_results"),
   SETTINGS("settings"),
 
   // Titles
@@ -3,6 +3,10 @@ package org.multibit.hd.ui.utils;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.google.zxing.WriterException;
 import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
 import com.google.zxing.qrcode.encoder.ByteMatrix;
@@ -10,6 +14,10 @@ import com.google.zxing.qrcode.encoder.Encoder;
 import com.google.zxing.qrcode.encoder.QRCode;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 
 /**
@@ -25,15 +33,57 @@ public class QRCodes {
 
   private static final int QUIET_ZONE_SIZE = 4;
 
+  private static final int BLACK = 0x000000;
+  private static final int WHITE = 0xFFFFFF;
+
+  /**
+   * Maintain an image cache keyed on contents and scale factor (images must be treated as read only)
+   */
+  private static final Cache<String, Optional<BufferedImage>> cache = CacheBuilder
+    .newBuilder()
+    .maximumSize(20)
+    .build();
+
+  /**
+   * Utilities have private constructors
+   */
+  private QRCodes() {
+  }
+
   /**
    * <p>Generate a QR code encoding the given contents</p>
    *
+   * <p>Recently generated images are cached so callers must not modify the returned image</p>
+   *
    * @param contents    The text to be encoded into the QR code (e.g. a canonical Bitcoin URI)
    * @param scaleFactor The scaling factor providing number of pixels per QR element
    *
    * @return A buffered image containing a QR code
    */
-  public static Optional<BufferedImage> generateQRCode(String contents, int scaleFactor) {
+  public static Optional<BufferedImage> generateQRCode(final String contents, final int scaleFactor) {
+
+    try {
+      return cache.get(scaleFactor + ":" + contents, new Callable<Optional<BufferedImage>>() {
+        @Override
+        public Optional<BufferedImage> call() throws Exception {
+          return renderQRCode(contents, scaleFactor);
+        }
+      });
+    } catch (ExecutionException e) {
+      return Optional.absent();
+    } catch (UncheckedExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+
+  }
+
+  /**
+   * @param contents    The text to be encoded into the QR code
+   * @param scaleFactor The scaling factor providing number of pixels per QR element
+   *
+   * @return A buffered image containing a QR code
+   */
+  private static Optional<BufferedImage> renderQRCode(String contents, int scaleFactor) {
 
     // Build the input matrix
     final ByteMatrix matrix;
@@ -56,16 +106,20 @@ public class QRCodes {
 
     // Create buffered image for drawing
     BufferedImage image = new BufferedImage(swatchWidth, swatchHeight, BufferedImage.TYPE_INT_RGB);
+    WritableRaster raster = image.getRaster();
 
-    // Iterate through the matrix and draw the pixels to the image
+    // Build each scaled row once and write it directly into the raster for every scaled line
+    byte[][] matrixArray = matrix.getArray();
+    int[] row = new int[swatchWidth];
     for (int y = 0; y < matrixHeight; y++) {
+      int offset = 0;
       for (int x = 0; x < matrixWidth; x++) {
-        byte imageValue = matrix.get(x, y);
-        for (int scaleX = 0; scaleX < scaleFactor; scaleX++) {
-          for (int scaleY = 0; scaleY < scaleFactor; scaleY++) {
-            image.setRGB(x * scaleFactor + scaleX, y * scaleFactor + scaleY, imageValue);
-          }
-        }
+        int pixel = matrixArray[y][x] == 0 ? BLACK : WHITE;
+        Arrays.fill(row, offset, offset + scaleFactor, pixel);
+        offset += scaleFactor;
+      }
+      for (int scaleY = 0; scaleY < scaleFactor; scaleY++) {
+        raster.setDataElements(0, y * scaleFactor + scaleY, swatchWidth, 1, row);
       }
     }
 
@@ -3,6 +3,7 @@ package org.multibit.hd.ui.views;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Maps;
 import com.google.common.eventbus.Subscribe;
+import org.multibit.hd.core.logging.StartupTracer;
 import org.multibit.hd.ui.events.controller.ShowScreenEvent;
 import org.multibit.hd.ui.views.components.Panels;
 import org.multibit.hd.ui.views.screens.AbstractScreenView;
@@ -110,6 +111,9 @@ public class DetailView extends AbstractView {
 
         view.afterShow();
 
+        // The first screen shown marks the end of startup
+        StartupTracer.INSTANCE.interactive();
+
       }
     });
 
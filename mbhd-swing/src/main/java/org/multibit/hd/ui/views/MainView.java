@@ -4,6 +4,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import net.miginfocom.swing.MigLayout;
 import org.multibit.hd.core.config.Configurations;
+import org.multibit.hd.core.logging.StartupTracer;
 import org.multibit.hd.core.managers.WalletManager;
 import org.multibit.hd.core.services.CoreServices;
 import org.multibit.hd.ui.MultiBitUI;
@@ -88,6 +89,9 @@ public class MainView extends JFrame {
 
         Configurations.currentConfiguration.getAppearance().setLastFrameBounds(lastFrameBounds);
 
+        // Moving or resizing fires many events so let them coalesce into a single write
+        Configurations.persistCurrentConfigurationLater();
+
       }
     });
 
@@ -136,6 +140,9 @@ public class MainView extends JFrame {
 
       // This section must come after a deferred hide has completed
 
+      // Startup is now waiting for the user to provide credentials
+      StartupTracer.INSTANCE.userWaitStarted();
+
       // Determine the appropriate starting screen for the welcome wizard
       if (Configurations.currentConfiguration.isLicenceAccepted()) {
         log.debug("Showing exiting welcome wizard (select language)");
@@ -151,6 +158,9 @@ public class MainView extends JFrame {
 
       log.debug("Showing exiting password wizard");
 
+      // Startup is now waiting for the user to provide credentials
+      StartupTracer.INSTANCE.userWaitStarted();
+
       // Force an exit if the user can't get through
       Panels.showLightBox(Wizards.newExitingPasswordWizard().getWizardScreenHolder());
 
@@ -1,16 +1,26 @@
 package org.multibit.hd.ui.views.components.auto_complete;
 
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import org.multibit.hd.core.concurrent.SafeExecutors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.swing.*;
 import javax.swing.plaf.basic.ComboPopup;
 import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * <p>Decorator to provide the following to combo boxes:</p>
@@ -25,6 +35,16 @@ public class AutoCompleteDecorator {
 
   private static final Logger log = LoggerFactory.getLogger(AutoCompleteDecorator.class);
 
+  /**
+   * The pause in typing before the filter is queried
+   */
+  private static final int DEBOUNCE_MILLIS = 150;
+
+  /**
+   * Keep filter queries off the EDT
+   */
+  private static final ListeningExecutorService autoCompleteExecutorService = SafeExecutors.newSingleThreadExecutor("auto-complete");
+
   /**
    * Utilities have a private constructor
    */
@@ -61,6 +81,50 @@ public class AutoCompleteDecorator {
    */
   private static <T> KeyAdapter getAutoCompleteKeyListener(final JComboBox<T> comboBox, final AutoCompleteFilter<T> filter, final JTextField textField) {
 
+    // Track the most recent query so that stale ones can be cancelled
+    final LatestQuery<T> latestQuery = new LatestQuery<>(autoCompleteExecutorService, filter);
+
+    // Wait for a pause in typing before querying
+    final Timer debounceTimer = new Timer(DEBOUNCE_MILLIS, new ActionListener() {
+      @Override
+      public void actionPerformed(ActionEvent e) {
+
+        final String enteredText = textField.getText();
+
+        // Use the entered text to update the available popup items away from the EDT
+        ListenableFuture<T[]> query = latestQuery.submit(enteredText);
+
+        Futures.addCallback(query, new FutureCallback<T[]>() {
+          @Override
+          public void onSuccess(final T[] popupItems) {
+
+            SwingUtilities.invokeLater(new Runnable() {
+              @Override
+              public void run() {
+
+                // Ignore results that no longer reflect the entered text
+                if (!enteredText.equals(textField.getText())) {
+                  return;
+                }
+
+                updatePopup(comboBox, popupItems, enteredText);
+
+              }
+            });
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            if (!(t instanceof CancellationException)) {
+              log.error("Auto-complete query failed", t);
+            }
+          }
+        });
+
+      }
+    });
+    debounceTimer.setRepeats(false);
+
     return new KeyAdapter() {
 
       public void keyReleased(KeyEvent ke) {
@@ -71,35 +135,85 @@ public class AutoCompleteDecorator {
         }
 
         // Must be user key press to be here
-        // Invoke a new EDT operation to avoid slowing the keyboard down
-        SwingUtilities.invokeLater(new Runnable() {
-          @Override
-          public void run() {
-            String enteredText = textField.getText();
+        // Restart the timer to avoid slowing the keyboard down
+        debounceTimer.restart();
 
-            // Use the entered text to update the available popup items
-            T[] popupItems = filter.update(enteredText);
+      }
+    };
 
-            if (popupItems.length == 0) {
-              // Nothing to show
-              comboBox.hidePopup();
-            } else {
-              // Popup contains items
+  }
 
-              // Update the model to reflect the new items (fires setItem() in editor)
-              comboBox.setModel(new DefaultComboBoxModel<>(popupItems));
+  /**
+   * <p>The latest filter query of a combo box, cancelling the one it supersedes so the executor never works on text
+   * that has already been replaced</p>
+   *
+   * @param <T> The generic type
+   */
+  static class LatestQuery<T> {
 
-              // Update the selected item with the text to allow edits
-              comboBox.setSelectedItem(enteredText);
+    private final ListeningExecutorService executorService;
+    private final AutoCompleteFilter<T> filter;
 
-              // Ensure that the popup is showing
-              comboBox.showPopup();
+    private final AtomicReference<ListenableFuture<T[]>> latest = new AtomicReference<>();
 
-            }
-          }
-        });
+    /**
+     * @param executorService The executor service to run the queries
+     * @param filter          The autocomplete filter
+     */
+    LatestQuery(ListeningExecutorService executorService, AutoCompleteFilter<T> filter) {
+      this.executorService = executorService;
+      this.filter = filter;
+    }
+
+    /**
+     * @param enteredText The entered text
+     *
+     * @return The future popup items (cancelled if superseded before completing)
+     */
+    ListenableFuture<T[]> submit(final String enteredText) {
+
+      ListenableFuture<T[]> query = executorService.submit(new Callable<T[]>() {
+        @Override
+        public T[] call() throws Exception {
+          return filter.update(enteredText);
+        }
+      });
+
+      ListenableFuture<T[]> previousQuery = latest.getAndSet(query);
+      if (previousQuery != null) {
+        previousQuery.cancel(true);
       }
-    };
+
+      return query;
+    }
+  }
+
+  /**
+   * <p>Update the combo box popup with the filtered items (must be on the EDT)</p>
+   *
+   * @param comboBox    The combo box
+   * @param popupItems  The filtered items
+   * @param enteredText The entered text
+   * @param <T>         The generic type
+   */
+  private static <T> void updatePopup(JComboBox<T> comboBox, T[] popupItems, String enteredText) {
+
+    if (popupItems.length == 0) {
+      // Nothing to show
+      comboBox.hidePopup();
+    } else {
+      // Popup contains items
+
+      // Update the model to reflect the new items (fires setItem() in editor)
+      comboBox.setModel(new DefaultComboBoxModel<>(popupItems));
+
+      // Update the selected item with the text to allow edits
+      comboBox.setSelectedItem(enteredText);
+
+      // Ensure that the popup is showing
+      comboBox.showPopup();
+
+    }
 
   }
 
@@ -16,6 +16,8 @@ public interface AutoCompleteFilter<T> {
   T[] create();
 
   /**
+   * <p>Called from a background thread so implementations must be thread-safe</p>
+   *
    * @param fragment The entered text fragment
    *                  
    * @return An array containing the items to be shown in the popup
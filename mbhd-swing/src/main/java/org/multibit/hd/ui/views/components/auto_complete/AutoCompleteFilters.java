@@ -1,15 +1,10 @@
 package org.multibit.hd.ui.views.components.auto_complete;
 
-import com.google.bitcoin.core.Address;
-import com.google.bitcoin.core.AddressFormatException;
 import com.google.bitcoin.core.NetworkParameters;
 import com.google.common.base.Strings;
-import org.multibit.hd.core.dto.Contact;
 import org.multibit.hd.core.dto.Recipient;
 import org.multibit.hd.core.services.ContactService;
 
-import java.util.List;
-
 /**
  * <p>Factory to provide the following to views:</p>
  * <ul>
@@ -31,19 +26,19 @@ public class AutoCompleteFilters {
    * @param contactService    The contact service to use for queries
    * @param networkParameters The network parameters
    *
-   * @return An auto-complete filter linked to the Contact API
+   * @return An auto-complete filter linked to the Contact API (safe to update off the EDT)
    */
   public static AutoCompleteFilter<Recipient> newRecipientFilter(final ContactService contactService, final NetworkParameters networkParameters) {
 
+    // Keep parsed recipients across keystrokes
+    final RecipientIndex recipientIndex = new RecipientIndex(contactService, networkParameters);
+
     return new AutoCompleteFilter<Recipient>() {
 
       @Override
       public Recipient[] create() {
 
-        // Only require recipients that can be paid
-        List<Contact> contacts = contactService.filterContactsByContent("*", true);
-
-        return populateRecipients(contacts);
+        return recipientIndex.all();
 
       }
 
@@ -54,37 +49,7 @@ public class AutoCompleteFilters {
           return new Recipient[]{};
         }
 
-        // Only require recipients that can be paid
-        List<Contact> contacts = contactService.filterContactsByContent(fragment, true);
-
-        return populateRecipients(contacts);
-      }
-
-      /**
-       *
-       * @param contacts The contacts to add to the recipients
-       * @return The recipients
-       */
-      private Recipient[] populateRecipients(List<Contact> contacts) {
-
-        Recipient[] recipients = new Recipient[contacts.size()];
-
-        int i = 0;
-        for (Contact contact : contacts) {
-          String address = null;
-          try {
-            address = contact.getBitcoinAddress().orNull();
-            Address bitcoinAddress = new Address(networkParameters, address);
-            Recipient recipient = new Recipient(bitcoinAddress);
-            recipient.setContact(contact);
-            recipients[i] = recipient;
-            i++;
-          } catch (AddressFormatException e) {
-            throw new IllegalArgumentException("Recipients must have a valid Bitcoin address ('"+address+"'). Check contact filter: "+contact, e);
-          }
-        }
-
-        return recipients;
+        return recipientIndex.query(fragment);
       }
 
     };
@@ -0,0 +1,215 @@
+package org.multibit.hd.ui.views.components.auto_complete;
+
+import com.google.bitcoin.core.Address;
+import com.google.bitcoin.core.AddressFormatException;
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.multibit.hd.core.dto.Contact;
+import org.multibit.hd.core.dto.Recipient;
+import org.multibit.hd.core.services.ContactService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * <p>Index to provide the following to recipient auto-complete:</p>
+ * <ul>
+ * <li>Cached recipients with already parsed Bitcoin addresses</li>
+ * <li>Thread-safe queries suitable for use off the EDT</li>
+ * <li>Automatic rebuild when the contacts change</li>
+ * </ul>
+ *
+ * <p>Only payable contacts (those with a Bitcoin address) are indexed. Matching follows
+ * {@link ContactService#filterContactsByContent(String, boolean)} (name, email, notes and tags).</p>
+ *
+ * @since 0.0.1
+ *
+ */
+public class RecipientIndex {
+
+  private static final Logger log = LoggerFactory.getLogger(RecipientIndex.class);
+
+  private final ContactService contactService;
+  private final NetworkParameters networkParameters;
+
+  /**
+   * The generation of the contacts that the entries reflect
+   */
+  private volatile long indexedGeneration = -1;
+
+  /**
+   * The immutable snapshot of the index
+   */
+  private volatile List<Entry> entries = ImmutableList.of();
+
+  /**
+   * @param contactService    The contact service providing the contacts
+   * @param networkParameters The network parameters
+   */
+  public RecipientIndex(ContactService contactService, NetworkParameters networkParameters) {
+
+    Preconditions.checkNotNull(contactService, "'contactService' must be present");
+    Preconditions.checkNotNull(networkParameters, "'networkParameters' must be present");
+
+    this.contactService = contactService;
+    this.networkParameters = networkParameters;
+
+  }
+
+  /**
+   * @return All the indexed recipients
+   */
+  public Recipient[] all() {
+
+    List<Entry> snapshot = refreshIfRequired();
+
+    Recipient[] recipients = new Recipient[snapshot.size()];
+    for (int i = 0; i < recipients.length; i++) {
+      recipients[i] = snapshot.get(i).recipient;
+    }
+
+    return recipients;
+  }
+
+  /**
+   * @param fragment The text fragment to match against name, email, notes and tags
+   *
+   * @return The matching recipients
+   */
+  public Recipient[] query(String fragment) {
+
+    Preconditions.checkNotNull(fragment, "'fragment' must be present");
+
+    List<Entry> snapshot = refreshIfRequired();
+
+    String lowerFragment = fragment.toLowerCase();
+
+    List<Recipient> recipients = Lists.newArrayList();
+    for (Entry entry : snapshot) {
+      if (entry.matches(lowerFragment)) {
+        recipients.add(entry.recipient);
+      }
+    }
+
+    return recipients.toArray(new Recipient[recipients.size()]);
+  }
+
+  /**
+   * @return The current snapshot of the index, rebuilt if the contacts have changed
+   */
+  private List<Entry> refreshIfRequired() {
+
+    long generation = contactService.getGeneration();
+    if (generation == indexedGeneration) {
+      return entries;
+    }
+
+    synchronized (this) {
+
+      // Another thread may have rebuilt in the meantime
+      if (generation == indexedGeneration) {
+        return entries;
+      }
+
+      // Reuse existing recipients to avoid decoding unchanged addresses
+      Map<UUID, Entry> previousEntries = Maps.newHashMap();
+      for (Entry entry : entries) {
+        previousEntries.put(entry.contact.getId(), entry);
+      }
+
+      ImmutableList.Builder<Entry> builder = ImmutableList.builder();
+
+      // Only require recipients that can be paid
+      for (Contact contact : contactService.filterContactsByContent("*", true)) {
+
+        String address = contact.getBitcoinAddress().orNull();
+
+        Entry previous = previousEntries.get(contact.getId());
+        if (previous != null && previous.contact == contact && previous.address.equals(address)) {
+          builder.add(new Entry(contact, address, previous.recipient));
+          continue;
+        }
+
+        try {
+          Recipient recipient = new Recipient(new Address(networkParameters, address));
+          recipient.setContact(contact);
+          builder.add(new Entry(contact, address, recipient));
+        } catch (AddressFormatException e) {
+          throw new IllegalArgumentException("Recipients must have a valid Bitcoin address ('" + address + "'). Check contact filter: " + contact, e);
+        }
+      }
+
+      entries = builder.build();
+      indexedGeneration = generation;
+
+      log.debug("Recipient index rebuilt with {} entries", entries.size());
+
+      return entries;
+    }
+
+  }
+
+  /**
+   * <p>An index entry with pre-computed lowercase search fields</p>
+   */
+  private static class Entry {
+
+    private final Contact contact;
+    private final String address;
+    private final Recipient recipient;
+
+    private final String name;
+    private final String email;
+    private final String notes;
+    private final List<String> tags;
+
+    private Entry(Contact contact, String address, Recipient recipient) {
+
+      this.contact = contact;
+      this.address = address;
+      this.recipient = recipient;
+
+      // Note: Do not include a Bitcoin address or xpub in this search
+      // because vanity addresses can cause an attack vector
+      this.name = contact.getName().toLowerCase();
+      this.email = contact.getEmail().or("").toLowerCase();
+      this.notes = contact.getNotes().or("").toLowerCase();
+
+      List<String> lowerTags = Lists.newArrayList();
+      for (String tag : contact.getTags()) {
+        lowerTags.add(tag.toLowerCase());
+      }
+      this.tags = lowerTags;
+    }
+
+    /**
+     * @param lowerFragment The lowercase fragment ("*" matches everything)
+     *
+     * @return True if this entry matches
+     */
+    private boolean matches(String lowerFragment) {
+
+      if ("*".equals(lowerFragment)
+        || name.contains(lowerFragment)
+        || email.contains(lowerFragment)
+        || notes.contains(lowerFragment)) {
+        return true;
+      }
+
+      for (String tag : tags) {
+        if (tag.contains(lowerFragment)) {
+          return true;
+        }
+      }
+
+      return false;
+    }
+  }
+
+}
@@ -62,6 +62,19 @@ public class TitleFontDecorator {
 
   }
 
+  /**
+   * <p>Preload the fonts ahead of first use (typically off the EDT during startup)</p>
+   *
+   * <p>The fonts are constants so they are loaded and registered by the static initialiser. Calling this
+   * method triggers that initialiser on the calling thread rather than on the EDT when the first title is
+   * drawn, so the body is deliberately empty.</p>
+   */
+  public static void preload() {
+
+    // Do nothing - the static initialiser has done the work by the time this is reached
+
+  }
+
   /**
    * @param fontName The font name (e.g. "Corben-Regular.ttf") as found in <code>/assets/fonts</code>
    *
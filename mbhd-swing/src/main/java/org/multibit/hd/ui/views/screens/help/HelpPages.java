@@ -0,0 +1,546 @@
+package org.multibit.hd.ui.views.screens.help;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import org.multibit.hd.core.concurrent.SafeExecutors;
+import org.multibit.hd.core.managers.InstallationManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.multibit.hd.core.managers.InstallationManager.MBHD_WEBSITE_HELP_BASE;
+
+/**
+ * <p>Utility to provide the following to the help screen:</p>
+ * <ul>
+ * <li>Retrieving help pages from the bundled help pack with fallback to the MultiBit website</li>
+ * <li>An offline copy of every page downloaded from the website for use when the network is unavailable</li>
+ * <li>An in-memory cache of recently viewed pages</li>
+ * <li>A full text search index over the bundled and offline pages</li>
+ * </ul>
+ *
+ * <p>The help pack is an optional compressed resource (ZIP) that a release build may bundle. It is not part of the
+ * source tree or the standard build so without it pages come from the website and search covers the offline copies
+ * only. Its entries are
+ * named by their path relative to {@link org.multibit.hd.core.managers.InstallationManager#MBHD_WEBSITE_HELP_BASE}.
+ * An optional "search.idx" entry provides the prebuilt search index as lines of <code>term[TAB]path1,path2,...</code>.
+ * If the entry is absent the index is built when the pack is first read.</p>
+ *
+ * <p>The offline copies are kept under the same relative paths in the "help" directory of the application
+ * data directory so that pages read once remain available (and searchable) without a network.</p>
+ *
+ * @since 0.0.1
+ *
+ */
+public class HelpPages {
+
+  private static final Logger log = LoggerFactory.getLogger(HelpPages.class);
+
+  /**
+   * The classpath location of the bundled help pack
+   */
+  private static final String HELP_PACK = "/assets/help/mbhd-help.zip";
+
+  /**
+   * The name of the prebuilt search index entry within the help pack
+   */
+  private static final String SEARCH_INDEX_ENTRY = "search.idx";
+
+  /**
+   * The name of the offline copy directory within the application data directory
+   */
+  private static final String OFFLINE_DIRECTORY = "help";
+
+  /**
+   * The time allowed to connect to the website (a hung fetch would otherwise block the help thread)
+   */
+  private static final int CONNECT_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(5);
+
+  /**
+   * The time allowed between reads from the website
+   */
+  private static final int READ_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(10);
+
+  /**
+   * Terms shorter than this are not indexed
+   */
+  private static final int MINIMUM_TERM_LENGTH = 3;
+
+  private static final Pattern HTML_TAGS = Pattern.compile("<[^>]*>");
+  private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+  // Keep a single help thread so that page loading never occurs on the EDT
+  private static final ListeningExecutorService helpExecutorService = SafeExecutors.newSingleThreadExecutor("help-pages");
+
+  // The location of the bundled help pack (absent if the build did not provide one)
+  private static Optional<URL> helpPackUrl = Optional.fromNullable(HelpPages.class.getResource(HELP_PACK));
+
+  // The bundled pages keyed by relative path (populated on first use from the help thread)
+  private static Map<String, byte[]> packEntries = null;
+
+  // The search index mapping terms to relative paths
+  private static Map<String, Set<String>> searchIndex = null;
+
+  // Maintain a page cache (only pages that were found so that a page missing whilst offline is retried)
+  private static final Cache<String, String> cache = CacheBuilder
+    .newBuilder()
+    .maximumSize(100)
+    .build();
+
+  /**
+   * Utilities have private constructors
+   */
+  private HelpPages() {
+  }
+
+  /**
+   * <p>Non-blocking call to retrieve the HTML of a help page</p>
+   *
+   * @param url The URL of the page (any reference fragment is ignored)
+   *
+   * @return A listenable future containing the HTML or absent if the page could not be found
+   */
+  public static ListenableFuture<Optional<String>> retrievePage(URL url) {
+
+    Preconditions.checkNotNull(url, "'url' must be present");
+
+    final String pageUrl = withoutReference(url);
+
+    return helpExecutorService.submit(new Callable<Optional<String>>() {
+
+      @Override
+      public Optional<String> call() throws Exception {
+
+        String html = cache.getIfPresent(pageUrl);
+        if (html != null) {
+          return Optional.of(html);
+        }
+
+        Optional<String> page = loadPage(pageUrl);
+        if (page.isPresent()) {
+          cache.put(pageUrl, page.get());
+        }
+        return page;
+
+      }
+    });
+
+  }
+
+  /**
+   * <p>Non-blocking call to search the bundled and offline help pages</p>
+   *
+   * @param query The search terms (all must be present in a page for a match)
+   *
+   * @return A listenable future containing the URLs of matching pages (empty if none)
+   */
+  public static ListenableFuture<List<URL>> search(final String query) {
+
+    Preconditions.checkNotNull(query, "'query' must be present");
+
+    return helpExecutorService.submit(new Callable<List<URL>>() {
+
+      @Override
+      public List<URL> call() throws Exception {
+
+        loadHelpPack();
+
+        Set<String> matches = null;
+        for (String term : tokenize(query)) {
+          Set<String> paths = searchIndex.get(term);
+          if (paths == null) {
+            return Collections.emptyList();
+          }
+          if (matches == null) {
+            matches = Sets.newTreeSet(paths);
+          } else {
+            matches.retainAll(paths);
+          }
+        }
+
+        if (matches == null) {
+          return Collections.emptyList();
+        }
+
+        List<URL> urls = Lists.newArrayList();
+        for (String path : matches) {
+          urls.add(URI.create(MBHD_WEBSITE_HELP_BASE + "/" + path).toURL());
+        }
+        return urls;
+      }
+    });
+
+  }
+
+  /**
+   * @param pageUrl The page URL without a reference fragment
+   *
+   * @return The HTML if present in the help pack, on the website or in the offline copy
+   */
+  private static Optional<String> loadPage(String pageUrl) {
+
+    loadHelpPack();
+
+    // Prefer the bundled content
+    Optional<String> path = relativePath(pageUrl);
+    if (path.isPresent()) {
+      byte[] content = packEntries.get(path.get());
+      if (content != null) {
+        log.debug("Help page from help pack: '{}'", pageUrl);
+        return Optional.of(new String(content, Charsets.UTF_8));
+      }
+    }
+
+    // Fall back to the website for content newer than this release
+    log.debug("Help page from external resource: '{}'", pageUrl);
+    try {
+      byte[] content = download(new URL(pageUrl));
+      if (path.isPresent()) {
+        writeOfflineCopy(path.get(), content);
+      }
+      return Optional.of(new String(content, Charsets.UTF_8));
+    } catch (MalformedURLException e) {
+      // This should never happen
+      log.error("Help URL malformed", e);
+    } catch (IOException e) {
+      // This may happen if no network is available
+      log.warn("Help page download failed: {}", e.getMessage());
+    }
+
+    // Use the copy from an earlier visit if the website is unavailable
+    if (path.isPresent()) {
+      Optional<byte[]> content = readOfflineCopy(path.get());
+      if (content.isPresent()) {
+        log.debug("Help page from offline copy: '{}'", pageUrl);
+        return Optional.of(new String(content.get(), Charsets.UTF_8));
+      }
+    }
+
+    return Optional.absent();
+
+  }
+
+  /**
+   * @param url The page URL
+   *
+   * @return The content of the page
+   *
+   * @throws IOException If the page could not be read within the timeouts
+   */
+  private static byte[] download(URL url) throws IOException {
+
+    URLConnection connection = url.openConnection();
+    connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+    connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+
+    try (InputStream is = connection.getInputStream()) {
+      return ByteStreams.toByteArray(is);
+    }
+
+  }
+
+  /**
+   * <p>Read the help pack, offline copies and search index into memory (must be called from the help thread)</p>
+   */
+  private static void loadHelpPack() {
+
+    if (packEntries != null) {
+      return;
+    }
+
+    packEntries = Maps.newHashMap();
+    searchIndex = Maps.newHashMap();
+
+    byte[] indexContent = null;
+
+    if (helpPackUrl.isPresent()) {
+
+      try (ZipInputStream zis = new ZipInputStream(helpPackUrl.get().openStream())) {
+        ZipEntry entry;
+        while ((entry = zis.getNextEntry()) != null) {
+          if (entry.isDirectory()) {
+            continue;
+          }
+          byte[] content = ByteStreams.toByteArray(zis);
+          if (SEARCH_INDEX_ENTRY.equals(entry.getName())) {
+            indexContent = content;
+          } else {
+            packEntries.put(entry.getName(), content);
+          }
+        }
+      } catch (IOException e) {
+        log.error("Help pack could not be read. Using external help only.", e);
+        packEntries.clear();
+        indexContent = null;
+      }
+
+    } else {
+      log.debug("Help pack '{}' is not bundled. Using external help only.", HELP_PACK);
+    }
+
+    if (indexContent != null) {
+      readSearchIndex(new String(indexContent, Charsets.UTF_8));
+    } else {
+      for (Map.Entry<String, byte[]> entry : packEntries.entrySet()) {
+        indexPage(entry.getKey(), entry.getValue());
+      }
+    }
+
+    // Pages read from the website earlier are searchable too
+    indexOfflineCopies();
+
+    log.debug("Help pack contains {} entries and {} search terms", packEntries.size(), searchIndex.size());
+
+  }
+
+  /**
+   * @param content The prebuilt search index content
+   */
+  private static void readSearchIndex(String content) {
+
+    for (String line : Splitter.on('\n').omitEmptyStrings().trimResults().split(content)) {
+      int tab = line.indexOf('\t');
+      if (tab < 1) {
+        continue;
+      }
+      Set<String> paths = Sets.newHashSet(Splitter.on(',').omitEmptyStrings().trimResults().split(line.substring(tab + 1)));
+      searchIndex.put(line.substring(0, tab).toLowerCase(Locale.UK), paths);
+    }
+
+  }
+
+  /**
+   * <p>Add the terms of an HTML page to the search index</p>
+   *
+   * @param path    The relative path of the page
+   * @param content The page content
+   */
+  private static void indexPage(String path, byte[] content) {
+
+    if (!path.endsWith(".html")) {
+      return;
+    }
+
+    String text = HTML_TAGS.matcher(new String(content, Charsets.UTF_8)).replaceAll(" ");
+    for (String term : tokenize(text)) {
+      Set<String> paths = searchIndex.get(term);
+      if (paths == null) {
+        paths = Sets.newHashSet();
+        searchIndex.put(term, paths);
+      }
+      paths.add(path);
+    }
+
+  }
+
+  /**
+   * <p>Add the offline copies that are not in the help pack to the search index</p>
+   */
+  private static void indexOfflineCopies() {
+
+    Optional<File> offlineDirectory = getOfflineDirectory();
+    if (offlineDirectory.isPresent()) {
+      indexOfflineCopies(offlineDirectory.get(), offlineDirectory.get());
+    }
+
+  }
+
+  /**
+   * @param offlineDirectory The offline copy directory
+   * @param directory        The directory to index (including sub-directories)
+   */
+  private static void indexOfflineCopies(File offlineDirectory, File directory) {
+
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+
+    for (File file : files) {
+      if (file.isDirectory()) {
+        indexOfflineCopies(offlineDirectory, file);
+        continue;
+      }
+      String path = offlineDirectory.toURI().relativize(file.toURI()).getPath();
+      if (packEntries.containsKey(path)) {
+        continue;
+      }
+      try {
+        indexPage(path, Files.toByteArray(file));
+      } catch (IOException e) {
+        log.warn("Offline help page '{}' could not be read: {}", path, e.getMessage());
+      }
+    }
+
+  }
+
+  /**
+   * @param path    The relative path of the page
+   * @param content The page content downloaded from the website
+   */
+  private static void writeOfflineCopy(String path, byte[] content) {
+
+    Optional<File> offlineDirectory = getOfflineDirectory();
+    if (!offlineDirectory.isPresent() || packEntries.containsKey(path)) {
+      return;
+    }
+
+    File file = new File(offlineDirectory.get(), path);
+    try {
+      Files.createParentDirs(file);
+      org.multibit.hd.core.files.Files.writeAtomically(content, file);
+    } catch (IOException e) {
+      log.warn("Offline help page '{}' could not be written: {}", path, e.getMessage());
+      return;
+    }
+
+    // Replace any terms from an earlier version of the page
+    for (Set<String> paths : searchIndex.values()) {
+      paths.remove(path);
+    }
+    indexPage(path, content);
+
+  }
+
+  /**
+   * @param path The relative path of the page
+   *
+   * @return The content of the offline copy if present
+   */
+  private static Optional<byte[]> readOfflineCopy(String path) {
+
+    Optional<File> offlineDirectory = getOfflineDirectory();
+    if (!offlineDirectory.isPresent()) {
+      return Optional.absent();
+    }
+
+    File file = new File(offlineDirectory.get(), path);
+    if (!file.isFile()) {
+      return Optional.absent();
+    }
+
+    try {
+      return Optional.of(Files.toByteArray(file));
+    } catch (IOException e) {
+      log.warn("Offline help page '{}' could not be read: {}", path, e.getMessage());
+      return Optional.absent();
+    }
+
+  }
+
+  /**
+   * @return The offline copy directory within the application data directory (absent if it cannot be created)
+   */
+  private static Optional<File> getOfflineDirectory() {
+
+    File offlineDirectory = new File(InstallationManager.getOrCreateApplicationDataDirectory(), OFFLINE_DIRECTORY);
+    if (!offlineDirectory.isDirectory() && !offlineDirectory.mkdirs()) {
+      log.warn("Offline help directory '{}' could not be created", offlineDirectory.getAbsolutePath());
+      return Optional.absent();
+    }
+
+    return Optional.of(offlineDirectory);
+
+  }
+
+  /**
+   * @param pageUrl The page URL without a reference fragment
+   *
+   * @return The path relative to the MultiBit help base (absent if the page is elsewhere or escapes the base)
+   */
+  private static Optional<String> relativePath(String pageUrl) {
+
+    String prefix = MBHD_WEBSITE_HELP_BASE + "/";
+    if (!pageUrl.startsWith(prefix)) {
+      return Optional.absent();
+    }
+
+    String path = pageUrl.substring(prefix.length());
+    if (path.isEmpty() || path.endsWith("/") || path.contains("..") || path.contains("?")) {
+      return Optional.absent();
+    }
+
+    return Optional.of(path);
+
+  }
+
+  /**
+   * @param text The text to split into terms
+   *
+   * @return The distinct lowercase terms suitable for indexing
+   */
+  private static Set<String> tokenize(String text) {
+
+    Set<String> terms = Sets.newLinkedHashSet();
+    for (String term : NON_WORD.split(text.toLowerCase(Locale.UK))) {
+      if (term.length() >= MINIMUM_TERM_LENGTH) {
+        terms.add(term);
+      }
+    }
+    return terms;
+
+  }
+
+  /**
+   * @param url The URL
+   *
+   * @return The external form of the URL without any reference fragment
+   */
+  private static String withoutReference(URL url) {
+
+    String externalForm = url.toExternalForm();
+    int hash = externalForm.indexOf('#');
+    return hash < 0 ? externalForm : externalForm.substring(0, hash);
+
+  }
+
+  /**
+   * <p>Use for testing only</p>
+   *
+   * @param helpPack The help pack to read in place of the bundled one (absent for none)
+   */
+  static void setHelpPack(final Optional<URL> helpPack) throws ExecutionException, InterruptedException {
+
+    // Reset on the help thread so that no page is being read at the time
+    helpExecutorService.submit(new Runnable() {
+      @Override
+      public void run() {
+        helpPackUrl = helpPack;
+        packEntries = null;
+        searchIndex = null;
+        cache.invalidateAll();
+      }
+    }).get();
+
+  }
+
+}
@@ -1,16 +1,25 @@
 package org.multibit.hd.ui.views.screens.help;
 
+import com.google.common.base.Optional;
 import com.google.common.collect.Lists;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.html.HtmlEscapers;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import net.miginfocom.swing.MigLayout;
 import org.multibit.hd.core.dto.RAGStatus;
 import org.multibit.hd.core.exceptions.ExceptionHandler;
 import org.multibit.hd.core.managers.InstallationManager;
 import org.multibit.hd.ui.audio.Sounds;
 import org.multibit.hd.ui.events.controller.ControllerEvents;
+import org.multibit.hd.ui.events.view.ComponentChangedEvent;
 import org.multibit.hd.ui.languages.Languages;
 import org.multibit.hd.ui.languages.MessageKey;
 import org.multibit.hd.ui.models.Models;
 import org.multibit.hd.ui.views.components.*;
+import org.multibit.hd.ui.views.components.enter_search.EnterSearchModel;
+import org.multibit.hd.ui.views.components.enter_search.EnterSearchView;
 import org.multibit.hd.ui.views.screens.AbstractScreenView;
 import org.multibit.hd.ui.views.screens.Screen;
 import org.multibit.hd.ui.views.themes.Themes;
@@ -22,14 +31,17 @@ import javax.swing.event.HyperlinkEvent;
 import javax.swing.event.HyperlinkListener;
 import javax.swing.text.html.HTMLDocument;
 import javax.swing.text.html.HTMLEditorKit;
+import javax.swing.text.BadLocationException;
 import javax.swing.text.html.StyleSheet;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.io.IOException;
+import java.io.StringReader;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.LinkedList;
+import java.util.List;
 
 import static org.multibit.hd.core.managers.InstallationManager.MBHD_WEBSITE_HELP_BASE;
 
@@ -52,12 +64,14 @@ public class HelpScreenView extends AbstractScreenView<HelpScreenModel> {
   private int currentPageIndex = 0;
   private final LinkedList<URL> pageList = Lists.newLinkedList();
   private JEditorPane editorPane;
+  private HTMLEditorKit kit;
 
   private JButton backButton;
   private JButton forwardButton;
   private JButton launchBrowserButton;
 
   // View components
+  private ModelAndView<EnterSearchModel, EnterSearchView> enterSearchMaV;
 
   /**
    * @param panelModel The model backing this panel view
@@ -79,12 +93,14 @@ public class HelpScreenView extends AbstractScreenView<HelpScreenModel> {
     MigLayout layout = new MigLayout(
       Panels.migXYDetailLayout(),
       "[][][]push[]", // Column constraints
-      "[shrink]10[grow]" // Row constraints
+      "[shrink][shrink]10[grow]" // Row constraints
     );
 
     // Create the content panel
     JPanel contentPanel = Panels.newPanel(layout);
 
+    enterSearchMaV = Components.newEnterSearchMaV(getScreen().name());
+
     backButton = Buttons.newBackButton(getBackAction());
     forwardButton = Buttons.newForwardButton(getForwardAction());
     launchBrowserButton = Buttons.newLaunchBrowserButton(getLaunchBrowserAction(), MessageKey.VIEW_IN_EXTERNAL_BROWSER);
@@ -107,6 +123,7 @@ public class HelpScreenView extends AbstractScreenView<HelpScreenModel> {
     ScrollBarUIDecorator.apply(scrollPane, true);
 
     // Add to the panel
+    contentPanel.add(enterSearchMaV.getView().newComponentPanel(), "span 4,growx,push,wrap");
     contentPanel.add(backButton, "shrink");
     contentPanel.add(forwardButton, "shrink");
     contentPanel.add(launchBrowserButton, "shrink");
@@ -119,15 +136,39 @@ public class HelpScreenView extends AbstractScreenView<HelpScreenModel> {
   @Override
   public void afterShow() {
 
-    SwingUtilities.invokeLater(new Runnable() {
+    // Load the current page in the history
+    browse(currentPage());
+
+  }
+
+  /**
+   * <p>Called when the search box is updated</p>
+   *
+   * @param event The "component changed" event
+   */
+  @Subscribe
+  public void onComponentChangedEvent(ComponentChangedEvent event) {
+
+    // Check if this event applies to us
+    if (!event.getPanelName().equals(getScreen().name())) {
+      return;
+    }
+
+    final String query = enterSearchMaV.getModel().getValue().trim();
+    if (query.isEmpty()) {
+      return;
+    }
+
+    Futures.addCallback(HelpPages.search(query), new FutureCallback<List<URL>>() {
       @Override
-      public void run() {
-        // Load the current page in the history
-        try {
-          editorPane.setPage(currentPage());
-        } catch (IOException e) {
-          log.warn(e.getMessage(),e);
-        }
+      public void onSuccess(List<URL> urls) {
+        showDocument(newSearchResultsDocument(query, urls), Optional.<String>absent());
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        log.error(t.getMessage(), t);
+        handleBrowseFailure();
       }
     });
 
@@ -139,7 +180,7 @@ public class HelpScreenView extends AbstractScreenView<HelpScreenModel> {
   private JEditorPane createBrowser() {
 
     // Create an HTML editor kit
-    HTMLEditorKit kit = new HTMLEditorKit();
+    kit = new HTMLEditorKit();
 
     // Set a basic style sheet
     StyleSheet styleSheet = kit.getStyleSheet();
@@ -227,28 +268,122 @@ public class HelpScreenView extends AbstractScreenView<HelpScreenModel> {
   /**
    * <p>Point the editor pane to the given URL for rendering</p>
    *
+   * <p>The page is retrieved (help pack, cache or website) and parsed off the EDT</p>
+   *
    * @param url The URL to render
    */
   private void browse(final URL url) {
 
+    final ListenableFuture<Optional<String>> pageFuture = HelpPages.retrievePage(url);
+    Futures.addCallback(pageFuture, new FutureCallback<Optional<String>>() {
+      @Override
+      public void onSuccess(Optional<String> html) {
+
+        if (!html.isPresent()) {
+          handleBrowseFailure();
+          return;
+        }
+
+        // Parse into a detached document to keep the work off the EDT
+        final HTMLDocument doc = (HTMLDocument) kit.createDefaultDocument();
+        doc.setBase(url);
+        try {
+          kit.read(new StringReader(html.get()), doc, 0);
+        } catch (IOException | BadLocationException e) {
+          log.error(e.getMessage(), e);
+          handleBrowseFailure();
+          return;
+        }
+
+        showDocument(doc, Optional.fromNullable(url.getRef()));
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        log.error(t.getMessage(), t);
+        handleBrowseFailure();
+      }
+    });
+  }
+
+  /**
+   * <p>Swap the parsed document into the editor pane on the EDT</p>
+   *
+   * @param doc       The detached document
+   * @param reference The reference to scroll to (absent for the top of the page)
+   */
+  private void showDocument(final HTMLDocument doc, final Optional<String> reference) {
+
     SwingUtilities.invokeLater(new Runnable() {
       @Override
       public void run() {
-        try {
-          editorPane.setPage(url);
-          launchBrowserButton.setBackground(Themes.currentTheme.buttonBackground());
 
-        } catch (IOException e) {
-          // Log the error and report a failure to the user via the alerts
-          log.error(e.getMessage(), e);
-          ControllerEvents.fireAddAlertEvent(Models.newAlertModel(
-            Languages.safeText(MessageKey.NETWORK_CONFIGURATION_ERROR),
-            RAGStatus.AMBER
-          ));
+        editorPane.setDocument(doc);
+        if (reference.isPresent()) {
+          editorPane.scrollToReference(reference.get());
+        } else {
+          editorPane.setCaretPosition(0);
         }
+        launchBrowserButton.setBackground(Themes.currentTheme.buttonBackground());
 
       }
     });
+
+  }
+
+  /**
+   * @param query The search query
+   * @param urls  The matching pages
+   *
+   * @return A detached document listing links to the matching pages
+   */
+  private HTMLDocument newSearchResultsDocument(String query, List<URL> urls) {
+
+    StringBuilder html = new StringBuilder("<html><body><h1>")
+      .append(HtmlEscapers.htmlEscaper().escape(Languages.safeText(MessageKey.SEARCH)))
+      .append("</h1>");
+
+    if (urls.isEmpty()) {
+      html.append("<p>")
+        .append(HtmlEscapers.htmlEscaper().escape(Languages.safeText(MessageKey.HELP_SEARCH_NO_RESULTS, query)))
+        .append("</p>");
+    } else {
+      html.append("<ul>");
+      for (URL url : urls) {
+        String path = url.getPath();
+        String title = path.substring(path.lastIndexOf('/') + 1).replace(".html", "").replace('_', ' ');
+        html.append("<li><a href=\"")
+          .append(HtmlEscapers.htmlEscaper().escape(url.toExternalForm()))
+          .append("\">")
+          .append(HtmlEscapers.htmlEscaper().escape(title))
+          .append("</a></li>");
+      }
+      html.append("</ul>");
+    }
+    html.append("</body></html>");
+
+    HTMLDocument doc = (HTMLDocument) kit.createDefaultDocument();
+    try {
+      doc.setBase(URI.create(MBHD_WEBSITE_HELP_BASE).toURL());
+      kit.read(new StringReader(html.toString()), doc, 0);
+    } catch (IOException | BadLocationException e) {
+      log.error(e.getMessage(), e);
+    }
+
+    return doc;
+
+  }
+
+  /**
+   * <p>Report a failure to load a page to the user via the alerts</p>
+   */
+  private void handleBrowseFailure() {
+
+    ControllerEvents.fireAddAlertEvent(Models.newAlertModel(
+      Languages.safeText(MessageKey.NETWORK_CONFIGURATION_ERROR),
+      RAGStatus.AMBER
+    ));
+
   }
 
   /**
@@ -235,6 +235,9 @@ public class ExchangeSettingsPanelView extends AbstractWizardPanelView<ExchangeS
             }
           });
 
+          // The service was only needed for this request
+          exchangeTickerService.shutdownAfter(futureAllCurrencies);
+
         } else {
 
           setCurrencyCodeVisibility(false);
@@ -462,6 +465,8 @@ public class ExchangeSettingsPanelView extends AbstractWizardPanelView<ExchangeS
       }
     });
 
+    // Release the temporary service once the currencies arrive
+    exchangeTickerService.shutdownAfter(futureAllCurrencies);
 
   }
 
@@ -561,6 +566,9 @@ public class ExchangeSettingsPanelView extends AbstractWizardPanelView<ExchangeS
       }
     });
 
+    // Release the temporary service once the ticker arrives
+    exchangeTickerService.shutdownAfter(futureTicker);
+
   }
 
   /**
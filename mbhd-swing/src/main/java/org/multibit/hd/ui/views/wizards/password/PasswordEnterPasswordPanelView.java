@@ -11,6 +11,7 @@ import org.multibit.hd.core.dto.WalletSummary;
 import org.multibit.hd.core.events.SecurityEvent;
 import org.multibit.hd.core.exceptions.ExceptionHandler;
 import org.multibit.hd.core.exceptions.WalletLoadException;
+import org.multibit.hd.core.logging.StartupTracer;
 import org.multibit.hd.core.managers.InstallationManager;
 import org.multibit.hd.core.managers.WalletManager;
 import org.multibit.hd.core.services.CoreServices;
@@ -177,6 +178,9 @@ public class PasswordEnterPasswordPanelView extends AbstractWizardPanelView<Pass
       return true;
     }
 
+    // The user has provided their credentials so any remaining startup is work again
+    StartupTracer.INSTANCE.userWaitEnded();
+
     // Start the spinner (we are deferring the hide)
     SwingUtilities.invokeLater(new Runnable() {
       @Override
@@ -248,6 +252,9 @@ public class PasswordEnterPasswordPanelView extends AbstractWizardPanelView<Pass
                 enterPasswordMaV.getView().requestInitialFocus();
                 selectWalletMaV.getView().setEnabled(true);
 
+                // Waiting for the user to try again
+                StartupTracer.INSTANCE.userWaitStarted();
+
               }
             });
 
@@ -270,6 +277,9 @@ public class PasswordEnterPasswordPanelView extends AbstractWizardPanelView<Pass
 
               enterPasswordMaV.getView().requestInitialFocus();
               selectWalletMaV.getView().setEnabled(true);
+
+              // Waiting for the user to try again
+              StartupTracer.INSTANCE.userWaitStarted();
             }
           });
 
@@ -5,6 +5,7 @@ import com.google.common.base.Optional;
 import com.google.common.util.concurrent.*;
 import org.joda.time.DateTime;
 import org.multibit.hd.core.concurrent.SafeExecutors;
+import org.multibit.hd.core.dto.ReplayMode;
 import org.multibit.hd.core.dto.WalletSummary;
 import org.multibit.hd.core.managers.InstallationManager;
 import org.multibit.hd.core.managers.SSLManager;
@@ -140,7 +141,8 @@ public class RepairWalletWizardModel extends AbstractWizardModel<RepairWalletSta
         @Override
         public Boolean call() throws Exception {
 
-          CoreServices.getOrCreateBitcoinNetworkService().replayWallet(replayDate);
+          // A repair is for a corrupt or forked block store so never reuse it
+          CoreServices.getOrCreateBitcoinNetworkService().replayWallet(replayDate, ReplayMode.REBUILD);
           return true;
 
         }
@@ -12,6 +12,7 @@ import org.multibit.hd.core.concurrent.SafeExecutors;
 import org.multibit.hd.core.config.Configurations;
 import org.multibit.hd.core.crypto.AESUtils;
 import org.multibit.hd.core.dto.BitcoinNetworkStatus;
+import org.multibit.hd.core.dto.ReplayMode;
 import org.multibit.hd.core.dto.WalletId;
 import org.multibit.hd.core.dto.WalletSummary;
 import org.multibit.hd.core.events.BitcoinNetworkChangedEvent;
@@ -368,8 +369,8 @@ public class RestoreWalletReportPanelView extends AbstractWizardPanelView<Welcom
         // Create a wallet service
         CoreServices.getOrCreateWalletService(currentWalletSummary.get().getWalletId());
 
-        // Start the Bitcoin network to synchronize
-        CoreServices.getOrCreateBitcoinNetworkService().replayWallet(replayDate);
+        // Start the Bitcoin network to synchronize (any existing block store is of unknown origin so rebuild it)
+        CoreServices.getOrCreateBitcoinNetworkService().replayWallet(replayDate, ReplayMode.REBUILD);
 
         return true;
       }
@@ -235,7 +235,7 @@ public class WelcomeWizardModel extends AbstractWizardModel<WelcomeWizardState>
   }
 
   /**
-   * @return True if backups are present in the local zip backup location
+   * @return True if local zip backups or snapshots are present for the current wallet
    */
   private boolean isLocalZipBackupPresent() {
 
@@ -245,7 +245,7 @@ public class WelcomeWizardModel extends AbstractWizardModel<WelcomeWizardState>
     // Get the local backups
     Optional<WalletSummary> currentWalletSummary = WalletManager.INSTANCE.getCurrentWalletSummary();
     if (currentWalletSummary.isPresent()) {
-      backupSummaries = BackupManager.INSTANCE.getLocalZipBackups(currentWalletSummary.get().getWalletId());
+      backupSummaries = BackupManager.INSTANCE.getLocalBackups(currentWalletSummary.get().getWalletId());
     }
 
     return !backupSummaries.isEmpty();
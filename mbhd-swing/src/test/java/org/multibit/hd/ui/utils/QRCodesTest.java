@@ -0,0 +1,47 @@
+package org.multibit.hd.ui.utils;
+
+import com.google.common.base.Optional;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class QRCodesTest {
+
+  private static final String BITCOIN_URI = "bitcoin:1AhN6rPdrMuKBGFDKR1k9A8SCLYaNgXhty?amount=0.01";
+
+  @Test
+  public void testGenerateQRCode() throws Exception {
+
+    Optional<BufferedImage> image = QRCodes.generateQRCode(BITCOIN_URI, 3);
+
+    assertThat(image.isPresent()).isTrue();
+
+    // Each element occupies a 3x3 swatch
+    assertThat(image.get().getWidth() % 3).isEqualTo(0);
+    assertThat(image.get().getHeight() % 3).isEqualTo(0);
+
+    // Quiet zone is white
+    assertThat(image.get().getRGB(0, 0) & 0xFFFFFF).isEqualTo(0xFFFFFF);
+
+    // First finder pattern starts immediately after the quiet zone (4 elements) and is black
+    assertThat(image.get().getRGB(4 * 3, 4 * 3) & 0xFFFFFF).isEqualTo(0x000000);
+    assertThat(image.get().getRGB(4 * 3 + 2, 4 * 3 + 2) & 0xFFFFFF).isEqualTo(0x000000);
+
+  }
+
+  @Test
+  public void testGenerateQRCode_Cached() throws Exception {
+
+    Optional<BufferedImage> first = QRCodes.generateQRCode(BITCOIN_URI, 2);
+    Optional<BufferedImage> second = QRCodes.generateQRCode(BITCOIN_URI, 2);
+    Optional<BufferedImage> scaled = QRCodes.generateQRCode(BITCOIN_URI, 4);
+
+    assertThat(second.get()).isSameAs(first.get());
+    assertThat(scaled.get()).isNotSameAs(first.get());
+    assertThat(scaled.get().getWidth()).isEqualTo(first.get().getWidth() * 2);
+
+  }
+
+}
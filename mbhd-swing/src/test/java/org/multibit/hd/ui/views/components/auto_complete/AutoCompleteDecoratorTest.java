@@ -0,0 +1,121 @@
+package org.multibit.hd.ui.views.components.auto_complete;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.multibit.hd.core.concurrent.SafeExecutors;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class AutoCompleteDecoratorTest {
+
+  private ListeningExecutorService executorService;
+
+  /**
+   * The fragments the filter was asked to update
+   */
+  private final List<String> queried = Collections.synchronizedList(Lists.<String>newArrayList());
+
+  /**
+   * Released to let a slow query finish
+   */
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  /**
+   * Counted down when the slow query starts
+   */
+  private final CountDownLatch slowQueryStarted = new CountDownLatch(1);
+
+  private AutoCompleteDecorator.LatestQuery<String> testObject;
+
+  @Before
+  public void setUp() throws Exception {
+
+    executorService = SafeExecutors.newSingleThreadExecutor("auto-complete-test");
+
+    AutoCompleteFilter<String> filter = new AutoCompleteFilter<String>() {
+      @Override
+      public String[] create() {
+        return new String[]{};
+      }
+
+      @Override
+      public String[] update(String fragment) {
+
+        queried.add(fragment);
+
+        if ("slow".equals(fragment)) {
+          slowQueryStarted.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+
+        return new String[]{fragment};
+      }
+    };
+
+    testObject = new AutoCompleteDecorator.LatestQuery<>(executorService, filter);
+
+  }
+
+  @After
+  public void tearDown() throws Exception {
+
+    release.countDown();
+    executorService.shutdownNow();
+
+  }
+
+  @Test
+  public void testSubmit_CancelsRunningQuery() throws Exception {
+
+    ListenableFuture<String[]> first = testObject.submit("slow");
+    assertThat(slowQueryStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+    // The user types again whilst the first query is running
+    ListenableFuture<String[]> second = testObject.submit("slower");
+
+    // The running query is interrupted so the latest does not wait for it
+    assertThat(first.isCancelled()).isTrue();
+    assertThat(second.get(5, TimeUnit.SECONDS)).containsOnly("slower");
+
+  }
+
+  @Test
+  public void testSubmit_CancelsQueuedQuery() throws Exception {
+
+    // Occupy the executor so the next queries are queued
+    ListenableFuture<?> busy = executorService.submit(new Runnable() {
+      @Override
+      public void run() {
+        Uninterruptibles.awaitUninterruptibly(release);
+      }
+    });
+
+    ListenableFuture<String[]> first = testObject.submit("a");
+    ListenableFuture<String[]> second = testObject.submit("ab");
+
+    assertThat(first.isCancelled()).isTrue();
+
+    release.countDown();
+    busy.get(5, TimeUnit.SECONDS);
+
+    // The superseded text is never queried
+    assertThat(second.get(5, TimeUnit.SECONDS)).containsOnly("ab");
+    assertThat(queried).containsOnly("ab");
+
+  }
+
+}
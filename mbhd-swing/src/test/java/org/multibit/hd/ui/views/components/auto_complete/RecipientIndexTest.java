@@ -0,0 +1,140 @@
+package org.multibit.hd.ui.views.components.auto_complete;
+
+import com.google.bitcoin.core.ECKey;
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.common.collect.Lists;
+import org.junit.Before;
+import org.junit.Test;
+import org.multibit.hd.core.config.BitcoinNetwork;
+import org.multibit.hd.core.config.Configurations;
+import org.multibit.hd.core.dto.Contact;
+import org.multibit.hd.core.dto.Recipient;
+import org.multibit.hd.core.services.ContactService;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RecipientIndexTest {
+
+  private ContactService contactService;
+
+  private NetworkParameters networkParameters;
+
+  private Contact alice;
+
+  private Contact bob;
+
+  private RecipientIndex testObject;
+
+  @Before
+  public void setUp() throws Exception {
+
+    Configurations.currentConfiguration = Configurations.newDefaultConfiguration();
+
+    networkParameters = BitcoinNetwork.current().get();
+
+    alice = newContact("Alice Smith");
+    alice.setEmail("alice@example.org");
+    alice.setTags(Lists.newArrayList("Family"));
+
+    bob = newContact("Bob Jones");
+    bob.setNotes("Paid for lunch");
+
+    contactService = mock(ContactService.class);
+    when(contactService.getGeneration()).thenReturn(1L);
+    when(contactService.filterContactsByContent("*", true)).thenReturn(Lists.newArrayList(alice, bob));
+
+    testObject = new RecipientIndex(contactService, networkParameters);
+
+  }
+
+  @Test
+  public void testQuery_Prefix() throws Exception {
+
+    assertThat(names(testObject.query("Ali"))).containsOnly("Alice Smith");
+    assertThat(names(testObject.query("b"))).containsOnly("Bob Jones");
+
+  }
+
+  @Test
+  public void testQuery_Substring() throws Exception {
+
+    // Matches within the name, email, notes and tags regardless of case
+    assertThat(names(testObject.query("SMITH"))).containsOnly("Alice Smith");
+    assertThat(names(testObject.query("example.org"))).containsOnly("Alice Smith");
+    assertThat(names(testObject.query("lunch"))).containsOnly("Bob Jones");
+    assertThat(names(testObject.query("amil"))).containsOnly("Alice Smith");
+    assertThat(names(testObject.query("o"))).containsOnly("Alice Smith", "Bob Jones");
+
+    assertThat(testObject.query("carol")).isEmpty();
+
+  }
+
+  @Test
+  public void testQuery_Wildcard() throws Exception {
+
+    assertThat(names(testObject.query("*"))).containsOnly("Alice Smith", "Bob Jones");
+    assertThat(names(testObject.all())).containsOnly("Alice Smith", "Bob Jones");
+
+  }
+
+  @Test
+  public void testQuery_RebuiltWhenGenerationChanges() throws Exception {
+
+    Recipient[] before = testObject.all();
+    assertThat(testObject.query("carol")).isEmpty();
+
+    // The contacts are only read once for an unchanged generation
+    verify(contactService, times(1)).filterContactsByContent("*", true);
+
+    // A new contact is added
+    Contact carol = newContact("Carol White");
+    when(contactService.filterContactsByContent("*", true)).thenReturn(Lists.newArrayList(alice, bob, carol));
+    when(contactService.getGeneration()).thenReturn(2L);
+
+    assertThat(names(testObject.query("carol"))).containsOnly("Carol White");
+    verify(contactService, times(2)).filterContactsByContent("*", true);
+
+    // Unchanged contacts keep their recipient rather than decoding the address again
+    Recipient[] after = testObject.all();
+    assertThat(after.length).isEqualTo(3);
+    assertThat(after[0]).isSameAs(before[0]);
+    assertThat(after[1]).isSameAs(before[1]);
+
+  }
+
+  /**
+   * @param name The contact name
+   *
+   * @return A payable contact with a new address
+   */
+  private Contact newContact(String name) {
+
+    Contact contact = new Contact(UUID.randomUUID(), name);
+    contact.setBitcoinAddress(new ECKey().toAddress(networkParameters).toString());
+
+    return contact;
+  }
+
+  /**
+   * @param recipients The recipients
+   *
+   * @return The names of the recipient contacts
+   */
+  private static List<String> names(Recipient[] recipients) {
+
+    List<String> names = Lists.newArrayList();
+    for (Recipient recipient : recipients) {
+      names.add(recipient.getContact().get().getName());
+    }
+
+    return names;
+  }
+
+}
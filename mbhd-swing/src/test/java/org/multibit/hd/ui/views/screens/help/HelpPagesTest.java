@@ -0,0 +1,136 @@
+package org.multibit.hd.ui.views.screens.help;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.multibit.hd.core.managers.InstallationManager;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URI;
+import java.net.URL;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.multibit.hd.core.managers.InstallationManager.MBHD_WEBSITE_HELP_BASE;
+
+public class HelpPagesTest {
+
+  private File temporaryDirectory;
+
+  @Before
+  public void setUp() throws Exception {
+
+    temporaryDirectory = Files.createTempDir();
+    temporaryDirectory.deleteOnExit();
+
+    InstallationManager.setCurrentApplicationDataDirectory(temporaryDirectory);
+
+    // Pack entries are relative to the help base
+    File helpPack = new File(temporaryDirectory, "mbhd-help.zip");
+    try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(helpPack))) {
+      addEntry(zos, "help_contents.html", "<html><body><h1>Contents</h1><p>Create a wallet</p></body></html>");
+      addEntry(zos, "backups.html", "<html><body><h1>Backups</h1><p>Restore a wallet from a backup</p></body></html>");
+    }
+
+    HelpPages.setHelpPack(Optional.of(helpPack.toURI().toURL()));
+
+  }
+
+  @After
+  public void tearDown() throws Exception {
+
+    HelpPages.setHelpPack(Optional.<URL>absent());
+
+  }
+
+  @Test
+  public void testRetrievePage_FromHelpPack() throws Exception {
+
+    Optional<String> html = HelpPages.retrievePage(helpUrl("help_contents.html#wallet")).get();
+
+    assertThat(html.isPresent()).isTrue();
+    assertThat(html.get()).contains("Create a wallet");
+
+  }
+
+  @Test
+  public void testRetrievePage_AbsentIsNotCached() throws Exception {
+
+    File page = new File(temporaryDirectory, "later.html");
+    URL url = page.toURI().toURL();
+
+    assertThat(HelpPages.retrievePage(url).get().isPresent()).isFalse();
+
+    // The page becomes available (e.g. the network returns) so it must be read again
+    Files.write("<html><body>Later</body></html>", page, Charsets.UTF_8);
+
+    Optional<String> html = HelpPages.retrievePage(url).get();
+    assertThat(html.isPresent()).isTrue();
+    assertThat(html.get()).contains("Later");
+
+  }
+
+  @Test
+  public void testSearch_AllTermsMustMatch() throws Exception {
+
+    assertThat(toPaths(HelpPages.search("wallet").get())).containsOnly("help_contents.html", "backups.html");
+
+    assertThat(toPaths(HelpPages.search("Restore wallet").get())).containsOnly("backups.html");
+
+    assertThat(HelpPages.search("wallet unknown").get()).isEmpty();
+
+    // Short terms are not indexed
+    assertThat(HelpPages.search("a").get()).isEmpty();
+
+  }
+
+  @Test
+  public void testSearch_IncludesOfflineCopies() throws Exception {
+
+    // A page read from the website during an earlier session
+    File offlinePage = new File(temporaryDirectory, "help/security/passwords.html");
+    Files.createParentDirs(offlinePage);
+    Files.write("<html><body><h1>Passwords</h1><p>Choose a strong password</p></body></html>", offlinePage, Charsets.UTF_8);
+
+    // Without a bundled help pack
+    HelpPages.setHelpPack(Optional.<URL>absent());
+
+    assertThat(toPaths(HelpPages.search("strong password").get())).containsOnly("security/passwords.html");
+
+  }
+
+  private static void addEntry(ZipOutputStream zos, String name, String content) throws Exception {
+
+    zos.putNextEntry(new ZipEntry(name));
+    zos.write(content.getBytes(Charsets.UTF_8));
+    zos.closeEntry();
+
+  }
+
+  private static URL helpUrl(String path) throws Exception {
+
+    return URI.create(MBHD_WEBSITE_HELP_BASE + "/" + path).toURL();
+
+  }
+
+  /**
+   * @return The paths relative to the help base (avoids URL equality which resolves host names)
+   */
+  private static List<String> toPaths(List<URL> urls) {
+
+    List<String> paths = Lists.newArrayList();
+    for (URL url : urls) {
+      paths.add(url.toExternalForm().substring(MBHD_WEBSITE_HELP_BASE.length() + 1));
+    }
+    return paths;
+
+  }
+
+}